@@ -0,0 +1,157 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single-threaded benchmarks common to all heartbeat types. Subclasses create
+ * the heartbeat and issue heartbeats with their type-specific method.
+ *
+ * The "default" engine uses the JNI implementations and requires the native
+ * library on <code>java.library.path</code>; the "java" engine does not. The
+ * "ffm" engine, which is not run unless requested with
+ * <code>-p engine=ffm</code>, requires Java 22 and the heartbeats-simple
+ * shared libraries.
+ *
+ * @author Connor Imes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public abstract class AbstractHeartbeatBenchmark<T extends Heartbeat> {
+	@Param({ "default", "java" })
+	public String engine;
+
+	@Param({ "20", "1000" })
+	public int windowSize;
+
+	/**
+	 * Whether to log to /dev/null; affects heartbeats that complete a window.
+	 */
+	@Param({ "false", "true" })
+	public boolean log;
+
+	protected FileOutputStream logStream;
+	protected T hb;
+	protected long time;
+	private final HeartbeatSnapshot snapshot = new HeartbeatSnapshot();
+
+	/**
+	 * @return the backend for {@link #engine}
+	 */
+	protected HeartbeatBackend getBackend() {
+		return "default".equals(engine) ? HeartbeatBackend.JNI : HeartbeatBackend.valueOf(engine.toUpperCase(Locale.ROOT));
+	}
+
+	/**
+	 * Create a heartbeat using {@link #engine}, {@link #windowSize}, and
+	 * {@link #logStream}.
+	 */
+	protected abstract T create();
+
+	/**
+	 * Issue a heartbeat using the type's richest heartbeat method.
+	 */
+	protected abstract void issue();
+
+	@Setup
+	public void setup() throws IOException {
+		logStream = log ? new FileOutputStream("/dev/null") : null;
+		hb = create();
+		// fill the window so getters see steady-state values
+		for (int i = 0; i < windowSize; i++) {
+			issue();
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		hb.dispose();
+		if (logStream != null) {
+			logStream.close();
+		}
+	}
+
+	@Benchmark
+	public void heartbeat() {
+		issue();
+	}
+
+	@Benchmark
+	public HeartbeatSnapshot snapshot() {
+		return hb.snapshot(snapshot);
+	}
+
+	@Benchmark
+	public void logWindowBuffer() throws IOException {
+		hb.logWindowBuffer();
+	}
+
+	@Benchmark
+	public void createDispose() {
+		create().dispose();
+	}
+
+	@Benchmark
+	public long getWindowSize() {
+		return hb.getWindowSize();
+	}
+
+	@Benchmark
+	public long getUserTag() {
+		return hb.getUserTag();
+	}
+
+	@Benchmark
+	public long getGlobalTime() {
+		return hb.getGlobalTime();
+	}
+
+	@Benchmark
+	public long getWindowTime() {
+		return hb.getWindowTime();
+	}
+
+	@Benchmark
+	public long getGlobalWork() {
+		return hb.getGlobalWork();
+	}
+
+	@Benchmark
+	public long getWindowWork() {
+		return hb.getWindowWork();
+	}
+
+	@Benchmark
+	public double getGlobalPerf() {
+		return hb.getGlobalPerf();
+	}
+
+	@Benchmark
+	public double getWindowPerf() {
+		return hb.getWindowPerf();
+	}
+
+	@Benchmark
+	public double getInstantPerf() {
+		return hb.getInstantPerf();
+	}
+}
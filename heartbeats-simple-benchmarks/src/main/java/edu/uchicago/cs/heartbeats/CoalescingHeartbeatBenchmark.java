@@ -0,0 +1,71 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-iteration cost of heartbeats in a tight loop: issuing every heartbeat,
+ * compared to a {@link CoalescingHeartbeatAccuracyPower} that flushes every
+ * {@link #flushWork} units of work.
+ *
+ * @author Connor Imes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CoalescingHeartbeatBenchmark {
+	@Param({ "default", "java" })
+	public String engine;
+
+	@Param({ "100", "10000" })
+	public long flushWork;
+
+	private HeartbeatAccuracyPower direct;
+	private CoalescingHeartbeatAccuracyPower coalescing;
+	private long time;
+
+	private HeartbeatAccuracyPower create() {
+		return "java".equals(engine) ? JavaHeartbeatAccuracyPower.create(20) : DefaultHeartbeatAccuracyPower.create(20);
+	}
+
+	@Setup
+	public void setup() {
+		direct = create();
+		coalescing = CoalescingHeartbeatAccuracyPower.create(create(), CoalescingPolicy.work(flushWork));
+	}
+
+	@TearDown
+	public void tearDown() {
+		direct.dispose();
+		coalescing.dispose();
+	}
+
+	@Benchmark
+	public void direct() {
+		final long start = time;
+		time += 10;
+		direct.heartbeat(start, 1, start, time, 1, start, time);
+	}
+
+	@Benchmark
+	public void coalescing() {
+		final long start = time;
+		time += 10;
+		coalescing.heartbeat(start, 1, start, time, 1, start, time);
+	}
+}
@@ -0,0 +1,65 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the cost of guarding a shared native pointer with the fair
+ * {@link ReentrantReadWriteLock} previously used by the Default* heartbeats
+ * against {@link DisposalGuard}, with all threads using one instance.
+ *
+ * Run with <code>-t 1</code> for the uncontended cost.
+ *
+ * @author Connor Imes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class DisposalGuardBenchmark {
+	/**
+	 * Simulated work while holding the guard, e.g. a native heartbeat.
+	 */
+	@Param({ "0", "50" })
+	public long tokens;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock(true);
+	private final DisposalGuard guard = new DisposalGuard();
+
+	@Benchmark
+	public void fairReadLock() {
+		lock.readLock().lock();
+		try {
+			Blackhole.consumeCPU(tokens);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Benchmark
+	public void disposalGuard() {
+		final int token = guard.enter();
+		try {
+			Blackhole.consumeCPU(tokens);
+		} finally {
+			guard.exit(token);
+		}
+	}
+}
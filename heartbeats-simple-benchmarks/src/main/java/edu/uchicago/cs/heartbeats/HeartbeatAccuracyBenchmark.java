@@ -0,0 +1,48 @@
+package edu.uchicago.cs.heartbeats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Benchmarks for {@link HeartbeatAccuracy} implementations.
+ *
+ * @author Connor Imes
+ */
+public class HeartbeatAccuracyBenchmark extends AbstractHeartbeatBenchmark<HeartbeatAccuracy> {
+
+	@Override
+	protected HeartbeatAccuracy create() {
+		return getBackend().createHeartbeatAccuracy(windowSize, logStream);
+	}
+
+	@Override
+	protected void issue() {
+		final long start = time;
+		time += 1000;
+		hb.heartbeat(start, 1, start, time, 1);
+	}
+
+	@Benchmark
+	public long getGlobalAccuracy() {
+		return hb.getGlobalAccuracy();
+	}
+
+	@Benchmark
+	public long getWindowAccuracy() {
+		return hb.getWindowAccuracy();
+	}
+
+	@Benchmark
+	public double getGlobalAccuracyRate() {
+		return hb.getGlobalAccuracyRate();
+	}
+
+	@Benchmark
+	public double getWindowAccuracyRate() {
+		return hb.getWindowAccuracyRate();
+	}
+
+	@Benchmark
+	public double getInstantAccuracyRate() {
+		return hb.getInstantAccuracyRate();
+	}
+}
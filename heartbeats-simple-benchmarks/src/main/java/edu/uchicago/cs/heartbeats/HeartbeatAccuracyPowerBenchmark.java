@@ -0,0 +1,73 @@
+package edu.uchicago.cs.heartbeats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Benchmarks for {@link HeartbeatAccuracyPower} implementations.
+ *
+ * @author Connor Imes
+ */
+public class HeartbeatAccuracyPowerBenchmark extends AbstractHeartbeatBenchmark<HeartbeatAccuracyPower> {
+
+	@Override
+	protected HeartbeatAccuracyPower create() {
+		return getBackend().createHeartbeatAccuracyPower(windowSize, logStream);
+	}
+
+	@Override
+	protected void issue() {
+		final long start = time;
+		time += 1000;
+		hb.heartbeat(start, 1, start, time, 1, start, time);
+	}
+
+	@Benchmark
+	public long getGlobalAccuracy() {
+		return hb.getGlobalAccuracy();
+	}
+
+	@Benchmark
+	public long getWindowAccuracy() {
+		return hb.getWindowAccuracy();
+	}
+
+	@Benchmark
+	public double getGlobalAccuracyRate() {
+		return hb.getGlobalAccuracyRate();
+	}
+
+	@Benchmark
+	public double getWindowAccuracyRate() {
+		return hb.getWindowAccuracyRate();
+	}
+
+	@Benchmark
+	public double getInstantAccuracyRate() {
+		return hb.getInstantAccuracyRate();
+	}
+
+	@Benchmark
+	public long getGlobalEnergy() {
+		return hb.getGlobalEnergy();
+	}
+
+	@Benchmark
+	public long getWindowEnergy() {
+		return hb.getWindowEnergy();
+	}
+
+	@Benchmark
+	public double getGlobalPower() {
+		return hb.getGlobalPower();
+	}
+
+	@Benchmark
+	public double getWindowPower() {
+		return hb.getWindowPower();
+	}
+
+	@Benchmark
+	public double getInstantPower() {
+		return hb.getInstantPower();
+	}
+}
@@ -0,0 +1,21 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * Benchmarks for {@link Heartbeat} implementations.
+ *
+ * @author Connor Imes
+ */
+public class HeartbeatBenchmark extends AbstractHeartbeatBenchmark<Heartbeat> {
+
+	@Override
+	protected Heartbeat create() {
+		return getBackend().createHeartbeat(windowSize, logStream);
+	}
+
+	@Override
+	protected void issue() {
+		final long start = time;
+		time += 1000;
+		hb.heartbeat(start, 1, start, time);
+	}
+}
@@ -0,0 +1,93 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Multi-threaded benchmarks on a single {@link HeartbeatAccuracyPower}: one
+ * producer thread issues heartbeats while monitor threads read metrics. A
+ * single producer is used because heartbeat contexts do not support
+ * concurrent heartbeats.
+ *
+ * @author Connor Imes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class HeartbeatContentionBenchmark {
+	@Param({ "default", "java" })
+	public String engine;
+
+	@Param({ "20", "1000" })
+	public int windowSize;
+
+	private HeartbeatAccuracyPower hb;
+	private long time;
+
+	@State(Scope.Thread)
+	public static class ThreadSnapshot {
+		public final HeartbeatSnapshot snapshot = new HeartbeatSnapshot();
+	}
+
+	@Setup
+	public void setup() {
+		hb = "java".equals(engine) ? JavaHeartbeatAccuracyPower.create(windowSize)
+				: DefaultHeartbeatAccuracyPower.create(windowSize);
+	}
+
+	@TearDown
+	public void tearDown() {
+		hb.dispose();
+	}
+
+	private void issue() {
+		final long start = time;
+		time += 1000;
+		hb.heartbeat(start, 1, start, time, 1, start, time);
+	}
+
+	@Benchmark
+	@Group("getter")
+	@GroupThreads(1)
+	public void getterProducer() {
+		issue();
+	}
+
+	@Benchmark
+	@Group("getter")
+	@GroupThreads(3)
+	public double getterReader() {
+		return hb.getWindowPerf();
+	}
+
+	@Benchmark
+	@Group("snapshot")
+	@GroupThreads(1)
+	public void snapshotProducer() {
+		issue();
+	}
+
+	@Benchmark
+	@Group("snapshot")
+	@GroupThreads(3)
+	public HeartbeatSnapshot snapshotReader(final ThreadSnapshot ts) {
+		return hb.snapshot(ts.snapshot);
+	}
+}
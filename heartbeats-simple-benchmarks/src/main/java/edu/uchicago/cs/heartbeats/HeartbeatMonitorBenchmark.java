@@ -0,0 +1,74 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of one monitor thread polling many published heartbeats: one
+ * {@link HeartbeatMonitor#refresh()} of every monitor per operation, with
+ * every region updated between polls.
+ *
+ * @author Connor Imes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeartbeatMonitorBenchmark {
+	@Param({ "100" })
+	public int heartbeats;
+
+	private File dir;
+	private HeartbeatPublisher[] publishers;
+	private HeartbeatMonitor[] monitors;
+	private final HeartbeatSnapshot snapshot = new HeartbeatSnapshot();
+
+	@Setup
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("hb-monitor-bench").toFile();
+		publishers = new HeartbeatPublisher[heartbeats];
+		monitors = new HeartbeatMonitor[heartbeats];
+		for (int i = 0; i < heartbeats; i++) {
+			publishers[i] = HeartbeatPublisher.create(dir.getPath(), "hb" + i, 1);
+			monitors[i] = HeartbeatMonitor.open(dir.getPath(), "hb" + i);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		for (final HeartbeatPublisher p : publishers) {
+			p.close();
+		}
+		dir.delete();
+	}
+
+	@Benchmark
+	public void pollAll(final Blackhole bh) {
+		// publishing is included so that every refresh copies new values
+		for (final HeartbeatPublisher p : publishers) {
+			p.publish(snapshot);
+		}
+		for (final HeartbeatMonitor m : monitors) {
+			bh.consume(m.refresh());
+			bh.consume(m.getWindowPerf());
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a short-lived heartbeat: create, one heartbeat, and dispose, with
+ * and without a {@link HeartbeatPool}.
+ *
+ * @author Connor Imes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeartbeatPoolBenchmark {
+	private static final int CAPACITY = 16;
+
+	@Param({ "20", "1000" })
+	public int windowSize;
+
+	private HeartbeatPool<DefaultHeartbeat> pool;
+
+	@Setup
+	public void setup() {
+		pool = HeartbeatPool.forHeartbeat(windowSize, CAPACITY);
+	}
+
+	@Benchmark
+	public long create() {
+		final DefaultHeartbeat hb = DefaultHeartbeat.create(windowSize);
+		hb.heartbeat(0, 1, 0, 1000);
+		final long work = hb.getGlobalWork();
+		hb.dispose();
+		return work;
+	}
+
+	@Benchmark
+	public long pooled() {
+		final DefaultHeartbeat hb = pool.acquire();
+		hb.heartbeat(0, 1, 0, 1000);
+		final long work = hb.getGlobalWork();
+		hb.dispose();
+		return work;
+	}
+}
@@ -0,0 +1,48 @@
+package edu.uchicago.cs.heartbeats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Benchmarks for {@link HeartbeatPower} implementations.
+ *
+ * @author Connor Imes
+ */
+public class HeartbeatPowerBenchmark extends AbstractHeartbeatBenchmark<HeartbeatPower> {
+
+	@Override
+	protected HeartbeatPower create() {
+		return getBackend().createHeartbeatPower(windowSize, logStream);
+	}
+
+	@Override
+	protected void issue() {
+		final long start = time;
+		time += 1000;
+		hb.heartbeat(start, 1, start, time, start, time);
+	}
+
+	@Benchmark
+	public long getGlobalEnergy() {
+		return hb.getGlobalEnergy();
+	}
+
+	@Benchmark
+	public long getWindowEnergy() {
+		return hb.getWindowEnergy();
+	}
+
+	@Benchmark
+	public double getGlobalPower() {
+		return hb.getGlobalPower();
+	}
+
+	@Benchmark
+	public double getWindowPower() {
+		return hb.getWindowPower();
+	}
+
+	@Benchmark
+	public double getInstantPower() {
+		return hb.getInstantPower();
+	}
+}
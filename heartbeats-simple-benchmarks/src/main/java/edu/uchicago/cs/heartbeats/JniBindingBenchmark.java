@@ -0,0 +1,76 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-call cost of the two JNI bindings, without the Java API's disposal
+ * guard: methods taking the context as a direct {@link ByteBuffer}, and the
+ * registered address-based methods in {@link HeartbeatJNI.Raw}.
+ *
+ * Requires the native library on <code>java.library.path</code>.
+ *
+ * @author Connor Imes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JniBindingBenchmark {
+	private static final int WINDOW_SIZE = 20;
+
+	private HeartbeatJNI jni;
+	private ByteBuffer ptr;
+	private long addr;
+	private long time;
+
+	@Setup
+	public void setup() {
+		jni = HeartbeatJNI.get();
+		ptr = jni.init(WINDOW_SIZE, -1);
+		addr = jni.getAddress(ptr);
+	}
+
+	@TearDown
+	public void tearDown() {
+		jni.free(ptr);
+	}
+
+	@Benchmark
+	public void heartbeatBuffer() {
+		final long start = time;
+		time += 1000;
+		jni.heartbeat(ptr, start, 1, start, time);
+	}
+
+	@Benchmark
+	public void heartbeatAddress() {
+		final long start = time;
+		time += 1000;
+		HeartbeatJNI.Raw.heartbeat(addr, start, 1, start, time);
+	}
+
+	@Benchmark
+	public double getWindowPerfBuffer() {
+		return jni.getWindowPerf(ptr);
+	}
+
+	@Benchmark
+	public double getWindowPerfAddress() {
+		return HeartbeatJNI.Raw.getWindowPerf(addr);
+	}
+}
@@ -0,0 +1,61 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of rendering a scrape of many heartbeats with an
+ * {@link OpenMetricsWriter}. Run with <code>-prof gc</code> to see that it
+ * does not allocate.
+ *
+ * @author Connor Imes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OpenMetricsBenchmark {
+	private static final int WINDOW_SIZE = 20;
+
+	@Param({ "100", "1000" })
+	public int heartbeats;
+
+	private HeartbeatRegistry registry;
+	private OpenMetricsWriter writer;
+
+	@Setup
+	public void setup() {
+		registry = new HeartbeatRegistry(HeartbeatBackend.JAVA, WINDOW_SIZE, heartbeats);
+		for (int i = 0; i < heartbeats; i++) {
+			final HeartbeatAccuracyPower hb = registry.heartbeatAccuracyPower("stage-" + i);
+			for (int j = 0; j < WINDOW_SIZE; j++) {
+				hb.heartbeat(j, 3, j * 1000L, j * 1000L + 777 + i, 2, j * 13L, j * 13L + 11);
+			}
+		}
+		writer = new OpenMetricsWriter(registry);
+	}
+
+	@TearDown
+	public void teardown() {
+		registry.close();
+	}
+
+	@Benchmark
+	public int render() {
+		return writer.render();
+	}
+}
@@ -0,0 +1,70 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-iteration cost of heartbeats in a tight loop with each
+ * {@link SamplingPolicy}: 1-in-N, probabilistic with probability 1/N, and
+ * adaptive to a 1% overhead budget.
+ *
+ * @author Connor Imes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SamplingHeartbeatBenchmark {
+	@Param({ "default", "java" })
+	public String engine;
+
+	@Param({ "fixed", "probabilistic", "adaptive" })
+	public String policy;
+
+	@Param({ "100" })
+	public int n;
+
+	private SamplingHeartbeatAccuracyPower hb;
+	private long time;
+
+	@Setup
+	public void setup() {
+		final HeartbeatAccuracyPower inner = "java".equals(engine) ? JavaHeartbeatAccuracyPower.create(20)
+				: DefaultHeartbeatAccuracyPower.create(20);
+		final SamplingPolicy p;
+		if ("fixed".equals(policy)) {
+			p = SamplingPolicy.fixed(n);
+		} else if ("probabilistic".equals(policy)) {
+			p = SamplingPolicy.probabilistic(1.0 / n);
+		} else {
+			p = SamplingPolicy.adaptive(0.01, n);
+		}
+		hb = SamplingHeartbeatAccuracyPower.create(inner, p);
+	}
+
+	@TearDown
+	public void tearDown() {
+		hb.dispose();
+	}
+
+	@Benchmark
+	public void heartbeat() {
+		final long start = time;
+		time += 10;
+		hb.heartbeat(start, 1, start, time, 1, start, time);
+	}
+}
@@ -0,0 +1,83 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Heartbeat throughput with many producer threads: a single heartbeat that
+ * producers must synchronize on, compared to a {@link StripedHeartbeat}.
+ *
+ * @author Connor Imes
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class StripedHeartbeatBenchmark {
+	@Param({ "default", "java" })
+	public String engine;
+
+	@Param({ "20" })
+	public int windowSize;
+
+	private HeartbeatAccuracyPower single;
+	private HeartbeatAccuracyPower striped;
+
+	@State(Scope.Thread)
+	public static class ThreadTime {
+		public long time;
+	}
+
+	private HeartbeatAccuracyPower create() {
+		return "java".equals(engine) ? JavaHeartbeatAccuracyPower.create(windowSize)
+				: DefaultHeartbeatAccuracyPower.create(windowSize);
+	}
+
+	@Setup
+	public void setup() {
+		single = create();
+		final HeartbeatAccuracyPower[] stripes = new HeartbeatAccuracyPower[StripedHeartbeat.getDefaultStripeCount()];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = create();
+		}
+		striped = StripedHeartbeatAccuracyPower.create(stripes);
+	}
+
+	@TearDown
+	public void tearDown() {
+		single.dispose();
+		striped.dispose();
+	}
+
+	@Benchmark
+	public void synchronizedSingle(final ThreadTime t) {
+		final long start = t.time;
+		t.time += 1000;
+		synchronized (single) {
+			single.heartbeat(start, 1, start, t.time, 1, start, t.time);
+		}
+	}
+
+	@Benchmark
+	public void striped(final ThreadTime t) {
+		final long start = t.time;
+		t.time += 1000;
+		striped.heartbeat(start, 1, start, t.time, 1, start, t.time);
+	}
+}
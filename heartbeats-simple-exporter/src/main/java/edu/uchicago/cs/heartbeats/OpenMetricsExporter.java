@@ -0,0 +1,114 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the heartbeats of a {@link HeartbeatRegistry} in the OpenMetrics text
+ * format over HTTP, for Prometheus and compatible scrapers, using the JDK's
+ * built-in HTTP server.
+ *
+ * Scrapes of {@value #PATH} are rendered by an {@link OpenMetricsWriter} into
+ * a reused buffer. Requests are handled one at a time on the server's
+ * dispatcher thread.
+ *
+ * @author Connor Imes
+ */
+public final class OpenMetricsExporter implements Closeable {
+	public static final String PATH = "/metrics";
+
+	private final HttpServer server;
+	private final OpenMetricsWriter writer;
+
+	private OpenMetricsExporter(final HttpServer server, final OpenMetricsWriter writer) {
+		this.server = server;
+		this.writer = writer;
+	}
+
+	/**
+	 * Serve on the loopback address, so only local scrapers can connect.
+	 *
+	 * @param registry
+	 * @param port
+	 *            or 0 for any free port, see {@link #getAddress()}
+	 * @throws IOException
+	 *             if the server cannot be started
+	 */
+	public static OpenMetricsExporter start(final HeartbeatRegistry registry, final int port) throws IOException {
+		return start(registry, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+	}
+
+	/**
+	 * Serve on an address, e.g. a wildcard address to accept remote scrapers.
+	 *
+	 * @param registry
+	 * @param address
+	 * @throws IOException
+	 *             if the server cannot be started
+	 */
+	public static OpenMetricsExporter start(final HeartbeatRegistry registry, final InetSocketAddress address)
+			throws IOException {
+		final OpenMetricsWriter writer = new OpenMetricsWriter(registry);
+		final HttpServer server = HttpServer.create(address, 0);
+		server.createContext(PATH, new HttpHandler() {
+			public void handle(final HttpExchange exchange) throws IOException {
+				try {
+					serve(writer, exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		// handle requests on the dispatcher thread
+		server.setExecutor(null);
+		server.start();
+		return new OpenMetricsExporter(server, writer);
+	}
+
+	private static void serve(final OpenMetricsWriter writer, final HttpExchange exchange) throws IOException {
+		final String method = exchange.getRequestMethod();
+		final boolean head = "HEAD".equals(method);
+		if (!head && !"GET".equals(method)) {
+			exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+			exchange.sendResponseHeaders(405, -1);
+			return;
+		}
+		synchronized (writer) {
+			final int len;
+			try {
+				len = writer.render();
+			} catch (RuntimeException e) {
+				exchange.sendResponseHeaders(500, -1);
+				throw e;
+			}
+			exchange.getResponseHeaders().set("Content-Type", OpenMetricsWriter.CONTENT_TYPE);
+			exchange.sendResponseHeaders(200, head ? -1 : len);
+			if (!head) {
+				final OutputStream os = exchange.getResponseBody();
+				os.write(writer.getBuffer(), 0, len);
+				os.flush();
+			}
+		}
+	}
+
+	/**
+	 * @return the address being served, including the actual port
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/**
+	 * Stop serving; requests in progress are not waited for.
+	 */
+	public void close() {
+		server.stop(0);
+	}
+}
@@ -0,0 +1,528 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Renders the heartbeats of a {@link HeartbeatRegistry} in the OpenMetrics
+ * text format.
+ *
+ * Every heartbeat is snapshotted in one pass of the registry, then each metric
+ * family is written for all heartbeats. Snapshots, and the output buffer
+ * (sized up front for the registry), are reused by later renders, and numbers
+ * are formatted without creating strings, so rendering allocates almost
+ * nothing once the buffer and snapshots have grown to fit.
+ *
+ * Metrics use base units: time in seconds, energy in joules and power in
+ * watts. Each sample has a <code>name</code> label with the heartbeat's name,
+ * and gauges also have a <code>scope</code> label of <code>global</code>,
+ * <code>window</code> or <code>instant</code>. Accuracy and power metrics are
+ * only written for heartbeats that support them.
+ *
+ * Instances are not thread-safe; {@link #render()} and {@link #getBuffer()}
+ * should be called while synchronized on the writer if it is shared.
+ *
+ * @author Connor Imes
+ */
+public final class OpenMetricsWriter {
+	public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+	// a heartbeat with accuracy and power and a short name needs about 1 KB
+	private static final int BYTES_PER_HEARTBEAT = 1024;
+	private static final int BYTES_HEADERS = 2048;
+	// enough for any long, or a double with DIGITS digits and an exponent
+	private static final int MAX_VALUE_BYTES = 24;
+
+	private static final int ACCURACY = 1;
+	private static final int POWER = 2;
+
+	private static final byte[] WORK = ascii("# TYPE heartbeat_work counter\n"
+			+ "# HELP heartbeat_work Total work.\n");
+	private static final byte[] WORK_SAMPLE = ascii("heartbeat_work_total{name=\"");
+	private static final byte[] TIME = ascii("# TYPE heartbeat_time_seconds counter\n"
+			+ "# UNIT heartbeat_time_seconds seconds\n"
+			+ "# HELP heartbeat_time_seconds Total time.\n");
+	private static final byte[] TIME_SAMPLE = ascii("heartbeat_time_seconds_total{name=\"");
+	private static final byte[] ACCURACY_TOTAL = ascii("# TYPE heartbeat_accuracy counter\n"
+			+ "# HELP heartbeat_accuracy Total accuracy.\n");
+	private static final byte[] ACCURACY_SAMPLE = ascii("heartbeat_accuracy_total{name=\"");
+	private static final byte[] ENERGY = ascii("# TYPE heartbeat_energy_joules counter\n"
+			+ "# UNIT heartbeat_energy_joules joules\n"
+			+ "# HELP heartbeat_energy_joules Total energy.\n");
+	private static final byte[] ENERGY_SAMPLE = ascii("heartbeat_energy_joules_total{name=\"");
+	private static final byte[] PERF = ascii("# TYPE heartbeat_perf gauge\n"
+			+ "# HELP heartbeat_perf Work per second.\n");
+	private static final byte[] PERF_SAMPLE = ascii("heartbeat_perf{name=\"");
+	private static final byte[] ACCURACY_RATE = ascii("# TYPE heartbeat_accuracy_rate gauge\n"
+			+ "# HELP heartbeat_accuracy_rate Accuracy per second.\n");
+	private static final byte[] ACCURACY_RATE_SAMPLE = ascii("heartbeat_accuracy_rate{name=\"");
+	private static final byte[] POWER_WATTS = ascii("# TYPE heartbeat_power_watts gauge\n"
+			+ "# UNIT heartbeat_power_watts watts\n"
+			+ "# HELP heartbeat_power_watts Power.\n");
+	private static final byte[] POWER_SAMPLE = ascii("heartbeat_power_watts{name=\"");
+	private static final byte[] END_LABELS = ascii("\"} ");
+	private static final byte[] SCOPE_GLOBAL = ascii("\",scope=\"global\"} ");
+	private static final byte[] SCOPE_WINDOW = ascii("\",scope=\"window\"} ");
+	private static final byte[] SCOPE_INSTANT = ascii("\",scope=\"instant\"} ");
+	private static final byte[] EOF = ascii("# EOF\n");
+	private static final byte[] NAN = ascii("NaN");
+	private static final byte[] POS_INF = ascii("+Inf");
+	private static final byte[] NEG_INF = ascii("-Inf");
+
+	// powers of 10 from 1e-MAX_EXP to 1e+MAX_EXP, for formatting doubles
+	private static final int MAX_EXP = 300;
+	private static final double[] POW10 = new double[2 * MAX_EXP + 1];
+	// significant digits written for doubles that are not integers
+	private static final int DIGITS = 9;
+
+	// "00" to "99"
+	private static final byte[] DIGIT_PAIRS = new byte[200];
+	// powers of 10 that fit in a long
+	private static final long[] POW10L = new long[19];
+
+	static {
+		for (int i = 0; i < 100; i++) {
+			DIGIT_PAIRS[2 * i] = (byte) ('0' + i / 10);
+			DIGIT_PAIRS[2 * i + 1] = (byte) ('0' + i % 10);
+		}
+		POW10L[0] = 1;
+		for (int i = 1; i < POW10L.length; i++) {
+			POW10L[i] = POW10L[i - 1] * 10;
+		}
+		for (int i = -MAX_EXP; i <= MAX_EXP; i++) {
+			POW10[i + MAX_EXP] = Double.parseDouble("1e" + i);
+		}
+	}
+
+	private final HeartbeatRegistry registry;
+	private byte[] buf;
+	private int len;
+
+	// heartbeats collected by the last render
+	private String[] names = new String[0];
+	// escaped UTF-8 names, kept while heartbeats are visited in the same order
+	private byte[][] labels = new byte[0][];
+	private int[] kinds = new int[0];
+	private HeartbeatSnapshot[] snapshots = new HeartbeatSnapshot[0];
+	private int count;
+	private final HeartbeatSnapshot tmp = new HeartbeatSnapshot();
+	private final HeartbeatRegistry.Visitor collector = new HeartbeatRegistry.Visitor() {
+		public void visit(final String name, final Heartbeat hb, final HeartbeatSnapshot snapshot) {
+			collect(name, hb, snapshot);
+		}
+	};
+
+	/**
+	 * @param registry
+	 *            the heartbeats to render
+	 */
+	public OpenMetricsWriter(final HeartbeatRegistry registry) {
+		if (registry == null) {
+			throw new NullPointerException();
+		}
+		this.registry = registry;
+		this.buf = new byte[BYTES_HEADERS + registry.size() * BYTES_PER_HEARTBEAT];
+	}
+
+	private static byte[] ascii(final String s) {
+		return s.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private void collect(final String name, final Heartbeat hb, final HeartbeatSnapshot snapshot) {
+		if (count == names.length) {
+			final int n = Math.max(16, count * 2);
+			names = Arrays.copyOf(names, n);
+			labels = Arrays.copyOf(labels, n);
+			kinds = Arrays.copyOf(kinds, n);
+			snapshots = Arrays.copyOf(snapshots, n);
+		}
+		if (snapshots[count] == null) {
+			snapshots[count] = new HeartbeatSnapshot();
+		}
+		if (name != names[count]) {
+			names[count] = name;
+			labels[count] = label(name);
+		}
+		kinds[count] = (hb instanceof HeartbeatAccuracy ? ACCURACY : 0) | (hb instanceof HeartbeatPower ? POWER : 0);
+		snapshots[count].copyFrom(snapshot);
+		count++;
+	}
+
+	/**
+	 * Snapshot every heartbeat and render them into the buffer.
+	 *
+	 * @return the number of bytes rendered, see {@link #getBuffer()}
+	 */
+	public int render() {
+		count = 0;
+		registry.forEach(collector, tmp);
+		len = 0;
+		// grow once up front rather than while writing
+		ensure(BYTES_HEADERS + count * BYTES_PER_HEARTBEAT);
+
+		append(WORK);
+		for (int i = 0; i < count; i++) {
+			sampleLong(WORK_SAMPLE, i, END_LABELS, snapshots[i].getGlobalWork());
+		}
+		append(TIME);
+		for (int i = 0; i < count; i++) {
+			sampleDouble(TIME_SAMPLE, i, END_LABELS, snapshots[i].getGlobalTime() / 1e9);
+		}
+		if (any(ACCURACY)) {
+			append(ACCURACY_TOTAL);
+			for (int i = 0; i < count; i++) {
+				if ((kinds[i] & ACCURACY) != 0) {
+					sampleLong(ACCURACY_SAMPLE, i, END_LABELS, snapshots[i].getGlobalAccuracy());
+				}
+			}
+		}
+		if (any(POWER)) {
+			append(ENERGY);
+			for (int i = 0; i < count; i++) {
+				if ((kinds[i] & POWER) != 0) {
+					sampleDouble(ENERGY_SAMPLE, i, END_LABELS, snapshots[i].getGlobalEnergy() / 1e6);
+				}
+			}
+		}
+		append(PERF);
+		for (int i = 0; i < count; i++) {
+			final HeartbeatSnapshot s = snapshots[i];
+			sampleDouble(PERF_SAMPLE, i, SCOPE_GLOBAL, s.getGlobalPerf());
+			sampleDouble(PERF_SAMPLE, i, SCOPE_WINDOW, s.getWindowPerf());
+			sampleDouble(PERF_SAMPLE, i, SCOPE_INSTANT, s.getInstantPerf());
+		}
+		if (any(ACCURACY)) {
+			append(ACCURACY_RATE);
+			for (int i = 0; i < count; i++) {
+				if ((kinds[i] & ACCURACY) != 0) {
+					final HeartbeatSnapshot s = snapshots[i];
+					sampleDouble(ACCURACY_RATE_SAMPLE, i, SCOPE_GLOBAL, s.getGlobalAccuracyRate());
+					sampleDouble(ACCURACY_RATE_SAMPLE, i, SCOPE_WINDOW, s.getWindowAccuracyRate());
+					sampleDouble(ACCURACY_RATE_SAMPLE, i, SCOPE_INSTANT, s.getInstantAccuracyRate());
+				}
+			}
+		}
+		if (any(POWER)) {
+			append(POWER_WATTS);
+			for (int i = 0; i < count; i++) {
+				if ((kinds[i] & POWER) != 0) {
+					final HeartbeatSnapshot s = snapshots[i];
+					sampleDouble(POWER_SAMPLE, i, SCOPE_GLOBAL, s.getGlobalPower());
+					sampleDouble(POWER_SAMPLE, i, SCOPE_WINDOW, s.getWindowPower());
+					sampleDouble(POWER_SAMPLE, i, SCOPE_INSTANT, s.getInstantPower());
+				}
+			}
+		}
+		append(EOF);
+		return len;
+	}
+
+	/**
+	 * @return the rendered bytes, valid until the next {@link #render()}
+	 */
+	public byte[] getBuffer() {
+		return buf;
+	}
+
+	/**
+	 * @return the number of heartbeats in the last render
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Render and decode to a string, e.g. for testing.
+	 *
+	 * @return the rendered text
+	 */
+	public String renderToString() {
+		final int n = render();
+		return new String(buf, 0, n, StandardCharsets.UTF_8);
+	}
+
+	private boolean any(final int kind) {
+		for (int i = 0; i < count; i++) {
+			if ((kinds[i] & kind) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void ensure(final int n) {
+		if (len + n > buf.length) {
+			buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+		}
+	}
+
+	private void append(final byte[] b) {
+		ensure(b.length);
+		put(b);
+	}
+
+	/**
+	 * Append without checking capacity.
+	 */
+	private void put(final byte[] b) {
+		System.arraycopy(b, 0, buf, len, b.length);
+		len += b.length;
+	}
+
+	/**
+	 * Write a sample line: the metric name, labels and value. Capacity for
+	 * the whole line is checked once.
+	 */
+	private void sampleLong(final byte[] prefix, final int i, final byte[] suffix, final long v) {
+		startSample(prefix, i, suffix);
+		appendLong(v);
+		newline();
+	}
+
+	private void sampleDouble(final byte[] prefix, final int i, final byte[] suffix, final double v) {
+		startSample(prefix, i, suffix);
+		appendDouble(v);
+		newline();
+	}
+
+	private void newline() {
+		buf[len++] = '\n';
+	}
+
+	private void startSample(final byte[] prefix, final int i, final byte[] suffix) {
+		final byte[] label = labels[i];
+		ensure(prefix.length + label.length + suffix.length + MAX_VALUE_BYTES + 1);
+		put(prefix);
+		put(label);
+		put(suffix);
+	}
+
+	/**
+	 * Escape a label value, using the buffer as scratch space.
+	 */
+	private byte[] label(final String name) {
+		len = 0;
+		appendLabelValue(name);
+		return Arrays.copyOf(buf, len);
+	}
+
+	/**
+	 * Write a label value as escaped UTF-8.
+	 */
+	private void appendLabelValue(final String s) {
+		// at most 3 bytes per char: escapes are 2, and surrogate pairs 4 per 2 chars
+		ensure(s.length() * 3);
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c == '\\' || c == '"') {
+				buf[len++] = '\\';
+				buf[len++] = (byte) c;
+			} else if (c == '\n') {
+				buf[len++] = '\\';
+				buf[len++] = 'n';
+			} else if (c < 0x80) {
+				buf[len++] = (byte) c;
+			} else if (c < 0x800) {
+				buf[len++] = (byte) (0xc0 | c >> 6);
+				buf[len++] = (byte) (0x80 | c & 0x3f);
+			} else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				final int cp = Character.toCodePoint(c, s.charAt(++i));
+				buf[len++] = (byte) (0xf0 | cp >> 18);
+				buf[len++] = (byte) (0x80 | cp >> 12 & 0x3f);
+				buf[len++] = (byte) (0x80 | cp >> 6 & 0x3f);
+				buf[len++] = (byte) (0x80 | cp & 0x3f);
+			} else if (Character.isSurrogate(c)) {
+				buf[len++] = '?';
+			} else {
+				buf[len++] = (byte) (0xe0 | c >> 12);
+				buf[len++] = (byte) (0x80 | c >> 6 & 0x3f);
+				buf[len++] = (byte) (0x80 | c & 0x3f);
+			}
+		}
+	}
+
+	/**
+	 * Write the n lowest digits of a non-negative value, ending before end.
+	 *
+	 * @return the value without the digits written
+	 */
+	private static int digits(final byte[] b, final int end, final int value, final int n) {
+		final int stop = end - n;
+		int v = value;
+		int i = end;
+		// two digits at a time, to halve the chain of dependent divisions
+		for (; i - 2 >= stop; i -= 2) {
+			final int q = div100(v);
+			final int r = (v - q * 100) << 1;
+			b[i - 1] = DIGIT_PAIRS[r + 1];
+			b[i - 2] = DIGIT_PAIRS[r];
+			v = q;
+		}
+		if (i > stop) {
+			final int q = div10(v);
+			b[i - 1] = (byte) ('0' + (v - q * 10));
+			v = q;
+		}
+		return v;
+	}
+
+	/**
+	 * @return v / 10 for a non-negative v, by multiplying with the reciprocal,
+	 *         since not every JIT does so itself
+	 */
+	private static int div10(final int v) {
+		return (int) (v * 0xcccccccdL >>> 35);
+	}
+
+	/**
+	 * @return v / 100 for a non-negative v
+	 */
+	private static int div100(final int v) {
+		return (int) (v * 1374389535L >>> 37);
+	}
+
+	/**
+	 * @return the number of decimal digits in a non-negative value
+	 */
+	private static int countDigits(final long v) {
+		int n = 1;
+		while (n < POW10L.length && v >= POW10L[n]) {
+			n++;
+		}
+		return n;
+	}
+
+	private void appendLong(final long v) {
+		if (v == Long.MIN_VALUE) {
+			append(ascii(Long.toString(v)));
+			return;
+		}
+		final byte[] b = buf;
+		int p = len;
+		long x = v;
+		if (x < 0) {
+			b[p++] = '-';
+			x = -x;
+		}
+		final int n = countDigits(x);
+		int end = p + n;
+		// 9 digits at a time until the rest fits in an int
+		while (x > Integer.MAX_VALUE) {
+			final long q = x / 1000000000L;
+			digits(b, end, (int) (x - q * 1000000000L), 9);
+			end -= 9;
+			x = q;
+		}
+		digits(b, end, (int) x, end - p);
+		len = p + n;
+	}
+
+	/**
+	 * Write a double with up to {@value #DIGITS} significant digits, in plain
+	 * notation unless it is very large or small.
+	 */
+	private void appendDouble(final double v) {
+		if (v != v) {
+			append(NAN);
+			return;
+		}
+		if (v == Double.POSITIVE_INFINITY) {
+			append(POS_INF);
+			return;
+		}
+		if (v == Double.NEGATIVE_INFINITY) {
+			append(NEG_INF);
+			return;
+		}
+		if (v == (long) v && Math.abs(v) < 1e15) {
+			appendLong((long) v);
+			return;
+		}
+		final double a = Math.abs(v);
+		int e = exponent(a);
+		if (e < -MAX_EXP + DIGITS || e > MAX_EXP - DIGITS) {
+			// subnormal or huge values, which no heartbeat metric should have
+			append(ascii(Double.toString(v)));
+			return;
+		}
+		// a ~= d * 10^(e - DIGITS + 1), with d having DIGITS digits
+		// round half up; the product is positive, and Math.round() is slower
+		int d = (int) (a * POW10[MAX_EXP + DIGITS - 1 - e] + 0.5);
+		if (d >= POW10L[DIGITS]) {
+			d = div10(d);
+			e++;
+		}
+		int n = DIGITS;
+		for (int q = div10(d); n > 1 && d == q * 10; q = div10(d)) {
+			d = q;
+			n--;
+		}
+		final byte[] b = buf;
+		int p = len;
+		if (v < 0) {
+			b[p++] = '-';
+		}
+		if (e >= 0 && e < DIGITS) {
+			// ddd.ddd
+			final int whole = e + 1;
+			if (n <= whole) {
+				digits(b, p + whole, d * (int) POW10L[whole - n], whole);
+				p += whole;
+				b[p++] = '.';
+				b[p++] = '0';
+			} else {
+				final int rest = digits(b, p + n + 1, d, n - whole);
+				b[p + whole] = '.';
+				digits(b, p + whole, rest, whole);
+				p += n + 1;
+			}
+		} else if (e < 0 && e >= -6) {
+			// 0.000ddd
+			b[p++] = '0';
+			b[p++] = '.';
+			for (int i = -1; i > e; i--) {
+				b[p++] = '0';
+			}
+			digits(b, p + n, d, n);
+			p += n;
+		} else {
+			// d.ddde+XX
+			final int first = digits(b, p + n + 1, d, n - 1);
+			b[p] = (byte) ('0' + first);
+			b[p + 1] = '.';
+			if (n == 1) {
+				b[p + 2] = '0';
+				p += 3;
+			} else {
+				p += n + 1;
+			}
+			b[p++] = 'e';
+			b[p++] = e < 0 ? (byte) '-' : (byte) '+';
+			final int ae = Math.abs(e);
+			final int en = countDigits(ae);
+			digits(b, p + en, ae, en);
+			p += en;
+		}
+		len = p;
+	}
+
+	/**
+	 * @return floor(log10(a)) for a positive, finite a, or a value out of the
+	 *         table's range
+	 */
+	private static int exponent(final double a) {
+		if (!(a >= POW10[0] && a < POW10[POW10.length - 1])) {
+			return a < POW10[0] ? -MAX_EXP - 1 : MAX_EXP;
+		}
+		// estimate from the binary exponent (1233 / 4096 ~= log10(2)), then
+		// correct by at most one; floating-point floor() is slow on some CPUs
+		int e = Math.getExponent(a) * 1233 >> 12;
+		if (a < POW10[MAX_EXP + e]) {
+			e--;
+		} else if (a >= POW10[MAX_EXP + e + 1]) {
+			e++;
+		}
+		return e;
+	}
+}
@@ -0,0 +1,93 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link OpenMetricsExporter}, over loopback.
+ *
+ * @author Connor Imes
+ */
+public class OpenMetricsExporterTest {
+	private HeartbeatRegistry registry;
+	private OpenMetricsExporter exporter;
+
+	@Before
+	public void setUp() throws IOException {
+		registry = new HeartbeatRegistry(HeartbeatBackend.JAVA, 20, 0);
+		exporter = OpenMetricsExporter.start(registry, 0);
+	}
+
+	@After
+	public void tearDown() {
+		exporter.close();
+		registry.close();
+	}
+
+	private HttpURLConnection connect(final String path, final String method) throws IOException {
+		final URL url = new URL("http", exporter.getAddress().getAddress().getHostAddress(),
+				exporter.getAddress().getPort(), path);
+		final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+		conn.setRequestMethod(method);
+		return conn;
+	}
+
+	private static String read(final HttpURLConnection conn) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final InputStream in = conn.getInputStream();
+		try {
+			final byte[] b = new byte[4096];
+			int n;
+			while ((n = in.read(b)) > 0) {
+				out.write(b, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void test_scrape() throws IOException {
+		assertTrue("loopback", exporter.getAddress().getAddress().isLoopbackAddress());
+		registry.heartbeatPower("decode").heartbeat(0, 5, 0, 1000, 0, 100);
+		for (int i = 0; i < 2; i++) {
+			final HttpURLConnection conn = connect(OpenMetricsExporter.PATH, "GET");
+			assertEquals("status", 200, conn.getResponseCode());
+			assertEquals("Content-Type", OpenMetricsWriter.CONTENT_TYPE, conn.getContentType());
+			final String text = read(conn);
+			assertTrue(text, text.contains("heartbeat_work_total{name=\"decode\"} 5\n"));
+			assertTrue(text, text.endsWith("# EOF\n"));
+			assertEquals("Content-Length", text.length(), conn.getContentLength());
+		}
+	}
+
+	@Test
+	public void test_head() throws IOException {
+		final HttpURLConnection conn = connect(OpenMetricsExporter.PATH, "HEAD");
+		assertEquals("status", 200, conn.getResponseCode());
+		assertEquals("Content-Type", OpenMetricsWriter.CONTENT_TYPE, conn.getContentType());
+	}
+
+	@Test
+	public void test_bad_method() throws IOException {
+		final HttpURLConnection conn = connect(OpenMetricsExporter.PATH, "DELETE");
+		assertEquals("status", 405, conn.getResponseCode());
+	}
+
+	@Test
+	public void test_not_found() throws IOException {
+		final HttpURLConnection conn = connect("/", "GET");
+		assertEquals("status", 404, conn.getResponseCode());
+	}
+}
@@ -0,0 +1,115 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link OpenMetricsWriter}, with the pure-Java backend.
+ *
+ * @author Connor Imes
+ */
+public class OpenMetricsWriterTest {
+	private static HeartbeatRegistry create() {
+		return new HeartbeatRegistry(HeartbeatBackend.JAVA, 20, 0);
+	}
+
+	@Test
+	public void test_render() {
+		final HeartbeatRegistry reg = create();
+		reg.heartbeat("plain").heartbeat(0, 3, 0, 2000000000L);
+		reg.heartbeatAccuracyPower("full").heartbeat(0, 2, 0, 1000000000L, 1, 0, 2500000);
+		final OpenMetricsWriter writer = new OpenMetricsWriter(reg);
+		final String text = writer.renderToString();
+		assertEquals("getCount", 2, writer.getCount());
+		assertTrue("EOF", text.endsWith("# EOF\n"));
+		assertTrue(text, text.contains("# TYPE heartbeat_work counter\n"));
+		assertTrue(text, text.contains("heartbeat_work_total{name=\"plain\"} 3\n"));
+		assertTrue(text, text.contains("heartbeat_time_seconds_total{name=\"plain\"} 2\n"));
+		assertTrue(text, text.contains("heartbeat_perf{name=\"plain\",scope=\"global\"} 1.5\n"));
+		assertTrue(text, text.contains("heartbeat_accuracy_total{name=\"full\"} 1\n"));
+		assertTrue(text, text.contains("heartbeat_energy_joules_total{name=\"full\"} 2.5\n"));
+		assertTrue(text, text.contains("heartbeat_power_watts{name=\"full\",scope=\"instant\"} 2.5\n"));
+		assertTrue(text, text.contains("heartbeat_accuracy_rate{name=\"full\",scope=\"window\"} 1\n"));
+		// only heartbeats that support them have accuracy and power
+		assertFalse(text, text.contains("heartbeat_accuracy_total{name=\"plain\"}"));
+		assertFalse(text, text.contains("heartbeat_power_watts{name=\"plain\""));
+		// families are not interleaved
+		assertEquals("one TYPE per family", text.indexOf("# TYPE heartbeat_perf "),
+				text.lastIndexOf("# TYPE heartbeat_perf "));
+		assertTrue("order", text.indexOf("heartbeat_work_total") < text.indexOf("# TYPE heartbeat_time_seconds"));
+		reg.close();
+	}
+
+	@Test
+	public void test_no_accuracy_or_power() {
+		final HeartbeatRegistry reg = create();
+		reg.heartbeat("a");
+		final String text = new OpenMetricsWriter(reg).renderToString();
+		assertFalse(text, text.contains("heartbeat_accuracy"));
+		assertFalse(text, text.contains("heartbeat_energy"));
+		reg.close();
+		assertEquals("empty", "# TYPE heartbeat_work counter", new OpenMetricsWriter(reg).renderToString()
+				.split("\n")[0]);
+	}
+
+	@Test
+	public void test_escaping() {
+		final HeartbeatRegistry reg = create();
+		reg.heartbeat("a\"b\\c\nd\u00e9\u20ac\ud83d\ude00");
+		final String text = new OpenMetricsWriter(reg).renderToString();
+		assertTrue(text, text.contains("heartbeat_work_total{name=\"a\\\"b\\\\c\\nd\u00e9\u20ac\ud83d\ude00\"} 0\n"));
+		reg.close();
+	}
+
+	@Test
+	public void test_doubles() {
+		final HeartbeatRegistry reg = create();
+		final HeartbeatPower hb = reg.heartbeatPower("p");
+		final OpenMetricsWriter writer = new OpenMetricsWriter(reg);
+		final long[][] cases = {
+				// time, energy
+				{ 3000, 1 }, { 1000000000L, 1 }, { 7, 123456789123L }, { 7, 1 } };
+		final String[] expected = { "0.333333333", "0.000001", "1.76366842e+13", "142.857143" };
+		for (int i = 0; i < cases.length; i++) {
+			hb.heartbeat(i, 1, 0, cases[i][0], 0, cases[i][1]);
+			final String text = writer.renderToString();
+			final String line = "heartbeat_power_watts{name=\"p\",scope=\"instant\"} ";
+			final int start = text.indexOf(line) + line.length();
+			final String value = text.substring(start, text.indexOf('\n', start));
+			assertEquals("case " + i, expected[i], value);
+			assertEquals("case " + i, hb.getInstantPower(), Double.parseDouble(value),
+					Math.abs(hb.getInstantPower()) * 1e-8);
+		}
+		reg.close();
+	}
+
+	@Test
+	public void test_large_values() {
+		final HeartbeatRegistry reg = create();
+		reg.heartbeat("big").heartbeat(0, 8765432101234567890L, 0, 1);
+		reg.heartbeat("neg").heartbeat(0, -12345678901L, 0, 1);
+		final String text = new OpenMetricsWriter(reg).renderToString();
+		assertTrue(text, text.contains("heartbeat_work_total{name=\"big\"} 8765432101234567890\n"));
+		assertTrue(text, text.contains("heartbeat_work_total{name=\"neg\"} -12345678901\n"));
+		assertTrue(text, text.contains("heartbeat_perf{name=\"big\",scope=\"global\"} 8.7654321e+27\n"));
+		reg.close();
+	}
+
+	@Test
+	public void test_reuse() {
+		final HeartbeatRegistry reg = create();
+		final OpenMetricsWriter writer = new OpenMetricsWriter(reg);
+		for (int i = 0; i < 100; i++) {
+			reg.heartbeatPower("hb-" + i).heartbeat(0, 1, 0, 1000, 0, 1000);
+		}
+		final String first = writer.renderToString();
+		final byte[] buf = writer.getBuffer();
+		assertEquals("same output", first, writer.renderToString());
+		assertSame("buffer reused", buf, writer.getBuffer());
+		reg.remove("hb-0");
+		writer.render();
+		assertEquals("getCount", 99, writer.getCount());
+		reg.close();
+	}
+}
@@ -0,0 +1,214 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.IOException;
+
+/**
+ * Common implementation for coalescing heartbeats, which gather heartbeats in
+ * per-thread fields and issue them to an underlying heartbeat as a single
+ * aggregated heartbeat when the {@link CoalescingPolicy} says to flush.
+ *
+ * An aggregated heartbeat sums the work and accuracy of the heartbeats it
+ * replaces, spans from the first start time and energy to the last end time
+ * and energy, and has the last user tag. Time and energy between
+ * heartbeats that do not abut are therefore included.
+ *
+ * Each thread only flushes its own heartbeats. Getters, {@link #snapshot},
+ * logging and {@link #dispose()} flush the calling thread first; call
+ * {@link #flush()} from other threads to make their pending heartbeats
+ * visible. Heartbeats still pending in other threads when the heartbeat is
+ * disposed are dropped.
+ *
+ * @author Connor Imes
+ */
+public abstract class AbstractCoalescingHeartbeat<T extends Heartbeat> {
+
+	/**
+	 * Heartbeats gathered by one thread but not yet issued.
+	 */
+	protected static final class Pending {
+		protected long count;
+		protected long userTag;
+		protected long work;
+		protected long startTime;
+		protected long endTime;
+		protected long accuracy;
+		protected long startEnergy;
+		protected long endEnergy;
+		// reused to read metrics
+		private final HeartbeatSnapshot snapshot = new HeartbeatSnapshot();
+	}
+
+	/**
+	 * The underlying heartbeat, only used while holding its monitor.
+	 */
+	protected final T hb;
+	protected final CoalescingPolicy policy;
+	private volatile boolean disposed;
+
+	private final ThreadLocal<Pending> pending = new ThreadLocal<Pending>() {
+		@Override
+		protected Pending initialValue() {
+			return new Pending();
+		}
+	};
+
+	protected AbstractCoalescingHeartbeat(final T hb, final CoalescingPolicy policy) {
+		if (hb == null || policy == null) {
+			throw new NullPointerException();
+		}
+		this.hb = hb;
+		this.policy = policy;
+	}
+
+	/**
+	 * Issue the pending heartbeats as one heartbeat. Called while holding the
+	 * monitor of {@link #hb}.
+	 *
+	 * @param p
+	 */
+	protected abstract void issue(Pending p);
+
+	/**
+	 * Add a heartbeat to the calling thread's pending heartbeats, and flush
+	 * them if the policy says to.
+	 */
+	protected final void add(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy, final long startEnergy, final long endEnergy) {
+		if (disposed) {
+			throw new IllegalStateException("Heartbeat is disposed");
+		}
+		final Pending p = pending.get();
+		if (p.count == 0) {
+			p.startTime = startTime;
+			p.startEnergy = startEnergy;
+		}
+		p.count++;
+		p.userTag = userTag;
+		p.work += work;
+		p.endTime = endTime;
+		p.accuracy += accuracy;
+		p.endEnergy = endEnergy;
+		if (policy.shouldFlush(p.count, p.work, p.endTime - p.startTime)) {
+			flush(p);
+		}
+	}
+
+	private void flush(final Pending p) {
+		synchronized (hb) {
+			issue(p);
+		}
+		p.count = 0;
+		p.work = 0;
+		p.accuracy = 0;
+	}
+
+	/**
+	 * Issue the calling thread's pending heartbeats now, if any.
+	 */
+	public void flush() {
+		final Pending p = pending.get();
+		if (p.count > 0) {
+			flush(p);
+		}
+	}
+
+	/**
+	 * @return the number of heartbeats the calling thread has not flushed
+	 */
+	public long getPendingCount() {
+		return pending.get().count;
+	}
+
+	/**
+	 * Flush the calling thread, then read all metrics into its reusable
+	 * snapshot.
+	 *
+	 * @return the snapshot
+	 */
+	protected final HeartbeatSnapshot read() {
+		flush();
+		final HeartbeatSnapshot s = pending.get().snapshot;
+		synchronized (hb) {
+			hb.snapshot(s);
+		}
+		return s;
+	}
+
+	public HeartbeatSnapshot snapshot(final HeartbeatSnapshot snapshot) {
+		flush();
+		synchronized (hb) {
+			return hb.snapshot(snapshot);
+		}
+	}
+
+	/**
+	 * Flushes the calling thread, then disposes the underlying heartbeat.
+	 */
+	public void dispose() {
+		if (!disposed) {
+			flush();
+		}
+		disposed = true;
+		synchronized (hb) {
+			hb.dispose();
+		}
+	}
+
+	/**
+	 * Same as {@link #dispose()}, but does nothing if already disposed.
+	 */
+	public void close() {
+		if (!disposed) {
+			dispose();
+		}
+	}
+
+	public void logHeader() throws IOException {
+		synchronized (hb) {
+			hb.logHeader();
+		}
+	}
+
+	public void logWindowBuffer() throws IOException {
+		flush();
+		synchronized (hb) {
+			hb.logWindowBuffer();
+		}
+	}
+
+	public long getWindowSize() {
+		return read().getWindowSize();
+	}
+
+	public long getUserTag() {
+		return read().getUserTag();
+	}
+
+	public long getGlobalTime() {
+		return read().getGlobalTime();
+	}
+
+	public long getWindowTime() {
+		return read().getWindowTime();
+	}
+
+	public long getGlobalWork() {
+		return read().getGlobalWork();
+	}
+
+	public long getWindowWork() {
+		return read().getWindowWork();
+	}
+
+	public double getGlobalPerf() {
+		return read().getGlobalPerf();
+	}
+
+	public double getWindowPerf() {
+		return read().getWindowPerf();
+	}
+
+	public double getInstantPerf() {
+		return read().getInstantPerf();
+	}
+}
@@ -5,8 +5,6 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Common variables and utilities for the default heartbeat JNI abstractions.
@@ -19,19 +17,87 @@ public abstract class AbstractDefaultHeartbeat {
 	 */
 	protected volatile ByteBuffer nativePtr;
 	/**
-	 * R/W lock for pointer to prevent race conditions that could cause crash.
+	 * The address of the underlying heartbeat, for the address-based JNI
+	 * methods on hot paths. Like {@link #nativePtr}, only use it while holding
+	 * the {@link #guard}.
 	 */
-	protected final ReadWriteLock lock;
+	protected final long nativeAddr;
+	/**
+	 * Guards the pointer to prevent race conditions with disposal that could
+	 * cause crash.
+	 */
+	protected final DisposalGuard guard;
 
 	/**
 	 * The output stream to write log data to.
 	 */
 	protected FileOutputStream logStream;
 
-	public AbstractDefaultHeartbeat(final ByteBuffer nativePtr, final FileOutputStream logStream) {
+	/**
+	 * Writes full windows in the background, or null if the native library
+	 * logs them synchronously.
+	 */
+	protected AsyncLog asyncLog;
+
+	/**
+	 * Buffers full windows for writing to a log opened by path, or null.
+	 */
+	protected AbstractHeartbeatLog logSink;
+	private HeartbeatRecordView logSinkView;
+
+	/**
+	 * Publishes metrics to shared memory after heartbeats, or null.
+	 */
+	protected HeartbeatPublisher publisher;
+	/**
+	 * Reused to capture metrics for {@link #publisher}.
+	 */
+	protected final HeartbeatSnapshot publisherSnapshot = new HeartbeatSnapshot();
+
+	/**
+	 * Times scoped heartbeats.
+	 */
+	protected HeartbeatClock clock = HeartbeatClock.SYSTEM;
+	/**
+	 * Measures the energy of scoped heartbeats, or null; only set by power
+	 * heartbeats.
+	 */
+	protected EnergySource energySource;
+	// the scope used by begin(), created on first use
+	private HeartbeatScope scope;
+
+	// heartbeats in the current window, when full windows are logged from Java
+	private int trackedWindowSize;
+	private int windowCount;
+
+	/**
+	 * Frees the native context, explicitly or once this object is unreachable.
+	 */
+	protected final NativeCleaner.Cleanable cleanable;
+
+	public AbstractDefaultHeartbeat(final ByteBuffer nativePtr, final FileOutputStream logStream,
+			final NativeCleaner.Freer freer) {
+		this(nativePtr, 0, logStream, freer);
+	}
+
+	public AbstractDefaultHeartbeat(final ByteBuffer nativePtr, final long nativeAddr,
+			final FileOutputStream logStream, final NativeCleaner.Freer freer) {
 		this.nativePtr = nativePtr;
+		this.nativeAddr = nativeAddr;
 		this.logStream = logStream;
-		this.lock = new ReentrantReadWriteLock(true);
+		this.guard = new DisposalGuard();
+		this.cleanable = NativeCleaner.register(this, nativePtr, freer);
+	}
+
+	public abstract void dispose();
+
+	/**
+	 * Same as {@link #dispose()}, but does nothing if already disposed.
+	 */
+	public void close() {
+		if (!guard.isDisposed()) {
+			dispose();
+		}
 	}
 
 	public FileOutputStream getLogStream() {
@@ -42,6 +108,160 @@ public abstract class AbstractDefaultHeartbeat {
 		this.logStream = logStream;
 	}
 
+	/**
+	 * Count heartbeats so that full windows can be logged from Java. The native
+	 * context must have been created without a log file descriptor.
+	 * 
+	 * @param windowSize
+	 */
+	protected final void trackWindows(final int windowSize) {
+		this.trackedWindowSize = windowSize;
+	}
+
+	/**
+	 * @return true if full windows are logged from Java
+	 */
+	protected final boolean isTrackingWindows() {
+		return trackedWindowSize > 0;
+	}
+
+	/**
+	 * @return the number of heartbeats until the current window is complete
+	 */
+	protected final int remainingInWindow() {
+		return trackedWindowSize - windowCount;
+	}
+
+	/**
+	 * Count heartbeats that were issued without crossing a window boundary.
+	 * 
+	 * @param n
+	 *            number of heartbeats, at most {@link #remainingInWindow()}
+	 * @return true if the last heartbeat completed a window
+	 */
+	protected final boolean windowCompleted(final int n) {
+		windowCount += n;
+		if (windowCount == trackedWindowSize) {
+			windowCount = 0;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Write full windows to an {@link AbstractHeartbeatLog}, read in place from
+	 * the native window buffer.
+	 * 
+	 * @param sink
+	 * @param view
+	 *            a view of this heartbeat's window buffer
+	 * @param hasAccuracy
+	 * @param hasEnergy
+	 * @throws IllegalStateException
+	 *             if the log is already used by another heartbeat
+	 */
+	protected final void enableLogSink(final AbstractHeartbeatLog sink, final HeartbeatRecordView view,
+			final boolean hasAccuracy, final boolean hasEnergy) {
+		sink.bind(hasAccuracy, hasEnergy);
+		logSink = sink;
+		logSinkView = view;
+		trackWindows(view.getWindowSize());
+	}
+
+	/**
+	 * Write the full window to {@link #logSink}, ignoring failures like the
+	 * native library does.
+	 */
+	protected final void logSinkWindow() {
+		try {
+			logSink.writeRecords(logSinkView, logSinkView.getWindowSize());
+		} catch (IOException e) {
+			// native implementation ignores logging failures too
+		}
+	}
+
+	/**
+	 * Write the window buffer up to the current read index to {@link #logSink}.
+	 * 
+	 * @throws IOException
+	 */
+	protected final void logSinkWindowBuffer() throws IOException {
+		logSink.writeRecords(logSinkView, logSinkView.getReadIndex());
+	}
+
+	/**
+	 * Publish metrics to shared memory after heartbeats, or stop publishing if
+	 * null. The publisher is not closed when the heartbeat is disposed.
+	 * 
+	 * @param publisher
+	 */
+	public void setPublisher(final HeartbeatPublisher publisher) {
+		if (publisher != null) {
+			publisher.bind(this instanceof HeartbeatAccuracy, this instanceof HeartbeatPower);
+		}
+		this.publisher = publisher;
+	}
+
+	/**
+	 * Set the clock for the start and end times of scoped heartbeats.
+	 * 
+	 * @param clock
+	 */
+	public void setClock(final HeartbeatClock clock) {
+		if (clock == null) {
+			throw new NullPointerException("clock");
+		}
+		this.clock = clock;
+	}
+
+	public HeartbeatClock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Begin a unit of work with this heartbeat's own {@link HeartbeatScope},
+	 * which is reused by every call. End it with
+	 * {@link HeartbeatScope#end(long, long)}.
+	 * 
+	 * @param userTag
+	 * @return the scope
+	 * @throws IllegalStateException
+	 *             if the scope has already begun, or the heartbeat is disposed
+	 */
+	public HeartbeatScope begin(final long userTag) {
+		if (guard.isDisposed()) {
+			throw new IllegalStateException("Already disposed");
+		}
+		if (scope == null) {
+			scope = new HeartbeatScope(this);
+		}
+		return scope.begin(userTag);
+	}
+
+	/**
+	 * Same as {@link #begin(long)} with user tag 0.
+	 */
+	public HeartbeatScope begin() {
+		return begin(0);
+	}
+
+	/**
+	 * Create another scope, e.g., for each thread that uses this heartbeat, so
+	 * that units of work can overlap.
+	 * 
+	 * @return a scope that has not begun
+	 */
+	public HeartbeatScope newScope() {
+		return new HeartbeatScope(this);
+	}
+
+	/**
+	 * Issue the heartbeat for an ended scope, ignoring values this type does
+	 * not track.
+	 */
+	protected abstract void issueScope(long userTag, long work, long startTime, long endTime, long accuracy,
+			long startEnergy, long endEnergy);
+
 	/**
 	 * Throws an {@link IllegalStateException} if {@link #nativePtr} is null.
 	 */
@@ -51,6 +271,26 @@ public abstract class AbstractDefaultHeartbeat {
 		}
 	}
 
+	/**
+	 * Throws an {@link IndexOutOfBoundsException} if any of the arrays cannot
+	 * supply <code>length</code> records starting at <code>offset</code>.
+	 * 
+	 * @param offset
+	 * @param length
+	 * @param arrays
+	 */
+	protected static void checkBatchBounds(final int offset, final int length, final long[]... arrays) {
+		if (offset < 0 || length < 0) {
+			throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length);
+		}
+		for (final long[] a : arrays) {
+			if (a.length - offset < length) {
+				throw new IndexOutOfBoundsException("offset=" + offset + ", length=" + length
+						+ ", array length=" + a.length);
+			}
+		}
+	}
+
 	/**
 	 * Gets an int file descriptor from a {@link FileOutputStream}. This
 	 * implementation is a hack that uses reflection to access the underlying
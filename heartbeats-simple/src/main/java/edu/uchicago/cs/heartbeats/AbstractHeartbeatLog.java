@@ -0,0 +1,146 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Common state and record encoding for logs that heartbeats write to directly,
+ * instead of through a {@link java.io.FileOutputStream}. See
+ * {@link HeartbeatLogSink} and {@link MappedHeartbeatLog}.
+ *
+ * A log is used by a single heartbeat, created with one of the
+ * <code>createWithLogSink(...)</code> factories. Binary records are
+ * fixed-width, little-endian u64 fields: id, user tag, work, start time and
+ * end time, then accuracy if {@link #FLAG_ACCURACY} is set, then start and end
+ * energy if {@link #FLAG_ENERGY} is set. Rates and power are not stored since
+ * they can be recomputed from these fields.
+ *
+ * @author Connor Imes
+ */
+public abstract class AbstractHeartbeatLog implements Closeable {
+
+	public static final int FLAG_ACCURACY = 0x1;
+	public static final int FLAG_ENERGY = 0x2;
+
+	private boolean bound;
+	/**
+	 * If records include accuracy, set when bound to a heartbeat.
+	 */
+	protected boolean accuracy;
+	/**
+	 * If records include energy, set when bound to a heartbeat.
+	 */
+	protected boolean energy;
+
+	// only subclassed in this package
+	AbstractHeartbeatLog() {
+	}
+
+	/**
+	 * Get the size of binary records.
+	 *
+	 * @param hasAccuracy
+	 * @param hasEnergy
+	 * @return size in bytes
+	 */
+	public static int getBinaryRecordSize(final boolean hasAccuracy, final boolean hasEnergy) {
+		return 40 + (hasAccuracy ? 8 : 0) + (hasEnergy ? 16 : 0);
+	}
+
+	/**
+	 * @return the flags for records written by the bound heartbeat
+	 */
+	protected final int getFlags() {
+		return (accuracy ? FLAG_ACCURACY : 0) | (energy ? FLAG_ENERGY : 0);
+	}
+
+	/**
+	 * Associate with a heartbeat type.
+	 *
+	 * @param hasAccuracy
+	 * @param hasEnergy
+	 * @throws IllegalStateException
+	 *             if already used by a heartbeat
+	 */
+	final synchronized void bind(final boolean hasAccuracy, final boolean hasEnergy) {
+		if (bound) {
+			throw new IllegalStateException("Log is already in use");
+		}
+		bound = true;
+		accuracy = hasAccuracy;
+		energy = hasEnergy;
+		bound();
+	}
+
+	/**
+	 * Called once the record type is known.
+	 */
+	void bound() {
+	}
+
+	/**
+	 * Write the text header line, if the log has one.
+	 *
+	 * @throws IOException
+	 */
+	synchronized void writeHeader() throws IOException {
+	}
+
+	/**
+	 * Write records from a native window buffer.
+	 *
+	 * @param view
+	 * @param count
+	 *            number of records to write, starting at index 0
+	 * @throws IOException
+	 */
+	final synchronized void writeRecords(final HeartbeatRecordView view, final int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			view.moveTo(i);
+			record(view.getId(), view.getUserTag(), view.getWork(), view.getStartTime(), view.getEndTime(),
+					view.getGlobalPerf(), view.getWindowPerf(), view.getInstantPerf(),
+					view.getAccuracy(), view.getGlobalAccuracyRate(), view.getWindowAccuracyRate(),
+					view.getInstantAccuracyRate(),
+					view.getStartEnergy(), view.getEndEnergy(), view.getGlobalPower(), view.getWindowPower(),
+					view.getInstantPower());
+		}
+	}
+
+	/**
+	 * Encode a record. Fields for data the log was not bound with are ignored.
+	 */
+	abstract void record(long id, long userTag, long work, long startTime, long endTime,
+			double globalPerf, double windowPerf, double instantPerf,
+			long acc, double globalAcc, double windowAcc, double instantAcc,
+			long startEnergy, long endEnergy, double globalPow, double windowPow, double instantPow)
+			throws IOException;
+
+	/**
+	 * Put a binary record at the buffer's position, which must have room for
+	 * {@link #getBinaryRecordSize(boolean, boolean)} bytes.
+	 */
+	final void putBinaryRecord(final ByteBuffer buffer, final long id, final long userTag, final long work,
+			final long startTime, final long endTime, final long acc, final long startEnergy,
+			final long endEnergy) {
+		buffer.putLong(id);
+		buffer.putLong(userTag);
+		buffer.putLong(work);
+		buffer.putLong(startTime);
+		buffer.putLong(endTime);
+		if (accuracy) {
+			buffer.putLong(acc);
+		}
+		if (energy) {
+			buffer.putLong(startEnergy);
+			buffer.putLong(endEnergy);
+		}
+	}
+
+	/**
+	 * Write any buffered records.
+	 *
+	 * @throws IOException
+	 */
+	public abstract void flush() throws IOException;
+}
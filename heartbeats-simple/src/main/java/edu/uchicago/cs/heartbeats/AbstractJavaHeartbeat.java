@@ -0,0 +1,465 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Common state and utilities for the pure-Java heartbeat implementations.
+ *
+ * The window buffer is kept as a set of primitive arrays (one per record
+ * field) and updated with the same arithmetic as the native
+ * <code>heartbeats-simple</code> library, so results match the
+ * <code>Default*</code> implementations without crossing JNI.
+ *
+ * Like the native library, instances are not thread-safe; callers must
+ * provide their own synchronization if a heartbeat is shared between threads.
+ *
+ * @author Connor Imes
+ */
+public abstract class AbstractJavaHeartbeat {
+	/**
+	 * Nanoseconds per second, used when converting to rates.
+	 */
+	protected static final double ONE_BILLION = 1000000000.0;
+	/**
+	 * Converts microjoules per nanosecond to watts.
+	 */
+	protected static final double ONE_THOUSAND = 1000.0;
+
+	protected final int windowSize;
+	protected int bufferIndex;
+	protected int readIndex;
+	protected long counter;
+	protected boolean disposed;
+
+	// window buffer
+	protected final long[] ids;
+	protected final long[] userTags;
+	protected final long[] works;
+	protected final long[] startTimes;
+	protected final long[] endTimes;
+	protected final double[] perfGlobal;
+	protected final double[] perfWindow;
+	protected final double[] perfInstant;
+
+	// time and work data
+	protected long timeGlobal;
+	protected long timeWindow;
+	protected long workGlobal;
+	protected long workWindow;
+
+	/**
+	 * The output stream to write log data to.
+	 */
+	protected FileOutputStream logStream;
+
+	/**
+	 * Writes full windows in the background, or null to log synchronously.
+	 */
+	protected AsyncLog asyncLog;
+
+	/**
+	 * Publishes metrics to shared memory after heartbeats, or null.
+	 */
+	protected HeartbeatPublisher publisher;
+	/**
+	 * Reused to capture metrics for {@link #publisher}.
+	 */
+	protected final HeartbeatSnapshot publisherSnapshot = new HeartbeatSnapshot();
+
+	/**
+	 * Buffers full windows for writing to a log opened by path, or null.
+	 */
+	protected AbstractHeartbeatLog logSink;
+
+	public AbstractJavaHeartbeat(final int windowSize, final FileOutputStream logStream) {
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException("Window size must be > 0");
+		}
+		this.windowSize = windowSize;
+		this.logStream = logStream;
+		this.ids = new long[windowSize];
+		this.userTags = new long[windowSize];
+		this.works = new long[windowSize];
+		this.startTimes = new long[windowSize];
+		this.endTimes = new long[windowSize];
+		this.perfGlobal = new double[windowSize];
+		this.perfWindow = new double[windowSize];
+		this.perfInstant = new double[windowSize];
+	}
+
+	public FileOutputStream getLogStream() {
+		return logStream;
+	}
+
+	public void setLogStream(final FileOutputStream logStream) {
+		this.logStream = logStream;
+	}
+
+	/**
+	 * Publish metrics to shared memory after heartbeats, or stop publishing if
+	 * null. The publisher is not closed when the heartbeat is disposed.
+	 *
+	 * @param publisher
+	 */
+	public void setPublisher(final HeartbeatPublisher publisher) {
+		if (publisher != null) {
+			publisher.bind(this instanceof HeartbeatAccuracy, this instanceof HeartbeatPower);
+		}
+		this.publisher = publisher;
+	}
+
+	/**
+	 * Throws an {@link IllegalStateException} if {@link #dispose()} was called.
+	 */
+	protected void enforceNotDisposed() {
+		if (disposed) {
+			throw new IllegalStateException("Already disposed");
+		}
+	}
+
+	/**
+	 * Compute a rate per second, as done natively.
+	 *
+	 * @param value
+	 * @param time
+	 *            in nanoseconds
+	 * @return rate
+	 */
+	protected static double getRate(final long value, final long time) {
+		return time == 0 ? 0.0 : ((double) value) / time * ONE_BILLION;
+	}
+
+	/**
+	 * Compute power in watts from energy in microjoules, as done natively.
+	 *
+	 * @param energy
+	 *            in microjoules
+	 * @param time
+	 *            in nanoseconds
+	 * @return power
+	 */
+	protected static double getPower(final long energy, final long time) {
+		return time == 0 ? 0.0 : ((double) energy) / time * ONE_THOUSAND;
+	}
+
+	/**
+	 * Whether the record at {@link #bufferIndex} holds data from a previous
+	 * window that must be removed from the window totals.
+	 *
+	 * @return true if the window is full
+	 */
+	protected final boolean isWindowFull() {
+		return counter >= windowSize;
+	}
+
+	/**
+	 * Index of the most recently written record.
+	 *
+	 * @return index
+	 */
+	protected final int lastIndex() {
+		return (bufferIndex == 0 ? windowSize : bufferIndex) - 1;
+	}
+
+	/**
+	 * Record the common fields into the slot at {@link #bufferIndex}.
+	 * Subclasses then fill their own fields and call {@link #advance()}.
+	 *
+	 * @param userTag
+	 * @param work
+	 * @param startTime
+	 * @param endTime
+	 * @return the index of the slot that was written
+	 */
+	protected final int record(final long userTag, final long work, final long startTime, final long endTime) {
+		final int i = bufferIndex;
+		final long time = endTime - startTime;
+		if (isWindowFull()) {
+			timeWindow -= endTimes[i] - startTimes[i];
+			workWindow -= works[i];
+		}
+		timeGlobal += time;
+		timeWindow += time;
+		workGlobal += work;
+		workWindow += work;
+		ids[i] = counter;
+		userTags[i] = userTag;
+		works[i] = work;
+		startTimes[i] = startTime;
+		endTimes[i] = endTime;
+		perfGlobal[i] = getRate(workGlobal, timeGlobal);
+		perfWindow[i] = getRate(workWindow, timeWindow);
+		perfInstant[i] = getRate(work, time);
+		return i;
+	}
+
+	/**
+	 * Complete a heartbeat, logging and wrapping the window buffer when full.
+	 */
+	protected final void advance() {
+		counter++;
+		readIndex++;
+		bufferIndex++;
+		if (bufferIndex == windowSize) {
+			if (asyncLog != null) {
+				logAsync();
+			} else if (logSink != null || logStream != null) {
+				try {
+					writeWindowBuffer();
+				} catch (IOException e) {
+					// native implementation ignores logging failures too
+				}
+			}
+			bufferIndex = 0;
+			readIndex = 0;
+		}
+		if (publisher != null && publisher.isDue(1)) {
+			publisher.publish(snapshot(publisherSnapshot));
+		}
+	}
+
+	/**
+	 * Log through an {@link AsyncLogWriter} instead of writing full windows
+	 * synchronously.
+	 *
+	 * @param writer
+	 */
+	protected final void enableAsyncLog(final AsyncLogWriter writer) {
+		final AsyncLog.Window[] windows = new AsyncLog.Window[writer.getCapacity()];
+		for (int i = 0; i < windows.length; i++) {
+			windows[i] = new JavaWindow(newWindowCopy());
+		}
+		asyncLog = new AsyncLog(writer, windows);
+	}
+
+	/**
+	 * Write full windows to an {@link AbstractHeartbeatLog} instead of the log
+	 * stream.
+	 *
+	 * @param sink
+	 * @param hasAccuracy
+	 * @param hasEnergy
+	 * @throws IllegalStateException
+	 *             if the log is already used by another heartbeat
+	 */
+	protected final void enableLogSink(final AbstractHeartbeatLog sink, final boolean hasAccuracy,
+			final boolean hasEnergy) {
+		sink.bind(hasAccuracy, hasEnergy);
+		logSink = sink;
+	}
+
+	/**
+	 * Create an instance of the same type and window size, to copy full windows
+	 * into for asynchronous logging.
+	 *
+	 * @return a new instance
+	 */
+	protected abstract AbstractJavaHeartbeat newWindowCopy();
+
+	/**
+	 * Copy the window buffer records from another instance of the same type.
+	 * Subclasses must copy their own fields too.
+	 *
+	 * @param src
+	 */
+	protected void copyWindowFrom(final AbstractJavaHeartbeat src) {
+		System.arraycopy(src.ids, 0, ids, 0, windowSize);
+		System.arraycopy(src.userTags, 0, userTags, 0, windowSize);
+		System.arraycopy(src.works, 0, works, 0, windowSize);
+		System.arraycopy(src.startTimes, 0, startTimes, 0, windowSize);
+		System.arraycopy(src.endTimes, 0, endTimes, 0, windowSize);
+		System.arraycopy(src.perfGlobal, 0, perfGlobal, 0, windowSize);
+		System.arraycopy(src.perfWindow, 0, perfWindow, 0, windowSize);
+		System.arraycopy(src.perfInstant, 0, perfInstant, 0, windowSize);
+		readIndex = src.readIndex;
+	}
+
+	private void logAsync() {
+		final JavaWindow w = (JavaWindow) asyncLog.acquire();
+		if (w != null) {
+			w.copy.copyWindowFrom(this);
+			asyncLog.submit(w, logStream);
+		}
+	}
+
+	/**
+	 * A spare window buffer backed by an instance of the heartbeat's type.
+	 */
+	private static final class JavaWindow extends AsyncLog.Window {
+		private final AbstractJavaHeartbeat copy;
+
+		private JavaWindow(final AbstractJavaHeartbeat copy) {
+			this.copy = copy;
+		}
+
+		@Override
+		protected void write() throws IOException {
+			if (logStream != null) {
+				copy.logStream = logStream;
+				copy.writeWindowBuffer();
+			}
+		}
+	}
+
+	/**
+	 * Get the header line used when logging.
+	 *
+	 * @return header text, including trailing newline
+	 */
+	protected abstract String getLogHeader();
+
+	/**
+	 * Append the log line for a record.
+	 *
+	 * @param sb
+	 * @param i
+	 *            the record index
+	 */
+	protected abstract void appendLogRecord(StringBuilder sb, int i);
+
+	/**
+	 * Write a record to {@link #logSink}.
+	 *
+	 * @param i
+	 *            the record index
+	 * @throws IOException
+	 */
+	protected abstract void writeLogSinkRecord(int i) throws IOException;
+
+	protected static String format(final String format, final Object... args) {
+		return String.format(Locale.US, format, args);
+	}
+
+	/**
+	 * Write the window buffer up to the current read index to the log sink, or
+	 * else to the log stream.
+	 *
+	 * @throws IOException
+	 */
+	protected void writeWindowBuffer() throws IOException {
+		if (logSink != null) {
+			for (int i = 0; i < readIndex; i++) {
+				writeLogSinkRecord(i);
+			}
+			return;
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < readIndex; i++) {
+			appendLogRecord(sb, i);
+		}
+		logStream.write(sb.toString().getBytes("US-ASCII"));
+	}
+
+	public void dispose() {
+		enforceNotDisposed();
+		disposed = true;
+		if (asyncLog != null) {
+			asyncLog.free();
+		}
+	}
+
+	/**
+	 * Same as {@link #dispose()}, but does nothing if already disposed.
+	 */
+	public void close() {
+		if (!disposed) {
+			dispose();
+		}
+	}
+
+	/**
+	 * Waits for windows being logged asynchronously first, so that log output
+	 * stays in order.
+	 */
+	public void logHeader() throws IOException {
+		enforceNotDisposed();
+		if (asyncLog != null) {
+			asyncLog.flush();
+		}
+		if (logSink != null) {
+			logSink.writeHeader();
+		} else if (logStream != null) {
+			logStream.write(getLogHeader().getBytes("US-ASCII"));
+		}
+	}
+
+	/**
+	 * Waits for windows being logged asynchronously first, so that log output
+	 * stays in order.
+	 */
+	public void logWindowBuffer() throws IOException {
+		enforceNotDisposed();
+		if (asyncLog != null) {
+			asyncLog.flush();
+		}
+		if (logSink != null || logStream != null) {
+			writeWindowBuffer();
+		}
+	}
+
+	public long getWindowSize() {
+		enforceNotDisposed();
+		return windowSize;
+	}
+
+	public long getUserTag() {
+		enforceNotDisposed();
+		return userTags[lastIndex()];
+	}
+
+	public long getGlobalTime() {
+		enforceNotDisposed();
+		return timeGlobal;
+	}
+
+	public long getWindowTime() {
+		enforceNotDisposed();
+		return timeWindow;
+	}
+
+	public long getGlobalWork() {
+		enforceNotDisposed();
+		return workGlobal;
+	}
+
+	public long getWindowWork() {
+		enforceNotDisposed();
+		return workWindow;
+	}
+
+	public double getGlobalPerf() {
+		enforceNotDisposed();
+		return getRate(workGlobal, timeGlobal);
+	}
+
+	public double getWindowPerf() {
+		enforceNotDisposed();
+		return getRate(workWindow, timeWindow);
+	}
+
+	public double getInstantPerf() {
+		enforceNotDisposed();
+		return perfInstant[lastIndex()];
+	}
+
+	public HeartbeatSnapshot snapshot(final HeartbeatSnapshot snapshot) {
+		enforceNotDisposed();
+		final long[] l = snapshot.longs;
+		final double[] d = snapshot.doubles;
+		Arrays.fill(l, 0);
+		Arrays.fill(d, 0.0);
+		l[HeartbeatSnapshot.WINDOW_SIZE] = windowSize;
+		l[HeartbeatSnapshot.USER_TAG] = userTags[lastIndex()];
+		l[HeartbeatSnapshot.GLOBAL_TIME] = timeGlobal;
+		l[HeartbeatSnapshot.WINDOW_TIME] = timeWindow;
+		l[HeartbeatSnapshot.GLOBAL_WORK] = workGlobal;
+		l[HeartbeatSnapshot.WINDOW_WORK] = workWindow;
+		d[HeartbeatSnapshot.GLOBAL_PERF] = getRate(workGlobal, timeGlobal);
+		d[HeartbeatSnapshot.WINDOW_PERF] = getRate(workWindow, timeWindow);
+		d[HeartbeatSnapshot.INSTANT_PERF] = perfInstant[lastIndex()];
+		return snapshot;
+	}
+}
@@ -0,0 +1,150 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.IOException;
+
+/**
+ * Common implementation for sampling heartbeats, which count every heartbeat
+ * but only issue those chosen by a {@link SamplingPolicy} to an underlying
+ * heartbeat.
+ *
+ * Each sample is scaled by the number of heartbeats it stands for: its work
+ * and accuracy are multiplied, and its start time and start energy are moved
+ * back so that its time and energy are multiplied too. Totals, and therefore
+ * rates, are then unbiased estimates of those of all heartbeats, while
+ * instant values are those of the sampled heartbeat. The window holds the
+ * last window size samples, and the user tag is that of the last sample.
+ *
+ * Like the heartbeats they wrap, these are not thread-safe; to sample from
+ * many threads, use them as the stripes of a striped heartbeat.
+ *
+ * @author Connor Imes
+ */
+public abstract class AbstractSamplingHeartbeat<T extends Heartbeat> {
+	protected final T hb;
+	protected final SamplingPolicy policy;
+	private final boolean adaptive;
+	private long count;
+	private long sampled;
+
+	protected AbstractSamplingHeartbeat(final T hb, final SamplingPolicy policy) {
+		if (hb == null || policy == null) {
+			throw new NullPointerException();
+		}
+		this.hb = hb;
+		this.policy = policy;
+		this.adaptive = policy.isAdaptive();
+	}
+
+	/**
+	 * Issue a sample with scaled values.
+	 */
+	protected abstract void issue(long userTag, long work, long startTime, long endTime, long accuracy,
+			long startEnergy, long endEnergy);
+
+	/**
+	 * Count a heartbeat and issue it if the policy samples it.
+	 */
+	protected final void add(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy, final long startEnergy, final long endEnergy) {
+		count++;
+		final double weight = policy.next();
+		if (weight == 0) {
+			return;
+		}
+		sampled++;
+		final long start = adaptive ? System.nanoTime() : 0;
+		if (weight == 1) {
+			issue(userTag, work, startTime, endTime, accuracy, startEnergy, endEnergy);
+		} else {
+			issue(userTag, scale(work, weight), endTime - scale(endTime - startTime, weight), endTime,
+					scale(accuracy, weight), endEnergy - scale(endEnergy - startEnergy, weight), endEnergy);
+		}
+		if (adaptive) {
+			policy.sampled(System.nanoTime() - start);
+		}
+	}
+
+	private static long scale(final long value, final double weight) {
+		return Math.round(value * weight);
+	}
+
+	/**
+	 * @return the number of heartbeats, sampled or not
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the number of heartbeats issued to the underlying heartbeat
+	 */
+	public long getSampledCount() {
+		return sampled;
+	}
+
+	/**
+	 * @return the fraction of heartbeats sampled so far, or 0 if there are none
+	 */
+	public double getSamplingRate() {
+		return count == 0 ? 0.0 : (double) sampled / count;
+	}
+
+	public HeartbeatSnapshot snapshot(final HeartbeatSnapshot snapshot) {
+		return hb.snapshot(snapshot);
+	}
+
+	public void dispose() {
+		hb.dispose();
+	}
+
+	/**
+	 * Same as {@link #dispose()}, but does nothing if already disposed.
+	 */
+	public void close() {
+		hb.close();
+	}
+
+	public void logHeader() throws IOException {
+		hb.logHeader();
+	}
+
+	public void logWindowBuffer() throws IOException {
+		hb.logWindowBuffer();
+	}
+
+	public long getWindowSize() {
+		return hb.getWindowSize();
+	}
+
+	public long getUserTag() {
+		return hb.getUserTag();
+	}
+
+	public long getGlobalTime() {
+		return hb.getGlobalTime();
+	}
+
+	public long getWindowTime() {
+		return hb.getWindowTime();
+	}
+
+	public long getGlobalWork() {
+		return hb.getGlobalWork();
+	}
+
+	public long getWindowWork() {
+		return hb.getWindowWork();
+	}
+
+	public double getGlobalPerf() {
+		return hb.getGlobalPerf();
+	}
+
+	public double getWindowPerf() {
+		return hb.getWindowPerf();
+	}
+
+	public double getInstantPerf() {
+		return hb.getInstantPerf();
+	}
+}
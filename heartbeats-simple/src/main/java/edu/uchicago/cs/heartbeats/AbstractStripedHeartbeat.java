@@ -0,0 +1,269 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Common implementation for striped heartbeats, which spread heartbeats from
+ * many threads over several underlying heartbeats ("stripes") and merge their
+ * metrics on read, much like a LongAdder.
+ *
+ * Each thread is mapped to a stripe by its ID and holds that stripe's monitor
+ * only while issuing a heartbeat, so threads on different stripes do not
+ * contend and no stripe is ever used by two threads at once.
+ *
+ * Global values merge exactly: totals are summed over stripes and rates are
+ * computed from the sums. Window values cover the last window of every
+ * stripe, and instant values and the user tag come from the stripe with the
+ * most recent end time.
+ *
+ * @author Connor Imes
+ */
+public abstract class AbstractStripedHeartbeat<T extends Heartbeat> {
+
+	/**
+	 * A heartbeat and the end time of its most recent heartbeat, padded to
+	 * reduce false sharing between stripes.
+	 */
+	protected static final class Stripe<T> {
+		protected long p0, p1, p2, p3, p4, p5, p6;
+		protected final T hb;
+		protected long lastEndTime = Long.MIN_VALUE;
+		protected long q0, q1, q2, q3, q4, q5, q6;
+
+		protected Stripe(final T hb) {
+			this.hb = hb;
+		}
+	}
+
+	protected final Stripe<T>[] stripes;
+	private volatile boolean disposed;
+
+	/**
+	 * Per-thread snapshots used when merging: [0] is the merged result for
+	 * getters, [1] is scratch space for reading each stripe.
+	 */
+	private final ThreadLocal<HeartbeatSnapshot[]> scratch = new ThreadLocal<HeartbeatSnapshot[]>() {
+		@Override
+		protected HeartbeatSnapshot[] initialValue() {
+			return new HeartbeatSnapshot[] { new HeartbeatSnapshot(), new HeartbeatSnapshot() };
+		}
+	};
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected AbstractStripedHeartbeat(final T[] heartbeats) {
+		if (heartbeats.length == 0) {
+			throw new IllegalArgumentException("At least one stripe is required");
+		}
+		this.stripes = new Stripe[heartbeats.length];
+		for (int i = 0; i < heartbeats.length; i++) {
+			if (heartbeats[i] == null) {
+				throw new NullPointerException("Null stripe");
+			}
+			stripes[i] = new Stripe<T>(heartbeats[i]);
+		}
+	}
+
+	/**
+	 * Get the number of stripes used by default: the number of available
+	 * processors rounded up to a power of two.
+	 *
+	 * @return stripe count
+	 */
+	public static int getDefaultStripeCount() {
+		int n = 1;
+		while (n < Runtime.getRuntime().availableProcessors()) {
+			n <<= 1;
+		}
+		return n;
+	}
+
+	/**
+	 * Dispose any non-null heartbeats, e.g. after failing to create them all.
+	 * All are disposed even if some fail; the first failure is then rethrown.
+	 *
+	 * @param heartbeats
+	 */
+	protected static void disposeAll(final Heartbeat[] heartbeats) {
+		RuntimeException failure = null;
+		for (final Heartbeat hb : heartbeats) {
+			if (hb != null) {
+				try {
+					hb.dispose();
+				} catch (RuntimeException e) {
+					failure = addFailure(failure, e);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private static RuntimeException addFailure(final RuntimeException failure, final RuntimeException e) {
+		if (failure == null) {
+			return e;
+		}
+		failure.addSuppressed(e);
+		return failure;
+	}
+
+	/**
+	 * Get the stripe for the current thread.
+	 *
+	 * @return stripe
+	 */
+	protected final Stripe<T> stripe() {
+		return stripes[(int) (Thread.currentThread().getId() % stripes.length)];
+	}
+
+	/**
+	 * Merge all stripes into a snapshot.
+	 *
+	 * @param result
+	 * @return result
+	 */
+	protected final HeartbeatSnapshot merge(final HeartbeatSnapshot result) {
+		final HeartbeatSnapshot tmp = scratch.get()[1];
+		final long[] l = result.longs;
+		final double[] d = result.doubles;
+		Arrays.fill(l, 0);
+		Arrays.fill(d, 0.0);
+		long latest = Long.MIN_VALUE;
+		for (final Stripe<T> s : stripes) {
+			final long end;
+			synchronized (s) {
+				s.hb.snapshot(tmp);
+				end = s.lastEndTime;
+			}
+			for (int i = 0; i < HeartbeatSnapshot.NUM_LONGS; i++) {
+				if (i != HeartbeatSnapshot.USER_TAG) {
+					l[i] += tmp.longs[i];
+				}
+			}
+			if (end > latest) {
+				latest = end;
+				l[HeartbeatSnapshot.USER_TAG] = tmp.longs[HeartbeatSnapshot.USER_TAG];
+				d[HeartbeatSnapshot.INSTANT_PERF] = tmp.doubles[HeartbeatSnapshot.INSTANT_PERF];
+				d[HeartbeatSnapshot.INSTANT_ACCURACY_RATE] = tmp.doubles[HeartbeatSnapshot.INSTANT_ACCURACY_RATE];
+				d[HeartbeatSnapshot.INSTANT_POWER] = tmp.doubles[HeartbeatSnapshot.INSTANT_POWER];
+			}
+		}
+		final long globalTime = l[HeartbeatSnapshot.GLOBAL_TIME];
+		final long windowTime = l[HeartbeatSnapshot.WINDOW_TIME];
+		d[HeartbeatSnapshot.GLOBAL_PERF] = AbstractJavaHeartbeat.getRate(l[HeartbeatSnapshot.GLOBAL_WORK], globalTime);
+		d[HeartbeatSnapshot.WINDOW_PERF] = AbstractJavaHeartbeat.getRate(l[HeartbeatSnapshot.WINDOW_WORK], windowTime);
+		d[HeartbeatSnapshot.GLOBAL_ACCURACY_RATE] = AbstractJavaHeartbeat.getRate(
+				l[HeartbeatSnapshot.GLOBAL_ACCURACY], globalTime);
+		d[HeartbeatSnapshot.WINDOW_ACCURACY_RATE] = AbstractJavaHeartbeat.getRate(
+				l[HeartbeatSnapshot.WINDOW_ACCURACY], windowTime);
+		d[HeartbeatSnapshot.GLOBAL_POWER] = AbstractJavaHeartbeat.getPower(l[HeartbeatSnapshot.GLOBAL_ENERGY],
+				globalTime);
+		d[HeartbeatSnapshot.WINDOW_POWER] = AbstractJavaHeartbeat.getPower(l[HeartbeatSnapshot.WINDOW_ENERGY],
+				windowTime);
+		return result;
+	}
+
+	/**
+	 * Merge all stripes into this thread's reusable snapshot.
+	 *
+	 * @return the merged snapshot
+	 */
+	protected final HeartbeatSnapshot merged() {
+		return merge(scratch.get()[0]);
+	}
+
+	public HeartbeatSnapshot snapshot(final HeartbeatSnapshot snapshot) {
+		return merge(snapshot);
+	}
+
+	/**
+	 * Dispose every stripe. If any fail, the rest are still disposed, and the
+	 * first failure is rethrown with the others suppressed.
+	 */
+	public void dispose() {
+		disposed = true;
+		RuntimeException failure = null;
+		for (final Stripe<T> s : stripes) {
+			try {
+				synchronized (s) {
+					s.hb.dispose();
+				}
+			} catch (RuntimeException e) {
+				failure = addFailure(failure, e);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * Same as {@link #dispose()}, but does nothing if already disposed.
+	 */
+	public void close() {
+		if (!disposed) {
+			dispose();
+		}
+	}
+
+	/**
+	 * Writes the header using the first stripe's log.
+	 */
+	public void logHeader() throws IOException {
+		final Stripe<T> s = stripes[0];
+		synchronized (s) {
+			s.hb.logHeader();
+		}
+	}
+
+	/**
+	 * Logs each stripe's window buffer to its own log.
+	 */
+	public void logWindowBuffer() throws IOException {
+		for (final Stripe<T> s : stripes) {
+			synchronized (s) {
+				s.hb.logWindowBuffer();
+			}
+		}
+	}
+
+	/**
+	 * Returns the combined window size of all stripes.
+	 */
+	public long getWindowSize() {
+		return merged().getWindowSize();
+	}
+
+	public long getUserTag() {
+		return merged().getUserTag();
+	}
+
+	public long getGlobalTime() {
+		return merged().getGlobalTime();
+	}
+
+	public long getWindowTime() {
+		return merged().getWindowTime();
+	}
+
+	public long getGlobalWork() {
+		return merged().getGlobalWork();
+	}
+
+	public long getWindowWork() {
+		return merged().getWindowWork();
+	}
+
+	public double getGlobalPerf() {
+		return merged().getGlobalPerf();
+	}
+
+	public double getWindowPerf() {
+		return merged().getWindowPerf();
+	}
+
+	public double getInstantPerf() {
+		return merged().getInstantPerf();
+	}
+}
@@ -0,0 +1,142 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A heartbeat's state for logging through an {@link AsyncLogWriter}: its spare
+ * window buffers.
+ *
+ * Like heartbeats themselves, {@link #acquire()} and
+ * {@link #submit(Window, FileOutputStream)} must not be called concurrently.
+ *
+ * @author Connor Imes
+ */
+final class AsyncLog {
+
+	/**
+	 * A spare buffer holding a copy of a full window until it is written.
+	 */
+	abstract static class Window {
+		private AsyncLog owner;
+		/**
+		 * The stream to write to, set when the window is submitted.
+		 */
+		protected FileOutputStream logStream;
+
+		/**
+		 * Write the copied window to {@link #logStream}.
+		 *
+		 * @throws IOException
+		 */
+		protected abstract void write() throws IOException;
+
+		/**
+		 * Free any resources held by the buffer.
+		 */
+		protected void free() {
+		}
+
+		final void release() {
+			owner.release(this);
+		}
+	}
+
+	private final AsyncLogWriter writer;
+	private final BlockingQueue<Window> free;
+	private final Window[] windows;
+	private int pending;
+
+	AsyncLog(final AsyncLogWriter writer, final Window[] windows) {
+		this.writer = writer;
+		this.windows = windows;
+		this.free = new ArrayBlockingQueue<Window>(windows.length);
+		for (final Window w : windows) {
+			w.owner = this;
+			free.add(w);
+		}
+	}
+
+	/**
+	 * Get a free spare buffer, applying the writer's policy if there is none.
+	 *
+	 * @return a window to copy into, or null if the window is to be dropped
+	 */
+	Window acquire() {
+		Window w = free.poll();
+		if (w == null) {
+			switch (writer.getPolicy()) {
+			case BLOCK:
+				boolean interrupted = false;
+				while (w == null) {
+					try {
+						w = free.take();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+				break;
+			case COUNT_AND_DROP:
+				writer.countDropped();
+				break;
+			default:
+				break;
+			}
+		}
+		return w;
+	}
+
+	/**
+	 * Hand a filled window to the writer.
+	 *
+	 * @param w
+	 * @param logStream
+	 */
+	void submit(final Window w, final FileOutputStream logStream) {
+		w.logStream = logStream;
+		synchronized (this) {
+			pending++;
+		}
+		writer.submit(w);
+	}
+
+	private void release(final Window w) {
+		free.add(w);
+		synchronized (this) {
+			pending--;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Wait until all submitted windows have been written.
+	 */
+	synchronized void flush() {
+		boolean interrupted = false;
+		while (pending > 0) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Wait for submitted windows to be written, then free all spare buffers.
+	 */
+	void free() {
+		flush();
+		for (final Window w : windows) {
+			w.free();
+		}
+	}
+}
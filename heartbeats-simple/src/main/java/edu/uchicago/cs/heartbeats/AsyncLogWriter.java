@@ -0,0 +1,176 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes heartbeat logs on a background thread, so that heartbeats do not
+ * format or write log data when a window buffer fills.
+ *
+ * Heartbeats created with a writer copy each full window buffer into one of
+ * {@link #getCapacity()} spare buffers and hand it to the writer thread. If
+ * all spare buffers are still waiting to be written, the writer's
+ * {@link Policy} decides what the heartbeat does. A writer may be shared by
+ * many heartbeats; each allocates its own spare buffers.
+ *
+ * Dispose heartbeats before calling {@link #close()}. Windows completed after
+ * the writer is closed are dropped.
+ *
+ * @author Connor Imes
+ */
+public final class AsyncLogWriter {
+
+	/**
+	 * What a heartbeat does when it completes a window but all of its spare
+	 * buffers are still waiting to be written.
+	 */
+	public enum Policy {
+		/**
+		 * Wait for the writer to free a buffer.
+		 */
+		BLOCK,
+		/**
+		 * Drop the window without logging it.
+		 */
+		DROP,
+		/**
+		 * Drop the window and count it in
+		 * {@link AsyncLogWriter#getDroppedWindows()}.
+		 */
+		COUNT_AND_DROP
+	}
+
+	/**
+	 * Signals the writer thread to exit.
+	 */
+	private static final AsyncLog.Window CLOSE = new AsyncLog.Window() {
+		@Override
+		protected void write() {
+		}
+	};
+
+	private final int capacity;
+	private final Policy policy;
+	private final BlockingQueue<AsyncLog.Window> queue = new LinkedBlockingQueue<AsyncLog.Window>();
+	private final AtomicLong dropped = new AtomicLong();
+	private final Thread thread;
+	/**
+	 * Guards {@link #closed}, so that no window is queued after {@link #CLOSE}.
+	 */
+	private final Object lock = new Object();
+	private boolean closed;
+
+	private AsyncLogWriter(final int capacity, final Policy policy) {
+		this.capacity = capacity;
+		this.policy = policy;
+		this.thread = new Thread("heartbeat-log-writer") {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		};
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Create an {@link AsyncLogWriter} and start its thread.
+	 *
+	 * @param capacity
+	 *            number of spare window buffers per heartbeat, must be positive
+	 * @param policy
+	 *            what to do when a heartbeat has no free spare buffer
+	 * @throws IllegalArgumentException
+	 *             if capacity is not positive
+	 */
+	public static AsyncLogWriter create(final int capacity, final Policy policy) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be > 0");
+		}
+		if (policy == null) {
+			throw new NullPointerException("policy");
+		}
+		final AsyncLogWriter writer = new AsyncLogWriter(capacity, policy);
+		writer.thread.start();
+		return writer;
+	}
+
+	/**
+	 * @return the number of spare window buffers per heartbeat
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the policy used when a heartbeat has no free spare buffer
+	 */
+	public Policy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Get the number of windows dropped with {@link Policy#COUNT_AND_DROP},
+	 * over all heartbeats using this writer.
+	 *
+	 * @return dropped windows
+	 */
+	public long getDroppedWindows() {
+		return dropped.get();
+	}
+
+	/**
+	 * Write all windows already submitted, then stop the writer thread.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for the thread to stop
+	 */
+	public void close() throws InterruptedException {
+		synchronized (lock) {
+			if (!closed) {
+				closed = true;
+				queue.add(CLOSE);
+			}
+		}
+		thread.join();
+	}
+
+	void countDropped() {
+		dropped.incrementAndGet();
+	}
+
+	void submit(final AsyncLog.Window w) {
+		synchronized (lock) {
+			if (!closed) {
+				queue.add(w);
+				return;
+			}
+		}
+		w.release();
+	}
+
+	private void writeLoop() {
+		while (true) {
+			final AsyncLog.Window w;
+			try {
+				w = queue.take();
+			} catch (InterruptedException e) {
+				// only close() stops the writer
+				continue;
+			}
+			if (w == CLOSE) {
+				return;
+			}
+			try {
+				w.write();
+			} catch (IOException e) {
+				// native implementation ignores logging failures too
+			} catch (RuntimeException e) {
+				// don't let one heartbeat stop logging for the others
+			} finally {
+				w.release();
+			}
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Exposes a heartbeat over JMX, serving every attribute from one cached
+ * {@link HeartbeatSnapshot}.
+ *
+ * An attribute read only reads the heartbeat, with a single snapshot, if the
+ * cached one is older than the maximum staleness, so a monitoring client that
+ * reads all attributes costs one snapshot per staleness period, no matter how
+ * many attributes or clients there are. The cache may also be refreshed
+ * periodically in the background with
+ * {@link #schedule(ScheduledExecutorService, long, TimeUnit)}, in which case
+ * attribute reads need not touch the heartbeat at all.
+ *
+ * The bean implements {@link HeartbeatAccuracyPowerMXBean}, but
+ * {@link #register(MBeanServer, String)} only exposes the attributes of the
+ * heartbeat's type.
+ *
+ * @author Connor Imes
+ */
+public final class CachedHeartbeatMXBean implements HeartbeatAccuracyPowerMXBean {
+	public static final String DOMAIN = "edu.uchicago.cs.heartbeats";
+	public static final long DEFAULT_MAX_STALENESS = 1000000000;
+
+	private final Heartbeat hb;
+	private final long maxStaleness;
+	private final HeartbeatClock clock;
+	// guarded by this
+	private final HeartbeatSnapshot snapshot = new HeartbeatSnapshot();
+	private long snapshotTime;
+	private boolean valid;
+
+	/**
+	 * Cache for {@link #DEFAULT_MAX_STALENESS} nanoseconds.
+	 *
+	 * @param hb
+	 */
+	public CachedHeartbeatMXBean(final Heartbeat hb) {
+		this(hb, DEFAULT_MAX_STALENESS);
+	}
+
+	/**
+	 * @param hb
+	 * @param maxStaleness
+	 *            nanoseconds a snapshot is served before it is replaced; 0
+	 *            reads the heartbeat for every attribute
+	 * @throws IllegalArgumentException
+	 *             if maxStaleness is negative
+	 */
+	public CachedHeartbeatMXBean(final Heartbeat hb, final long maxStaleness) {
+		this(hb, maxStaleness, HeartbeatClock.SYSTEM);
+	}
+
+	CachedHeartbeatMXBean(final Heartbeat hb, final long maxStaleness, final HeartbeatClock clock) {
+		if (hb == null || clock == null) {
+			throw new NullPointerException();
+		}
+		if (maxStaleness < 0) {
+			throw new IllegalArgumentException("Max staleness must be >= 0");
+		}
+		this.hb = hb;
+		this.maxStaleness = maxStaleness;
+		this.clock = clock;
+	}
+
+	/**
+	 * @param hb
+	 * @return the management interface for the heartbeat's type
+	 */
+	static Class<? extends HeartbeatMXBean> getInterface(final Heartbeat hb) {
+		if (hb instanceof HeartbeatAccuracyPower) {
+			return HeartbeatAccuracyPowerMXBean.class;
+		}
+		if (hb instanceof HeartbeatPower) {
+			return HeartbeatPowerMXBean.class;
+		}
+		if (hb instanceof HeartbeatAccuracy) {
+			return HeartbeatAccuracyMXBean.class;
+		}
+		return HeartbeatMXBean.class;
+	}
+
+	/**
+	 * Get the name a heartbeat is registered under: the {@link #DOMAIN}, the
+	 * heartbeat type, and the quoted name, e.g.
+	 * <code>edu.uchicago.cs.heartbeats:type=HeartbeatPower,name="decode"</code>.
+	 *
+	 * @param name
+	 * @param hb
+	 * @return the object name
+	 * @throws JMException
+	 *             if the name is invalid
+	 */
+	public static ObjectName getObjectName(final String name, final Heartbeat hb) throws JMException {
+		final String type = getInterface(hb).getSimpleName().replace("MXBean", "");
+		return new ObjectName(DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+	}
+
+	/**
+	 * Register with an MBean server, exposing only the attributes of the
+	 * heartbeat's type.
+	 *
+	 * @param server
+	 *            e.g. the platform MBean server
+	 * @param name
+	 *            see {@link #getObjectName(String, Heartbeat)}
+	 * @return the registered name
+	 * @throws JMException
+	 *             if the name is invalid or taken
+	 */
+	public ObjectName register(final MBeanServer server, final String name) throws JMException {
+		@SuppressWarnings("unchecked")
+		final Class<HeartbeatMXBean> iface = (Class<HeartbeatMXBean>) getInterface(hb);
+		final ObjectName on = getObjectName(name, hb);
+		server.registerMBean(new StandardMBean(this, iface, true), on);
+		return on;
+	}
+
+	/**
+	 * Refresh the cache every period, so attribute reads need not touch the
+	 * heartbeat. Cancel the returned future before disposing the heartbeat.
+	 *
+	 * @param executor
+	 * @param period
+	 * @param unit
+	 * @return the scheduled refresh
+	 */
+	public ScheduledFuture<?> schedule(final ScheduledExecutorService executor, final long period,
+			final TimeUnit unit) {
+		return executor.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				refresh();
+			}
+		}, 0, period, unit);
+	}
+
+	public Heartbeat getHeartbeat() {
+		return hb;
+	}
+
+	public synchronized void refresh() {
+		hb.snapshot(snapshot);
+		snapshotTime = clock.getTime();
+		valid = true;
+	}
+
+	/**
+	 * Must hold the lock.
+	 */
+	private HeartbeatSnapshot fresh() {
+		if (!valid || clock.getTime() - snapshotTime >= maxStaleness) {
+			refresh();
+		}
+		return snapshot;
+	}
+
+	public synchronized long getSnapshotAge() {
+		return valid ? clock.getTime() - snapshotTime : 0;
+	}
+
+	public long getMaxStaleness() {
+		return maxStaleness;
+	}
+
+	public synchronized long getWindowSize() {
+		return fresh().getWindowSize();
+	}
+
+	public synchronized long getUserTag() {
+		return fresh().getUserTag();
+	}
+
+	public synchronized long getGlobalTime() {
+		return fresh().getGlobalTime();
+	}
+
+	public synchronized long getWindowTime() {
+		return fresh().getWindowTime();
+	}
+
+	public synchronized long getGlobalWork() {
+		return fresh().getGlobalWork();
+	}
+
+	public synchronized long getWindowWork() {
+		return fresh().getWindowWork();
+	}
+
+	public synchronized double getGlobalPerf() {
+		return fresh().getGlobalPerf();
+	}
+
+	public synchronized double getWindowPerf() {
+		return fresh().getWindowPerf();
+	}
+
+	public synchronized double getInstantPerf() {
+		return fresh().getInstantPerf();
+	}
+
+	public synchronized long getGlobalAccuracy() {
+		return fresh().getGlobalAccuracy();
+	}
+
+	public synchronized long getWindowAccuracy() {
+		return fresh().getWindowAccuracy();
+	}
+
+	public synchronized double getGlobalAccuracyRate() {
+		return fresh().getGlobalAccuracyRate();
+	}
+
+	public synchronized double getWindowAccuracyRate() {
+		return fresh().getWindowAccuracyRate();
+	}
+
+	public synchronized double getInstantAccuracyRate() {
+		return fresh().getInstantAccuracyRate();
+	}
+
+	public synchronized long getGlobalEnergy() {
+		return fresh().getGlobalEnergy();
+	}
+
+	public synchronized long getWindowEnergy() {
+		return fresh().getWindowEnergy();
+	}
+
+	public synchronized double getGlobalPower() {
+		return fresh().getGlobalPower();
+	}
+
+	public synchronized double getWindowPower() {
+		return fresh().getWindowPower();
+	}
+
+	public synchronized double getInstantPower() {
+		return fresh().getInstantPower();
+	}
+}
@@ -0,0 +1,60 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * A {@link Heartbeat} that gathers heartbeats in per-thread fields and issues
+ * them to an underlying heartbeat in aggregate, for loops that are too fast
+ * to issue every heartbeat. See {@link AbstractCoalescingHeartbeat} for how
+ * heartbeats are aggregated and when they become visible.
+ *
+ * Attempting to perform operations after {@link #dispose()} is called will
+ * result in an {@link IllegalStateException}.
+ *
+ * @author Connor Imes
+ */
+public class CoalescingHeartbeat extends AbstractCoalescingHeartbeat<Heartbeat> implements Heartbeat {
+
+	/**
+	 * Don't allow public instantiation. Should use
+	 * {@link #create(int, CoalescingPolicy)} or
+	 * {@link #create(Heartbeat, CoalescingPolicy)}.
+	 * 
+	 * @param hb
+	 * @param policy
+	 */
+	protected CoalescingHeartbeat(final Heartbeat hb, final CoalescingPolicy policy) {
+		super(hb, policy);
+	}
+
+	/**
+	 * Create a {@link CoalescingHeartbeat} over a {@link DefaultHeartbeat}.
+	 * 
+	 * @param windowSize
+	 * @param policy
+	 * @throws IllegalStateException
+	 *             if native resources cannot be allocated
+	 */
+	public static CoalescingHeartbeat create(final int windowSize, final CoalescingPolicy policy) {
+		return new CoalescingHeartbeat(DefaultHeartbeat.create(windowSize), policy);
+	}
+
+	/**
+	 * Create a {@link CoalescingHeartbeat} over an existing heartbeat, which it takes
+	 * ownership of. It must not be used directly afterward.
+	 * 
+	 * @param hb
+	 * @param policy
+	 */
+	public static CoalescingHeartbeat create(final Heartbeat hb, final CoalescingPolicy policy) {
+		return new CoalescingHeartbeat(hb, policy);
+	}
+
+	@Override
+	protected void issue(final Pending p) {
+		hb.heartbeat(p.userTag, p.work, p.startTime, p.endTime);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		add(userTag, work, startTime, endTime, 0, 0, 0);
+	}
+
+}
@@ -0,0 +1,86 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * A {@link HeartbeatAccuracy} that gathers heartbeats in per-thread fields and issues
+ * them to an underlying heartbeat in aggregate, for loops that are too fast
+ * to issue every heartbeat. See {@link AbstractCoalescingHeartbeat} for how
+ * heartbeats are aggregated and when they become visible.
+ *
+ * Attempting to perform operations after {@link #dispose()} is called will
+ * result in an {@link IllegalStateException}.
+ *
+ * @author Connor Imes
+ */
+public class CoalescingHeartbeatAccuracy extends AbstractCoalescingHeartbeat<HeartbeatAccuracy>
+		implements HeartbeatAccuracy {
+
+	/**
+	 * Don't allow public instantiation. Should use
+	 * {@link #create(int, CoalescingPolicy)} or
+	 * {@link #create(HeartbeatAccuracy, CoalescingPolicy)}.
+	 * 
+	 * @param hb
+	 * @param policy
+	 */
+	protected CoalescingHeartbeatAccuracy(final HeartbeatAccuracy hb, final CoalescingPolicy policy) {
+		super(hb, policy);
+	}
+
+	/**
+	 * Create a {@link CoalescingHeartbeatAccuracy} over a {@link DefaultHeartbeatAccuracy}.
+	 * 
+	 * @param windowSize
+	 * @param policy
+	 * @throws IllegalStateException
+	 *             if native resources cannot be allocated
+	 */
+	public static CoalescingHeartbeatAccuracy create(final int windowSize, final CoalescingPolicy policy) {
+		return new CoalescingHeartbeatAccuracy(DefaultHeartbeatAccuracy.create(windowSize), policy);
+	}
+
+	/**
+	 * Create a {@link CoalescingHeartbeatAccuracy} over an existing heartbeat, which it takes
+	 * ownership of. It must not be used directly afterward.
+	 * 
+	 * @param hb
+	 * @param policy
+	 */
+	public static CoalescingHeartbeatAccuracy create(final HeartbeatAccuracy hb, final CoalescingPolicy policy) {
+		return new CoalescingHeartbeatAccuracy(hb, policy);
+	}
+
+	@Override
+	protected void issue(final Pending p) {
+		hb.heartbeat(p.userTag, p.work, p.startTime, p.endTime, p.accuracy);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy) {
+		add(userTag, work, startTime, endTime, accuracy, 0, 0);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		add(userTag, work, startTime, endTime, 0, 0, 0);
+	}
+
+	public long getGlobalAccuracy() {
+		return read().getGlobalAccuracy();
+	}
+
+	public long getWindowAccuracy() {
+		return read().getWindowAccuracy();
+	}
+
+	public double getGlobalAccuracyRate() {
+		return read().getGlobalAccuracyRate();
+	}
+
+	public double getWindowAccuracyRate() {
+		return read().getWindowAccuracyRate();
+	}
+
+	public double getInstantAccuracyRate() {
+		return read().getInstantAccuracyRate();
+	}
+
+}
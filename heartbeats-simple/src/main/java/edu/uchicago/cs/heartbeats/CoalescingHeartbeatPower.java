@@ -0,0 +1,85 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * A {@link HeartbeatPower} that gathers heartbeats in per-thread fields and issues
+ * them to an underlying heartbeat in aggregate, for loops that are too fast
+ * to issue every heartbeat. See {@link AbstractCoalescingHeartbeat} for how
+ * heartbeats are aggregated and when they become visible.
+ *
+ * Attempting to perform operations after {@link #dispose()} is called will
+ * result in an {@link IllegalStateException}.
+ *
+ * @author Connor Imes
+ */
+public class CoalescingHeartbeatPower extends AbstractCoalescingHeartbeat<HeartbeatPower> implements HeartbeatPower {
+
+	/**
+	 * Don't allow public instantiation. Should use
+	 * {@link #create(int, CoalescingPolicy)} or
+	 * {@link #create(HeartbeatPower, CoalescingPolicy)}.
+	 * 
+	 * @param hb
+	 * @param policy
+	 */
+	protected CoalescingHeartbeatPower(final HeartbeatPower hb, final CoalescingPolicy policy) {
+		super(hb, policy);
+	}
+
+	/**
+	 * Create a {@link CoalescingHeartbeatPower} over a {@link DefaultHeartbeatPower}.
+	 * 
+	 * @param windowSize
+	 * @param policy
+	 * @throws IllegalStateException
+	 *             if native resources cannot be allocated
+	 */
+	public static CoalescingHeartbeatPower create(final int windowSize, final CoalescingPolicy policy) {
+		return new CoalescingHeartbeatPower(DefaultHeartbeatPower.create(windowSize), policy);
+	}
+
+	/**
+	 * Create a {@link CoalescingHeartbeatPower} over an existing heartbeat, which it takes
+	 * ownership of. It must not be used directly afterward.
+	 * 
+	 * @param hb
+	 * @param policy
+	 */
+	public static CoalescingHeartbeatPower create(final HeartbeatPower hb, final CoalescingPolicy policy) {
+		return new CoalescingHeartbeatPower(hb, policy);
+	}
+
+	@Override
+	protected void issue(final Pending p) {
+		hb.heartbeat(p.userTag, p.work, p.startTime, p.endTime, p.startEnergy, p.endEnergy);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long startEnergy, final long endEnergy) {
+		add(userTag, work, startTime, endTime, 0, startEnergy, endEnergy);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		add(userTag, work, startTime, endTime, 0, 0, 0);
+	}
+
+	public long getGlobalEnergy() {
+		return read().getGlobalEnergy();
+	}
+
+	public long getWindowEnergy() {
+		return read().getWindowEnergy();
+	}
+
+	public double getGlobalPower() {
+		return read().getGlobalPower();
+	}
+
+	public double getWindowPower() {
+		return read().getWindowPower();
+	}
+
+	public double getInstantPower() {
+		return read().getInstantPower();
+	}
+
+}
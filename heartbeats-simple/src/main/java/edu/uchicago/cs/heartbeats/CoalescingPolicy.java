@@ -0,0 +1,72 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * Decides when a coalescing heartbeat flushes the heartbeats a thread has
+ * gathered as one aggregated heartbeat: once their work reaches a number of
+ * units, or once they span an amount of time, whichever comes first.
+ *
+ * Time is measured in the units of the heartbeats' start and end times,
+ * usually nanoseconds. Override {@link #shouldFlush(long, long, long)} for
+ * other policies; it is called on every heartbeat, so keep it cheap.
+ *
+ * @author Connor Imes
+ */
+public class CoalescingPolicy {
+	private final long maxWork;
+	private final long maxTime;
+
+	/**
+	 * @param maxWork
+	 *            flush once pending work reaches this many units
+	 * @param maxTime
+	 *            flush once pending heartbeats span this much time
+	 * @throws IllegalArgumentException
+	 *             if either value is not positive
+	 */
+	public CoalescingPolicy(final long maxWork, final long maxTime) {
+		if (maxWork <= 0 || maxTime <= 0) {
+			throw new IllegalArgumentException("Flush thresholds must be > 0");
+		}
+		this.maxWork = maxWork;
+		this.maxTime = maxTime;
+	}
+
+	/**
+	 * Flush only by work.
+	 *
+	 * @param maxWork
+	 */
+	public static CoalescingPolicy work(final long maxWork) {
+		return new CoalescingPolicy(maxWork, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Flush only by time.
+	 *
+	 * @param maxTime
+	 */
+	public static CoalescingPolicy time(final long maxTime) {
+		return new CoalescingPolicy(Long.MAX_VALUE, maxTime);
+	}
+
+	public long getMaxWork() {
+		return maxWork;
+	}
+
+	public long getMaxTime() {
+		return maxTime;
+	}
+
+	/**
+	 * @param count
+	 *            number of pending heartbeats, at least 1
+	 * @param work
+	 *            their total work
+	 * @param time
+	 *            from the first start time to the last end time
+	 * @return true to flush the pending heartbeats now
+	 */
+	public boolean shouldFlush(final long count, final long work, final long time) {
+		return work >= maxWork || time >= maxTime;
+	}
+}
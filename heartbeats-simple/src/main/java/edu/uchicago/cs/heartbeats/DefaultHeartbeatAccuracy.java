@@ -3,6 +3,7 @@ package edu.uchicago.cs.heartbeats;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * Gets a heartbeat implementation and exposes methods for performing operations
@@ -15,6 +16,16 @@ import java.nio.ByteBuffer;
  */
 public class DefaultHeartbeatAccuracy extends AbstractDefaultHeartbeat implements HeartbeatAccuracy {
 
+	private static final NativeCleaner.Freer FREER = new NativeCleaner.Freer() {
+		public void free(final ByteBuffer ptr) {
+			HeartbeatAccJNI.get().free(ptr);
+		}
+
+		public long size(final ByteBuffer ptr) {
+			return ptr.capacity() + HeartbeatAccJNI.get().getWindowBuffer(ptr).capacity();
+		}
+	};
+
 	/**
 	 * Don't allow public instantiation. Should use {@link #create(int)} which
 	 * throws exceptions on failure.
@@ -33,7 +44,20 @@ public class DefaultHeartbeatAccuracy extends AbstractDefaultHeartbeat implement
 	 * @param logStream
 	 */
 	protected DefaultHeartbeatAccuracy(final ByteBuffer nativePtr, final FileOutputStream logStream) {
-		super(nativePtr, logStream);
+		this(nativePtr, logStream, FREER);
+	}
+
+	/**
+	 * Use a context whose memory is managed by the given freer, e.g., a slot in
+	 * a {@link HeartbeatPool}.
+	 * 
+	 * @param nativePtr
+	 * @param logStream
+	 * @param freer
+	 */
+	DefaultHeartbeatAccuracy(final ByteBuffer nativePtr, final FileOutputStream logStream,
+			final NativeCleaner.Freer freer) {
+		super(nativePtr, HeartbeatAccJNI.get().getAddress(nativePtr), logStream, freer);
 	}
 
 	/**
@@ -67,14 +91,83 @@ public class DefaultHeartbeatAccuracy extends AbstractDefaultHeartbeat implement
 		}
 	}
 
+	/**
+	 * Create a {@link DefaultHeartbeatAccuracy} that logs full windows through
+	 * an {@link AsyncLogWriter} instead of on the heartbeat thread. Each full
+	 * window is copied natively into a spare buffer, which the writer thread
+	 * logs.
+	 * 
+	 * @param windowSize
+	 * @param logStream
+	 * @param writer
+	 * @throws IllegalStateException
+	 *             if native resources cannot be allocated
+	 */
+	public static DefaultHeartbeatAccuracy create(final int windowSize, final FileOutputStream logStream,
+			final AsyncLogWriter writer) {
+		// the native context must not log, the spare buffers are logged instead
+		final ByteBuffer ptr = HeartbeatAccJNI.get().init(windowSize, -1);
+		if (ptr == null) {
+			throw new IllegalStateException("Failed to get heartbeat over JNI");
+		}
+		final DefaultHeartbeatAccuracy hb = new DefaultHeartbeatAccuracy(ptr, logStream);
+		final AsyncLog.Window[] windows = new AsyncLog.Window[writer.getCapacity()];
+		for (int i = 0; i < windows.length; i++) {
+			final ByteBuffer w = HeartbeatAccJNI.get().init(windowSize, -1);
+			if (w == null) {
+				for (int j = 0; j < i; j++) {
+					windows[j].free();
+				}
+				hb.free();
+				throw new IllegalStateException("Failed to get heartbeat over JNI");
+			}
+			windows[i] = new NativeWindow(w);
+		}
+		hb.trackWindows(windowSize);
+		hb.asyncLog = new AsyncLog(writer, windows);
+		return hb;
+	}
+
+	/**
+	 * Create a {@link DefaultHeartbeatAccuracy} that writes full windows to a
+	 * log such as a {@link HeartbeatLogSink} or {@link MappedHeartbeatLog}
+	 * instead of having the native library log them. The log is not closed
+	 * when the heartbeat is disposed.
+	 * 
+	 * @param windowSize
+	 * @param logSink
+	 * @throws IllegalStateException
+	 *             if native resources cannot be allocated, or if the log is
+	 *             already used by another heartbeat
+	 */
+	public static DefaultHeartbeatAccuracy createWithLogSink(final int windowSize, final AbstractHeartbeatLog logSink) {
+		final ByteBuffer ptr = HeartbeatAccJNI.get().init(windowSize, -1);
+		if (ptr == null) {
+			throw new IllegalStateException("Failed to get heartbeat over JNI");
+		}
+		final DefaultHeartbeatAccuracy hb = new DefaultHeartbeatAccuracy(ptr);
+		try {
+			hb.enableLogSink(logSink, hb.getRecordView(), true, false);
+		} catch (IllegalStateException e) {
+			hb.free();
+			throw e;
+		}
+		return hb;
+	}
+
 	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
 			final long accuracy) {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			HeartbeatAccJNI.get().heartbeat(nativePtr, userTag, work, startTime, endTime, accuracy);
+			HeartbeatAccJNI.Raw.heartbeat(nativeAddr, userTag, work, startTime, endTime, accuracy);
+			if (isTrackingWindows() && windowCompleted(1)) {
+				logWindow();
+			}
+			if (publisher != null && publisher.isDue(1)) {
+				publish();
+			}
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
@@ -82,198 +175,339 @@ public class DefaultHeartbeatAccuracy extends AbstractDefaultHeartbeat implement
 		heartbeat(userTag, work, startTime, endTime, 0);
 	}
 
+	/**
+	 * Issue a batch of heartbeats with a single native call. The result,
+	 * including any log output, is the same as issuing each heartbeat
+	 * individually in array order.
+	 * 
+	 * @param userTags
+	 * @param work
+	 * @param startTimes
+	 * @param endTimes
+	 * @param accuracies
+	 * @param offset
+	 *            index of the first record in the arrays
+	 * @param length
+	 *            number of records to issue
+	 * @throws IndexOutOfBoundsException
+	 *             if any array is too short
+	 */
+	public void heartbeatBatch(final long[] userTags, final long[] work, final long[] startTimes, final long[] endTimes,
+			final long[] accuracies, final int offset, final int length) {
+		checkBatchBounds(offset, length, userTags, work, startTimes, endTimes, accuracies);
+		final int token = guard.enter();
+		try {
+			if (!isTrackingWindows()) {
+				HeartbeatAccJNI.get().heartbeatBatch(nativePtr, userTags, work, startTimes, endTimes,
+						accuracies, offset, length);
+			} else {
+				// split at window boundaries so each full window can be logged
+				int n;
+				for (int i = 0; i < length; i += n) {
+					n = Math.min(length - i, remainingInWindow());
+					HeartbeatAccJNI.get().heartbeatBatch(nativePtr, userTags, work, startTimes, endTimes,
+							accuracies, offset + i, n);
+					if (windowCompleted(n)) {
+						logWindow();
+					}
+				}
+			}
+			if (publisher != null && publisher.isDue(length)) {
+				publish();
+			}
+		} finally {
+			guard.exit(token);
+		}
+	}
+
+	/**
+	 * Issue a batch of heartbeats with a single native call, using all records
+	 * in the arrays.
+	 * 
+	 * @param userTags
+	 * @param work
+	 * @param startTimes
+	 * @param endTimes
+	 * @param accuracies
+	 * @see #heartbeatBatch(long[], long[], long[], long[], long[], int, int)
+	 */
+	public void heartbeatBatch(final long[] userTags, final long[] work, final long[] startTimes, final long[] endTimes,
+			final long[] accuracies) {
+		heartbeatBatch(userTags, work, startTimes, endTimes, accuracies, 0, userTags.length);
+	}
+
+	@Override
+	protected void issueScope(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy, final long startEnergy, final long endEnergy) {
+		heartbeat(userTag, work, startTime, endTime, accuracy);
+	}
+
+	private void publish() {
+		HeartbeatAccJNI.get().snapshot(nativePtr, publisherSnapshot.longs, publisherSnapshot.doubles);
+		publisher.publish(publisherSnapshot);
+	}
+
+	private void logWindow() {
+		if (asyncLog == null) {
+			logSinkWindow();
+			return;
+		}
+		final NativeWindow w = (NativeWindow) asyncLog.acquire();
+		if (w != null) {
+			HeartbeatAccJNI.get().copyWindowBuffer(nativePtr, w.ptr);
+			asyncLog.submit(w, logStream);
+		}
+	}
+
+	/**
+	 * A spare native context holding a copy of a full window.
+	 */
+	private static final class NativeWindow extends AsyncLog.Window {
+		private final ByteBuffer ptr;
+		private final NativeCleaner.Cleanable cleanable;
+
+		private NativeWindow(final ByteBuffer ptr) {
+			this.ptr = ptr;
+			this.cleanable = NativeCleaner.register(this, ptr, FREER);
+		}
+
+		@Override
+		protected void write() throws IOException {
+			if (logStream != null) {
+				if (HeartbeatAccJNI.get().logWindowBuffer(ptr, getFileDescriptor(logStream)) != 0) {
+					throw new IOException("Failed to write window buffer");
+				}
+			}
+		}
+
+		@Override
+		protected void free() {
+			cleanable.clean();
+		}
+	}
+
 	protected void free() {
-		HeartbeatAccJNI.get().free(nativePtr);
+		cleanable.clean();
 		nativePtr = null;
 	}
 
 	public void dispose() {
-		try {
-			lock.writeLock().lock();
-			enforceNotDisposed();
-			free();
-		} finally {
-			lock.writeLock().unlock();
+		guard.dispose();
+		if (asyncLog != null) {
+			asyncLog.free();
 		}
+		free();
 	}
 
+	/**
+	 * Waits for windows being logged asynchronously first, so that log output
+	 * stays in order.
+	 */
 	public void logHeader() throws IOException {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			if (logStream != null) {
+			if (asyncLog != null) {
+				asyncLog.flush();
+			}
+			if (logSink != null) {
+				logSink.writeHeader();
+			} else if (logStream != null) {
 				if (HeartbeatAccJNI.get().logHeader(getFileDescriptor(logStream)) != 0) {
 					throw new IOException("Failed to write log header");
 				}
 			}
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
+	/**
+	 * Waits for windows being logged asynchronously first, so that log output
+	 * stays in order.
+	 */
 	public void logWindowBuffer() throws IOException {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			if (logStream != null) {
+			if (asyncLog != null) {
+				asyncLog.flush();
+			}
+			if (logSink != null) {
+				logSinkWindowBuffer();
+			} else if (logStream != null) {
 				if (HeartbeatAccJNI.get().logWindowBuffer(nativePtr, getFileDescriptor(logStream)) != 0) {
 					throw new IOException("Failed to write window buffer");
 				}
 			}
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public long getWindowSize() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatAccJNI.get().getWindowSize(nativePtr);
+			return HeartbeatAccJNI.Raw.getWindowSize(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public long getUserTag() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatAccJNI.get().getUserTag(nativePtr);
+			return HeartbeatAccJNI.Raw.getUserTag(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public long getGlobalTime() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatAccJNI.get().getGlobalTime(nativePtr);
+			return HeartbeatAccJNI.Raw.getGlobalTime(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public long getWindowTime() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatAccJNI.get().getWindowTime(nativePtr);
+			return HeartbeatAccJNI.Raw.getWindowTime(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public long getGlobalWork() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatAccJNI.get().getGlobalWork(nativePtr);
+			return HeartbeatAccJNI.Raw.getGlobalWork(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public long getWindowWork() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatAccJNI.get().getWindowWork(nativePtr);
+			return HeartbeatAccJNI.Raw.getWindowWork(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public double getGlobalPerf() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatAccJNI.get().getGlobalPerf(nativePtr);
+			return HeartbeatAccJNI.Raw.getGlobalPerf(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public double getWindowPerf() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatAccJNI.get().getWindowPerf(nativePtr);
+			return HeartbeatAccJNI.Raw.getWindowPerf(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public double getInstantPerf() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatAccJNI.get().getInstantPerf(nativePtr);
+			return HeartbeatAccJNI.Raw.getInstantPerf(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public long getGlobalAccuracy() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatAccJNI.get().getGlobalAccuracy(nativePtr);
+			return HeartbeatAccJNI.Raw.getGlobalAccuracy(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public long getWindowAccuracy() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatAccJNI.get().getWindowAccuracy(nativePtr);
+			return HeartbeatAccJNI.Raw.getWindowAccuracy(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public double getGlobalAccuracyRate() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatAccJNI.get().getGlobalAccuracyRate(nativePtr);
+			return HeartbeatAccJNI.Raw.getGlobalAccuracyRate(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public double getWindowAccuracyRate() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatAccJNI.get().getWindowAccuracyRate(nativePtr);
+			return HeartbeatAccJNI.Raw.getWindowAccuracyRate(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public double getInstantAccuracyRate() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatAccJNI.get().getInstantAccuracyRate(nativePtr);
+			return HeartbeatAccJNI.Raw.getInstantAccuracyRate(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
-	@Override
-	protected void finalize() throws Throwable {
-		// last-ditch effort to cleanup if user didn't follow protocol
+	/**
+	 * Get a read-only view of the native window buffer records. The buffer
+	 * reads native memory directly and must not be used after
+	 * {@link #dispose()} is called.
+	 * 
+	 * @return the window buffer
+	 * @see #getRecordView()
+	 */
+	public ByteBuffer getWindowBuffer() {
+		final int token = guard.enter();
 		try {
-			if (nativePtr != null) {
-				free();
-			}
+			return HeartbeatAccJNI.get().getWindowBuffer(nativePtr).asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+		} finally {
+			guard.exit(token);
+		}
+	}
+
+	/**
+	 * Get a cursor for reading the window buffer records in place. The view
+	 * must not be used after {@link #dispose()} is called.
+	 * 
+	 * @return a new view
+	 */
+	public HeartbeatRecordView getRecordView() {
+		final int token = guard.enter();
+		try {
+			return new HeartbeatRecordView(HeartbeatAccJNI.get().getWindowBuffer(nativePtr), nativePtr, true, false);
+		} finally {
+			guard.exit(token);
+		}
+	}
+
+	public HeartbeatSnapshot snapshot(final HeartbeatSnapshot snapshot) {
+		final int token = guard.enter();
+		try {
+			HeartbeatAccJNI.get().snapshot(nativePtr, snapshot.longs, snapshot.doubles);
+			return snapshot;
 		} finally {
-			super.finalize();
+			guard.exit(token);
 		}
 	}
 
@@ -3,6 +3,7 @@ package edu.uchicago.cs.heartbeats;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 /**
  * Gets a heartbeat implementation and exposes methods for performing operations
@@ -15,6 +16,16 @@ import java.nio.ByteBuffer;
  */
 public class DefaultHeartbeatPower extends AbstractDefaultHeartbeat implements HeartbeatPower {
 
+	private static final NativeCleaner.Freer FREER = new NativeCleaner.Freer() {
+		public void free(final ByteBuffer ptr) {
+			HeartbeatPowJNI.get().free(ptr);
+		}
+
+		public long size(final ByteBuffer ptr) {
+			return ptr.capacity() + HeartbeatPowJNI.get().getWindowBuffer(ptr).capacity();
+		}
+	};
+
 	/**
 	 * Don't allow public instantiation. Should use {@link #create(int)} which
 	 * throws exceptions on failure.
@@ -33,7 +44,20 @@ public class DefaultHeartbeatPower extends AbstractDefaultHeartbeat implements H
 	 * @param logStream
 	 */
 	protected DefaultHeartbeatPower(final ByteBuffer nativePtr, final FileOutputStream logStream) {
-		super(nativePtr, logStream);
+		this(nativePtr, logStream, FREER);
+	}
+
+	/**
+	 * Use a context whose memory is managed by the given freer, e.g., a slot in
+	 * a {@link HeartbeatPool}.
+	 * 
+	 * @param nativePtr
+	 * @param logStream
+	 * @param freer
+	 */
+	DefaultHeartbeatPower(final ByteBuffer nativePtr, final FileOutputStream logStream,
+			final NativeCleaner.Freer freer) {
+		super(nativePtr, HeartbeatPowJNI.get().getAddress(nativePtr), logStream, freer);
 	}
 
 	/**
@@ -67,14 +91,83 @@ public class DefaultHeartbeatPower extends AbstractDefaultHeartbeat implements H
 		}
 	}
 
+	/**
+	 * Create a {@link DefaultHeartbeatPower} that logs full windows through an
+	 * {@link AsyncLogWriter} instead of on the heartbeat thread. Each full
+	 * window is copied natively into a spare buffer, which the writer thread
+	 * logs.
+	 * 
+	 * @param windowSize
+	 * @param logStream
+	 * @param writer
+	 * @throws IllegalStateException
+	 *             if native resources cannot be allocated
+	 */
+	public static DefaultHeartbeatPower create(final int windowSize, final FileOutputStream logStream,
+			final AsyncLogWriter writer) {
+		// the native context must not log, the spare buffers are logged instead
+		final ByteBuffer ptr = HeartbeatPowJNI.get().init(windowSize, -1);
+		if (ptr == null) {
+			throw new IllegalStateException("Failed to get heartbeat over JNI");
+		}
+		final DefaultHeartbeatPower hb = new DefaultHeartbeatPower(ptr, logStream);
+		final AsyncLog.Window[] windows = new AsyncLog.Window[writer.getCapacity()];
+		for (int i = 0; i < windows.length; i++) {
+			final ByteBuffer w = HeartbeatPowJNI.get().init(windowSize, -1);
+			if (w == null) {
+				for (int j = 0; j < i; j++) {
+					windows[j].free();
+				}
+				hb.free();
+				throw new IllegalStateException("Failed to get heartbeat over JNI");
+			}
+			windows[i] = new NativeWindow(w);
+		}
+		hb.trackWindows(windowSize);
+		hb.asyncLog = new AsyncLog(writer, windows);
+		return hb;
+	}
+
+	/**
+	 * Create a {@link DefaultHeartbeatPower} that writes full windows to a
+	 * log such as a {@link HeartbeatLogSink} or {@link MappedHeartbeatLog}
+	 * instead of having the native library log them. The log is not closed
+	 * when the heartbeat is disposed.
+	 * 
+	 * @param windowSize
+	 * @param logSink
+	 * @throws IllegalStateException
+	 *             if native resources cannot be allocated, or if the log is
+	 *             already used by another heartbeat
+	 */
+	public static DefaultHeartbeatPower createWithLogSink(final int windowSize, final AbstractHeartbeatLog logSink) {
+		final ByteBuffer ptr = HeartbeatPowJNI.get().init(windowSize, -1);
+		if (ptr == null) {
+			throw new IllegalStateException("Failed to get heartbeat over JNI");
+		}
+		final DefaultHeartbeatPower hb = new DefaultHeartbeatPower(ptr);
+		try {
+			hb.enableLogSink(logSink, hb.getRecordView(), false, true);
+		} catch (IllegalStateException e) {
+			hb.free();
+			throw e;
+		}
+		return hb;
+	}
+
 	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
 			final long startEnergy, final long endEnergy) {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			HeartbeatPowJNI.get().heartbeat(nativePtr, userTag, work, startTime, endTime, startEnergy, endEnergy);
+			HeartbeatPowJNI.Raw.heartbeat(nativeAddr, userTag, work, startTime, endTime, startEnergy, endEnergy);
+			if (isTrackingWindows() && windowCompleted(1)) {
+				logWindow();
+			}
+			if (publisher != null && publisher.isDue(1)) {
+				publish();
+			}
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
@@ -82,198 +175,355 @@ public class DefaultHeartbeatPower extends AbstractDefaultHeartbeat implements H
 		heartbeat(userTag, work, startTime, endTime, 0, 0);
 	}
 
+	/**
+	 * Issue a batch of heartbeats with a single native call. The result,
+	 * including any log output, is the same as issuing each heartbeat
+	 * individually in array order.
+	 * 
+	 * @param userTags
+	 * @param work
+	 * @param startTimes
+	 * @param endTimes
+	 * @param startEnergies
+	 * @param endEnergies
+	 * @param offset
+	 *            index of the first record in the arrays
+	 * @param length
+	 *            number of records to issue
+	 * @throws IndexOutOfBoundsException
+	 *             if any array is too short
+	 */
+	public void heartbeatBatch(final long[] userTags, final long[] work, final long[] startTimes, final long[] endTimes,
+			final long[] startEnergies, final long[] endEnergies, final int offset, final int length) {
+		checkBatchBounds(offset, length, userTags, work, startTimes, endTimes, startEnergies, endEnergies);
+		final int token = guard.enter();
+		try {
+			if (!isTrackingWindows()) {
+				HeartbeatPowJNI.get().heartbeatBatch(nativePtr, userTags, work, startTimes, endTimes,
+						startEnergies, endEnergies, offset, length);
+			} else {
+				// split at window boundaries so each full window can be logged
+				int n;
+				for (int i = 0; i < length; i += n) {
+					n = Math.min(length - i, remainingInWindow());
+					HeartbeatPowJNI.get().heartbeatBatch(nativePtr, userTags, work, startTimes, endTimes,
+							startEnergies, endEnergies, offset + i, n);
+					if (windowCompleted(n)) {
+						logWindow();
+					}
+				}
+			}
+			if (publisher != null && publisher.isDue(length)) {
+				publish();
+			}
+		} finally {
+			guard.exit(token);
+		}
+	}
+
+	/**
+	 * Issue a batch of heartbeats with a single native call, using all records
+	 * in the arrays.
+	 * 
+	 * @param userTags
+	 * @param work
+	 * @param startTimes
+	 * @param endTimes
+	 * @param startEnergies
+	 * @param endEnergies
+	 * @see #heartbeatBatch(long[], long[], long[], long[], long[], long[], int, int)
+	 */
+	public void heartbeatBatch(final long[] userTags, final long[] work, final long[] startTimes, final long[] endTimes,
+			final long[] startEnergies, final long[] endEnergies) {
+		heartbeatBatch(userTags, work, startTimes, endTimes, startEnergies, endEnergies, 0, userTags.length);
+	}
+
+	/**
+	 * Set the source of start and end energy for scoped heartbeats, or null
+	 * to use 0.
+	 * 
+	 * @param energySource
+	 */
+	public void setEnergySource(final EnergySource energySource) {
+		this.energySource = energySource;
+	}
+
+	public EnergySource getEnergySource() {
+		return energySource;
+	}
+
+	@Override
+	protected void issueScope(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy, final long startEnergy, final long endEnergy) {
+		heartbeat(userTag, work, startTime, endTime, startEnergy, endEnergy);
+	}
+
+	private void publish() {
+		HeartbeatPowJNI.get().snapshot(nativePtr, publisherSnapshot.longs, publisherSnapshot.doubles);
+		publisher.publish(publisherSnapshot);
+	}
+
+	private void logWindow() {
+		if (asyncLog == null) {
+			logSinkWindow();
+			return;
+		}
+		final NativeWindow w = (NativeWindow) asyncLog.acquire();
+		if (w != null) {
+			HeartbeatPowJNI.get().copyWindowBuffer(nativePtr, w.ptr);
+			asyncLog.submit(w, logStream);
+		}
+	}
+
+	/**
+	 * A spare native context holding a copy of a full window.
+	 */
+	private static final class NativeWindow extends AsyncLog.Window {
+		private final ByteBuffer ptr;
+		private final NativeCleaner.Cleanable cleanable;
+
+		private NativeWindow(final ByteBuffer ptr) {
+			this.ptr = ptr;
+			this.cleanable = NativeCleaner.register(this, ptr, FREER);
+		}
+
+		@Override
+		protected void write() throws IOException {
+			if (logStream != null) {
+				if (HeartbeatPowJNI.get().logWindowBuffer(ptr, getFileDescriptor(logStream)) != 0) {
+					throw new IOException("Failed to write window buffer");
+				}
+			}
+		}
+
+		@Override
+		protected void free() {
+			cleanable.clean();
+		}
+	}
+
 	protected void free() {
-		HeartbeatPowJNI.get().free(nativePtr);
+		cleanable.clean();
 		nativePtr = null;
 	}
 
 	public void dispose() {
-		try {
-			lock.writeLock().lock();
-			enforceNotDisposed();
-			free();
-		} finally {
-			lock.writeLock().unlock();
+		guard.dispose();
+		if (asyncLog != null) {
+			asyncLog.free();
 		}
+		free();
 	}
 
+	/**
+	 * Waits for windows being logged asynchronously first, so that log output
+	 * stays in order.
+	 */
 	public void logHeader() throws IOException {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			if (logStream != null) {
+			if (asyncLog != null) {
+				asyncLog.flush();
+			}
+			if (logSink != null) {
+				logSink.writeHeader();
+			} else if (logStream != null) {
 				if (HeartbeatPowJNI.get().logHeader(getFileDescriptor(logStream)) != 0) {
 					throw new IOException("Failed to write log header");
 				}
 			}
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
+	/**
+	 * Waits for windows being logged asynchronously first, so that log output
+	 * stays in order.
+	 */
 	public void logWindowBuffer() throws IOException {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			if (logStream != null) {
+			if (asyncLog != null) {
+				asyncLog.flush();
+			}
+			if (logSink != null) {
+				logSinkWindowBuffer();
+			} else if (logStream != null) {
 				if (HeartbeatPowJNI.get().logWindowBuffer(nativePtr, getFileDescriptor(logStream)) != 0) {
 					throw new IOException("Failed to write window buffer");
 				}
 			}
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public long getWindowSize() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatPowJNI.get().getWindowSize(nativePtr);
+			return HeartbeatPowJNI.Raw.getWindowSize(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public long getUserTag() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatPowJNI.get().getUserTag(nativePtr);
+			return HeartbeatPowJNI.Raw.getUserTag(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public long getGlobalTime() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatPowJNI.get().getGlobalTime(nativePtr);
+			return HeartbeatPowJNI.Raw.getGlobalTime(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public long getWindowTime() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatPowJNI.get().getWindowTime(nativePtr);
+			return HeartbeatPowJNI.Raw.getWindowTime(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public long getGlobalWork() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatPowJNI.get().getGlobalWork(nativePtr);
+			return HeartbeatPowJNI.Raw.getGlobalWork(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public long getWindowWork() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatPowJNI.get().getWindowWork(nativePtr);
+			return HeartbeatPowJNI.Raw.getWindowWork(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public double getGlobalPerf() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatPowJNI.get().getGlobalPerf(nativePtr);
+			return HeartbeatPowJNI.Raw.getGlobalPerf(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public double getWindowPerf() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatPowJNI.get().getWindowPerf(nativePtr);
+			return HeartbeatPowJNI.Raw.getWindowPerf(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public double getInstantPerf() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatPowJNI.get().getInstantPerf(nativePtr);
+			return HeartbeatPowJNI.Raw.getInstantPerf(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public long getGlobalEnergy() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatPowJNI.get().getGlobalEnergy(nativePtr);
+			return HeartbeatPowJNI.Raw.getGlobalEnergy(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public long getWindowEnergy() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatPowJNI.get().getWindowEnergy(nativePtr);
+			return HeartbeatPowJNI.Raw.getWindowEnergy(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public double getGlobalPower() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatPowJNI.get().getGlobalPower(nativePtr);
+			return HeartbeatPowJNI.Raw.getGlobalPower(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public double getWindowPower() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatPowJNI.get().getWindowPower(nativePtr);
+			return HeartbeatPowJNI.Raw.getWindowPower(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
 	public double getInstantPower() {
+		final int token = guard.enter();
 		try {
-			lock.readLock().lock();
-			enforceNotDisposed();
-			return HeartbeatPowJNI.get().getInstantPower(nativePtr);
+			return HeartbeatPowJNI.Raw.getInstantPower(nativeAddr);
 		} finally {
-			lock.readLock().unlock();
+			guard.exit(token);
 		}
 	}
 
-	@Override
-	protected void finalize() throws Throwable {
-		// last-ditch effort to cleanup if user didn't follow protocol
+	/**
+	 * Get a read-only view of the native window buffer records. The buffer
+	 * reads native memory directly and must not be used after
+	 * {@link #dispose()} is called.
+	 * 
+	 * @return the window buffer
+	 * @see #getRecordView()
+	 */
+	public ByteBuffer getWindowBuffer() {
+		final int token = guard.enter();
 		try {
-			if (nativePtr != null) {
-				free();
-			}
+			return HeartbeatPowJNI.get().getWindowBuffer(nativePtr).asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+		} finally {
+			guard.exit(token);
+		}
+	}
+
+	/**
+	 * Get a cursor for reading the window buffer records in place. The view
+	 * must not be used after {@link #dispose()} is called.
+	 * 
+	 * @return a new view
+	 */
+	public HeartbeatRecordView getRecordView() {
+		final int token = guard.enter();
+		try {
+			return new HeartbeatRecordView(HeartbeatPowJNI.get().getWindowBuffer(nativePtr), nativePtr, false, true);
+		} finally {
+			guard.exit(token);
+		}
+	}
+
+	public HeartbeatSnapshot snapshot(final HeartbeatSnapshot snapshot) {
+		final int token = guard.enter();
+		try {
+			HeartbeatPowJNI.get().snapshot(nativePtr, snapshot.longs, snapshot.doubles);
+			return snapshot;
 		} finally {
-			super.finalize();
+			guard.exit(token);
 		}
 	}
 
@@ -0,0 +1,136 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Guards native resources against being freed while in use, without the cost
+ * of a read/write lock on the hot path.
+ *
+ * Users call {@link #enter()} and {@link #exit(int)} around each access;
+ * {@link #dispose()} marks the guard as disposed and waits for all current
+ * users to exit. Users are counted in a single cell until threads contend on
+ * it, after which each thread counts itself in one of several padded stripes
+ * so that concurrent users do not share a cache line.
+ *
+ * @author Connor Imes
+ */
+public final class DisposalGuard {
+	/**
+	 * Token returned by {@link #enter()} when the base cell was used.
+	 */
+	private static final int BASE = -1;
+	/**
+	 * Longs between stripes, so each stripe has its own cache line(s).
+	 */
+	private static final int PAD = 16;
+	private static final int NUM_STRIPES;
+
+	static {
+		int n = 1;
+		final int target = Math.min(Runtime.getRuntime().availableProcessors(), 64);
+		while (n < target) {
+			n <<= 1;
+		}
+		NUM_STRIPES = n;
+	}
+
+	private final AtomicLong base = new AtomicLong();
+	private final AtomicReference<AtomicLongArray> stripes = new AtomicReference<AtomicLongArray>();
+	private final AtomicBoolean disposed = new AtomicBoolean();
+
+	/**
+	 * Register a user.
+	 *
+	 * @return a token that must be passed to {@link #exit(int)}
+	 * @throws IllegalStateException
+	 *             if already disposed
+	 */
+	public int enter() {
+		int token = BASE;
+		AtomicLongArray s = stripes.get();
+		if (s == null) {
+			final long v = base.get();
+			if (!base.compareAndSet(v, v + 1)) {
+				s = inflate();
+			}
+		}
+		if (s != null) {
+			token = stripe();
+			s.getAndIncrement(token * PAD);
+		}
+		if (disposed.get()) {
+			exit(token);
+			throw new IllegalStateException("Already disposed");
+		}
+		return token;
+	}
+
+	/**
+	 * Unregister a user.
+	 *
+	 * @param token
+	 *            the value returned by {@link #enter()}
+	 */
+	public void exit(final int token) {
+		if (token == BASE) {
+			base.decrementAndGet();
+		} else {
+			stripes.get().decrementAndGet(token * PAD);
+		}
+	}
+
+	/**
+	 * Mark as disposed and wait for current users to exit. Subsequent calls to
+	 * {@link #enter()} will fail.
+	 *
+	 * @throws IllegalStateException
+	 *             if already disposed
+	 */
+	public void dispose() {
+		if (!disposed.compareAndSet(false, true)) {
+			throw new IllegalStateException("Already disposed");
+		}
+		for (int spins = 0; isInUse(); spins++) {
+			if (spins < 100) {
+				Thread.yield();
+			} else {
+				LockSupport.parkNanos(10000);
+			}
+		}
+	}
+
+	/**
+	 * @return true if {@link #dispose()} has been called
+	 */
+	public boolean isDisposed() {
+		return disposed.get();
+	}
+
+	private boolean isInUse() {
+		if (base.get() != 0) {
+			return true;
+		}
+		final AtomicLongArray s = stripes.get();
+		if (s != null) {
+			for (int i = 0; i < NUM_STRIPES; i++) {
+				if (s.get(i * PAD) != 0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private AtomicLongArray inflate() {
+		stripes.compareAndSet(null, new AtomicLongArray(NUM_STRIPES * PAD));
+		return stripes.get();
+	}
+
+	private static int stripe() {
+		return (int) Thread.currentThread().getId() & (NUM_STRIPES - 1);
+	}
+}
@@ -0,0 +1,18 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * A cumulative energy counter for the start and end energy of scoped
+ * heartbeats.
+ *
+ * @author Connor Imes
+ */
+public interface EnergySource {
+
+	/**
+	 * Get the energy consumed since some fixed point, e.g., boot. Should be
+	 * cheap, since it is read twice for every scoped heartbeat.
+	 *
+	 * @return energy in microjoules
+	 */
+	long getEnergy();
+}
@@ -0,0 +1,42 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.FileOutputStream;
+
+/**
+ * Entry point to the Foreign Function &amp; Memory implementations, which are
+ * only compiled for Java 22 and newer. On older JVMs this class is used
+ * instead of the one in <code>META-INF/versions/22</code> of the jar, and the
+ * backend is never available.
+ *
+ * @author Connor Imes
+ */
+final class ForeignBackend {
+
+	private ForeignBackend() {
+	}
+
+	static boolean isAvailable() {
+		return false;
+	}
+
+	private static IllegalStateException unavailable() {
+		return new IllegalStateException("The FFM heartbeat backend requires Java 22 or newer");
+	}
+
+	static Heartbeat createHeartbeat(final int windowSize, final FileOutputStream logStream) {
+		throw unavailable();
+	}
+
+	static HeartbeatAccuracy createHeartbeatAccuracy(final int windowSize, final FileOutputStream logStream) {
+		throw unavailable();
+	}
+
+	static HeartbeatPower createHeartbeatPower(final int windowSize, final FileOutputStream logStream) {
+		throw unavailable();
+	}
+
+	static HeartbeatAccuracyPower createHeartbeatAccuracyPower(final int windowSize,
+			final FileOutputStream logStream) {
+		throw unavailable();
+	}
+}
@@ -5,12 +5,14 @@ import java.io.IOException;
 /**
  * Abstraction for Heartbeat implementation over JNI.
  * 
- * You must call {@link #dispose()} before dropping the instance and allowing it
- * to be garbage collected.
+ * You should call {@link #dispose()} or {@link #close()} before dropping the
+ * instance. Native resources of instances that are garbage collected without
+ * being disposed are eventually reclaimed in the background, see
+ * {@link NativeCleaner}.
  * 
  * @author Connor Imes
  */
-public interface Heartbeat {
+public interface Heartbeat extends AutoCloseable {
 
 	/**
 	 * Issue a heartbeat.
@@ -27,6 +29,12 @@ public interface Heartbeat {
 	 */
 	void dispose();
 
+	/**
+	 * Same as {@link #dispose()}, but does nothing if already disposed, for
+	 * use with try-with-resources.
+	 */
+	void close();
+
 	/**
 	 * Write the header text to a log file.
 	 *
@@ -106,4 +114,15 @@ public interface Heartbeat {
 	 */
 	double getInstantPerf();
 
+	/**
+	 * Capture all metrics at once into a reusable holder. This is much cheaper
+	 * than calling each getter individually, and all values are consistent
+	 * with each other.
+	 *
+	 * @param snapshot
+	 *            the holder to fill
+	 * @return the filled snapshot
+	 */
+	HeartbeatSnapshot snapshot(HeartbeatSnapshot snapshot);
+
 }
@@ -0,0 +1,20 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * JMX management interface for a {@link HeartbeatAccuracy}.
+ *
+ * @author Connor Imes
+ */
+public interface HeartbeatAccuracyMXBean extends HeartbeatMXBean {
+
+	long getGlobalAccuracy();
+
+	long getWindowAccuracy();
+
+	double getGlobalAccuracyRate();
+
+	double getWindowAccuracyRate();
+
+	double getInstantAccuracyRate();
+
+}
@@ -0,0 +1,10 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * JMX management interface for a {@link HeartbeatAccuracyPower}.
+ *
+ * @author Connor Imes
+ */
+public interface HeartbeatAccuracyPowerMXBean extends HeartbeatAccuracyMXBean, HeartbeatPowerMXBean {
+
+}
@@ -0,0 +1,151 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.FileOutputStream;
+
+/**
+ * Selects how heartbeats are implemented, so that applications can switch
+ * implementations at runtime without depending on a particular class.
+ *
+ * The backend is usually chosen with the {@value #PROPERTY} system property,
+ * e.g. <code>-Dheartbeats.backend=ffm</code>; see {@link #get()}.
+ *
+ * @author Connor Imes
+ */
+public enum HeartbeatBackend {
+	/**
+	 * The native library through the JNI wrapper: the Default* implementations.
+	 */
+	JNI,
+	/**
+	 * The pure-Java implementations.
+	 */
+	JAVA,
+	/**
+	 * The native library through the Foreign Function &amp; Memory API, without
+	 * the JNI wrapper. Requires Java 22 or newer and the heartbeats-simple
+	 * shared libraries; see {@link #isAvailable()}.
+	 */
+	FFM;
+
+	/**
+	 * System property naming the backend used by {@link #get()}.
+	 */
+	public static final String PROPERTY = "heartbeats.backend";
+
+	/**
+	 * Get the backend named by the {@value #PROPERTY} system property, ignoring
+	 * case, or {@link #JNI} if it is not set.
+	 *
+	 * @return the backend
+	 * @throws IllegalArgumentException
+	 *             if the property does not name a backend
+	 */
+	public static HeartbeatBackend get() {
+		final String name = System.getProperty(PROPERTY);
+		if (name == null || name.isEmpty()) {
+			return JNI;
+		}
+		for (final HeartbeatBackend b : values()) {
+			if (b.name().equalsIgnoreCase(name)) {
+				return b;
+			}
+		}
+		throw new IllegalArgumentException("Unknown heartbeat backend: " + name);
+	}
+
+	/**
+	 * Whether this backend can be used in the running JVM. Only {@link #FFM}
+	 * is checked; {@link #JNI} fails when a heartbeat is created if the native
+	 * library cannot be loaded.
+	 *
+	 * @return true if available
+	 */
+	public boolean isAvailable() {
+		return this != FFM || ForeignBackend.isAvailable();
+	}
+
+	/**
+	 * Create a {@link Heartbeat}.
+	 *
+	 * @param windowSize
+	 * @param logStream
+	 *            may be null
+	 * @throws IllegalStateException
+	 *             if the backend is not available or resources cannot be
+	 *             allocated
+	 */
+	public Heartbeat createHeartbeat(final int windowSize, final FileOutputStream logStream) {
+		switch (this) {
+		case JAVA:
+			return JavaHeartbeat.create(windowSize, logStream);
+		case FFM:
+			return ForeignBackend.createHeartbeat(windowSize, logStream);
+		default:
+			return DefaultHeartbeat.create(windowSize, logStream);
+		}
+	}
+
+	/**
+	 * Create a {@link HeartbeatAccuracy}.
+	 *
+	 * @param windowSize
+	 * @param logStream
+	 *            may be null
+	 * @throws IllegalStateException
+	 *             if the backend is not available or resources cannot be
+	 *             allocated
+	 */
+	public HeartbeatAccuracy createHeartbeatAccuracy(final int windowSize, final FileOutputStream logStream) {
+		switch (this) {
+		case JAVA:
+			return JavaHeartbeatAccuracy.create(windowSize, logStream);
+		case FFM:
+			return ForeignBackend.createHeartbeatAccuracy(windowSize, logStream);
+		default:
+			return DefaultHeartbeatAccuracy.create(windowSize, logStream);
+		}
+	}
+
+	/**
+	 * Create a {@link HeartbeatPower}.
+	 *
+	 * @param windowSize
+	 * @param logStream
+	 *            may be null
+	 * @throws IllegalStateException
+	 *             if the backend is not available or resources cannot be
+	 *             allocated
+	 */
+	public HeartbeatPower createHeartbeatPower(final int windowSize, final FileOutputStream logStream) {
+		switch (this) {
+		case JAVA:
+			return JavaHeartbeatPower.create(windowSize, logStream);
+		case FFM:
+			return ForeignBackend.createHeartbeatPower(windowSize, logStream);
+		default:
+			return DefaultHeartbeatPower.create(windowSize, logStream);
+		}
+	}
+
+	/**
+	 * Create a {@link HeartbeatAccuracyPower}.
+	 *
+	 * @param windowSize
+	 * @param logStream
+	 *            may be null
+	 * @throws IllegalStateException
+	 *             if the backend is not available or resources cannot be
+	 *             allocated
+	 */
+	public HeartbeatAccuracyPower createHeartbeatAccuracyPower(final int windowSize,
+			final FileOutputStream logStream) {
+		switch (this) {
+		case JAVA:
+			return JavaHeartbeatAccuracyPower.create(windowSize, logStream);
+		case FFM:
+			return ForeignBackend.createHeartbeatAccuracyPower(windowSize, logStream);
+		default:
+			return DefaultHeartbeatAccuracyPower.create(windowSize, logStream);
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * A monotonic clock for the start and end times of scoped heartbeats.
+ *
+ * @author Connor Imes
+ */
+public interface HeartbeatClock {
+
+	/**
+	 * {@link System#nanoTime()}.
+	 */
+	HeartbeatClock SYSTEM = new HeartbeatClock() {
+		public long getTime() {
+			return System.nanoTime();
+		}
+	};
+
+	/**
+	 * Get the current time. Must never decrease.
+	 *
+	 * @return time in nanoseconds
+	 */
+	long getTime();
+}
@@ -0,0 +1,294 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A heartbeat log opened by path, with a large user-space buffer so that many
+ * windows are written with a single system call. Unlike logging to a
+ * {@link java.io.FileOutputStream}, no file descriptor is unwrapped by
+ * reflection.
+ *
+ * Records can be written in the same text format as the native library, or in
+ * a compact fixed-width binary format. A binary log starts with a 16-byte
+ * header, all values little-endian:
+ * <ul>
+ * <li>magic: the ASCII bytes <code>HBSL</code></li>
+ * <li>version: u16, currently 1</li>
+ * <li>flags: u16, {@link #FLAG_ACCURACY} and/or {@link #FLAG_ENERGY}</li>
+ * <li>record size: u32, in bytes</li>
+ * <li>reserved: u32</li>
+ * </ul>
+ * It is followed by the binary records described in
+ * {@link AbstractHeartbeatLog}. Appending to an existing binary log does not
+ * write another header; the existing header must match the heartbeat type.
+ *
+ * A sink is used by a single heartbeat. Buffered records are written when the
+ * buffer fills, on {@link #flush()}, and on {@link #close()}.
+ *
+ * @author Connor Imes
+ */
+public final class HeartbeatLogSink extends AbstractHeartbeatLog {
+
+	/**
+	 * Record encoding.
+	 */
+	public enum Format {
+		/**
+		 * The native library's text format.
+		 */
+		TEXT,
+		/**
+		 * Fixed-width binary records.
+		 */
+		BINARY
+	}
+
+	/**
+	 * When to force written data to the storage device.
+	 */
+	public enum SyncPolicy {
+		/**
+		 * Leave it to the operating system.
+		 */
+		NONE,
+		/**
+		 * After each time the buffer is written.
+		 */
+		ON_FLUSH,
+		/**
+		 * Once, when the sink is closed.
+		 */
+		ON_CLOSE
+	}
+
+	public static final int MAGIC = 0x4C534248; // "HBSL" little-endian
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 16;
+	/**
+	 * The default buffer size: 1 MiB.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private final FileChannel channel;
+	private final Format format;
+	private final SyncPolicy sync;
+	private final ByteBuffer buffer;
+	private final StringBuilder sb = new StringBuilder();
+	/**
+	 * The header of a binary log being appended to, or null if it is empty.
+	 */
+	private final ByteBuffer existingHeader;
+
+	private HeartbeatLogSink(final FileChannel channel, final Format format, final SyncPolicy sync,
+			final int bufferSize, final ByteBuffer existingHeader) {
+		this.channel = channel;
+		this.format = format;
+		this.sync = sync;
+		this.buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+		this.existingHeader = existingHeader;
+	}
+
+	/**
+	 * Open a sink that truncates the file, with the default buffer size and no
+	 * syncing.
+	 *
+	 * @param path
+	 * @param format
+	 * @throws IOException
+	 */
+	public static HeartbeatLogSink open(final String path, final Format format) throws IOException {
+		return open(path, format, false, SyncPolicy.NONE, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Open a sink.
+	 *
+	 * @param path
+	 * @param format
+	 * @param append
+	 *            if true, open with <code>O_APPEND</code> instead of truncating
+	 * @param sync
+	 * @param bufferSize
+	 *            in bytes, must be large enough for at least one text record
+	 * @throws IOException
+	 *             if opening fails, or appending to a non-empty file that is
+	 *             not a binary log
+	 * @throws IllegalArgumentException
+	 *             if bufferSize is less than 1024
+	 */
+	public static HeartbeatLogSink open(final String path, final Format format, final boolean append,
+			final SyncPolicy sync, final int bufferSize) throws IOException {
+		if (bufferSize < 1024) {
+			throw new IllegalArgumentException("Buffer size must be >= 1024");
+		}
+		final Path p = Paths.get(path);
+		final ByteBuffer existingHeader = append && format == Format.BINARY ? readHeader(p) : null;
+		final Set<StandardOpenOption> options = EnumSet.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+		options.add(append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+		return new HeartbeatLogSink(FileChannel.open(p, options), format, sync, bufferSize, existingHeader);
+	}
+
+	/**
+	 * Read the header of an existing binary log.
+	 *
+	 * @return the header, or null if the file does not exist or is empty
+	 * @throws IOException
+	 *             if the file is not a binary log
+	 */
+	private static ByteBuffer readHeader(final Path p) throws IOException {
+		if (!Files.exists(p) || Files.size(p) == 0) {
+			return null;
+		}
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		final FileChannel ch = FileChannel.open(p, StandardOpenOption.READ);
+		try {
+			while (header.hasRemaining() && ch.read(header) >= 0) {
+				// keep reading
+			}
+		} finally {
+			ch.close();
+		}
+		if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getShort(4) != VERSION) {
+			throw new IOException("Not a binary heartbeat log: " + p);
+		}
+		return header;
+	}
+
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * For binary logs, writes the file header, or checks the existing header
+	 * when appending.
+	 *
+	 * @throws IllegalStateException
+	 *             if an existing header is for a different heartbeat type
+	 */
+	@Override
+	void bound() {
+		if (existingHeader != null) {
+			if (existingHeader.getShort(6) != getFlags()
+					|| existingHeader.getInt(8) != getBinaryRecordSize(accuracy, energy)) {
+				throw new IllegalStateException("Existing log has flags " + existingHeader.getShort(6)
+						+ ", not " + getFlags());
+			}
+		} else if (format == Format.BINARY) {
+			buffer.putInt(MAGIC);
+			buffer.putShort((short) VERSION);
+			buffer.putShort((short) getFlags());
+			buffer.putInt(getBinaryRecordSize(accuracy, energy));
+			buffer.putInt(0);
+		}
+	}
+
+	/**
+	 * Write the text header line. Binary logs have a file header instead, so
+	 * this does nothing for them.
+	 */
+	@Override
+	synchronized void writeHeader() throws IOException {
+		if (format == Format.TEXT) {
+			sb.setLength(0);
+			sb.append(String.format(Locale.US, "%-6s %-6s %-11s %-15s %-15s %-15s %-15s %-15s",
+					"HB", "Tag", "Work", "Start_Time", "End_Time", "Global_Perf", "Window_Perf", "Instant_Perf"));
+			if (accuracy) {
+				sb.append(String.format(Locale.US, " %-11s %-15s %-15s %-15s",
+						"Accuracy", "Global_Accuracy", "Window_Accuracy", "Instant_Accuracy"));
+			}
+			if (energy) {
+				sb.append(String.format(Locale.US, " %-15s %-15s %-15s %-15s %-15s",
+						"Start_Energy", "End_Energy", "Global_Power", "Window_Power", "Instant_Power"));
+			}
+			sb.append('\n');
+			putText();
+		}
+	}
+
+	@Override
+	synchronized void record(final long id, final long userTag, final long work, final long startTime,
+			final long endTime, final double globalPerf, final double windowPerf, final double instantPerf,
+			final long acc, final double globalAcc, final double windowAcc, final double instantAcc,
+			final long startEnergy, final long endEnergy, final double globalPow, final double windowPow,
+			final double instantPow) throws IOException {
+		if (format == Format.BINARY) {
+			if (buffer.remaining() < getBinaryRecordSize(accuracy, energy)) {
+				flushBuffer();
+			}
+			putBinaryRecord(buffer, id, userTag, work, startTime, endTime, acc, startEnergy, endEnergy);
+		} else {
+			sb.setLength(0);
+			sb.append(String.format(Locale.US, "%-6d %-6d %-11d %-15d %-15d %-15.6f %-15.6f %-15.6f",
+					id, userTag, work, startTime, endTime, globalPerf, windowPerf, instantPerf));
+			if (accuracy) {
+				sb.append(String.format(Locale.US, " %-11d %-15.6f %-15.6f %-15.6f",
+						acc, globalAcc, windowAcc, instantAcc));
+			}
+			if (energy) {
+				sb.append(String.format(Locale.US, " %-15d %-15d %-15.6f %-15.6f %-15.6f",
+						startEnergy, endEnergy, globalPow, windowPow, instantPow));
+			}
+			sb.append('\n');
+			putText();
+		}
+	}
+
+	private void putText() throws IOException {
+		final byte[] b = sb.toString().getBytes(ASCII);
+		if (buffer.remaining() < b.length) {
+			flushBuffer();
+		}
+		buffer.put(b);
+	}
+
+	private void flushBuffer() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+		if (sync == SyncPolicy.ON_FLUSH) {
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Write buffered records to the file.
+	 */
+	@Override
+	public synchronized void flush() throws IOException {
+		if (buffer.position() > 0) {
+			flushBuffer();
+		}
+	}
+
+	/**
+	 * Write buffered records and close the file.
+	 */
+	public synchronized void close() throws IOException {
+		if (!channel.isOpen()) {
+			return;
+		}
+		try {
+			flush();
+			if (sync == SyncPolicy.ON_CLOSE) {
+				channel.force(false);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+}
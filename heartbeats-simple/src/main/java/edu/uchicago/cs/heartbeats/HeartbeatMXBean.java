@@ -0,0 +1,46 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * JMX management interface for a {@link Heartbeat}. Attributes are served
+ * from a cached {@link HeartbeatSnapshot}; see {@link CachedHeartbeatMXBean}.
+ *
+ * @author Connor Imes
+ */
+public interface HeartbeatMXBean {
+
+	long getWindowSize();
+
+	long getUserTag();
+
+	long getGlobalTime();
+
+	long getWindowTime();
+
+	long getGlobalWork();
+
+	long getWindowWork();
+
+	double getGlobalPerf();
+
+	double getWindowPerf();
+
+	double getInstantPerf();
+
+	/**
+	 * @return nanoseconds since the attributes were last read from the
+	 *         heartbeat
+	 */
+	long getSnapshotAge();
+
+	/**
+	 * @return the maximum nanoseconds attributes may be stale before they are
+	 *         read from the heartbeat again
+	 */
+	long getMaxStaleness();
+
+	/**
+	 * Read the attributes from the heartbeat now.
+	 */
+	void refresh();
+
+}
@@ -0,0 +1,301 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads heartbeat metrics published by a {@link HeartbeatPublisher}, usually
+ * in another process. The region is mapped read-only.
+ *
+ * Call {@link #refresh()} to take a consistent copy of the published metrics;
+ * the getters then return values from that copy. Refreshing does not allocate
+ * and uses only memory loads, so one thread can poll many monitors at high
+ * rates. Metrics that the heartbeat type does not support (e.g. energy for a
+ * {@link HeartbeatAccuracy}) are 0.
+ *
+ * If the publisher goes away, the last published values remain readable;
+ * compare {@link #getUpdateTime()} with the current time to detect stale
+ * heartbeats. Instances are not thread-safe.
+ *
+ * @author Connor Imes
+ */
+public final class HeartbeatMonitor {
+	/**
+	 * Attempts before giving up on a region that is being updated.
+	 */
+	private static final int MAX_RETRIES = 1000;
+
+	private final String name;
+	private final MappedByteBuffer region;
+	private final HeartbeatSnapshot snapshot = new HeartbeatSnapshot();
+	private final long pid;
+	private long sequence;
+	private long updateTime;
+
+	private HeartbeatMonitor(final String name, final MappedByteBuffer region) {
+		this.name = name;
+		this.region = region;
+		this.pid = region.getLong(HeartbeatPublisher.OFF_PID);
+	}
+
+	/**
+	 * Open a heartbeat published in {@link HeartbeatPublisher#DEFAULT_DIR}.
+	 *
+	 * @param name
+	 * @throws IOException
+	 *             if the region does not exist or is invalid
+	 */
+	public static HeartbeatMonitor open(final String name) throws IOException {
+		return open(HeartbeatPublisher.DEFAULT_DIR, name);
+	}
+
+	/**
+	 * Open a published heartbeat.
+	 *
+	 * @param dir
+	 * @param name
+	 * @throws IOException
+	 *             if the region does not exist or is invalid
+	 */
+	public static HeartbeatMonitor open(final String dir, final String name) throws IOException {
+		return open(Paths.get(dir).resolve(name));
+	}
+
+	private static HeartbeatMonitor open(final Path p) throws IOException {
+		final MappedByteBuffer region;
+		final FileChannel ch = FileChannel.open(p, StandardOpenOption.READ);
+		try {
+			if (ch.size() < HeartbeatPublisher.SIZE) {
+				throw new IOException("Invalid region: " + p);
+			}
+			region = ch.map(FileChannel.MapMode.READ_ONLY, 0, HeartbeatPublisher.SIZE);
+		} finally {
+			ch.close();
+		}
+		region.order(ByteOrder.nativeOrder());
+		if (region.getInt(HeartbeatPublisher.OFF_MAGIC) != HeartbeatPublisher.MAGIC
+				|| region.getShort(HeartbeatPublisher.OFF_VERSION) != HeartbeatPublisher.VERSION) {
+			throw new IOException("Invalid region: " + p);
+		}
+		final HeartbeatMonitor m = new HeartbeatMonitor(p.getFileName().toString(), region);
+		m.refresh();
+		return m;
+	}
+
+	/**
+	 * Open all heartbeats published in {@link HeartbeatPublisher#DEFAULT_DIR}.
+	 *
+	 * @return monitors, empty if the directory does not exist
+	 * @throws IOException
+	 */
+	public static List<HeartbeatMonitor> scan() throws IOException {
+		return scan(HeartbeatPublisher.DEFAULT_DIR);
+	}
+
+	/**
+	 * Open all heartbeats published in a directory. Hidden files, which include
+	 * regions still being created, and files that are not valid regions are
+	 * skipped.
+	 *
+	 * @param dir
+	 * @return monitors, empty if the directory does not exist
+	 * @throws IOException
+	 */
+	public static List<HeartbeatMonitor> scan(final String dir) throws IOException {
+		final List<HeartbeatMonitor> monitors = new ArrayList<HeartbeatMonitor>();
+		final Path d = Paths.get(dir);
+		if (!Files.isDirectory(d)) {
+			return monitors;
+		}
+		final DirectoryStream<Path> ds = Files.newDirectoryStream(d);
+		try {
+			for (final Path p : ds) {
+				if (p.getFileName().toString().startsWith(".")) {
+					continue;
+				}
+				try {
+					monitors.add(open(p));
+				} catch (IOException e) {
+					// not a region, or removed since listing
+				}
+			}
+		} finally {
+			ds.close();
+		}
+		return monitors;
+	}
+
+	/**
+	 * Copy the currently published metrics, retrying while an update is in
+	 * progress. Load fences keep the copy between the two reads of the
+	 * sequence, see {@link MemoryFences}.
+	 *
+	 * @return true if the metrics changed since the last refresh, false if they
+	 *         did not or if a consistent copy could not be taken
+	 */
+	public boolean refresh() {
+		final long[] l = snapshot.longs;
+		final double[] d = snapshot.doubles;
+		for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+			final long seq = region.getLong(HeartbeatPublisher.OFF_SEQUENCE);
+			if ((seq & 1) == 0) {
+				if (seq == sequence) {
+					return false;
+				}
+				MemoryFences.loadFence();
+				for (int i = 0; i < HeartbeatSnapshot.NUM_LONGS; i++) {
+					l[i] = region.getLong(HeartbeatPublisher.OFF_LONGS + 8 * i);
+				}
+				for (int i = 0; i < HeartbeatSnapshot.NUM_DOUBLES; i++) {
+					d[i] = region.getDouble(HeartbeatPublisher.OFF_DOUBLES + 8 * i);
+				}
+				final long time = region.getLong(HeartbeatPublisher.OFF_UPDATE_TIME);
+				MemoryFences.loadFence();
+				if (region.getLong(HeartbeatPublisher.OFF_SEQUENCE) == seq) {
+					sequence = seq;
+					updateTime = time;
+					return true;
+				}
+			}
+			if (attempt > 100) {
+				Thread.yield();
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Copy the metrics from the last {@link #refresh()}.
+	 *
+	 * @param snapshot
+	 * @return the snapshot
+	 */
+	public HeartbeatSnapshot snapshot(final HeartbeatSnapshot snapshot) {
+		return snapshot.copyFrom(this.snapshot);
+	}
+
+	/**
+	 * @return the region name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the publishing process's id, or 0 if unknown
+	 */
+	public long getPid() {
+		return pid;
+	}
+
+	/**
+	 * Read from the region each time, since a publisher's flags are set when it
+	 * is attached to a heartbeat, which may be after this monitor was opened.
+	 */
+	public boolean hasAccuracy() {
+		return (region.getShort(HeartbeatPublisher.OFF_FLAGS) & AbstractHeartbeatLog.FLAG_ACCURACY) != 0;
+	}
+
+	public boolean hasEnergy() {
+		return (region.getShort(HeartbeatPublisher.OFF_FLAGS) & AbstractHeartbeatLog.FLAG_ENERGY) != 0;
+	}
+
+	/**
+	 * @return the number of updates published as of the last refresh
+	 */
+	public long getUpdateCount() {
+		return sequence / 2;
+	}
+
+	/**
+	 * @return when the metrics were published, in milliseconds since the epoch
+	 */
+	public long getUpdateTime() {
+		return updateTime;
+	}
+
+	public long getWindowSize() {
+		return snapshot.getWindowSize();
+	}
+
+	public long getUserTag() {
+		return snapshot.getUserTag();
+	}
+
+	public long getGlobalTime() {
+		return snapshot.getGlobalTime();
+	}
+
+	public long getWindowTime() {
+		return snapshot.getWindowTime();
+	}
+
+	public long getGlobalWork() {
+		return snapshot.getGlobalWork();
+	}
+
+	public long getWindowWork() {
+		return snapshot.getWindowWork();
+	}
+
+	public double getGlobalPerf() {
+		return snapshot.getGlobalPerf();
+	}
+
+	public double getWindowPerf() {
+		return snapshot.getWindowPerf();
+	}
+
+	public double getInstantPerf() {
+		return snapshot.getInstantPerf();
+	}
+
+	public long getGlobalAccuracy() {
+		return snapshot.getGlobalAccuracy();
+	}
+
+	public long getWindowAccuracy() {
+		return snapshot.getWindowAccuracy();
+	}
+
+	public double getGlobalAccuracyRate() {
+		return snapshot.getGlobalAccuracyRate();
+	}
+
+	public double getWindowAccuracyRate() {
+		return snapshot.getWindowAccuracyRate();
+	}
+
+	public double getInstantAccuracyRate() {
+		return snapshot.getInstantAccuracyRate();
+	}
+
+	public long getGlobalEnergy() {
+		return snapshot.getGlobalEnergy();
+	}
+
+	public long getWindowEnergy() {
+		return snapshot.getWindowEnergy();
+	}
+
+	public double getGlobalPower() {
+		return snapshot.getGlobalPower();
+	}
+
+	public double getWindowPower() {
+		return snapshot.getWindowPower();
+	}
+
+	public double getInstantPower() {
+		return snapshot.getInstantPower();
+	}
+}
@@ -0,0 +1,310 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Hands out <code>Default*</code> heartbeats with a fixed window size from a
+ * slab of native contexts and window buffers allocated up front.
+ *
+ * {@link #acquire(FileOutputStream)} resets a free slot in place and
+ * disposing the heartbeat returns the slot to the pool, so neither does any
+ * native allocation, and both take constant time. A heartbeat that is never
+ * disposed returns its slot when it is reclaimed by {@link NativeCleaner}.
+ * When every slot is in use, heartbeats are created normally instead.
+ *
+ * The slab is a direct buffer, freed once the pool and all of its heartbeats
+ * are unreachable.
+ *
+ * @author Connor Imes
+ *
+ * @param <T>
+ *            the heartbeat type
+ */
+public final class HeartbeatPool<T extends AbstractDefaultHeartbeat> {
+
+	/**
+	 * Native operations for one heartbeat type.
+	 */
+	abstract static class Type<T> {
+		abstract int contextSize();
+
+		abstract int recordSize();
+
+		abstract int initInPlace(ByteBuffer ptr, ByteBuffer windowBuffer, int windowSize, int logFd);
+
+		abstract T wrap(ByteBuffer ptr, FileOutputStream logStream, NativeCleaner.Freer freer);
+
+		abstract T create(int windowSize, FileOutputStream logStream);
+	}
+
+	private static final Type<DefaultHeartbeat> HEARTBEAT = new Type<DefaultHeartbeat>() {
+		int contextSize() {
+			return HeartbeatJNI.get().contextSize();
+		}
+
+		int recordSize() {
+			return HeartbeatJNI.get().recordSize();
+		}
+
+		int initInPlace(final ByteBuffer ptr, final ByteBuffer windowBuffer, final int windowSize, final int logFd) {
+			return HeartbeatJNI.get().initInPlace(ptr, windowBuffer, windowSize, logFd);
+		}
+
+		DefaultHeartbeat wrap(final ByteBuffer ptr, final FileOutputStream logStream,
+				final NativeCleaner.Freer freer) {
+			return new DefaultHeartbeat(ptr, logStream, freer);
+		}
+
+		DefaultHeartbeat create(final int windowSize, final FileOutputStream logStream) {
+			return DefaultHeartbeat.create(windowSize, logStream);
+		}
+	};
+
+	private static final Type<DefaultHeartbeatAccuracy> HEARTBEAT_ACC = new Type<DefaultHeartbeatAccuracy>() {
+		int contextSize() {
+			return HeartbeatAccJNI.get().contextSize();
+		}
+
+		int recordSize() {
+			return HeartbeatAccJNI.get().recordSize();
+		}
+
+		int initInPlace(final ByteBuffer ptr, final ByteBuffer windowBuffer, final int windowSize, final int logFd) {
+			return HeartbeatAccJNI.get().initInPlace(ptr, windowBuffer, windowSize, logFd);
+		}
+
+		DefaultHeartbeatAccuracy wrap(final ByteBuffer ptr, final FileOutputStream logStream,
+				final NativeCleaner.Freer freer) {
+			return new DefaultHeartbeatAccuracy(ptr, logStream, freer);
+		}
+
+		DefaultHeartbeatAccuracy create(final int windowSize, final FileOutputStream logStream) {
+			return DefaultHeartbeatAccuracy.create(windowSize, logStream);
+		}
+	};
+
+	private static final Type<DefaultHeartbeatPower> HEARTBEAT_POW = new Type<DefaultHeartbeatPower>() {
+		int contextSize() {
+			return HeartbeatPowJNI.get().contextSize();
+		}
+
+		int recordSize() {
+			return HeartbeatPowJNI.get().recordSize();
+		}
+
+		int initInPlace(final ByteBuffer ptr, final ByteBuffer windowBuffer, final int windowSize, final int logFd) {
+			return HeartbeatPowJNI.get().initInPlace(ptr, windowBuffer, windowSize, logFd);
+		}
+
+		DefaultHeartbeatPower wrap(final ByteBuffer ptr, final FileOutputStream logStream,
+				final NativeCleaner.Freer freer) {
+			return new DefaultHeartbeatPower(ptr, logStream, freer);
+		}
+
+		DefaultHeartbeatPower create(final int windowSize, final FileOutputStream logStream) {
+			return DefaultHeartbeatPower.create(windowSize, logStream);
+		}
+	};
+
+	private static final Type<DefaultHeartbeatAccuracyPower> HEARTBEAT_ACC_POW =
+			new Type<DefaultHeartbeatAccuracyPower>() {
+		int contextSize() {
+			return HeartbeatAccPowJNI.get().contextSize();
+		}
+
+		int recordSize() {
+			return HeartbeatAccPowJNI.get().recordSize();
+		}
+
+		int initInPlace(final ByteBuffer ptr, final ByteBuffer windowBuffer, final int windowSize, final int logFd) {
+			return HeartbeatAccPowJNI.get().initInPlace(ptr, windowBuffer, windowSize, logFd);
+		}
+
+		DefaultHeartbeatAccuracyPower wrap(final ByteBuffer ptr, final FileOutputStream logStream,
+				final NativeCleaner.Freer freer) {
+			return new DefaultHeartbeatAccuracyPower(ptr, logStream, freer);
+		}
+
+		DefaultHeartbeatAccuracyPower create(final int windowSize, final FileOutputStream logStream) {
+			return DefaultHeartbeatAccuracyPower.create(windowSize, logStream);
+		}
+	};
+
+	/**
+	 * A context and its window buffer in the slab. Returns itself to the pool
+	 * when its heartbeat frees it.
+	 */
+	private static final class Slot implements NativeCleaner.Freer {
+		private final HeartbeatPool<?> pool;
+		private final ByteBuffer ptr;
+		private final ByteBuffer windowBuffer;
+
+		private Slot(final HeartbeatPool<?> pool, final ByteBuffer ptr, final ByteBuffer windowBuffer) {
+			this.pool = pool;
+			this.ptr = ptr;
+			this.windowBuffer = windowBuffer;
+		}
+
+		public void free(final ByteBuffer p) {
+			pool.release(this);
+		}
+
+		public long size(final ByteBuffer p) {
+			return ptr.capacity() + windowBuffer.capacity();
+		}
+	}
+
+	private final Type<T> type;
+	private final int windowSize;
+	private final int capacity;
+	// stack of free slots
+	private final Slot[] free;
+	private int numFree;
+
+	HeartbeatPool(final Type<T> type, final int windowSize, final int capacity) {
+		if (windowSize <= 0 || capacity <= 0) {
+			throw new IllegalArgumentException("Window size and capacity must be > 0");
+		}
+		this.type = type;
+		this.windowSize = windowSize;
+		this.capacity = capacity;
+		// keep every context and buffer 8-byte aligned for their 64-bit fields
+		final long contextSize = align(type.contextSize());
+		final long bufferSize = align((long) type.recordSize() * windowSize);
+		final long slabSize = (contextSize + bufferSize) * capacity;
+		if (slabSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Pool is too large: " + slabSize + " bytes");
+		}
+		final ByteBuffer slab = ByteBuffer.allocateDirect((int) slabSize).order(ByteOrder.nativeOrder());
+		this.free = new Slot[capacity];
+		for (int i = 0; i < capacity; i++) {
+			final int offset = (int) (i * (contextSize + bufferSize));
+			free[i] = new Slot(this, slice(slab, offset, (int) contextSize),
+					slice(slab, offset + (int) contextSize, (int) bufferSize));
+		}
+		this.numFree = capacity;
+	}
+
+	private static long align(final long size) {
+		return (size + 7) & ~7;
+	}
+
+	private static ByteBuffer slice(final ByteBuffer slab, final int offset, final int length) {
+		final ByteBuffer dup = slab.duplicate();
+		dup.position(offset);
+		dup.limit(offset + length);
+		return dup.slice().order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Create a pool of {@link DefaultHeartbeat}s.
+	 *
+	 * @param windowSize
+	 * @param capacity
+	 *            the number of contexts to allocate
+	 * @throws IllegalArgumentException
+	 *             if windowSize or capacity is not positive, or the pool would
+	 *             be too large
+	 */
+	public static HeartbeatPool<DefaultHeartbeat> forHeartbeat(final int windowSize, final int capacity) {
+		return new HeartbeatPool<DefaultHeartbeat>(HEARTBEAT, windowSize, capacity);
+	}
+
+	/**
+	 * Create a pool of {@link DefaultHeartbeatAccuracy}s.
+	 *
+	 * @see #forHeartbeat(int, int)
+	 */
+	public static HeartbeatPool<DefaultHeartbeatAccuracy> forHeartbeatAccuracy(final int windowSize,
+			final int capacity) {
+		return new HeartbeatPool<DefaultHeartbeatAccuracy>(HEARTBEAT_ACC, windowSize, capacity);
+	}
+
+	/**
+	 * Create a pool of {@link DefaultHeartbeatPower}s.
+	 *
+	 * @see #forHeartbeat(int, int)
+	 */
+	public static HeartbeatPool<DefaultHeartbeatPower> forHeartbeatPower(final int windowSize, final int capacity) {
+		return new HeartbeatPool<DefaultHeartbeatPower>(HEARTBEAT_POW, windowSize, capacity);
+	}
+
+	/**
+	 * Create a pool of {@link DefaultHeartbeatAccuracyPower}s.
+	 *
+	 * @see #forHeartbeat(int, int)
+	 */
+	public static HeartbeatPool<DefaultHeartbeatAccuracyPower> forHeartbeatAccuracyPower(final int windowSize,
+			final int capacity) {
+		return new HeartbeatPool<DefaultHeartbeatAccuracyPower>(HEARTBEAT_ACC_POW, windowSize, capacity);
+	}
+
+	/**
+	 * Get a heartbeat without a log.
+	 *
+	 * @see #acquire(FileOutputStream)
+	 */
+	public T acquire() {
+		return acquire(null);
+	}
+
+	/**
+	 * Get a heartbeat in a reset context from the pool, or a newly created one
+	 * if the pool is empty. Dispose it to return it to the pool.
+	 *
+	 * @param logStream
+	 * @throws IllegalStateException
+	 *             if the context cannot be initialized
+	 */
+	public T acquire(final FileOutputStream logStream) {
+		final int fd;
+		try {
+			fd = AbstractDefaultHeartbeat.getFileDescriptor(logStream);
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to get file descriptor");
+		}
+		final Slot s = pop();
+		if (s == null) {
+			return type.create(windowSize, logStream);
+		}
+		if (type.initInPlace(s.ptr, s.windowBuffer, windowSize, fd) != 0) {
+			release(s);
+			throw new IllegalStateException("Failed to initialize heartbeat");
+		}
+		return type.wrap(s.ptr, logStream, s);
+	}
+
+	private synchronized Slot pop() {
+		if (numFree == 0) {
+			return null;
+		}
+		final Slot s = free[--numFree];
+		free[numFree] = null;
+		return s;
+	}
+
+	private synchronized void release(final Slot s) {
+		free[numFree++] = s;
+	}
+
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * @return the number of contexts in the pool
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the number of contexts not in use
+	 */
+	public synchronized int getAvailable() {
+		return numFree;
+	}
+}
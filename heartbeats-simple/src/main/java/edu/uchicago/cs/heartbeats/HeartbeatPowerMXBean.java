@@ -0,0 +1,20 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * JMX management interface for a {@link HeartbeatPower}.
+ *
+ * @author Connor Imes
+ */
+public interface HeartbeatPowerMXBean extends HeartbeatMXBean {
+
+	long getGlobalEnergy();
+
+	long getWindowEnergy();
+
+	double getGlobalPower();
+
+	double getWindowPower();
+
+	double getInstantPower();
+
+}
@@ -0,0 +1,237 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Publishes a heartbeat's current metrics in a named shared-memory region, so
+ * that other processes can read them with plain memory loads and no IPC. On
+ * Linux the default directory, {@link #DEFAULT_DIR}, is backed by memory.
+ *
+ * The region is a small file with the following layout, in native byte order:
+ * <ul>
+ * <li>magic: u32, the ASCII bytes <code>HBSP</code> when read in native
+ * order</li>
+ * <li>version: u16, currently 1</li>
+ * <li>flags: u16, {@link AbstractHeartbeatLog#FLAG_ACCURACY} and/or
+ * {@link AbstractHeartbeatLog#FLAG_ENERGY}</li>
+ * <li>pid: u64, of the publishing process</li>
+ * <li>sequence: u64, odd while an update is in progress</li>
+ * <li>update time: u64, milliseconds since the epoch</li>
+ * <li>window size, user tag, global/window time, global/window work,
+ * global/window accuracy and global/window energy: u64 each</li>
+ * <li>global/window/instant performance, accuracy rate and power: f64
+ * each</li>
+ * </ul>
+ * Updates are protected by a sequence lock: a reader reads the sequence, the
+ * metrics, then the sequence again, and retries if the two differ or are odd.
+ * The writes of the sequence and the metrics are ordered by
+ * {@link MemoryFences}. See {@link HeartbeatMonitor}.
+ *
+ * Attach a publisher to a heartbeat with <code>setPublisher(...)</code>, or
+ * call {@link #publish(HeartbeatSnapshot)} directly, e.g. for a striped
+ * heartbeat. A publisher is used by a single heartbeat.
+ *
+ * @author Connor Imes
+ */
+public final class HeartbeatPublisher implements Closeable {
+
+	public static final String DEFAULT_DIR = "/dev/shm/heartbeats";
+	public static final int MAGIC = 0x50534248; // "HBSP" little-endian
+	public static final int VERSION = 1;
+
+	// region offsets
+	static final int OFF_MAGIC = 0;
+	static final int OFF_VERSION = 4;
+	static final int OFF_FLAGS = 6;
+	static final int OFF_PID = 8;
+	static final int OFF_SEQUENCE = 16;
+	static final int OFF_UPDATE_TIME = 24;
+	static final int OFF_LONGS = 32;
+	static final int OFF_DOUBLES = OFF_LONGS + 8 * HeartbeatSnapshot.NUM_LONGS;
+	static final int SIZE = OFF_DOUBLES + 8 * HeartbeatSnapshot.NUM_DOUBLES;
+
+	private final Path path;
+	/**
+	 * Identifies our file, which may since have been replaced, or null if the
+	 * file system has no file keys.
+	 */
+	private final Object fileKey;
+	private final MappedByteBuffer region;
+	private final int interval;
+	private int count;
+	private long sequence;
+	private boolean closed;
+
+	private HeartbeatPublisher(final Path path, final Object fileKey, final MappedByteBuffer region,
+			final int interval) {
+		this.path = path;
+		this.fileKey = fileKey;
+		this.region = region;
+		this.interval = interval;
+	}
+
+	/**
+	 * Create a publisher in {@link #DEFAULT_DIR} that publishes after every
+	 * heartbeat.
+	 *
+	 * @param name
+	 * @throws IOException
+	 */
+	public static HeartbeatPublisher create(final String name) throws IOException {
+		return create(DEFAULT_DIR, name, 1);
+	}
+
+	/**
+	 * Create a publisher, replacing any region with the same name. The new
+	 * region is initialized in a temporary file that is then renamed over the
+	 * old one, so monitors of the old region keep reading its last values
+	 * rather than a truncated file.
+	 *
+	 * @param dir
+	 *            created if it does not exist
+	 * @param name
+	 * @param interval
+	 *            publish after every interval-th heartbeat
+	 * @throws IOException
+	 * @throws IllegalArgumentException
+	 *             if name is empty, starts with '.' or contains a path
+	 *             separator, or interval is not positive
+	 */
+	public static HeartbeatPublisher create(final String dir, final String name, final int interval)
+			throws IOException {
+		if (name.isEmpty() || name.charAt(0) == '.' || name.indexOf('/') >= 0 || name.indexOf('\\') >= 0) {
+			throw new IllegalArgumentException("Invalid name: " + name);
+		}
+		if (interval <= 0) {
+			throw new IllegalArgumentException("Interval must be > 0");
+		}
+		final Path d = Paths.get(dir);
+		Files.createDirectories(d);
+		final Path p = d.resolve(name);
+		// hidden, so that HeartbeatMonitor#scan(String) skips it
+		final Path tmp = Files.createTempFile(d, "." + name, ".tmp");
+		try {
+			final MappedByteBuffer region;
+			final FileChannel ch = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			try {
+				region = ch.map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+			} finally {
+				ch.close();
+			}
+			region.order(ByteOrder.nativeOrder());
+			region.putShort(OFF_VERSION, (short) VERSION);
+			region.putLong(OFF_PID, getPid());
+			region.putInt(OFF_MAGIC, MAGIC);
+			final Object key = Files.readAttributes(tmp, BasicFileAttributes.class).fileKey();
+			Files.move(tmp, p, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			return new HeartbeatPublisher(p, key, region, interval);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static long getPid() {
+		// "pid@host" on HotSpot and most other JVMs
+		final String name = ManagementFactory.getRuntimeMXBean().getName();
+		try {
+			return Long.parseLong(name.substring(0, name.indexOf('@')));
+		} catch (RuntimeException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @return the path of the shared-memory region
+	 */
+	public String getPath() {
+		return path.toString();
+	}
+
+	/**
+	 * Record which metrics the heartbeat supports. Monitors read the flags each
+	 * time they are queried, so they see them even if they opened the region
+	 * before the publisher was attached.
+	 *
+	 * @param hasAccuracy
+	 * @param hasEnergy
+	 */
+	synchronized void bind(final boolean hasAccuracy, final boolean hasEnergy) {
+		region.putShort(OFF_FLAGS, (short) ((hasAccuracy ? AbstractHeartbeatLog.FLAG_ACCURACY : 0)
+				| (hasEnergy ? AbstractHeartbeatLog.FLAG_ENERGY : 0)));
+	}
+
+	/**
+	 * Count heartbeats issued by the attached heartbeat.
+	 *
+	 * @param n
+	 * @return true if it is time to publish
+	 */
+	boolean isDue(final int n) {
+		count += n;
+		if (count >= interval) {
+			count = 0;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Publish a snapshot's metrics.
+	 *
+	 * @param snapshot
+	 */
+	public synchronized void publish(final HeartbeatSnapshot snapshot) {
+		if (closed) {
+			return;
+		}
+		region.putLong(OFF_SEQUENCE, ++sequence);
+		MemoryFences.storeFence();
+		for (int i = 0; i < HeartbeatSnapshot.NUM_LONGS; i++) {
+			region.putLong(OFF_LONGS + 8 * i, snapshot.longs[i]);
+		}
+		for (int i = 0; i < HeartbeatSnapshot.NUM_DOUBLES; i++) {
+			region.putDouble(OFF_DOUBLES + 8 * i, snapshot.doubles[i]);
+		}
+		region.putLong(OFF_UPDATE_TIME, System.currentTimeMillis());
+		MemoryFences.storeFence();
+		region.putLong(OFF_SEQUENCE, ++sequence);
+	}
+
+	/**
+	 * Stop publishing and remove the region, unless another publisher has
+	 * since replaced it. Where the file system has no file keys, e.g. on
+	 * Windows, the region is always removed.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			if (fileKey != null) {
+				final BasicFileAttributes attrs;
+				try {
+					attrs = Files.readAttributes(path, BasicFileAttributes.class);
+				} catch (NoSuchFileException e) {
+					return;
+				}
+				if (!fileKey.equals(attrs.fileKey())) {
+					// replaced, e.g. by a restarted process
+					return;
+				}
+			}
+			Files.deleteIfExists(path);
+		}
+	}
+}
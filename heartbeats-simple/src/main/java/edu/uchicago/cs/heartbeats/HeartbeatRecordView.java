@@ -0,0 +1,188 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A flyweight cursor over a native heartbeat's window buffer. Fields of the
+ * current record are read in place using the native struct layout, so
+ * scanning the window does not copy, make system calls, or cross JNI.
+ *
+ * Position the cursor with {@link #moveTo(int)}; records
+ * <code>[0, {@link #getReadIndex()})</code> hold the current window. Fields
+ * that a heartbeat type does not support (e.g. energy for a
+ * {@link HeartbeatAccuracy}) are 0.
+ *
+ * A view reads native memory directly: it must not be used after the
+ * heartbeat is disposed, and values may change underneath it if heartbeats
+ * are issued concurrently. Instances are not thread-safe.
+ *
+ * @author Connor Imes
+ */
+public final class HeartbeatRecordView {
+	// heartbeat_window_state offsets at the start of the context struct
+	private static final int CTX_BUFFER_INDEX = 0;
+	private static final int CTX_READ_INDEX = 8;
+	private static final int CTX_WINDOW_SIZE = 16;
+
+	// common record field offsets
+	private static final int ID = 0;
+	private static final int USER_TAG = 8;
+	private static final int WORK = 16;
+	private static final int START_TIME = 24;
+	private static final int END_TIME = 32;
+	private static final int GLOBAL_PERF = 40;
+	private static final int WINDOW_PERF = 48;
+	private static final int INSTANT_PERF = 56;
+	private static final int COMMON_SIZE = 64;
+	// accuracy: accuracy, then global/window/instant rates
+	private static final int ACCURACY_SIZE = 32;
+	// energy: start, end, then global/window/instant power
+	private static final int ENERGY_SIZE = 40;
+
+	private final ByteBuffer records;
+	private final ByteBuffer context;
+	private final int recordSize;
+	private final int windowSize;
+	private final int accuracy;
+	private final int energy;
+	private int position;
+
+	/**
+	 * @param records
+	 *            the window buffer records
+	 * @param context
+	 *            the native context, for reading the window state
+	 * @param hasAccuracy
+	 *            if records include accuracy fields
+	 * @param hasEnergy
+	 *            if records include energy fields
+	 * @throws IllegalStateException
+	 *             if the buffer size does not match the expected layout
+	 */
+	HeartbeatRecordView(final ByteBuffer records, final ByteBuffer context, final boolean hasAccuracy,
+			final boolean hasEnergy) {
+		this.records = records.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+		this.context = context.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+		this.accuracy = hasAccuracy ? COMMON_SIZE : -1;
+		this.energy = hasEnergy ? COMMON_SIZE + (hasAccuracy ? ACCURACY_SIZE : 0) : -1;
+		this.recordSize = COMMON_SIZE + (hasAccuracy ? ACCURACY_SIZE : 0) + (hasEnergy ? ENERGY_SIZE : 0);
+		this.windowSize = (int) this.context.getLong(CTX_WINDOW_SIZE);
+		if (this.records.capacity() != (long) windowSize * recordSize) {
+			throw new IllegalStateException("Unexpected window buffer size: " + this.records.capacity());
+		}
+	}
+
+	/**
+	 * @return the number of records in the window buffer
+	 */
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * @return the number of records in the window buffer that belong to the
+	 *         current window
+	 */
+	public int getReadIndex() {
+		return (int) context.getLong(CTX_READ_INDEX);
+	}
+
+	/**
+	 * @return the index of the record that the next heartbeat will write
+	 */
+	public int getBufferIndex() {
+		return (int) context.getLong(CTX_BUFFER_INDEX);
+	}
+
+	/**
+	 * Position the cursor on a record.
+	 *
+	 * @param index
+	 * @return this view
+	 * @throws IndexOutOfBoundsException
+	 *             if index is not in [0, window size)
+	 */
+	public HeartbeatRecordView moveTo(final int index) {
+		if (index < 0 || index >= windowSize) {
+			throw new IndexOutOfBoundsException("index=" + index + ", window size=" + windowSize);
+		}
+		position = index * recordSize;
+		return this;
+	}
+
+	/**
+	 * @return the index of the current record
+	 */
+	public int getIndex() {
+		return position / recordSize;
+	}
+
+	public long getId() {
+		return records.getLong(position + ID);
+	}
+
+	public long getUserTag() {
+		return records.getLong(position + USER_TAG);
+	}
+
+	public long getWork() {
+		return records.getLong(position + WORK);
+	}
+
+	public long getStartTime() {
+		return records.getLong(position + START_TIME);
+	}
+
+	public long getEndTime() {
+		return records.getLong(position + END_TIME);
+	}
+
+	public double getGlobalPerf() {
+		return records.getDouble(position + GLOBAL_PERF);
+	}
+
+	public double getWindowPerf() {
+		return records.getDouble(position + WINDOW_PERF);
+	}
+
+	public double getInstantPerf() {
+		return records.getDouble(position + INSTANT_PERF);
+	}
+
+	public long getAccuracy() {
+		return accuracy < 0 ? 0 : records.getLong(position + accuracy);
+	}
+
+	public double getGlobalAccuracyRate() {
+		return accuracy < 0 ? 0.0 : records.getDouble(position + accuracy + 8);
+	}
+
+	public double getWindowAccuracyRate() {
+		return accuracy < 0 ? 0.0 : records.getDouble(position + accuracy + 16);
+	}
+
+	public double getInstantAccuracyRate() {
+		return accuracy < 0 ? 0.0 : records.getDouble(position + accuracy + 24);
+	}
+
+	public long getStartEnergy() {
+		return energy < 0 ? 0 : records.getLong(position + energy);
+	}
+
+	public long getEndEnergy() {
+		return energy < 0 ? 0 : records.getLong(position + energy + 8);
+	}
+
+	public double getGlobalPower() {
+		return energy < 0 ? 0.0 : records.getDouble(position + energy + 16);
+	}
+
+	public double getWindowPower() {
+		return energy < 0 ? 0.0 : records.getDouble(position + energy + 24);
+	}
+
+	public double getInstantPower() {
+		return energy < 0 ? 0.0 : records.getDouble(position + energy + 32);
+	}
+}
@@ -0,0 +1,378 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Named heartbeats shared by the subsystems of an application, so that they
+ * can be listed, read and disposed in one place.
+ *
+ * Heartbeats are created on first use by name and type with the registry's
+ * {@link HeartbeatBackend} and window size, or registered explicitly. Lookups
+ * of existing heartbeats are a single read of a {@link ConcurrentHashMap} and
+ * take no locks, so they may be done on the hot path, though callers usually
+ * look a heartbeat up once and keep the reference.
+ *
+ * {@link #close()} disposes all heartbeats, most recently registered first,
+ * e.g. from a shutdown hook.
+ *
+ * @author Connor Imes
+ */
+public final class HeartbeatRegistry implements AutoCloseable {
+	public static final int DEFAULT_WINDOW_SIZE = 20;
+
+	/**
+	 * Receives each heartbeat in {@link HeartbeatRegistry#forEach(Visitor,
+	 * HeartbeatSnapshot)}.
+	 */
+	public interface Visitor {
+		/**
+		 * @param name
+		 * @param hb
+		 * @param snapshot
+		 *            the heartbeat's metrics, only valid until this method
+		 *            returns
+		 */
+		void visit(String name, Heartbeat hb, HeartbeatSnapshot snapshot);
+	}
+
+	private static final class Entry {
+		private final String name;
+		private final Heartbeat hb;
+		private final long seq;
+
+		private Entry(final String name, final Heartbeat hb, final long seq) {
+			this.name = name;
+			this.hb = hb;
+			this.seq = seq;
+		}
+	}
+
+	private static final Comparator<Entry> NEWEST_FIRST = new Comparator<Entry>() {
+		public int compare(final Entry a, final Entry b) {
+			return a.seq < b.seq ? 1 : a.seq == b.seq ? 0 : -1;
+		}
+	};
+
+	private final ConcurrentMap<String, Entry> entries;
+	private final HeartbeatBackend backend;
+	private final int windowSize;
+	private final AtomicLong seq = new AtomicLong();
+	private volatile boolean closed;
+
+	/**
+	 * Create heartbeats with the backend from {@link HeartbeatBackend#get()}
+	 * and {@link #DEFAULT_WINDOW_SIZE}.
+	 */
+	public HeartbeatRegistry() {
+		this(HeartbeatBackend.get(), DEFAULT_WINDOW_SIZE, 16);
+	}
+
+	/**
+	 * @param backend
+	 *            creates heartbeats on first use
+	 * @param windowSize
+	 *            window size of created heartbeats
+	 * @param expectedSize
+	 *            the expected number of heartbeats, to size the map
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive or expectedSize is negative
+	 */
+	public HeartbeatRegistry(final HeartbeatBackend backend, final int windowSize, final int expectedSize) {
+		if (backend == null) {
+			throw new NullPointerException();
+		}
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException("Window size must be > 0");
+		}
+		if (expectedSize < 0) {
+			throw new IllegalArgumentException("Expected size must be >= 0");
+		}
+		this.backend = backend;
+		this.windowSize = windowSize;
+		this.entries = new ConcurrentHashMap<String, Entry>(Math.max(16, (int) (expectedSize / 0.75f) + 1));
+	}
+
+	private <T extends Heartbeat> T cast(final Entry e, final Class<T> type) {
+		if (!type.isInstance(e.hb)) {
+			throw new IllegalArgumentException("Heartbeat " + e.name + " is not a " + type.getSimpleName());
+		}
+		return type.cast(e.hb);
+	}
+
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Registry is closed");
+		}
+	}
+
+	/**
+	 * Add an entry unless the name is taken.
+	 *
+	 * @return the existing entry, or null if added
+	 */
+	private Entry putIfAbsent(final String name, final Heartbeat hb) {
+		checkOpen();
+		final Entry prev = entries.putIfAbsent(name, new Entry(name, hb, seq.getAndIncrement()));
+		if (prev == null && closed) {
+			// raced with close(), which may not have seen the entry
+			if (entries.remove(name) != null) {
+				hb.close();
+			}
+			checkOpen();
+		}
+		return prev;
+	}
+
+	private <T extends Heartbeat> T getOrCreate(final String name, final Class<T> type) {
+		if (name == null) {
+			throw new NullPointerException();
+		}
+		Entry e = entries.get(name);
+		if (e == null) {
+			checkOpen();
+			final T hb;
+			if (type == HeartbeatAccuracyPower.class) {
+				hb = type.cast(backend.createHeartbeatAccuracyPower(windowSize, null));
+			} else if (type == HeartbeatPower.class) {
+				hb = type.cast(backend.createHeartbeatPower(windowSize, null));
+			} else if (type == HeartbeatAccuracy.class) {
+				hb = type.cast(backend.createHeartbeatAccuracy(windowSize, null));
+			} else {
+				hb = type.cast(backend.createHeartbeat(windowSize, null));
+			}
+			try {
+				e = putIfAbsent(name, hb);
+			} catch (IllegalStateException ex) {
+				// closed since the check above
+				hb.close();
+				throw ex;
+			}
+			if (e == null) {
+				return hb;
+			}
+			// another thread created it first
+			hb.dispose();
+		}
+		return cast(e, type);
+	}
+
+	/**
+	 * Get the named heartbeat, creating it if needed.
+	 *
+	 * @param name
+	 * @return the heartbeat, which may be of a subtype if it was created as
+	 *         one
+	 * @throws IllegalStateException
+	 *             if the registry is closed
+	 */
+	public Heartbeat heartbeat(final String name) {
+		return getOrCreate(name, Heartbeat.class);
+	}
+
+	/**
+	 * Get the named heartbeat, creating it if needed.
+	 *
+	 * @param name
+	 * @return the heartbeat
+	 * @throws IllegalArgumentException
+	 *             if the name was registered with a type that does not
+	 *             support accuracy
+	 * @throws IllegalStateException
+	 *             if the registry is closed
+	 */
+	public HeartbeatAccuracy heartbeatAccuracy(final String name) {
+		return getOrCreate(name, HeartbeatAccuracy.class);
+	}
+
+	/**
+	 * Get the named heartbeat, creating it if needed.
+	 *
+	 * @param name
+	 * @return the heartbeat
+	 * @throws IllegalArgumentException
+	 *             if the name was registered with a type that does not
+	 *             support power
+	 * @throws IllegalStateException
+	 *             if the registry is closed
+	 */
+	public HeartbeatPower heartbeatPower(final String name) {
+		return getOrCreate(name, HeartbeatPower.class);
+	}
+
+	/**
+	 * Get the named heartbeat, creating it if needed.
+	 *
+	 * @param name
+	 * @return the heartbeat
+	 * @throws IllegalArgumentException
+	 *             if the name was registered with a type that does not
+	 *             support accuracy and power
+	 * @throws IllegalStateException
+	 *             if the registry is closed
+	 */
+	public HeartbeatAccuracyPower heartbeatAccuracyPower(final String name) {
+		return getOrCreate(name, HeartbeatAccuracyPower.class);
+	}
+
+	/**
+	 * Register a heartbeat created elsewhere, e.g. a striped heartbeat. The
+	 * registry disposes it when it is removed or the registry is closed.
+	 *
+	 * @param name
+	 * @param hb
+	 * @throws IllegalArgumentException
+	 *             if the name is taken
+	 * @throws IllegalStateException
+	 *             if the registry is closed
+	 */
+	public void register(final String name, final Heartbeat hb) {
+		if (name == null || hb == null) {
+			throw new NullPointerException();
+		}
+		if (putIfAbsent(name, hb) != null) {
+			throw new IllegalArgumentException("Heartbeat " + name + " is already registered");
+		}
+	}
+
+	/**
+	 * @param name
+	 * @return the named heartbeat, or null if there is none
+	 */
+	public Heartbeat get(final String name) {
+		final Entry e = entries.get(name);
+		return e == null ? null : e.hb;
+	}
+
+	/**
+	 * Remove and dispose the named heartbeat.
+	 *
+	 * @param name
+	 * @return true if there was one
+	 */
+	public boolean remove(final String name) {
+		final Entry e = entries.remove(name);
+		if (e == null) {
+			return false;
+		}
+		e.hb.close();
+		return true;
+	}
+
+	/**
+	 * @return the names of the registered heartbeats; a live view
+	 */
+	public Set<String> names() {
+		return Collections.unmodifiableSet(entries.keySet());
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	public HeartbeatBackend getBackend() {
+		return backend;
+	}
+
+	/**
+	 * Snapshot every heartbeat into a reusable holder and pass it to a visitor,
+	 * in no particular order, without allocating. Heartbeats that were
+	 * disposed without being removed are removed instead.
+	 *
+	 * The holder is not thread-safe, so concurrent callers need their own.
+	 *
+	 * @param visitor
+	 * @param snapshot
+	 *            reused for every heartbeat
+	 * @return the number of heartbeats visited
+	 */
+	public int forEach(final Visitor visitor, final HeartbeatSnapshot snapshot) {
+		int n = 0;
+		for (final Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+			final Entry e = it.next();
+			try {
+				e.hb.snapshot(snapshot);
+			} catch (IllegalStateException ex) {
+				// disposed by its owner
+				it.remove();
+				continue;
+			}
+			visitor.visit(e.name, e.hb, snapshot);
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Snapshot every heartbeat in one pass into a map of reusable holders,
+	 * which is updated to hold exactly the registered heartbeats.
+	 *
+	 * @param snapshots
+	 *            holders from a previous call, or an empty map
+	 * @return the map
+	 */
+	public Map<String, HeartbeatSnapshot> snapshot(final Map<String, HeartbeatSnapshot> snapshots) {
+		final HeartbeatSnapshot tmp = new HeartbeatSnapshot();
+		forEach(new Visitor() {
+			public void visit(final String name, final Heartbeat hb, final HeartbeatSnapshot snapshot) {
+				final HeartbeatSnapshot s = snapshots.get(name);
+				if (s == null) {
+					snapshots.put(name, new HeartbeatSnapshot().copyFrom(snapshot));
+				} else {
+					s.copyFrom(snapshot);
+				}
+			}
+		}, tmp);
+		// drop holders of removed heartbeats
+		for (final Iterator<String> it = snapshots.keySet().iterator(); it.hasNext();) {
+			if (!entries.containsKey(it.next())) {
+				it.remove();
+			}
+		}
+		return snapshots;
+	}
+
+	/**
+	 * Remove and dispose all heartbeats, most recently registered first. Later
+	 * attempts to create or register heartbeats fail. All heartbeats are
+	 * disposed even if some fail; the first failure is then rethrown.
+	 */
+	public void close() {
+		closed = true;
+		final List<Entry> all = new ArrayList<Entry>(entries.values());
+		Collections.sort(all, NEWEST_FIRST);
+		RuntimeException failure = null;
+		for (final Entry e : all) {
+			if (entries.remove(e.name, e)) {
+				try {
+					e.hb.close();
+				} catch (RuntimeException ex) {
+					if (failure == null) {
+						failure = ex;
+					} else {
+						failure.addSuppressed(ex);
+					}
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+}
@@ -0,0 +1,96 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * A reusable token for one unit of work at a time, from {@link #begin()} to
+ * {@link #end(long, long)}. The start and end times are read from the
+ * heartbeat's {@link HeartbeatClock} and, for power heartbeats, the start and
+ * end energy from its {@link EnergySource}, so callers only supply the work
+ * and accuracy. Beginning and ending a scope does not allocate.
+ *
+ * A scope is not thread-safe; use a separate scope from
+ * {@link AbstractDefaultHeartbeat#newScope()} for each thread that issues
+ * heartbeats concurrently, e.g., while holding a lock.
+ *
+ * @author Connor Imes
+ */
+public final class HeartbeatScope {
+	private final AbstractDefaultHeartbeat hb;
+	private boolean active;
+	private long userTag;
+	private long startTime;
+	private long startEnergy;
+
+	HeartbeatScope(final AbstractDefaultHeartbeat hb) {
+		this.hb = hb;
+	}
+
+	/**
+	 * Begin a unit of work with user tag 0.
+	 *
+	 * @return this scope
+	 * @throws IllegalStateException
+	 *             if the scope has already begun
+	 */
+	public HeartbeatScope begin() {
+		return begin(0);
+	}
+
+	/**
+	 * Begin a unit of work.
+	 *
+	 * @param userTag
+	 * @return this scope
+	 * @throws IllegalStateException
+	 *             if the scope has already begun
+	 */
+	public HeartbeatScope begin(final long userTag) {
+		if (active) {
+			throw new IllegalStateException("Scope already begun");
+		}
+		active = true;
+		this.userTag = userTag;
+		// read energy first and last so the interval covers the timed work
+		final EnergySource energy = hb.energySource;
+		this.startEnergy = energy == null ? 0 : energy.getEnergy();
+		this.startTime = hb.clock.getTime();
+		return this;
+	}
+
+	/**
+	 * End the unit of work and issue its heartbeat.
+	 *
+	 * @param work
+	 * @throws IllegalStateException
+	 *             if the scope has not begun, or the heartbeat is disposed
+	 */
+	public void end(final long work) {
+		end(work, 0);
+	}
+
+	/**
+	 * End the unit of work and issue its heartbeat. Accuracy is ignored by
+	 * heartbeats that do not track it.
+	 *
+	 * @param work
+	 * @param accuracy
+	 * @throws IllegalStateException
+	 *             if the scope has not begun, or the heartbeat is disposed
+	 */
+	public void end(final long work, final long accuracy) {
+		final long endTime = hb.clock.getTime();
+		final EnergySource energy = hb.energySource;
+		final long endEnergy = energy == null ? 0 : energy.getEnergy();
+		if (!active) {
+			throw new IllegalStateException("Scope not begun");
+		}
+		active = false;
+		hb.issueScope(userTag, work, startTime, endTime, accuracy, startEnergy, endEnergy);
+	}
+
+	/**
+	 * @return true between {@link #begin()} and {@link #end(long, long)}
+	 */
+	public boolean isActive() {
+		return active;
+	}
+}
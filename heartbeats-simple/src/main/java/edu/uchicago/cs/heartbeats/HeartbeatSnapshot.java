@@ -0,0 +1,131 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * A reusable holder for all of a heartbeat's metrics, captured together by
+ * {@link Heartbeat#snapshot(HeartbeatSnapshot)}.
+ *
+ * Values are stored in primitive arrays so that native implementations can
+ * fill them in a single call without allocating. Metrics that a heartbeat
+ * type does not support (e.g. energy for a {@link HeartbeatAccuracy}) are 0.
+ *
+ * Instances are not thread-safe.
+ *
+ * @author Connor Imes
+ */
+public final class HeartbeatSnapshot {
+	// long value indexes - native wrappers depend on this order
+	static final int WINDOW_SIZE = 0;
+	static final int USER_TAG = 1;
+	static final int GLOBAL_TIME = 2;
+	static final int WINDOW_TIME = 3;
+	static final int GLOBAL_WORK = 4;
+	static final int WINDOW_WORK = 5;
+	static final int GLOBAL_ACCURACY = 6;
+	static final int WINDOW_ACCURACY = 7;
+	static final int GLOBAL_ENERGY = 8;
+	static final int WINDOW_ENERGY = 9;
+	static final int NUM_LONGS = 10;
+
+	// double value indexes - native wrappers depend on this order
+	static final int GLOBAL_PERF = 0;
+	static final int WINDOW_PERF = 1;
+	static final int INSTANT_PERF = 2;
+	static final int GLOBAL_ACCURACY_RATE = 3;
+	static final int WINDOW_ACCURACY_RATE = 4;
+	static final int INSTANT_ACCURACY_RATE = 5;
+	static final int GLOBAL_POWER = 6;
+	static final int WINDOW_POWER = 7;
+	static final int INSTANT_POWER = 8;
+	static final int NUM_DOUBLES = 9;
+
+	final long[] longs = new long[NUM_LONGS];
+	final double[] doubles = new double[NUM_DOUBLES];
+
+	/**
+	 * Copy the values from another snapshot.
+	 *
+	 * @param other
+	 * @return this snapshot
+	 */
+	public HeartbeatSnapshot copyFrom(final HeartbeatSnapshot other) {
+		System.arraycopy(other.longs, 0, longs, 0, NUM_LONGS);
+		System.arraycopy(other.doubles, 0, doubles, 0, NUM_DOUBLES);
+		return this;
+	}
+
+	public long getWindowSize() {
+		return longs[WINDOW_SIZE];
+	}
+
+	public long getUserTag() {
+		return longs[USER_TAG];
+	}
+
+	public long getGlobalTime() {
+		return longs[GLOBAL_TIME];
+	}
+
+	public long getWindowTime() {
+		return longs[WINDOW_TIME];
+	}
+
+	public long getGlobalWork() {
+		return longs[GLOBAL_WORK];
+	}
+
+	public long getWindowWork() {
+		return longs[WINDOW_WORK];
+	}
+
+	public double getGlobalPerf() {
+		return doubles[GLOBAL_PERF];
+	}
+
+	public double getWindowPerf() {
+		return doubles[WINDOW_PERF];
+	}
+
+	public double getInstantPerf() {
+		return doubles[INSTANT_PERF];
+	}
+
+	public long getGlobalAccuracy() {
+		return longs[GLOBAL_ACCURACY];
+	}
+
+	public long getWindowAccuracy() {
+		return longs[WINDOW_ACCURACY];
+	}
+
+	public double getGlobalAccuracyRate() {
+		return doubles[GLOBAL_ACCURACY_RATE];
+	}
+
+	public double getWindowAccuracyRate() {
+		return doubles[WINDOW_ACCURACY_RATE];
+	}
+
+	public double getInstantAccuracyRate() {
+		return doubles[INSTANT_ACCURACY_RATE];
+	}
+
+	public long getGlobalEnergy() {
+		return longs[GLOBAL_ENERGY];
+	}
+
+	public long getWindowEnergy() {
+		return longs[WINDOW_ENERGY];
+	}
+
+	public double getGlobalPower() {
+		return doubles[GLOBAL_POWER];
+	}
+
+	public double getWindowPower() {
+		return doubles[WINDOW_POWER];
+	}
+
+	public double getInstantPower() {
+		return doubles[INSTANT_POWER];
+	}
+}
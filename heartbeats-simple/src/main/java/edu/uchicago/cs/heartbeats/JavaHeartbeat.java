@@ -0,0 +1,117 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A pure-Java {@link Heartbeat} implementation that produces the same results
+ * as {@link DefaultHeartbeat} without requiring the native library.
+ *
+ * Attempting to perform operations after {@link #dispose()} is called will
+ * result in an {@link IllegalStateException}.
+ *
+ * @author Connor Imes
+ */
+public class JavaHeartbeat extends AbstractJavaHeartbeat implements Heartbeat {
+
+	/**
+	 * Don't allow public instantiation. Should use {@link #create(int)}.
+	 *
+	 * @param windowSize
+	 * @param logStream
+	 */
+	protected JavaHeartbeat(final int windowSize, final FileOutputStream logStream) {
+		super(windowSize, logStream);
+	}
+
+	/**
+	 * Create a {@link JavaHeartbeat}.
+	 *
+	 * @param windowSize
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive
+	 */
+	public static JavaHeartbeat create(final int windowSize) {
+		return create(windowSize, null);
+	}
+
+	/**
+	 * Create a {@link JavaHeartbeat}.
+	 *
+	 * @param windowSize
+	 * @param logStream
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive
+	 */
+	public static JavaHeartbeat create(final int windowSize, final FileOutputStream logStream) {
+		return new JavaHeartbeat(windowSize, logStream);
+	}
+
+	/**
+	 * Create a {@link JavaHeartbeat} that logs full windows through an
+	 * {@link AsyncLogWriter} instead of on the heartbeat thread.
+	 *
+	 * @param windowSize
+	 * @param logStream
+	 * @param writer
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive
+	 */
+	public static JavaHeartbeat create(final int windowSize, final FileOutputStream logStream,
+			final AsyncLogWriter writer) {
+		final JavaHeartbeat hb = new JavaHeartbeat(windowSize, logStream);
+		hb.enableAsyncLog(writer);
+		return hb;
+	}
+
+	/**
+	 * Create a {@link JavaHeartbeat} that writes full windows to a
+	 * log such as a {@link HeartbeatLogSink} or {@link MappedHeartbeatLog}. The
+	 * log is not closed when the heartbeat is disposed.
+	 *
+	 * @param windowSize
+	 * @param logSink
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive
+	 * @throws IllegalStateException
+	 *             if the log is already used by another heartbeat
+	 */
+	public static JavaHeartbeat createWithLogSink(final int windowSize, final AbstractHeartbeatLog logSink) {
+		final JavaHeartbeat hb = new JavaHeartbeat(windowSize, null);
+		hb.enableLogSink(logSink, false, false);
+		return hb;
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		enforceNotDisposed();
+		record(userTag, work, startTime, endTime);
+		advance();
+	}
+
+	@Override
+	protected AbstractJavaHeartbeat newWindowCopy() {
+		return new JavaHeartbeat(windowSize, null);
+	}
+
+	@Override
+	protected String getLogHeader() {
+		return format("%-6s %-6s %-11s %-15s %-15s %-15s %-15s %-15s\n",
+				"HB", "Tag", "Work", "Start_Time", "End_Time", "Global_Perf", "Window_Perf", "Instant_Perf");
+	}
+
+	@Override
+	protected void appendLogRecord(final StringBuilder sb, final int i) {
+		sb.append(format("%-6d %-6d %-11d %-15d %-15d %-15.6f %-15.6f %-15.6f\n",
+				ids[i], userTags[i], works[i], startTimes[i], endTimes[i],
+				perfGlobal[i], perfWindow[i], perfInstant[i]));
+	}
+
+	@Override
+	protected void writeLogSinkRecord(final int i) throws IOException {
+		logSink.record(ids[i], userTags[i], works[i], startTimes[i], endTimes[i],
+				perfGlobal[i], perfWindow[i], perfInstant[i],
+				0, 0.0, 0.0, 0.0,
+				0, 0, 0.0, 0.0, 0.0);
+	}
+
+}
@@ -0,0 +1,193 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A pure-Java {@link HeartbeatAccuracy} implementation that produces the same
+ * results as {@link DefaultHeartbeatAccuracy} without requiring the native
+ * library.
+ *
+ * Attempting to perform operations after {@link #dispose()} is called will
+ * result in an {@link IllegalStateException}.
+ *
+ * @author Connor Imes
+ */
+public class JavaHeartbeatAccuracy extends AbstractJavaHeartbeat implements HeartbeatAccuracy {
+	protected final long[] accuracies;
+	protected final double[] accGlobal;
+	protected final double[] accWindow;
+	protected final double[] accInstant;
+	protected long accuracyGlobal;
+	protected long accuracyWindow;
+
+	/**
+	 * Don't allow public instantiation. Should use {@link #create(int)}.
+	 *
+	 * @param windowSize
+	 * @param logStream
+	 */
+	protected JavaHeartbeatAccuracy(final int windowSize, final FileOutputStream logStream) {
+		super(windowSize, logStream);
+		this.accuracies = new long[windowSize];
+		this.accGlobal = new double[windowSize];
+		this.accWindow = new double[windowSize];
+		this.accInstant = new double[windowSize];
+	}
+
+	/**
+	 * Create a {@link JavaHeartbeatAccuracy}.
+	 *
+	 * @param windowSize
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive
+	 */
+	public static JavaHeartbeatAccuracy create(final int windowSize) {
+		return create(windowSize, null);
+	}
+
+	/**
+	 * Create a {@link JavaHeartbeatAccuracy}.
+	 *
+	 * @param windowSize
+	 * @param logStream
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive
+	 */
+	public static JavaHeartbeatAccuracy create(final int windowSize, final FileOutputStream logStream) {
+		return new JavaHeartbeatAccuracy(windowSize, logStream);
+	}
+
+	/**
+	 * Create a {@link JavaHeartbeatAccuracy} that logs full windows through an
+	 * {@link AsyncLogWriter} instead of on the heartbeat thread.
+	 *
+	 * @param windowSize
+	 * @param logStream
+	 * @param writer
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive
+	 */
+	public static JavaHeartbeatAccuracy create(final int windowSize, final FileOutputStream logStream,
+			final AsyncLogWriter writer) {
+		final JavaHeartbeatAccuracy hb = new JavaHeartbeatAccuracy(windowSize, logStream);
+		hb.enableAsyncLog(writer);
+		return hb;
+	}
+
+	/**
+	 * Create a {@link JavaHeartbeatAccuracy} that writes full windows to a
+	 * log such as a {@link HeartbeatLogSink} or {@link MappedHeartbeatLog}. The
+	 * log is not closed when the heartbeat is disposed.
+	 *
+	 * @param windowSize
+	 * @param logSink
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive
+	 * @throws IllegalStateException
+	 *             if the log is already used by another heartbeat
+	 */
+	public static JavaHeartbeatAccuracy createWithLogSink(final int windowSize, final AbstractHeartbeatLog logSink) {
+		final JavaHeartbeatAccuracy hb = new JavaHeartbeatAccuracy(windowSize, null);
+		hb.enableLogSink(logSink, true, false);
+		return hb;
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy) {
+		enforceNotDisposed();
+		final int i = bufferIndex;
+		if (isWindowFull()) {
+			accuracyWindow -= accuracies[i];
+		}
+		record(userTag, work, startTime, endTime);
+		accuracyGlobal += accuracy;
+		accuracyWindow += accuracy;
+		accuracies[i] = accuracy;
+		accGlobal[i] = getRate(accuracyGlobal, timeGlobal);
+		accWindow[i] = getRate(accuracyWindow, timeWindow);
+		accInstant[i] = getRate(accuracy, endTime - startTime);
+		advance();
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		heartbeat(userTag, work, startTime, endTime, 0);
+	}
+
+	@Override
+	protected AbstractJavaHeartbeat newWindowCopy() {
+		return new JavaHeartbeatAccuracy(windowSize, null);
+	}
+
+	@Override
+	protected void copyWindowFrom(final AbstractJavaHeartbeat src) {
+		super.copyWindowFrom(src);
+		final JavaHeartbeatAccuracy other = (JavaHeartbeatAccuracy) src;
+		System.arraycopy(other.accuracies, 0, accuracies, 0, windowSize);
+		System.arraycopy(other.accGlobal, 0, accGlobal, 0, windowSize);
+		System.arraycopy(other.accWindow, 0, accWindow, 0, windowSize);
+		System.arraycopy(other.accInstant, 0, accInstant, 0, windowSize);
+	}
+
+	@Override
+	protected String getLogHeader() {
+		return format("%-6s %-6s %-11s %-15s %-15s %-15s %-15s %-15s %-11s %-15s %-15s %-15s\n",
+				"HB", "Tag", "Work", "Start_Time", "End_Time", "Global_Perf", "Window_Perf", "Instant_Perf",
+				"Accuracy", "Global_Accuracy", "Window_Accuracy", "Instant_Accuracy");
+	}
+
+	@Override
+	protected void appendLogRecord(final StringBuilder sb, final int i) {
+		sb.append(format("%-6d %-6d %-11d %-15d %-15d %-15.6f %-15.6f %-15.6f %-11d %-15.6f %-15.6f %-15.6f\n",
+				ids[i], userTags[i], works[i], startTimes[i], endTimes[i],
+				perfGlobal[i], perfWindow[i], perfInstant[i],
+				accuracies[i], accGlobal[i], accWindow[i], accInstant[i]));
+	}
+
+	@Override
+	protected void writeLogSinkRecord(final int i) throws IOException {
+		logSink.record(ids[i], userTags[i], works[i], startTimes[i], endTimes[i],
+				perfGlobal[i], perfWindow[i], perfInstant[i],
+				accuracies[i], accGlobal[i], accWindow[i], accInstant[i],
+				0, 0, 0.0, 0.0, 0.0);
+	}
+
+	public long getGlobalAccuracy() {
+		enforceNotDisposed();
+		return accuracyGlobal;
+	}
+
+	public long getWindowAccuracy() {
+		enforceNotDisposed();
+		return accuracyWindow;
+	}
+
+	public double getGlobalAccuracyRate() {
+		enforceNotDisposed();
+		return getRate(accuracyGlobal, timeGlobal);
+	}
+
+	public double getWindowAccuracyRate() {
+		enforceNotDisposed();
+		return getRate(accuracyWindow, timeWindow);
+	}
+
+	public double getInstantAccuracyRate() {
+		enforceNotDisposed();
+		return accInstant[lastIndex()];
+	}
+
+	@Override
+	public HeartbeatSnapshot snapshot(final HeartbeatSnapshot snapshot) {
+		super.snapshot(snapshot);
+		final long[] l = snapshot.longs;
+		final double[] d = snapshot.doubles;
+		l[HeartbeatSnapshot.GLOBAL_ACCURACY] = accuracyGlobal;
+		l[HeartbeatSnapshot.WINDOW_ACCURACY] = accuracyWindow;
+		d[HeartbeatSnapshot.GLOBAL_ACCURACY_RATE] = getRate(accuracyGlobal, timeGlobal);
+		d[HeartbeatSnapshot.WINDOW_ACCURACY_RATE] = getRate(accuracyWindow, timeWindow);
+		d[HeartbeatSnapshot.INSTANT_ACCURACY_RATE] = accInstant[lastIndex()];
+		return snapshot;
+	}
+
+}
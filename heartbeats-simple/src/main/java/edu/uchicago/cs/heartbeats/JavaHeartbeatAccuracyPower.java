@@ -0,0 +1,265 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A pure-Java {@link HeartbeatAccuracyPower} implementation that produces the
+ * same results as {@link DefaultHeartbeatAccuracyPower} without requiring the
+ * native library.
+ *
+ * Attempting to perform operations after {@link #dispose()} is called will
+ * result in an {@link IllegalStateException}.
+ *
+ * @author Connor Imes
+ */
+public class JavaHeartbeatAccuracyPower extends AbstractJavaHeartbeat implements HeartbeatAccuracyPower {
+	protected final long[] accuracies;
+	protected final double[] accGlobal;
+	protected final double[] accWindow;
+	protected final double[] accInstant;
+	protected long accuracyGlobal;
+	protected long accuracyWindow;
+
+	protected final long[] startEnergies;
+	protected final long[] endEnergies;
+	protected final double[] powGlobal;
+	protected final double[] powWindow;
+	protected final double[] powInstant;
+	protected long energyGlobal;
+	protected long energyWindow;
+
+	/**
+	 * Don't allow public instantiation. Should use {@link #create(int)}.
+	 *
+	 * @param windowSize
+	 * @param logStream
+	 */
+	protected JavaHeartbeatAccuracyPower(final int windowSize, final FileOutputStream logStream) {
+		super(windowSize, logStream);
+		this.accuracies = new long[windowSize];
+		this.accGlobal = new double[windowSize];
+		this.accWindow = new double[windowSize];
+		this.accInstant = new double[windowSize];
+		this.startEnergies = new long[windowSize];
+		this.endEnergies = new long[windowSize];
+		this.powGlobal = new double[windowSize];
+		this.powWindow = new double[windowSize];
+		this.powInstant = new double[windowSize];
+	}
+
+	/**
+	 * Create a {@link JavaHeartbeatAccuracyPower}.
+	 *
+	 * @param windowSize
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive
+	 */
+	public static JavaHeartbeatAccuracyPower create(final int windowSize) {
+		return create(windowSize, null);
+	}
+
+	/**
+	 * Create a {@link JavaHeartbeatAccuracyPower}.
+	 *
+	 * @param windowSize
+	 * @param logStream
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive
+	 */
+	public static JavaHeartbeatAccuracyPower create(final int windowSize, final FileOutputStream logStream) {
+		return new JavaHeartbeatAccuracyPower(windowSize, logStream);
+	}
+
+	/**
+	 * Create a {@link JavaHeartbeatAccuracyPower} that logs full windows through an
+	 * {@link AsyncLogWriter} instead of on the heartbeat thread.
+	 *
+	 * @param windowSize
+	 * @param logStream
+	 * @param writer
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive
+	 */
+	public static JavaHeartbeatAccuracyPower create(final int windowSize, final FileOutputStream logStream,
+			final AsyncLogWriter writer) {
+		final JavaHeartbeatAccuracyPower hb = new JavaHeartbeatAccuracyPower(windowSize, logStream);
+		hb.enableAsyncLog(writer);
+		return hb;
+	}
+
+	/**
+	 * Create a {@link JavaHeartbeatAccuracyPower} that writes full windows to a
+	 * log such as a {@link HeartbeatLogSink} or {@link MappedHeartbeatLog}. The
+	 * log is not closed when the heartbeat is disposed.
+	 *
+	 * @param windowSize
+	 * @param logSink
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive
+	 * @throws IllegalStateException
+	 *             if the log is already used by another heartbeat
+	 */
+	public static JavaHeartbeatAccuracyPower createWithLogSink(final int windowSize, final AbstractHeartbeatLog logSink) {
+		final JavaHeartbeatAccuracyPower hb = new JavaHeartbeatAccuracyPower(windowSize, null);
+		hb.enableLogSink(logSink, true, true);
+		return hb;
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy, final long startEnergy, final long endEnergy) {
+		enforceNotDisposed();
+		final int i = bufferIndex;
+		final long time = endTime - startTime;
+		final long energy = endEnergy - startEnergy;
+		if (isWindowFull()) {
+			accuracyWindow -= accuracies[i];
+			energyWindow -= endEnergies[i] - startEnergies[i];
+		}
+		record(userTag, work, startTime, endTime);
+		accuracyGlobal += accuracy;
+		accuracyWindow += accuracy;
+		accuracies[i] = accuracy;
+		accGlobal[i] = getRate(accuracyGlobal, timeGlobal);
+		accWindow[i] = getRate(accuracyWindow, timeWindow);
+		accInstant[i] = getRate(accuracy, time);
+		energyGlobal += energy;
+		energyWindow += energy;
+		startEnergies[i] = startEnergy;
+		endEnergies[i] = endEnergy;
+		powGlobal[i] = getPower(energyGlobal, timeGlobal);
+		powWindow[i] = getPower(energyWindow, timeWindow);
+		powInstant[i] = getPower(energy, time);
+		advance();
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long startEnergy, final long endEnergy) {
+		heartbeat(userTag, work, startTime, endTime, 0, startEnergy, endEnergy);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy) {
+		heartbeat(userTag, work, startTime, endTime, accuracy, 0, 0);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		heartbeat(userTag, work, startTime, endTime, 0, 0, 0);
+	}
+
+	@Override
+	protected AbstractJavaHeartbeat newWindowCopy() {
+		return new JavaHeartbeatAccuracyPower(windowSize, null);
+	}
+
+	@Override
+	protected void copyWindowFrom(final AbstractJavaHeartbeat src) {
+		super.copyWindowFrom(src);
+		final JavaHeartbeatAccuracyPower other = (JavaHeartbeatAccuracyPower) src;
+		System.arraycopy(other.accuracies, 0, accuracies, 0, windowSize);
+		System.arraycopy(other.accGlobal, 0, accGlobal, 0, windowSize);
+		System.arraycopy(other.accWindow, 0, accWindow, 0, windowSize);
+		System.arraycopy(other.accInstant, 0, accInstant, 0, windowSize);
+		System.arraycopy(other.startEnergies, 0, startEnergies, 0, windowSize);
+		System.arraycopy(other.endEnergies, 0, endEnergies, 0, windowSize);
+		System.arraycopy(other.powGlobal, 0, powGlobal, 0, windowSize);
+		System.arraycopy(other.powWindow, 0, powWindow, 0, windowSize);
+		System.arraycopy(other.powInstant, 0, powInstant, 0, windowSize);
+	}
+
+	@Override
+	protected String getLogHeader() {
+		return format("%-6s %-6s %-11s %-15s %-15s %-15s %-15s %-15s %-11s %-15s %-15s %-15s"
+				+ " %-15s %-15s %-15s %-15s %-15s\n",
+				"HB", "Tag", "Work", "Start_Time", "End_Time", "Global_Perf", "Window_Perf", "Instant_Perf",
+				"Accuracy", "Global_Accuracy", "Window_Accuracy", "Instant_Accuracy",
+				"Start_Energy", "End_Energy", "Global_Power", "Window_Power", "Instant_Power");
+	}
+
+	@Override
+	protected void appendLogRecord(final StringBuilder sb, final int i) {
+		sb.append(format("%-6d %-6d %-11d %-15d %-15d %-15.6f %-15.6f %-15.6f %-11d %-15.6f %-15.6f %-15.6f"
+				+ " %-15d %-15d %-15.6f %-15.6f %-15.6f\n",
+				ids[i], userTags[i], works[i], startTimes[i], endTimes[i],
+				perfGlobal[i], perfWindow[i], perfInstant[i],
+				accuracies[i], accGlobal[i], accWindow[i], accInstant[i],
+				startEnergies[i], endEnergies[i], powGlobal[i], powWindow[i], powInstant[i]));
+	}
+
+	@Override
+	protected void writeLogSinkRecord(final int i) throws IOException {
+		logSink.record(ids[i], userTags[i], works[i], startTimes[i], endTimes[i],
+				perfGlobal[i], perfWindow[i], perfInstant[i],
+				accuracies[i], accGlobal[i], accWindow[i], accInstant[i],
+				startEnergies[i], endEnergies[i], powGlobal[i], powWindow[i], powInstant[i]);
+	}
+
+	public long getGlobalAccuracy() {
+		enforceNotDisposed();
+		return accuracyGlobal;
+	}
+
+	public long getWindowAccuracy() {
+		enforceNotDisposed();
+		return accuracyWindow;
+	}
+
+	public double getGlobalAccuracyRate() {
+		enforceNotDisposed();
+		return getRate(accuracyGlobal, timeGlobal);
+	}
+
+	public double getWindowAccuracyRate() {
+		enforceNotDisposed();
+		return getRate(accuracyWindow, timeWindow);
+	}
+
+	public double getInstantAccuracyRate() {
+		enforceNotDisposed();
+		return accInstant[lastIndex()];
+	}
+
+	public long getGlobalEnergy() {
+		enforceNotDisposed();
+		return energyGlobal;
+	}
+
+	public long getWindowEnergy() {
+		enforceNotDisposed();
+		return energyWindow;
+	}
+
+	public double getGlobalPower() {
+		enforceNotDisposed();
+		return getPower(energyGlobal, timeGlobal);
+	}
+
+	public double getWindowPower() {
+		enforceNotDisposed();
+		return getPower(energyWindow, timeWindow);
+	}
+
+	public double getInstantPower() {
+		enforceNotDisposed();
+		return powInstant[lastIndex()];
+	}
+
+	@Override
+	public HeartbeatSnapshot snapshot(final HeartbeatSnapshot snapshot) {
+		super.snapshot(snapshot);
+		final long[] l = snapshot.longs;
+		final double[] d = snapshot.doubles;
+		l[HeartbeatSnapshot.GLOBAL_ACCURACY] = accuracyGlobal;
+		l[HeartbeatSnapshot.WINDOW_ACCURACY] = accuracyWindow;
+		d[HeartbeatSnapshot.GLOBAL_ACCURACY_RATE] = getRate(accuracyGlobal, timeGlobal);
+		d[HeartbeatSnapshot.WINDOW_ACCURACY_RATE] = getRate(accuracyWindow, timeWindow);
+		d[HeartbeatSnapshot.INSTANT_ACCURACY_RATE] = accInstant[lastIndex()];
+		l[HeartbeatSnapshot.GLOBAL_ENERGY] = energyGlobal;
+		l[HeartbeatSnapshot.WINDOW_ENERGY] = energyWindow;
+		d[HeartbeatSnapshot.GLOBAL_POWER] = getPower(energyGlobal, timeGlobal);
+		d[HeartbeatSnapshot.WINDOW_POWER] = getPower(energyWindow, timeWindow);
+		d[HeartbeatSnapshot.INSTANT_POWER] = powInstant[lastIndex()];
+		return snapshot;
+	}
+
+}
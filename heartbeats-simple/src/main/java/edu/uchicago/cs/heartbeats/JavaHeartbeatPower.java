@@ -0,0 +1,198 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A pure-Java {@link HeartbeatPower} implementation that produces the same
+ * results as {@link DefaultHeartbeatPower} without requiring the native
+ * library.
+ *
+ * Attempting to perform operations after {@link #dispose()} is called will
+ * result in an {@link IllegalStateException}.
+ *
+ * @author Connor Imes
+ */
+public class JavaHeartbeatPower extends AbstractJavaHeartbeat implements HeartbeatPower {
+	protected final long[] startEnergies;
+	protected final long[] endEnergies;
+	protected final double[] powGlobal;
+	protected final double[] powWindow;
+	protected final double[] powInstant;
+	protected long energyGlobal;
+	protected long energyWindow;
+
+	/**
+	 * Don't allow public instantiation. Should use {@link #create(int)}.
+	 *
+	 * @param windowSize
+	 * @param logStream
+	 */
+	protected JavaHeartbeatPower(final int windowSize, final FileOutputStream logStream) {
+		super(windowSize, logStream);
+		this.startEnergies = new long[windowSize];
+		this.endEnergies = new long[windowSize];
+		this.powGlobal = new double[windowSize];
+		this.powWindow = new double[windowSize];
+		this.powInstant = new double[windowSize];
+	}
+
+	/**
+	 * Create a {@link JavaHeartbeatPower}.
+	 *
+	 * @param windowSize
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive
+	 */
+	public static JavaHeartbeatPower create(final int windowSize) {
+		return create(windowSize, null);
+	}
+
+	/**
+	 * Create a {@link JavaHeartbeatPower}.
+	 *
+	 * @param windowSize
+	 * @param logStream
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive
+	 */
+	public static JavaHeartbeatPower create(final int windowSize, final FileOutputStream logStream) {
+		return new JavaHeartbeatPower(windowSize, logStream);
+	}
+
+	/**
+	 * Create a {@link JavaHeartbeatPower} that logs full windows through an
+	 * {@link AsyncLogWriter} instead of on the heartbeat thread.
+	 *
+	 * @param windowSize
+	 * @param logStream
+	 * @param writer
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive
+	 */
+	public static JavaHeartbeatPower create(final int windowSize, final FileOutputStream logStream,
+			final AsyncLogWriter writer) {
+		final JavaHeartbeatPower hb = new JavaHeartbeatPower(windowSize, logStream);
+		hb.enableAsyncLog(writer);
+		return hb;
+	}
+
+	/**
+	 * Create a {@link JavaHeartbeatPower} that writes full windows to a
+	 * log such as a {@link HeartbeatLogSink} or {@link MappedHeartbeatLog}. The
+	 * log is not closed when the heartbeat is disposed.
+	 *
+	 * @param windowSize
+	 * @param logSink
+	 * @throws IllegalArgumentException
+	 *             if windowSize is not positive
+	 * @throws IllegalStateException
+	 *             if the log is already used by another heartbeat
+	 */
+	public static JavaHeartbeatPower createWithLogSink(final int windowSize, final AbstractHeartbeatLog logSink) {
+		final JavaHeartbeatPower hb = new JavaHeartbeatPower(windowSize, null);
+		hb.enableLogSink(logSink, false, true);
+		return hb;
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long startEnergy, final long endEnergy) {
+		enforceNotDisposed();
+		final int i = bufferIndex;
+		final long energy = endEnergy - startEnergy;
+		if (isWindowFull()) {
+			energyWindow -= endEnergies[i] - startEnergies[i];
+		}
+		record(userTag, work, startTime, endTime);
+		energyGlobal += energy;
+		energyWindow += energy;
+		startEnergies[i] = startEnergy;
+		endEnergies[i] = endEnergy;
+		powGlobal[i] = getPower(energyGlobal, timeGlobal);
+		powWindow[i] = getPower(energyWindow, timeWindow);
+		powInstant[i] = getPower(energy, endTime - startTime);
+		advance();
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		heartbeat(userTag, work, startTime, endTime, 0, 0);
+	}
+
+	@Override
+	protected AbstractJavaHeartbeat newWindowCopy() {
+		return new JavaHeartbeatPower(windowSize, null);
+	}
+
+	@Override
+	protected void copyWindowFrom(final AbstractJavaHeartbeat src) {
+		super.copyWindowFrom(src);
+		final JavaHeartbeatPower other = (JavaHeartbeatPower) src;
+		System.arraycopy(other.startEnergies, 0, startEnergies, 0, windowSize);
+		System.arraycopy(other.endEnergies, 0, endEnergies, 0, windowSize);
+		System.arraycopy(other.powGlobal, 0, powGlobal, 0, windowSize);
+		System.arraycopy(other.powWindow, 0, powWindow, 0, windowSize);
+		System.arraycopy(other.powInstant, 0, powInstant, 0, windowSize);
+	}
+
+	@Override
+	protected String getLogHeader() {
+		return format("%-6s %-6s %-11s %-15s %-15s %-15s %-15s %-15s %-15s %-15s %-15s %-15s %-15s\n",
+				"HB", "Tag", "Work", "Start_Time", "End_Time", "Global_Perf", "Window_Perf", "Instant_Perf",
+				"Start_Energy", "End_Energy", "Global_Power", "Window_Power", "Instant_Power");
+	}
+
+	@Override
+	protected void appendLogRecord(final StringBuilder sb, final int i) {
+		sb.append(format("%-6d %-6d %-11d %-15d %-15d %-15.6f %-15.6f %-15.6f %-15d %-15d %-15.6f %-15.6f %-15.6f\n",
+				ids[i], userTags[i], works[i], startTimes[i], endTimes[i],
+				perfGlobal[i], perfWindow[i], perfInstant[i],
+				startEnergies[i], endEnergies[i], powGlobal[i], powWindow[i], powInstant[i]));
+	}
+
+	@Override
+	protected void writeLogSinkRecord(final int i) throws IOException {
+		logSink.record(ids[i], userTags[i], works[i], startTimes[i], endTimes[i],
+				perfGlobal[i], perfWindow[i], perfInstant[i],
+				0, 0.0, 0.0, 0.0,
+				startEnergies[i], endEnergies[i], powGlobal[i], powWindow[i], powInstant[i]);
+	}
+
+	public long getGlobalEnergy() {
+		enforceNotDisposed();
+		return energyGlobal;
+	}
+
+	public long getWindowEnergy() {
+		enforceNotDisposed();
+		return energyWindow;
+	}
+
+	public double getGlobalPower() {
+		enforceNotDisposed();
+		return getPower(energyGlobal, timeGlobal);
+	}
+
+	public double getWindowPower() {
+		enforceNotDisposed();
+		return getPower(energyWindow, timeWindow);
+	}
+
+	public double getInstantPower() {
+		enforceNotDisposed();
+		return powInstant[lastIndex()];
+	}
+
+	@Override
+	public HeartbeatSnapshot snapshot(final HeartbeatSnapshot snapshot) {
+		super.snapshot(snapshot);
+		final long[] l = snapshot.longs;
+		final double[] d = snapshot.doubles;
+		l[HeartbeatSnapshot.GLOBAL_ENERGY] = energyGlobal;
+		l[HeartbeatSnapshot.WINDOW_ENERGY] = energyWindow;
+		d[HeartbeatSnapshot.GLOBAL_POWER] = getPower(energyGlobal, timeGlobal);
+		d[HeartbeatSnapshot.WINDOW_POWER] = getPower(energyWindow, timeWindow);
+		d[HeartbeatSnapshot.INSTANT_POWER] = powInstant[lastIndex()];
+		return snapshot;
+	}
+
+}
@@ -0,0 +1,218 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A binary heartbeat log that appends records into memory-mapped segment
+ * files, so that persisting records makes no system calls except when a new
+ * segment is created. Read logs back with {@link MappedHeartbeatLogReader}.
+ *
+ * A log named <code>name</code> is a sequence of pre-sized files
+ * <code>name.000000.hbseg</code>, <code>name.000001.hbseg</code>, etc. Each
+ * segment has a 32-byte header, all values little-endian:
+ * <ul>
+ * <li>magic: the ASCII bytes <code>HBSM</code></li>
+ * <li>version: u16, currently 1</li>
+ * <li>flags: u16, {@link #FLAG_ACCURACY} and/or {@link #FLAG_ENERGY}</li>
+ * <li>record size: u32, in bytes</li>
+ * <li>capacity: u32, records per segment</li>
+ * <li>index interval: u32</li>
+ * <li>reserved: u32</li>
+ * <li>count: u64, records written, updated after each record</li>
+ * </ul>
+ * The header is followed by a sparse time index, one u64 entry per index
+ * interval holding the end time of every interval-th record in the segment,
+ * then by the records described in {@link AbstractHeartbeatLog}. Records are
+ * expected to be appended in order of end time, as is the case for a single
+ * heartbeat fed by a monotonic clock.
+ *
+ * Mapped files are unmapped by the garbage collector, not by
+ * {@link #close()}.
+ *
+ * @author Connor Imes
+ */
+public final class MappedHeartbeatLog extends AbstractHeartbeatLog {
+
+	public static final int MAGIC = 0x4D534248; // "HBSM" little-endian
+	public static final int VERSION = 1;
+	public static final int SEGMENT_HEADER_SIZE = 32;
+	/**
+	 * The default number of records per segment: 4 MiB of the largest records.
+	 */
+	public static final int DEFAULT_SEGMENT_RECORDS = 1 << 16;
+	public static final int DEFAULT_INDEX_INTERVAL = 256;
+
+	// segment header offsets
+	static final int HDR_MAGIC = 0;
+	static final int HDR_VERSION = 4;
+	static final int HDR_FLAGS = 6;
+	static final int HDR_RECORD_SIZE = 8;
+	static final int HDR_CAPACITY = 12;
+	static final int HDR_INDEX_INTERVAL = 16;
+	static final int HDR_COUNT = 24;
+
+	private final Path dir;
+	private final String name;
+	private final int capacity;
+	private final int indexInterval;
+	private final int dataOffset;
+	private int recordSize;
+	private MappedByteBuffer segment;
+	private int segmentNumber = -1;
+	private int count;
+	private boolean closed;
+
+	private MappedHeartbeatLog(final Path dir, final String name, final int capacity, final int indexInterval) {
+		this.dir = dir;
+		this.name = name;
+		this.capacity = capacity;
+		this.indexInterval = indexInterval;
+		this.dataOffset = getDataOffset(capacity, indexInterval);
+	}
+
+	/**
+	 * Open a new log with the default segment size and index interval.
+	 *
+	 * @param dir
+	 *            created if it does not exist
+	 * @param name
+	 * @throws IOException
+	 *             if a log with this name already exists in the directory
+	 */
+	public static MappedHeartbeatLog open(final String dir, final String name) throws IOException {
+		return open(dir, name, DEFAULT_SEGMENT_RECORDS, DEFAULT_INDEX_INTERVAL);
+	}
+
+	/**
+	 * Open a new log.
+	 *
+	 * @param dir
+	 *            created if it does not exist
+	 * @param name
+	 * @param segmentRecords
+	 *            number of records per segment file
+	 * @param indexInterval
+	 *            number of records per time index entry
+	 * @throws IOException
+	 *             if a log with this name already exists in the directory
+	 * @throws IllegalArgumentException
+	 *             if segmentRecords or indexInterval is not positive, or
+	 *             segments would be larger than 2 GiB
+	 */
+	public static MappedHeartbeatLog open(final String dir, final String name, final int segmentRecords,
+			final int indexInterval) throws IOException {
+		if (segmentRecords <= 0 || indexInterval <= 0) {
+			throw new IllegalArgumentException("Segment records and index interval must be > 0");
+		}
+		if (getSegmentSize(segmentRecords, indexInterval, getBinaryRecordSize(true, true)) > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Segments are too large");
+		}
+		final Path d = Paths.get(dir);
+		Files.createDirectories(d);
+		final Path first = d.resolve(getSegmentName(name, 0));
+		if (Files.exists(first)) {
+			throw new FileAlreadyExistsException(first.toString());
+		}
+		return new MappedHeartbeatLog(d, name, segmentRecords, indexInterval);
+	}
+
+	static String getSegmentName(final String name, final int segment) {
+		return String.format("%s.%06d.hbseg", name, segment);
+	}
+
+	static int getIndexEntries(final int capacity, final int indexInterval) {
+		return (capacity + indexInterval - 1) / indexInterval;
+	}
+
+	static int getDataOffset(final int capacity, final int indexInterval) {
+		return SEGMENT_HEADER_SIZE + 8 * getIndexEntries(capacity, indexInterval);
+	}
+
+	static long getSegmentSize(final int capacity, final int indexInterval, final int recordSize) {
+		return getDataOffset(capacity, indexInterval) + (long) capacity * recordSize;
+	}
+
+	@Override
+	void bound() {
+		recordSize = getBinaryRecordSize(accuracy, energy);
+	}
+
+	private void nextSegment() throws IOException {
+		final Path p = dir.resolve(getSegmentName(name, segmentNumber + 1));
+		final FileChannel ch = FileChannel.open(p, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			segment = ch.map(FileChannel.MapMode.READ_WRITE, 0, getSegmentSize(capacity, indexInterval, recordSize));
+		} finally {
+			ch.close();
+		}
+		segment.order(ByteOrder.LITTLE_ENDIAN);
+		segment.putInt(HDR_MAGIC, MAGIC);
+		segment.putShort(HDR_VERSION, (short) VERSION);
+		segment.putShort(HDR_FLAGS, (short) getFlags());
+		segment.putInt(HDR_RECORD_SIZE, recordSize);
+		segment.putInt(HDR_CAPACITY, capacity);
+		segment.putInt(HDR_INDEX_INTERVAL, indexInterval);
+		segmentNumber++;
+		count = 0;
+	}
+
+	@Override
+	synchronized void record(final long id, final long userTag, final long work, final long startTime,
+			final long endTime, final double globalPerf, final double windowPerf, final double instantPerf,
+			final long acc, final double globalAcc, final double windowAcc, final double instantAcc,
+			final long startEnergy, final long endEnergy, final double globalPow, final double windowPow,
+			final double instantPow) throws IOException {
+		if (closed) {
+			throw new IOException("Log is closed");
+		}
+		if (segment == null || count == capacity) {
+			nextSegment();
+		}
+		if (count % indexInterval == 0) {
+			segment.putLong(SEGMENT_HEADER_SIZE + 8 * (count / indexInterval), endTime);
+		}
+		segment.position(dataOffset + count * recordSize);
+		putBinaryRecord(segment, id, userTag, work, startTime, endTime, acc, startEnergy, endEnergy);
+		// publish the record only once it is complete
+		count++;
+		segment.putLong(HDR_COUNT, count);
+	}
+
+	/**
+	 * @return the number of segment files created so far
+	 */
+	public synchronized int getSegmentCount() {
+		return segmentNumber + 1;
+	}
+
+	/**
+	 * Force the current segment to the storage device.
+	 */
+	@Override
+	public synchronized void flush() {
+		if (segment != null) {
+			segment.force();
+		}
+	}
+
+	/**
+	 * Force the current segment to the storage device and stop accepting
+	 * records.
+	 */
+	public synchronized void close() {
+		if (!closed) {
+			flush();
+			segment = null;
+			closed = true;
+		}
+	}
+}
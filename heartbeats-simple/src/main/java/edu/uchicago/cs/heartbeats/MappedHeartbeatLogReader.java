@@ -0,0 +1,278 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a log written by {@link MappedHeartbeatLog}. The segments are mapped
+ * read-only and records are read in place, like {@link HeartbeatRecordView}.
+ *
+ * The reader is a cursor: {@link #seek(long)} positions it by time using the
+ * segments' sparse time index, and each call to {@link #next()} moves to the
+ * following record. For example, to iterate records that ended in
+ * <code>[from, to)</code>:
+ *
+ * <pre>
+ * reader.seek(from);
+ * while (reader.next() &amp;&amp; reader.getEndTime() &lt; to) {
+ * 	process(reader.getWork(), reader.getEndTime());
+ * }
+ * </pre>
+ *
+ * Only records written before the reader was opened are visible. Fields that
+ * the log does not record (e.g. energy for a {@link HeartbeatAccuracy}) are 0.
+ * Instances are not thread-safe and must not be used after {@link #close()}.
+ *
+ * @author Connor Imes
+ */
+public final class MappedHeartbeatLogReader implements Closeable {
+	private static final int ID = 0;
+	private static final int USER_TAG = 8;
+	private static final int WORK = 16;
+	private static final int START_TIME = 24;
+	private static final int END_TIME = 32;
+	private static final int ACCURACY = 40;
+
+	private MappedByteBuffer[] segments;
+	private final long[] counts;
+	private final int capacity;
+	private final int indexInterval;
+	private final int dataOffset;
+	private final int recordSize;
+	private final boolean hasAccuracy;
+	private final boolean hasEnergy;
+	private final int energy;
+	private final long recordCount;
+	// the record returned by the next call to next()
+	private long next;
+	private MappedByteBuffer current;
+	private int offset = -1;
+
+	private MappedHeartbeatLogReader(final MappedByteBuffer[] segments) throws IOException {
+		final MappedByteBuffer first = segments[0];
+		final int flags = first.getShort(MappedHeartbeatLog.HDR_FLAGS);
+		this.segments = segments;
+		this.counts = new long[segments.length];
+		this.capacity = first.getInt(MappedHeartbeatLog.HDR_CAPACITY);
+		this.indexInterval = first.getInt(MappedHeartbeatLog.HDR_INDEX_INTERVAL);
+		this.dataOffset = MappedHeartbeatLog.getDataOffset(capacity, indexInterval);
+		this.recordSize = first.getInt(MappedHeartbeatLog.HDR_RECORD_SIZE);
+		this.hasAccuracy = (flags & AbstractHeartbeatLog.FLAG_ACCURACY) != 0;
+		this.hasEnergy = (flags & AbstractHeartbeatLog.FLAG_ENERGY) != 0;
+		this.energy = hasAccuracy ? ACCURACY + 8 : ACCURACY;
+		if (recordSize != AbstractHeartbeatLog.getBinaryRecordSize(hasAccuracy, hasEnergy)) {
+			throw new IOException("Unexpected record size: " + recordSize);
+		}
+		long total = 0;
+		for (int i = 0; i < segments.length; i++) {
+			final MappedByteBuffer s = segments[i];
+			if (s.getInt(MappedHeartbeatLog.HDR_MAGIC) != MappedHeartbeatLog.MAGIC
+					|| s.getShort(MappedHeartbeatLog.HDR_VERSION) != MappedHeartbeatLog.VERSION
+					|| s.getShort(MappedHeartbeatLog.HDR_FLAGS) != flags
+					|| s.getInt(MappedHeartbeatLog.HDR_CAPACITY) != capacity
+					|| s.getInt(MappedHeartbeatLog.HDR_INDEX_INTERVAL) != indexInterval) {
+				throw new IOException("Invalid or mismatched segment: " + i);
+			}
+			counts[i] = s.getLong(MappedHeartbeatLog.HDR_COUNT);
+			if (counts[i] < 0 || counts[i] > capacity || (i < segments.length - 1 && counts[i] != capacity)) {
+				throw new IOException("Incomplete segment: " + i);
+			}
+			total += counts[i];
+		}
+		this.recordCount = total;
+	}
+
+	/**
+	 * Open a log.
+	 *
+	 * @param dir
+	 * @param name
+	 * @throws IOException
+	 *             if the log does not exist or is invalid
+	 */
+	public static MappedHeartbeatLogReader open(final String dir, final String name) throws IOException {
+		final Path d = Paths.get(dir);
+		final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+		for (int i = 0;; i++) {
+			final Path p = d.resolve(MappedHeartbeatLog.getSegmentName(name, i));
+			if (!Files.exists(p)) {
+				break;
+			}
+			final FileChannel ch = FileChannel.open(p, StandardOpenOption.READ);
+			try {
+				if (ch.size() < MappedHeartbeatLog.SEGMENT_HEADER_SIZE) {
+					throw new IOException("Invalid segment: " + p);
+				}
+				final MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+				b.order(ByteOrder.LITTLE_ENDIAN);
+				segments.add(b);
+			} finally {
+				ch.close();
+			}
+		}
+		if (segments.isEmpty()) {
+			throw new NoSuchFileException(d.resolve(MappedHeartbeatLog.getSegmentName(name, 0)).toString());
+		}
+		return new MappedHeartbeatLogReader(segments.toArray(new MappedByteBuffer[segments.size()]));
+	}
+
+	/**
+	 * @return the number of records in the log
+	 */
+	public long getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * @return true if records include accuracy
+	 */
+	public boolean hasAccuracy() {
+		return hasAccuracy;
+	}
+
+	/**
+	 * @return true if records include energy
+	 */
+	public boolean hasEnergy() {
+		return hasEnergy;
+	}
+
+	private long getEndTime(final long record) {
+		return segments[(int) (record / capacity)].getLong(dataOffset + (int) (record % capacity) * recordSize
+				+ END_TIME);
+	}
+
+	/**
+	 * Position the cursor so that {@link #next()} moves to the first record
+	 * with an end time of at least <code>time</code>.
+	 *
+	 * @param time
+	 */
+	public void seek(final long time) {
+		// last segment whose first record ends before time
+		int lo = 0;
+		int hi = segments.length - 1;
+		int s = -1;
+		while (lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (counts[mid] > 0 && segments[mid].getLong(MappedHeartbeatLog.SEGMENT_HEADER_SIZE) < time) {
+				s = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		if (s < 0) {
+			seekRecord(0);
+			return;
+		}
+		// last index entry in that segment before time
+		final MappedByteBuffer seg = segments[s];
+		lo = 0;
+		hi = MappedHeartbeatLog.getIndexEntries((int) counts[s], indexInterval) - 1;
+		int e = 0;
+		while (lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (seg.getLong(MappedHeartbeatLog.SEGMENT_HEADER_SIZE + 8 * mid) < time) {
+				e = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		// at most one index interval to scan
+		long r = (long) s * capacity + (long) e * indexInterval;
+		while (r < recordCount && getEndTime(r) < time) {
+			r++;
+		}
+		seekRecord(r);
+	}
+
+	/**
+	 * Position the cursor so that {@link #next()} moves to a record number.
+	 *
+	 * @param record
+	 * @throws IndexOutOfBoundsException
+	 *             if record is negative or greater than the record count
+	 */
+	public void seekRecord(final long record) {
+		if (record < 0 || record > recordCount) {
+			throw new IndexOutOfBoundsException("record=" + record + ", count=" + recordCount);
+		}
+		next = record;
+		current = null;
+		offset = -1;
+	}
+
+	/**
+	 * Move to the next record.
+	 *
+	 * @return false if there are no more records
+	 */
+	public boolean next() {
+		if (next >= recordCount) {
+			return false;
+		}
+		current = segments[(int) (next / capacity)];
+		offset = dataOffset + (int) (next % capacity) * recordSize;
+		next++;
+		return true;
+	}
+
+	private long get(final int field) {
+		if (offset < 0) {
+			throw new IllegalStateException("No current record");
+		}
+		return current.getLong(offset + field);
+	}
+
+	public long getId() {
+		return get(ID);
+	}
+
+	public long getUserTag() {
+		return get(USER_TAG);
+	}
+
+	public long getWork() {
+		return get(WORK);
+	}
+
+	public long getStartTime() {
+		return get(START_TIME);
+	}
+
+	public long getEndTime() {
+		return get(END_TIME);
+	}
+
+	public long getAccuracy() {
+		return hasAccuracy ? get(ACCURACY) : 0;
+	}
+
+	public long getStartEnergy() {
+		return hasEnergy ? get(energy) : 0;
+	}
+
+	public long getEndEnergy() {
+		return hasEnergy ? get(energy + 8) : 0;
+	}
+
+	/**
+	 * Release the mapped segments. They are unmapped by the garbage collector.
+	 */
+	public void close() {
+		segments = null;
+		current = null;
+	}
+}
@@ -0,0 +1,79 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Memory fences for sequence locks in memory shared with other processes,
+ * where Java fields, and so volatile and synchronized, cannot be used.
+ *
+ * The fences are <code>sun.misc.Unsafe</code>'s <code>loadFence()</code> and
+ * <code>storeFence()</code> (Java 8+), called through constant method handles
+ * so the JIT compiles them to the fence instructions alone. If they are not
+ * available, e.g. on Java 7, the fences do nothing and {@link #isAvailable()}
+ * returns false; ordering then depends on the hardware, which is sufficient on
+ * x86, where loads are not reordered with loads nor stores with stores.
+ *
+ * @author Connor Imes
+ */
+final class MemoryFences {
+	private static final MethodHandle LOAD_FENCE;
+	private static final MethodHandle STORE_FENCE;
+	private static final boolean AVAILABLE;
+
+	static {
+		MethodHandle load = null;
+		MethodHandle store = null;
+		try {
+			final Class<?> c = Class.forName("sun.misc.Unsafe");
+			final Field f = c.getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			final Object unsafe = f.get(null);
+			final MethodHandles.Lookup lookup = MethodHandles.lookup();
+			final MethodType type = MethodType.methodType(void.class);
+			load = lookup.findVirtual(c, "loadFence", type).bindTo(unsafe);
+			store = lookup.findVirtual(c, "storeFence", type).bindTo(unsafe);
+		} catch (Exception e) {
+			load = null;
+			store = null;
+		}
+		final MethodHandle nop = MethodHandles.constant(Object.class, null).asType(MethodType.methodType(void.class));
+		AVAILABLE = load != null;
+		LOAD_FENCE = AVAILABLE ? load : nop;
+		STORE_FENCE = AVAILABLE ? store : nop;
+	}
+
+	private MemoryFences() {
+	}
+
+	/**
+	 * @return true if the fences are enforced in software
+	 */
+	static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	/**
+	 * Loads before the fence are not reordered with loads after it.
+	 */
+	static void loadFence() {
+		try {
+			LOAD_FENCE.invokeExact();
+		} catch (Throwable t) {
+			throw new AssertionError(t);
+		}
+	}
+
+	/**
+	 * Stores before the fence are not reordered with stores after it.
+	 */
+	static void storeFence() {
+		try {
+			STORE_FENCE.invokeExact();
+		} catch (Throwable t) {
+			throw new AssertionError(t);
+		}
+	}
+}
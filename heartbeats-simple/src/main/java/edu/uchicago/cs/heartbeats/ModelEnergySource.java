@@ -0,0 +1,345 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An {@link EnergySource} that estimates energy from CPU utilization, for
+ * hosts without energy counters, e.g. most virtual machines. Estimates are
+ * only as good as the {@link PowerModel}, but are comparable across hosts
+ * that use the same model.
+ *
+ * A background thread reads the aggregate CPU times in
+ * <code>/proc/stat</code> every sampling period and integrates the model's
+ * power for the number of busy cores over time. {@link #getEnergy()} returns
+ * the host-wide total with a single volatile read.
+ *
+ * {@link #getThreadSource()} instead estimates the energy of the calling
+ * thread alone, from its CPU time through {@link ThreadMXBean}, as if each
+ * nanosecond of CPU time kept one core busy. It is read on every call rather
+ * than sampled, and is not affected by other load on the host.
+ *
+ * @author Connor Imes
+ */
+public final class ModelEnergySource implements EnergySource, Closeable {
+	public static final String DEFAULT_PROC_STAT = "/proc/stat";
+	public static final long DEFAULT_PERIOD = 10000000;
+
+	/**
+	 * A linear per-core power model: an idle core draws the idle power, a busy
+	 * core the busy power, and a partly busy core in between.
+	 */
+	public static final class PowerModel {
+		private final double idlePower;
+		private final double busyPower;
+
+		/**
+		 * @param idlePower
+		 *            watts per idle core
+		 * @param busyPower
+		 *            watts per fully busy core
+		 * @throws IllegalArgumentException
+		 *             if idlePower is negative or greater than busyPower
+		 */
+		public PowerModel(final double idlePower, final double busyPower) {
+			if (!(idlePower >= 0 && busyPower >= idlePower)) {
+				throw new IllegalArgumentException("Need 0 <= idle power <= busy power");
+			}
+			this.idlePower = idlePower;
+			this.busyPower = busyPower;
+		}
+
+		public double getIdlePower() {
+			return idlePower;
+		}
+
+		public double getBusyPower() {
+			return busyPower;
+		}
+
+		/**
+		 * @param cores
+		 *            number of cores
+		 * @param busyCores
+		 *            number of busy cores, possibly fractional
+		 * @return watts
+		 */
+		public double getPower(final int cores, final double busyCores) {
+			return cores * idlePower + busyCores * (busyPower - idlePower);
+		}
+	}
+
+	// /proc/stat fields on the aggregate "cpu" line that count as idle
+	private static final int IDLE = 3;
+	private static final int IOWAIT = 4;
+	// user through steal; guest time is already included in user time
+	private static final int NUM_FIELDS = 8;
+
+	private final Path procStat;
+	private final FileChannel ch;
+	private final ByteBuffer buf = ByteBuffer.allocate(512);
+	private final PowerModel model;
+	private final int cores;
+	private final HeartbeatClock clock;
+	private final long period;
+	private final Thread thread;
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	// sampling state, guarded by this
+	private long lastTime;
+	private long lastBusy;
+	private long lastTotal;
+	private double total;
+
+	private volatile long energy;
+	private volatile long errors;
+	private volatile boolean closed;
+
+	private ModelEnergySource(final Path procStat, final PowerModel model, final long period,
+			final HeartbeatClock clock) throws IOException {
+		this.procStat = procStat;
+		this.model = model;
+		this.period = period;
+		this.clock = clock;
+		this.cores = countCores(Files.readAllBytes(procStat));
+		this.ch = FileChannel.open(procStat, StandardOpenOption.READ);
+		try {
+			final long[] times = readTimes();
+			this.lastBusy = times[0];
+			this.lastTotal = times[1];
+			this.lastTime = clock.getTime();
+		} catch (IOException e) {
+			ch.close();
+			throw e;
+		}
+		if (period > 0) {
+			this.thread = new Thread("heartbeat-energy-model-sampler") {
+				@Override
+				public void run() {
+					sampleLoop();
+				}
+			};
+			thread.setDaemon(true);
+		} else {
+			this.thread = null;
+		}
+	}
+
+	/**
+	 * Estimate energy from {@link #DEFAULT_PROC_STAT}, sampled every
+	 * {@link #DEFAULT_PERIOD} nanoseconds.
+	 *
+	 * @param model
+	 * @throws IOException
+	 *             if /proc/stat cannot be read
+	 */
+	public static ModelEnergySource open(final PowerModel model) throws IOException {
+		return open(DEFAULT_PROC_STAT, model, DEFAULT_PERIOD);
+	}
+
+	/**
+	 * Estimate energy from a file in the format of <code>/proc/stat</code>,
+	 * e.g. a fake one for testing.
+	 *
+	 * @param procStat
+	 * @param model
+	 * @param period
+	 *            nanoseconds between samples, or 0 to only sample when
+	 *            {@link #sample()} is called
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static ModelEnergySource open(final String procStat, final PowerModel model, final long period)
+			throws IOException {
+		return open(procStat, model, period, HeartbeatClock.SYSTEM);
+	}
+
+	static ModelEnergySource open(final String procStat, final PowerModel model, final long period,
+			final HeartbeatClock clock) throws IOException {
+		if (model == null || clock == null) {
+			throw new NullPointerException();
+		}
+		if (period < 0) {
+			throw new IllegalArgumentException("Period must be >= 0");
+		}
+		final ModelEnergySource source = new ModelEnergySource(Paths.get(procStat), model, period, clock);
+		if (source.thread != null) {
+			source.thread.start();
+		}
+		return source;
+	}
+
+	private static int countCores(final byte[] stat) {
+		int n = 0;
+		final String s = new String(stat, StandardCharsets.US_ASCII);
+		for (final String line : s.split("\n")) {
+			if (line.startsWith("cpu") && line.length() > 3 && Character.isDigit(line.charAt(3))) {
+				n++;
+			}
+		}
+		return Math.max(n, 1);
+	}
+
+	/**
+	 * Read the aggregate "cpu" line.
+	 *
+	 * @return { busy, total } in clock ticks
+	 */
+	private long[] readTimes() throws IOException {
+		// positional reads, so the file is not reopened; the line is at the start
+		buf.clear();
+		while (buf.hasRemaining() && ch.read(buf, buf.position()) > 0) {
+			// keep reading
+		}
+		final byte[] b = buf.array();
+		final int length = buf.position();
+		if (length < 4 || b[0] != 'c' || b[1] != 'p' || b[2] != 'u' || b[3] != ' ') {
+			throw new IOException("Invalid CPU times in " + procStat);
+		}
+		long idle = 0;
+		long total = 0;
+		int field = 0;
+		int i = 4;
+		while (field < NUM_FIELDS && i < length && b[i] != '\n') {
+			if (b[i] == ' ') {
+				i++;
+				continue;
+			}
+			long v = 0;
+			for (; i < length && b[i] >= '0' && b[i] <= '9'; i++) {
+				v = v * 10 + (b[i] - '0');
+			}
+			if (field == IDLE || field == IOWAIT) {
+				idle += v;
+			}
+			total += v;
+			field++;
+		}
+		if (field <= IDLE) {
+			throw new IOException("Invalid CPU times in " + procStat);
+		}
+		return new long[] { total - idle, total };
+	}
+
+	/**
+	 * Read the CPU times now and add the energy since the last sample to the
+	 * total.
+	 *
+	 * @throws IOException
+	 *             if the CPU times cannot be read
+	 */
+	public synchronized void sample() throws IOException {
+		final long[] times = readTimes();
+		final long now = clock.getTime();
+		final long dBusy = times[0] - lastBusy;
+		final long dTotal = times[1] - lastTotal;
+		final double busyCores = dTotal > 0 ? cores * (double) dBusy / dTotal : 0;
+		// watts * nanoseconds / 1000 = microjoules
+		total += model.getPower(cores, busyCores) * (now - lastTime) / 1000;
+		lastBusy = times[0];
+		lastTotal = times[1];
+		lastTime = now;
+		energy = (long) total;
+	}
+
+	private void sampleLoop() {
+		while (!closed) {
+			try {
+				sample();
+			} catch (IOException e) {
+				// only this thread writes it
+				errors++;
+			}
+			LockSupport.parkNanos(period);
+		}
+	}
+
+	/**
+	 * @return estimated host energy in microjoules since the source was opened,
+	 *         as of the last sample
+	 */
+	public long getEnergy() {
+		return energy;
+	}
+
+	/**
+	 * Get a source that estimates the energy of whichever thread reads it, from
+	 * its CPU time and the model's busy power.
+	 *
+	 * @return energy source
+	 * @throws UnsupportedOperationException
+	 *             if the JVM does not measure thread CPU time
+	 */
+	public EnergySource getThreadSource() {
+		if (!threads.isCurrentThreadCpuTimeSupported()) {
+			throw new UnsupportedOperationException("Thread CPU time is not supported");
+		}
+		if (!threads.isThreadCpuTimeEnabled()) {
+			threads.setThreadCpuTimeEnabled(true);
+		}
+		final double busyPower = model.getBusyPower();
+		return new EnergySource() {
+			public long getEnergy() {
+				// watts * nanoseconds / 1000 = microjoules
+				return (long) (threads.getCurrentThreadCpuTime() * busyPower / 1000);
+			}
+		};
+	}
+
+	public PowerModel getModel() {
+		return model;
+	}
+
+	/**
+	 * @return the number of cores in the host's CPU times
+	 */
+	public int getCoreCount() {
+		return cores;
+	}
+
+	/**
+	 * @return nanoseconds between background samples, or 0 if there is no
+	 *         background thread
+	 */
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * @return the number of background samples that failed
+	 */
+	public long getSampleErrors() {
+		return errors;
+	}
+
+	/**
+	 * Stop the background thread and close the CPU times file.
+	 */
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (this) {
+			ch.close();
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Frees native heartbeat contexts, either explicitly or on a background thread
+ * after their owners become unreachable. Unlike finalization, this does not
+ * slow down allocation or garbage collection of the owners.
+ *
+ * Also keeps leak-tracking counters: contexts reclaimed here rather than
+ * explicitly indicate heartbeats that were not disposed.
+ *
+ * @author Connor Imes
+ */
+public final class NativeCleaner {
+
+	/**
+	 * Native operations for one context type.
+	 */
+	interface Freer {
+		/**
+		 * Free the native context.
+		 *
+		 * @param ptr
+		 */
+		void free(ByteBuffer ptr);
+
+		/**
+		 * Get the native memory held by the context, including its window
+		 * buffer.
+		 *
+		 * @param ptr
+		 * @return size in bytes
+		 */
+		long size(ByteBuffer ptr);
+	}
+
+	/**
+	 * Frees a context exactly once. Must not reference its owner.
+	 */
+	static final class Cleanable extends PhantomReference<Object> {
+		private final ByteBuffer ptr;
+		private final Freer freer;
+		private final long bytes;
+		private final AtomicBoolean cleaned = new AtomicBoolean();
+
+		private Cleanable(final Object owner, final ByteBuffer ptr, final Freer freer, final long bytes) {
+			super(owner, QUEUE);
+			this.ptr = ptr;
+			this.freer = freer;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * Free the context now, if not already freed.
+		 *
+		 * @return true if the context was freed by this call
+		 */
+		boolean clean() {
+			if (!cleaned.compareAndSet(false, true)) {
+				return false;
+			}
+			CLEANABLES.remove(this);
+			clear();
+			freer.free(ptr);
+			LIVE_CONTEXTS.decrementAndGet();
+			NATIVE_BYTES.addAndGet(-bytes);
+			return true;
+		}
+	}
+
+	private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<Object>();
+	// keeps cleanables reachable until they run
+	private static final Set<Cleanable> CLEANABLES = Collections
+			.newSetFromMap(new ConcurrentHashMap<Cleanable, Boolean>());
+	private static final AtomicLong LIVE_CONTEXTS = new AtomicLong();
+	private static final AtomicLong NATIVE_BYTES = new AtomicLong();
+	private static final AtomicLong RECLAIMED_CONTEXTS = new AtomicLong();
+
+	static {
+		final Thread t = new Thread("heartbeat-native-cleaner") {
+			@Override
+			public void run() {
+				while (true) {
+					try {
+						if (((Cleanable) QUEUE.remove()).clean()) {
+							RECLAIMED_CONTEXTS.incrementAndGet();
+						}
+					} catch (InterruptedException e) {
+						// keep cleaning
+					}
+				}
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+	}
+
+	private NativeCleaner() {
+	}
+
+	/**
+	 * Track a native context so that it is freed if its owner becomes
+	 * unreachable before {@link Cleanable#clean()} is called.
+	 *
+	 * @param owner
+	 * @param ptr
+	 * @param freer
+	 * @return the cleanable
+	 */
+	static Cleanable register(final Object owner, final ByteBuffer ptr, final Freer freer) {
+		final long bytes = freer.size(ptr);
+		final Cleanable c = new Cleanable(owner, ptr, freer, bytes);
+		CLEANABLES.add(c);
+		LIVE_CONTEXTS.incrementAndGet();
+		NATIVE_BYTES.addAndGet(bytes);
+		return c;
+	}
+
+	/**
+	 * @return the number of native contexts not yet freed
+	 */
+	public static long getLiveContexts() {
+		return LIVE_CONTEXTS.get();
+	}
+
+	/**
+	 * @return the native memory held by contexts not yet freed, in bytes
+	 */
+	public static long getNativeBytes() {
+		return NATIVE_BYTES.get();
+	}
+
+	/**
+	 * @return the number of native contexts freed because their owners became
+	 *         unreachable without being disposed
+	 */
+	public static long getReclaimedContexts() {
+		return RECLAIMED_CONTEXTS.get();
+	}
+}
@@ -0,0 +1,291 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An {@link EnergySource} backed by the Linux powercap interface to RAPL
+ * energy counters, e.g. <code>/sys/class/powercap/intel-rapl:0/energy_uj</code>.
+ *
+ * The <code>energy_uj</code> file of every top-level <code>intel-rapl:N</code>
+ * zone (one per package; subzones are already included in their package) is
+ * kept open and read by a background thread every sampling period. A
+ * top-level zone whose <code>name</code> is <code>psys</code> is skipped: it
+ * measures the whole platform, including the packages, so summing it with them
+ * would count their energy twice. The counters' deltas, corrected for
+ * wraparound at <code>max_energy_range_uj</code>, are summed into a total
+ * that {@link #getEnergy()} returns with a single volatile read. The total
+ * starts at 0 when the source is opened, and is only as current as the last
+ * sample.
+ * If a zone has no <code>max_energy_range_uj</code>, a counter that goes
+ * backwards is taken to have been reset to 0 rather than to have wrapped.
+ *
+ * Reading <code>energy_uj</code> usually requires root.
+ *
+ * @author Connor Imes
+ */
+public final class PowercapEnergySource implements EnergySource, Closeable {
+	public static final String DEFAULT_ROOT = "/sys/class/powercap";
+	public static final long DEFAULT_PERIOD = 1000000;
+
+	private static final String ZONE_GLOB = "intel-rapl:*";
+	private static final String ZONE_PATTERN = "intel-rapl:[0-9]+";
+	// the platform zone, which includes the packages
+	private static final String PSYS = "psys";
+
+	/**
+	 * An open zone counter.
+	 */
+	private static final class Zone {
+		private final Path path;
+		private final FileChannel ch;
+		// 0 if unknown
+		private final long maxRange;
+		private long last;
+
+		private Zone(final Path path, final long maxRange) throws IOException {
+			this.path = path;
+			this.ch = FileChannel.open(path, StandardOpenOption.READ);
+			this.maxRange = maxRange;
+		}
+	}
+
+	private final List<Zone> zones;
+	private final ByteBuffer buf = ByteBuffer.allocate(32);
+	private final long period;
+	private final Thread thread;
+	private volatile long energy;
+	private volatile long errors;
+	private volatile boolean closed;
+
+	private PowercapEnergySource(final List<Zone> zones, final long period) throws IOException {
+		this.zones = zones;
+		this.period = period;
+		for (final Zone z : zones) {
+			z.last = read(z);
+		}
+		if (period > 0) {
+			this.thread = new Thread("heartbeat-powercap-sampler") {
+				@Override
+				public void run() {
+					sampleLoop();
+				}
+			};
+			thread.setDaemon(true);
+		} else {
+			this.thread = null;
+		}
+	}
+
+	/**
+	 * Open the zones under {@link #DEFAULT_ROOT}, sampled every
+	 * {@link #DEFAULT_PERIOD} nanoseconds.
+	 *
+	 * @throws IOException
+	 *             if there are no zones, or they cannot be read
+	 */
+	public static PowercapEnergySource open() throws IOException {
+		return open(DEFAULT_ROOT, DEFAULT_PERIOD);
+	}
+
+	/**
+	 * Open the zones under a powercap directory, e.g. a fake tree for testing.
+	 *
+	 * @param root
+	 *            the directory containing the zones
+	 * @param period
+	 *            nanoseconds between samples, or 0 to only sample when
+	 *            {@link #sample()} is called
+	 * @throws IOException
+	 *             if there are no zones, or they cannot be read
+	 */
+	public static PowercapEnergySource open(final String root, final long period) throws IOException {
+		if (period < 0) {
+			throw new IllegalArgumentException("Period must be >= 0");
+		}
+		final List<Path> dirs = new ArrayList<Path>();
+		final Path r = Paths.get(root);
+		if (Files.isDirectory(r)) {
+			final DirectoryStream<Path> ds = Files.newDirectoryStream(r, ZONE_GLOB);
+			try {
+				for (final Path p : ds) {
+					if (p.getFileName().toString().matches(ZONE_PATTERN) && !isPlatformZone(p)) {
+						dirs.add(p);
+					}
+				}
+			} finally {
+				ds.close();
+			}
+		}
+		if (dirs.isEmpty()) {
+			throw new IOException("No RAPL zones in " + root);
+		}
+		Collections.sort(dirs);
+		final List<Zone> zones = new ArrayList<Zone>();
+		try {
+			for (final Path d : dirs) {
+				final Path max = d.resolve("max_energy_range_uj");
+				final long maxRange = Files.exists(max) ? parse(Files.readAllBytes(max), max) : 0;
+				zones.add(new Zone(d.resolve("energy_uj"), maxRange));
+			}
+			final PowercapEnergySource source = new PowercapEnergySource(zones, period);
+			if (source.thread != null) {
+				source.thread.start();
+			}
+			return source;
+		} catch (IOException e) {
+			closeAll(zones);
+			throw e;
+		}
+	}
+
+	private static boolean isPlatformZone(final Path zone) throws IOException {
+		final Path name = zone.resolve("name");
+		return Files.exists(name)
+				&& PSYS.equals(new String(Files.readAllBytes(name), StandardCharsets.US_ASCII).trim());
+	}
+
+	private static void closeAll(final List<Zone> zones) {
+		for (final Zone z : zones) {
+			try {
+				z.ch.close();
+			} catch (IOException e) {
+				// nothing more to do
+			}
+		}
+	}
+
+	private long read(final Zone z) throws IOException {
+		// positional reads, so the file is not reopened or seeked
+		buf.clear();
+		while (buf.hasRemaining() && z.ch.read(buf, buf.position()) > 0) {
+			// keep reading
+		}
+		return parse(buf.array(), buf.position(), z.path);
+	}
+
+	private static long parse(final byte[] b, final Path path) throws IOException {
+		return parse(b, b.length, path);
+	}
+
+	private static long parse(final byte[] b, final int length, final Path path) throws IOException {
+		long v = 0;
+		int i = 0;
+		for (; i < length && b[i] >= '0' && b[i] <= '9'; i++) {
+			v = v * 10 + (b[i] - '0');
+		}
+		if (i == 0) {
+			throw new IOException("Invalid energy counter value in " + path);
+		}
+		return v;
+	}
+
+	/**
+	 * Read all zones now and add their energy to the total.
+	 *
+	 * @throws IOException
+	 *             if a zone cannot be read; other zones are still added
+	 */
+	public synchronized void sample() throws IOException {
+		IOException failure = null;
+		long total = energy;
+		for (final Zone z : zones) {
+			final long v;
+			try {
+				v = read(z);
+			} catch (IOException e) {
+				failure = e;
+				continue;
+			}
+			if (v >= z.last) {
+				total += v - z.last;
+			} else if (z.maxRange > 0) {
+				// the counter wraps to 0 after reaching its range
+				total += z.maxRange - z.last + v;
+			} else {
+				// without a range, treat it as reset to 0
+				total += v;
+			}
+			z.last = v;
+		}
+		energy = total;
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private void sampleLoop() {
+		while (!closed) {
+			try {
+				sample();
+			} catch (IOException e) {
+				// only this thread writes it
+				errors++;
+			}
+			LockSupport.parkNanos(period);
+		}
+	}
+
+	/**
+	 * @return energy in microjoules since the source was opened, as of the last
+	 *         sample
+	 */
+	public long getEnergy() {
+		return energy;
+	}
+
+	/**
+	 * @return nanoseconds between background samples, or 0 if there is no
+	 *         background thread
+	 */
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * @return the number of zones being read
+	 */
+	public int getZoneCount() {
+		return zones.size();
+	}
+
+	/**
+	 * @return the number of background samples that failed to read a zone
+	 */
+	public long getSampleErrors() {
+		return errors;
+	}
+
+	/**
+	 * Stop the background thread and close the zone files.
+	 */
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (this) {
+			closeAll(zones);
+		}
+	}
+}
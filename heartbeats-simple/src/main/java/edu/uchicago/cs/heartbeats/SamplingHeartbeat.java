@@ -0,0 +1,64 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * A {@link Heartbeat} that counts every heartbeat but only issues a
+ * representative sample of them to an underlying heartbeat. See
+ * {@link AbstractSamplingHeartbeat} for how samples are scaled.
+ *
+ * Attempting to perform operations after {@link #dispose()} is called will
+ * result in an {@link IllegalStateException}, except for heartbeats that are
+ * not sampled.
+ *
+ * @author Connor Imes
+ */
+public class SamplingHeartbeat extends AbstractSamplingHeartbeat<Heartbeat> implements Heartbeat {
+
+	/**
+	 * Don't allow public instantiation. Should use
+	 * {@link #create(int, SamplingPolicy)} or
+	 * {@link #create(Heartbeat, SamplingPolicy)}.
+	 * 
+	 * @param hb
+	 * @param policy
+	 */
+	protected SamplingHeartbeat(final Heartbeat hb, final SamplingPolicy policy) {
+		super(hb, policy);
+	}
+
+	/**
+	 * Create a {@link SamplingHeartbeat} over a {@link DefaultHeartbeat}.
+	 * 
+	 * @param windowSize
+	 *            the number of samples in a window
+	 * @param policy
+	 *            used only by this heartbeat
+	 * @throws IllegalStateException
+	 *             if native resources cannot be allocated
+	 */
+	public static SamplingHeartbeat create(final int windowSize, final SamplingPolicy policy) {
+		return new SamplingHeartbeat(DefaultHeartbeat.create(windowSize), policy);
+	}
+
+	/**
+	 * Create a {@link SamplingHeartbeat} over an existing heartbeat, which it takes
+	 * ownership of. It must not be used directly afterward.
+	 * 
+	 * @param hb
+	 * @param policy
+	 *            used only by this heartbeat
+	 */
+	public static SamplingHeartbeat create(final Heartbeat hb, final SamplingPolicy policy) {
+		return new SamplingHeartbeat(hb, policy);
+	}
+
+	@Override
+	protected void issue(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy, final long startEnergy, final long endEnergy) {
+		hb.heartbeat(userTag, work, startTime, endTime);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		add(userTag, work, startTime, endTime, 0, 0, 0);
+	}
+
+}
@@ -0,0 +1,90 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * A {@link HeartbeatAccuracy} that counts every heartbeat but only issues a
+ * representative sample of them to an underlying heartbeat. See
+ * {@link AbstractSamplingHeartbeat} for how samples are scaled.
+ *
+ * Attempting to perform operations after {@link #dispose()} is called will
+ * result in an {@link IllegalStateException}, except for heartbeats that are
+ * not sampled.
+ *
+ * @author Connor Imes
+ */
+public class SamplingHeartbeatAccuracy extends AbstractSamplingHeartbeat<HeartbeatAccuracy>
+		implements HeartbeatAccuracy {
+
+	/**
+	 * Don't allow public instantiation. Should use
+	 * {@link #create(int, SamplingPolicy)} or
+	 * {@link #create(HeartbeatAccuracy, SamplingPolicy)}.
+	 * 
+	 * @param hb
+	 * @param policy
+	 */
+	protected SamplingHeartbeatAccuracy(final HeartbeatAccuracy hb, final SamplingPolicy policy) {
+		super(hb, policy);
+	}
+
+	/**
+	 * Create a {@link SamplingHeartbeatAccuracy} over a {@link DefaultHeartbeatAccuracy}.
+	 * 
+	 * @param windowSize
+	 *            the number of samples in a window
+	 * @param policy
+	 *            used only by this heartbeat
+	 * @throws IllegalStateException
+	 *             if native resources cannot be allocated
+	 */
+	public static SamplingHeartbeatAccuracy create(final int windowSize, final SamplingPolicy policy) {
+		return new SamplingHeartbeatAccuracy(DefaultHeartbeatAccuracy.create(windowSize), policy);
+	}
+
+	/**
+	 * Create a {@link SamplingHeartbeatAccuracy} over an existing heartbeat, which it takes
+	 * ownership of. It must not be used directly afterward.
+	 * 
+	 * @param hb
+	 * @param policy
+	 *            used only by this heartbeat
+	 */
+	public static SamplingHeartbeatAccuracy create(final HeartbeatAccuracy hb, final SamplingPolicy policy) {
+		return new SamplingHeartbeatAccuracy(hb, policy);
+	}
+
+	@Override
+	protected void issue(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy, final long startEnergy, final long endEnergy) {
+		hb.heartbeat(userTag, work, startTime, endTime, accuracy);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy) {
+		add(userTag, work, startTime, endTime, accuracy, 0, 0);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		add(userTag, work, startTime, endTime, 0, 0, 0);
+	}
+
+	public long getGlobalAccuracy() {
+		return hb.getGlobalAccuracy();
+	}
+
+	public long getWindowAccuracy() {
+		return hb.getWindowAccuracy();
+	}
+
+	public double getGlobalAccuracyRate() {
+		return hb.getGlobalAccuracyRate();
+	}
+
+	public double getWindowAccuracyRate() {
+		return hb.getWindowAccuracyRate();
+	}
+
+	public double getInstantAccuracyRate() {
+		return hb.getInstantAccuracyRate();
+	}
+
+}
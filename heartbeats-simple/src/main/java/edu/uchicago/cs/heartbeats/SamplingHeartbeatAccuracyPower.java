@@ -0,0 +1,120 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * A {@link HeartbeatAccuracyPower} that counts every heartbeat but only issues a
+ * representative sample of them to an underlying heartbeat. See
+ * {@link AbstractSamplingHeartbeat} for how samples are scaled.
+ *
+ * Attempting to perform operations after {@link #dispose()} is called will
+ * result in an {@link IllegalStateException}, except for heartbeats that are
+ * not sampled.
+ *
+ * @author Connor Imes
+ */
+public class SamplingHeartbeatAccuracyPower extends AbstractSamplingHeartbeat<HeartbeatAccuracyPower>
+		implements HeartbeatAccuracyPower {
+
+	/**
+	 * Don't allow public instantiation. Should use
+	 * {@link #create(int, SamplingPolicy)} or
+	 * {@link #create(HeartbeatAccuracyPower, SamplingPolicy)}.
+	 * 
+	 * @param hb
+	 * @param policy
+	 */
+	protected SamplingHeartbeatAccuracyPower(final HeartbeatAccuracyPower hb, final SamplingPolicy policy) {
+		super(hb, policy);
+	}
+
+	/**
+	 * Create a {@link SamplingHeartbeatAccuracyPower} over a {@link DefaultHeartbeatAccuracyPower}.
+	 * 
+	 * @param windowSize
+	 *            the number of samples in a window
+	 * @param policy
+	 *            used only by this heartbeat
+	 * @throws IllegalStateException
+	 *             if native resources cannot be allocated
+	 */
+	public static SamplingHeartbeatAccuracyPower create(final int windowSize, final SamplingPolicy policy) {
+		return new SamplingHeartbeatAccuracyPower(DefaultHeartbeatAccuracyPower.create(windowSize), policy);
+	}
+
+	/**
+	 * Create a {@link SamplingHeartbeatAccuracyPower} over an existing heartbeat, which it takes
+	 * ownership of. It must not be used directly afterward.
+	 * 
+	 * @param hb
+	 * @param policy
+	 *            used only by this heartbeat
+	 */
+	public static SamplingHeartbeatAccuracyPower create(final HeartbeatAccuracyPower hb, final SamplingPolicy policy) {
+		return new SamplingHeartbeatAccuracyPower(hb, policy);
+	}
+
+	@Override
+	protected void issue(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy, final long startEnergy, final long endEnergy) {
+		hb.heartbeat(userTag, work, startTime, endTime, accuracy, startEnergy, endEnergy);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy, final long startEnergy, final long endEnergy) {
+		add(userTag, work, startTime, endTime, accuracy, startEnergy, endEnergy);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long startEnergy, final long endEnergy) {
+		add(userTag, work, startTime, endTime, 0, startEnergy, endEnergy);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy) {
+		add(userTag, work, startTime, endTime, accuracy, 0, 0);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		add(userTag, work, startTime, endTime, 0, 0, 0);
+	}
+
+	public long getGlobalAccuracy() {
+		return hb.getGlobalAccuracy();
+	}
+
+	public long getWindowAccuracy() {
+		return hb.getWindowAccuracy();
+	}
+
+	public double getGlobalAccuracyRate() {
+		return hb.getGlobalAccuracyRate();
+	}
+
+	public double getWindowAccuracyRate() {
+		return hb.getWindowAccuracyRate();
+	}
+
+	public double getInstantAccuracyRate() {
+		return hb.getInstantAccuracyRate();
+	}
+
+	public long getGlobalEnergy() {
+		return hb.getGlobalEnergy();
+	}
+
+	public long getWindowEnergy() {
+		return hb.getWindowEnergy();
+	}
+
+	public double getGlobalPower() {
+		return hb.getGlobalPower();
+	}
+
+	public double getWindowPower() {
+		return hb.getWindowPower();
+	}
+
+	public double getInstantPower() {
+		return hb.getInstantPower();
+	}
+
+}
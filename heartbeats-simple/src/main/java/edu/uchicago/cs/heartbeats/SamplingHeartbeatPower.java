@@ -0,0 +1,89 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * A {@link HeartbeatPower} that counts every heartbeat but only issues a
+ * representative sample of them to an underlying heartbeat. See
+ * {@link AbstractSamplingHeartbeat} for how samples are scaled.
+ *
+ * Attempting to perform operations after {@link #dispose()} is called will
+ * result in an {@link IllegalStateException}, except for heartbeats that are
+ * not sampled.
+ *
+ * @author Connor Imes
+ */
+public class SamplingHeartbeatPower extends AbstractSamplingHeartbeat<HeartbeatPower> implements HeartbeatPower {
+
+	/**
+	 * Don't allow public instantiation. Should use
+	 * {@link #create(int, SamplingPolicy)} or
+	 * {@link #create(HeartbeatPower, SamplingPolicy)}.
+	 * 
+	 * @param hb
+	 * @param policy
+	 */
+	protected SamplingHeartbeatPower(final HeartbeatPower hb, final SamplingPolicy policy) {
+		super(hb, policy);
+	}
+
+	/**
+	 * Create a {@link SamplingHeartbeatPower} over a {@link DefaultHeartbeatPower}.
+	 * 
+	 * @param windowSize
+	 *            the number of samples in a window
+	 * @param policy
+	 *            used only by this heartbeat
+	 * @throws IllegalStateException
+	 *             if native resources cannot be allocated
+	 */
+	public static SamplingHeartbeatPower create(final int windowSize, final SamplingPolicy policy) {
+		return new SamplingHeartbeatPower(DefaultHeartbeatPower.create(windowSize), policy);
+	}
+
+	/**
+	 * Create a {@link SamplingHeartbeatPower} over an existing heartbeat, which it takes
+	 * ownership of. It must not be used directly afterward.
+	 * 
+	 * @param hb
+	 * @param policy
+	 *            used only by this heartbeat
+	 */
+	public static SamplingHeartbeatPower create(final HeartbeatPower hb, final SamplingPolicy policy) {
+		return new SamplingHeartbeatPower(hb, policy);
+	}
+
+	@Override
+	protected void issue(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy, final long startEnergy, final long endEnergy) {
+		hb.heartbeat(userTag, work, startTime, endTime, startEnergy, endEnergy);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long startEnergy, final long endEnergy) {
+		add(userTag, work, startTime, endTime, 0, startEnergy, endEnergy);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		add(userTag, work, startTime, endTime, 0, 0, 0);
+	}
+
+	public long getGlobalEnergy() {
+		return hb.getGlobalEnergy();
+	}
+
+	public long getWindowEnergy() {
+		return hb.getWindowEnergy();
+	}
+
+	public double getGlobalPower() {
+		return hb.getGlobalPower();
+	}
+
+	public double getWindowPower() {
+		return hb.getWindowPower();
+	}
+
+	public double getInstantPower() {
+		return hb.getInstantPower();
+	}
+
+}
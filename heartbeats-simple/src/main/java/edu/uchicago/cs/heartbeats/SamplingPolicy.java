@@ -0,0 +1,161 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which heartbeats a sampling heartbeat issues, and how many
+ * heartbeats each sample stands for.
+ *
+ * Policies keep state, so each sampling heartbeat needs its own instance. Like
+ * the heartbeats, they are not thread-safe.
+ *
+ * @author Connor Imes
+ */
+public abstract class SamplingPolicy {
+
+	/**
+	 * Called on every heartbeat, so keep it cheap.
+	 *
+	 * @return 0 to skip the heartbeat, otherwise the number of heartbeats the
+	 *         sample stands for, which its values are scaled by
+	 */
+	protected abstract double next();
+
+	/**
+	 * @return true if the cost of issuing samples should be measured and
+	 *         passed to {@link #sampled(long)}
+	 */
+	protected boolean isAdaptive() {
+		return false;
+	}
+
+	/**
+	 * Called after issuing a sample, if {@link #isAdaptive()}.
+	 *
+	 * @param cost
+	 *            nanoseconds spent issuing the sample
+	 */
+	protected void sampled(final long cost) {
+		// do nothing
+	}
+
+	/**
+	 * Sample every n-th heartbeat.
+	 *
+	 * @param n
+	 * @throws IllegalArgumentException
+	 *             if n is not positive
+	 */
+	public static SamplingPolicy fixed(final int n) {
+		if (n <= 0) {
+			throw new IllegalArgumentException("Sampling interval must be > 0");
+		}
+		return new Fixed(n);
+	}
+
+	/**
+	 * Sample each heartbeat independently with the given probability.
+	 *
+	 * @param p
+	 * @throws IllegalArgumentException
+	 *             if p is not in (0, 1]
+	 */
+	public static SamplingPolicy probabilistic(final double p) {
+		if (!(p > 0 && p <= 1)) {
+			throw new IllegalArgumentException("Sampling probability must be in (0, 1]");
+		}
+		return new Probabilistic(p);
+	}
+
+	/**
+	 * Sample every n-th heartbeat, adjusting n after each sample so that the
+	 * time spent issuing samples stays near a fraction of the elapsed time.
+	 *
+	 * @param budget
+	 *            the target overhead, e.g. 0.01 for 1%
+	 * @param maxInterval
+	 *            the largest n to use
+	 * @throws IllegalArgumentException
+	 *             if budget is not in (0, 1) or maxInterval is not positive
+	 */
+	public static SamplingPolicy adaptive(final double budget, final int maxInterval) {
+		if (!(budget > 0 && budget < 1) || maxInterval <= 0) {
+			throw new IllegalArgumentException("Overhead budget must be in (0, 1) and maximum interval > 0");
+		}
+		return new Adaptive(budget, maxInterval);
+	}
+
+	private static final class Fixed extends SamplingPolicy {
+		private final int n;
+		private int remaining;
+
+		private Fixed(final int n) {
+			this.n = n;
+			this.remaining = n;
+		}
+
+		@Override
+		protected double next() {
+			if (--remaining > 0) {
+				return 0;
+			}
+			remaining = n;
+			return n;
+		}
+	}
+
+	private static final class Probabilistic extends SamplingPolicy {
+		private final double p;
+		private final double weight;
+
+		private Probabilistic(final double p) {
+			this.p = p;
+			this.weight = 1 / p;
+		}
+
+		@Override
+		protected double next() {
+			return ThreadLocalRandom.current().nextDouble() < p ? weight : 0;
+		}
+	}
+
+	private static final class Adaptive extends SamplingPolicy {
+		private final double budget;
+		private final int maxInterval;
+		private int interval = 1;
+		private int count;
+		private long lastSample = System.nanoTime();
+
+		private Adaptive(final double budget, final int maxInterval) {
+			this.budget = budget;
+			this.maxInterval = maxInterval;
+		}
+
+		@Override
+		protected double next() {
+			if (++count < interval) {
+				return 0;
+			}
+			// stands for every heartbeat since the last sample
+			final int weight = count;
+			count = 0;
+			return weight;
+		}
+
+		@Override
+		protected boolean isAdaptive() {
+			return true;
+		}
+
+		@Override
+		protected void sampled(final long cost) {
+			final long now = System.nanoTime();
+			final long elapsed = Math.max(now - lastSample, 1);
+			lastSample = now;
+			// overhead scales inversely with the interval; change it by at most 2x per sample
+			final double target = interval * ((double) cost / elapsed) / budget;
+			final double next = Math.max(interval / 2.0, Math.min(interval * 2.0, target));
+			interval = (int) Math.max(1, Math.min(maxInterval, Math.round(next)));
+		}
+	}
+}
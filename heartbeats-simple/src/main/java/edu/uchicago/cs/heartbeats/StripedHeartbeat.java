@@ -0,0 +1,66 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * A {@link Heartbeat} that spreads heartbeats from concurrent threads over
+ * several underlying heartbeats and merges their metrics on read. See
+ * {@link AbstractStripedHeartbeat} for how values are merged.
+ *
+ * Attempting to perform operations after {@link #dispose()} is called will
+ * result in an {@link IllegalStateException}.
+ *
+ * @author Connor Imes
+ */
+public class StripedHeartbeat extends AbstractStripedHeartbeat<Heartbeat> implements Heartbeat {
+
+	/**
+	 * Don't allow public instantiation. Should use {@link #create(int)} or
+	 * {@link #create(Heartbeat[])}.
+	 * 
+	 * @param heartbeats
+	 */
+	protected StripedHeartbeat(final Heartbeat[] heartbeats) {
+		super(heartbeats);
+	}
+
+	/**
+	 * Create a {@link StripedHeartbeat} with {@link #getDefaultStripeCount()}
+	 * stripes, each a {@link DefaultHeartbeat}.
+	 * 
+	 * @param windowSize
+	 *            the window size of each stripe
+	 * @throws IllegalStateException
+	 *             if native resources cannot be allocated
+	 */
+	public static StripedHeartbeat create(final int windowSize) {
+		final Heartbeat[] heartbeats = new Heartbeat[getDefaultStripeCount()];
+		try {
+			for (int i = 0; i < heartbeats.length; i++) {
+				heartbeats[i] = DefaultHeartbeat.create(windowSize);
+			}
+		} catch (RuntimeException e) {
+			disposeAll(heartbeats);
+			throw e;
+		}
+		return new StripedHeartbeat(heartbeats);
+	}
+
+	/**
+	 * Create a {@link StripedHeartbeat} over existing heartbeats, which it takes
+	 * ownership of. They must not be used directly afterward.
+	 * 
+	 * @param heartbeats
+	 *            the stripes, at least one
+	 */
+	public static StripedHeartbeat create(final Heartbeat[] heartbeats) {
+		return new StripedHeartbeat(heartbeats.clone());
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		final Stripe<Heartbeat> s = stripe();
+		synchronized (s) {
+			s.hb.heartbeat(userTag, work, startTime, endTime);
+			s.lastEndTime = endTime;
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * A {@link HeartbeatAccuracy} that spreads heartbeats from concurrent threads
+ * over several underlying heartbeats and merges their metrics on read. See
+ * {@link AbstractStripedHeartbeat} for how values are merged.
+ *
+ * Attempting to perform operations after {@link #dispose()} is called will
+ * result in an {@link IllegalStateException}.
+ *
+ * @author Connor Imes
+ */
+public class StripedHeartbeatAccuracy extends AbstractStripedHeartbeat<HeartbeatAccuracy> implements HeartbeatAccuracy {
+
+	/**
+	 * Don't allow public instantiation. Should use {@link #create(int)} or
+	 * {@link #create(HeartbeatAccuracy[])}.
+	 * 
+	 * @param heartbeats
+	 */
+	protected StripedHeartbeatAccuracy(final HeartbeatAccuracy[] heartbeats) {
+		super(heartbeats);
+	}
+
+	/**
+	 * Create a {@link StripedHeartbeatAccuracy} with
+	 * {@link #getDefaultStripeCount()} stripes, each a
+	 * {@link DefaultHeartbeatAccuracy}.
+	 * 
+	 * @param windowSize
+	 *            the window size of each stripe
+	 * @throws IllegalStateException
+	 *             if native resources cannot be allocated
+	 */
+	public static StripedHeartbeatAccuracy create(final int windowSize) {
+		final HeartbeatAccuracy[] heartbeats = new HeartbeatAccuracy[getDefaultStripeCount()];
+		try {
+			for (int i = 0; i < heartbeats.length; i++) {
+				heartbeats[i] = DefaultHeartbeatAccuracy.create(windowSize);
+			}
+		} catch (RuntimeException e) {
+			disposeAll(heartbeats);
+			throw e;
+		}
+		return new StripedHeartbeatAccuracy(heartbeats);
+	}
+
+	/**
+	 * Create a {@link StripedHeartbeatAccuracy} over existing heartbeats, which
+	 * it takes ownership of. They must not be used directly afterward.
+	 * 
+	 * @param heartbeats
+	 *            the stripes, at least one
+	 */
+	public static StripedHeartbeatAccuracy create(final HeartbeatAccuracy[] heartbeats) {
+		return new StripedHeartbeatAccuracy(heartbeats.clone());
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy) {
+		final Stripe<HeartbeatAccuracy> s = stripe();
+		synchronized (s) {
+			s.hb.heartbeat(userTag, work, startTime, endTime, accuracy);
+			s.lastEndTime = endTime;
+		}
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		heartbeat(userTag, work, startTime, endTime, 0);
+	}
+
+	public long getGlobalAccuracy() {
+		return merged().getGlobalAccuracy();
+	}
+
+	public long getWindowAccuracy() {
+		return merged().getWindowAccuracy();
+	}
+
+	public double getGlobalAccuracyRate() {
+		return merged().getGlobalAccuracyRate();
+	}
+
+	public double getWindowAccuracyRate() {
+		return merged().getWindowAccuracyRate();
+	}
+
+	public double getInstantAccuracyRate() {
+		return merged().getInstantAccuracyRate();
+	}
+
+}
@@ -0,0 +1,123 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * A {@link HeartbeatAccuracyPower} that spreads heartbeats from concurrent
+ * threads over several underlying heartbeats and merges their metrics on read.
+ * See {@link AbstractStripedHeartbeat} for how values are merged.
+ *
+ * Attempting to perform operations after {@link #dispose()} is called will
+ * result in an {@link IllegalStateException}.
+ *
+ * @author Connor Imes
+ */
+public class StripedHeartbeatAccuracyPower extends AbstractStripedHeartbeat<HeartbeatAccuracyPower>
+		implements HeartbeatAccuracyPower {
+
+	/**
+	 * Don't allow public instantiation. Should use {@link #create(int)} or
+	 * {@link #create(HeartbeatAccuracyPower[])}.
+	 * 
+	 * @param heartbeats
+	 */
+	protected StripedHeartbeatAccuracyPower(final HeartbeatAccuracyPower[] heartbeats) {
+		super(heartbeats);
+	}
+
+	/**
+	 * Create a {@link StripedHeartbeatAccuracyPower} with
+	 * {@link #getDefaultStripeCount()} stripes, each a
+	 * {@link DefaultHeartbeatAccuracyPower}.
+	 * 
+	 * @param windowSize
+	 *            the window size of each stripe
+	 * @throws IllegalStateException
+	 *             if native resources cannot be allocated
+	 */
+	public static StripedHeartbeatAccuracyPower create(final int windowSize) {
+		final HeartbeatAccuracyPower[] heartbeats = new HeartbeatAccuracyPower[getDefaultStripeCount()];
+		try {
+			for (int i = 0; i < heartbeats.length; i++) {
+				heartbeats[i] = DefaultHeartbeatAccuracyPower.create(windowSize);
+			}
+		} catch (RuntimeException e) {
+			disposeAll(heartbeats);
+			throw e;
+		}
+		return new StripedHeartbeatAccuracyPower(heartbeats);
+	}
+
+	/**
+	 * Create a {@link StripedHeartbeatAccuracyPower} over existing heartbeats,
+	 * which it takes ownership of. They must not be used directly afterward.
+	 * 
+	 * @param heartbeats
+	 *            the stripes, at least one
+	 */
+	public static StripedHeartbeatAccuracyPower create(final HeartbeatAccuracyPower[] heartbeats) {
+		return new StripedHeartbeatAccuracyPower(heartbeats.clone());
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy, final long startEnergy, final long endEnergy) {
+		final Stripe<HeartbeatAccuracyPower> s = stripe();
+		synchronized (s) {
+			s.hb.heartbeat(userTag, work, startTime, endTime, accuracy, startEnergy, endEnergy);
+			s.lastEndTime = endTime;
+		}
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long startEnergy, final long endEnergy) {
+		heartbeat(userTag, work, startTime, endTime, 0, startEnergy, endEnergy);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy) {
+		heartbeat(userTag, work, startTime, endTime, accuracy, 0, 0);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		heartbeat(userTag, work, startTime, endTime, 0, 0, 0);
+	}
+
+	public long getGlobalAccuracy() {
+		return merged().getGlobalAccuracy();
+	}
+
+	public long getWindowAccuracy() {
+		return merged().getWindowAccuracy();
+	}
+
+	public double getGlobalAccuracyRate() {
+		return merged().getGlobalAccuracyRate();
+	}
+
+	public double getWindowAccuracyRate() {
+		return merged().getWindowAccuracyRate();
+	}
+
+	public double getInstantAccuracyRate() {
+		return merged().getInstantAccuracyRate();
+	}
+
+	public long getGlobalEnergy() {
+		return merged().getGlobalEnergy();
+	}
+
+	public long getWindowEnergy() {
+		return merged().getWindowEnergy();
+	}
+
+	public double getGlobalPower() {
+		return merged().getGlobalPower();
+	}
+
+	public double getWindowPower() {
+		return merged().getWindowPower();
+	}
+
+	public double getInstantPower() {
+		return merged().getInstantPower();
+	}
+
+}
@@ -0,0 +1,92 @@
+package edu.uchicago.cs.heartbeats;
+
+/**
+ * A {@link HeartbeatPower} that spreads heartbeats from concurrent threads over
+ * several underlying heartbeats and merges their metrics on read. See
+ * {@link AbstractStripedHeartbeat} for how values are merged.
+ *
+ * Attempting to perform operations after {@link #dispose()} is called will
+ * result in an {@link IllegalStateException}.
+ *
+ * @author Connor Imes
+ */
+public class StripedHeartbeatPower extends AbstractStripedHeartbeat<HeartbeatPower> implements HeartbeatPower {
+
+	/**
+	 * Don't allow public instantiation. Should use {@link #create(int)} or
+	 * {@link #create(HeartbeatPower[])}.
+	 * 
+	 * @param heartbeats
+	 */
+	protected StripedHeartbeatPower(final HeartbeatPower[] heartbeats) {
+		super(heartbeats);
+	}
+
+	/**
+	 * Create a {@link StripedHeartbeatPower} with
+	 * {@link #getDefaultStripeCount()} stripes, each a
+	 * {@link DefaultHeartbeatPower}.
+	 * 
+	 * @param windowSize
+	 *            the window size of each stripe
+	 * @throws IllegalStateException
+	 *             if native resources cannot be allocated
+	 */
+	public static StripedHeartbeatPower create(final int windowSize) {
+		final HeartbeatPower[] heartbeats = new HeartbeatPower[getDefaultStripeCount()];
+		try {
+			for (int i = 0; i < heartbeats.length; i++) {
+				heartbeats[i] = DefaultHeartbeatPower.create(windowSize);
+			}
+		} catch (RuntimeException e) {
+			disposeAll(heartbeats);
+			throw e;
+		}
+		return new StripedHeartbeatPower(heartbeats);
+	}
+
+	/**
+	 * Create a {@link StripedHeartbeatPower} over existing heartbeats, which it
+	 * takes ownership of. They must not be used directly afterward.
+	 * 
+	 * @param heartbeats
+	 *            the stripes, at least one
+	 */
+	public static StripedHeartbeatPower create(final HeartbeatPower[] heartbeats) {
+		return new StripedHeartbeatPower(heartbeats.clone());
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long startEnergy, final long endEnergy) {
+		final Stripe<HeartbeatPower> s = stripe();
+		synchronized (s) {
+			s.hb.heartbeat(userTag, work, startTime, endTime, startEnergy, endEnergy);
+			s.lastEndTime = endTime;
+		}
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		heartbeat(userTag, work, startTime, endTime, 0, 0);
+	}
+
+	public long getGlobalEnergy() {
+		return merged().getGlobalEnergy();
+	}
+
+	public long getWindowEnergy() {
+		return merged().getWindowEnergy();
+	}
+
+	public double getGlobalPower() {
+		return merged().getGlobalPower();
+	}
+
+	public double getWindowPower() {
+		return merged().getWindowPower();
+	}
+
+	public double getInstantPower() {
+		return merged().getInstantPower();
+	}
+
+}
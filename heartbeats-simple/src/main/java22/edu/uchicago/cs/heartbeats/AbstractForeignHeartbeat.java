@@ -0,0 +1,211 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Common state and utilities for the heartbeat implementations that call the
+ * native <code>heartbeats-simple</code> libraries through the Foreign
+ * Function &amp; Memory API, without the JNI wrapper.
+ *
+ * The context and window buffer are allocated in an {@link Arena} that is
+ * closed by {@link #dispose()}. Downcalls receive a global segment at the
+ * context's address, so they do not pay for arena liveness checks; like the
+ * <code>Default*</code> implementations, a {@link DisposalGuard} keeps them
+ * from racing with disposal instead.
+ *
+ * @author Connor Imes
+ */
+abstract class AbstractForeignHeartbeat {
+	private static final long CTX_WINDOW_SIZE = ForeignBackend.CTX_WINDOW_SIZE;
+
+	private final Arena arena;
+	/**
+	 * The native context, passed to downcalls.
+	 */
+	protected final MemorySegment ctx;
+	private final MemorySegment state;
+	protected final DisposalGuard guard = new DisposalGuard();
+
+	/**
+	 * The output stream to write log data to.
+	 */
+	protected FileOutputStream logStream;
+
+	/**
+	 * Allocate and initialize the native context.
+	 *
+	 * @param init
+	 *            the type's <code>heartbeat*_init</code> function
+	 * @param context
+	 *            the layout of the type's context, see
+	 *            {@link ForeignBackend#context(String...)}
+	 * @param recordSize
+	 *            the size of the type's window buffer records
+	 * @param windowSize
+	 * @param logStream
+	 * @throws IllegalStateException
+	 *             if the context cannot be initialized, or the library does not
+	 *             match the context layout
+	 */
+	protected AbstractForeignHeartbeat(final MethodHandle init, final StructLayout context, final long recordSize,
+			final int windowSize, final FileOutputStream logStream) {
+		if (windowSize <= 0) {
+			throw new IllegalStateException("Failed to initialize heartbeat");
+		}
+		final int fd;
+		try {
+			fd = AbstractDefaultHeartbeat.getFileDescriptor(logStream);
+		} catch (IOException e) {
+			throw new IllegalStateException("Failed to get file descriptor");
+		}
+		this.arena = Arena.ofShared();
+		final MemorySegment c = arena.allocate(context);
+		final MemorySegment records = arena.allocate(recordSize * windowSize, 8);
+		final int rc;
+		try {
+			rc = (int) init.invokeExact(c, (long) windowSize, records, fd, MemorySegment.NULL);
+		} catch (Throwable t) {
+			arena.close();
+			throw rethrow(t);
+		}
+		if (rc != 0) {
+			arena.close();
+			throw new IllegalStateException("Failed to initialize heartbeat");
+		}
+		// init stores the window size; anywhere else means the library's structs differ from the layout
+		if (c.get(ValueLayout.JAVA_LONG, CTX_WINDOW_SIZE) != windowSize) {
+			arena.close();
+			throw new IllegalStateException("heartbeats-simple context does not match the expected layout");
+		}
+		this.ctx = MemorySegment.ofAddress(c.address());
+		this.state = ctx.reinterpret(CTX_WINDOW_SIZE + 8);
+		this.logStream = logStream;
+	}
+
+	/**
+	 * Downcalls declare Throwable but only throw unchecked exceptions.
+	 */
+	static RuntimeException rethrow(final Throwable t) {
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+		if (t instanceof RuntimeException) {
+			return (RuntimeException) t;
+		}
+		return new IllegalStateException(t);
+	}
+
+	/**
+	 * Call a getter that returns an unsigned 64-bit integer.
+	 */
+	protected final long getLong(final MethodHandle getter) {
+		final int token = guard.enter();
+		try {
+			return (long) getter.invokeExact(ctx);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		} finally {
+			guard.exit(token);
+		}
+	}
+
+	/**
+	 * Call a getter that returns a double.
+	 */
+	protected final double getDouble(final MethodHandle getter) {
+		final int token = guard.enter();
+		try {
+			return (double) getter.invokeExact(ctx);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		} finally {
+			guard.exit(token);
+		}
+	}
+
+	/**
+	 * Read the window size directly from the context.
+	 */
+	public long getWindowSize() {
+		final int token = guard.enter();
+		try {
+			return state.get(ValueLayout.JAVA_LONG, CTX_WINDOW_SIZE);
+		} finally {
+			guard.exit(token);
+		}
+	}
+
+	protected final void logHeader(final MethodHandle logHeader) throws IOException {
+		final int token = guard.enter();
+		try {
+			if (logStream != null) {
+				final int rc;
+				try {
+					rc = (int) logHeader.invokeExact(AbstractDefaultHeartbeat.getFileDescriptor(logStream));
+				} catch (IOException e) {
+					throw e;
+				} catch (Throwable t) {
+					throw rethrow(t);
+				}
+				if (rc != 0) {
+					throw new IOException("Failed to write log header");
+				}
+			}
+		} finally {
+			guard.exit(token);
+		}
+	}
+
+	protected final void logWindowBuffer(final MethodHandle logWindowBuffer) throws IOException {
+		final int token = guard.enter();
+		try {
+			if (logStream != null) {
+				final int rc;
+				try {
+					rc = (int) logWindowBuffer.invokeExact(ctx,
+							AbstractDefaultHeartbeat.getFileDescriptor(logStream));
+				} catch (IOException e) {
+					throw e;
+				} catch (Throwable t) {
+					throw rethrow(t);
+				}
+				if (rc != 0) {
+					throw new IOException("Failed to write window buffer");
+				}
+			}
+		} finally {
+			guard.exit(token);
+		}
+	}
+
+	public FileOutputStream getLogStream() {
+		return logStream;
+	}
+
+	public void setLogStream(final FileOutputStream logStream) {
+		this.logStream = logStream;
+	}
+
+	/**
+	 * Waits for current calls to return, then frees the native context.
+	 */
+	public void dispose() {
+		guard.dispose();
+		arena.close();
+	}
+
+	/**
+	 * Same as {@link #dispose()}, but does nothing if already disposed.
+	 */
+	public void close() {
+		if (!guard.isDisposed()) {
+			dispose();
+		}
+	}
+}
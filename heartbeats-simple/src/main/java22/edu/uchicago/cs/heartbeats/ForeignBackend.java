@@ -0,0 +1,244 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemoryLayout.PathElement;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point to the Foreign Function &amp; Memory implementations, and
+ * lookup of the native <code>heartbeats-simple</code> functions they call.
+ *
+ * The shared libraries (<code>libhbs</code>, <code>libhbs-acc</code>,
+ * <code>libhbs-pow</code> and <code>libhbs-acc-pow</code>) are loaded from
+ * <code>java.library.path</code>, falling back on the system's library search
+ * path. Getters are linked as critical downcalls, which skip the thread state
+ * transitions of a regular native call. The <code>heartbeat*</code> functions
+ * are not, since they write to the log, if any, when a window completes, and a
+ * critical downcall must not block.
+ *
+ * @author Connor Imes
+ */
+final class ForeignBackend {
+	static final String LIB_HBS = "hbs";
+	static final String LIB_HBS_ACC = "hbs-acc";
+	static final String LIB_HBS_POW = "hbs-pow";
+	static final String LIB_HBS_ACC_POW = "hbs-acc-pow";
+
+	// getter signatures
+	static final FunctionDescriptor GET_LONG = FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.ADDRESS);
+	static final FunctionDescriptor GET_DOUBLE = FunctionDescriptor.of(ValueLayout.JAVA_DOUBLE,
+			ValueLayout.ADDRESS);
+	// int hb_*_log_header(int fd)
+	static final FunctionDescriptor LOG_HEADER = FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT);
+	// int hb_*_log_window_buffer(const heartbeat_*_context* hb, int fd)
+	static final FunctionDescriptor LOG_WINDOW_BUFFER = FunctionDescriptor.of(ValueLayout.JAVA_INT,
+			ValueLayout.ADDRESS, ValueLayout.JAVA_INT);
+	// int heartbeat_*_init(heartbeat_*_context* hb, uint64_t window_size, heartbeat_*_record* window_buffer,
+	// int log_fd, heartbeat_*_window_complete* hwc_callback)
+	static final FunctionDescriptor INIT = FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS,
+			ValueLayout.JAVA_LONG, ValueLayout.ADDRESS, ValueLayout.JAVA_INT, ValueLayout.ADDRESS);
+
+	// struct heartbeat_window_state { uint64_t buffer_index; uint64_t read_index; uint64_t window_size; }
+	private static final StructLayout WINDOW_STATE = MemoryLayout.structLayout(
+			ValueLayout.JAVA_LONG.withName("buffer_index"),
+			ValueLayout.JAVA_LONG.withName("read_index"),
+			ValueLayout.JAVA_LONG.withName("window_size"));
+	/**
+	 * Offset of the window size in any context.
+	 */
+	static final long CTX_WINDOW_SIZE = context().byteOffset(PathElement.groupElement("ws"),
+			PathElement.groupElement("window_size"));
+
+	private static final Linker LINKER = Linker.nativeLinker();
+
+	private ForeignBackend() {
+	}
+
+	/**
+	 * Loads the libraries on first use, and records why if that fails.
+	 */
+	private static final class Libraries {
+		static final SymbolLookup HBS;
+		static final SymbolLookup HBS_ACC;
+		static final SymbolLookup HBS_POW;
+		static final SymbolLookup HBS_ACC_POW;
+		static final String ERROR;
+
+		static {
+			SymbolLookup hbs = null;
+			SymbolLookup hbsAcc = null;
+			SymbolLookup hbsPow = null;
+			SymbolLookup hbsAccPow = null;
+			String error = null;
+			try {
+				hbs = load(LIB_HBS);
+				hbsAcc = load(LIB_HBS_ACC);
+				hbsPow = load(LIB_HBS_POW);
+				hbsAccPow = load(LIB_HBS_ACC_POW);
+			} catch (IllegalArgumentException | IllegalCallerException e) {
+				error = e.getMessage();
+			}
+			HBS = hbs;
+			HBS_ACC = hbsAcc;
+			HBS_POW = hbsPow;
+			HBS_ACC_POW = hbsAccPow;
+			ERROR = error;
+		}
+
+		private static SymbolLookup load(final String name) {
+			final String file = System.mapLibraryName(name);
+			final String path = System.getProperty("java.library.path", "");
+			for (final String dir : path.split(File.pathSeparator)) {
+				final File f = new File(dir, file);
+				if (!dir.isEmpty() && f.isFile()) {
+					return SymbolLookup.libraryLookup(f.toPath(), Arena.global());
+				}
+			}
+			return SymbolLookup.libraryLookup(file, Arena.global());
+		}
+	}
+
+	/**
+	 * Get the signature of a heartbeat function, which takes the context and
+	 * 64-bit integer arguments.
+	 *
+	 * @param numArgs
+	 *            not including the context
+	 */
+	static FunctionDescriptor heartbeat(final int numArgs) {
+		final MemoryLayout[] args = new MemoryLayout[numArgs + 1];
+		Arrays.fill(args, ValueLayout.JAVA_LONG);
+		args[0] = ValueLayout.ADDRESS;
+		return FunctionDescriptor.ofVoid(args);
+	}
+
+	/**
+	 * Get the layout of a context struct, as declared in the heartbeats-simple
+	 * headers:
+	 *
+	 * <pre>
+	 * struct heartbeat_*_context {
+	 *   heartbeat_window_state ws;
+	 *   heartbeat_*_record* window_buffer;
+	 *   uint64_t counter;
+	 *   int lock;
+	 *   heartbeat_*_window_complete* hwc_callback;
+	 *   heartbeat_udata td;
+	 *   heartbeat_udata wd;
+	 *   heartbeat_udata ad; // acc only
+	 *   heartbeat_udata ed; // pow only
+	 *   int log_fd;
+	 * };
+	 * </pre>
+	 *
+	 * @param udata
+	 *            the names of the heartbeat_udata members after
+	 *            <code>wd</code>: "ad" and/or "ed"
+	 */
+	static StructLayout context(final String... udata) {
+		final List<MemoryLayout> members = new ArrayList<>();
+		members.add(WINDOW_STATE.withName("ws"));
+		members.add(ValueLayout.ADDRESS.withName("window_buffer"));
+		members.add(ValueLayout.JAVA_LONG.withName("counter"));
+		members.add(ValueLayout.JAVA_INT.withName("lock"));
+		members.add(MemoryLayout.paddingLayout(ValueLayout.ADDRESS.byteAlignment() - ValueLayout.JAVA_INT.byteSize()));
+		members.add(ValueLayout.ADDRESS.withName("hwc_callback"));
+		members.add(udata("td"));
+		members.add(udata("wd"));
+		for (final String name : udata) {
+			members.add(udata(name));
+		}
+		members.add(ValueLayout.JAVA_INT.withName("log_fd"));
+		// trailing padding to the struct's alignment
+		members.add(MemoryLayout.paddingLayout(ValueLayout.JAVA_LONG.byteSize() - ValueLayout.JAVA_INT.byteSize()));
+		return MemoryLayout.structLayout(members.toArray(new MemoryLayout[0]));
+	}
+
+	// struct heartbeat_udata { uint64_t global; uint64_t window; }
+	private static StructLayout udata(final String name) {
+		return MemoryLayout.structLayout(ValueLayout.JAVA_LONG.withName("global"),
+				ValueLayout.JAVA_LONG.withName("window")).withName(name);
+	}
+
+	static boolean isAvailable() {
+		return Libraries.ERROR == null;
+	}
+
+	private static SymbolLookup lookup(final String library) {
+		checkAvailable();
+		switch (library) {
+		case LIB_HBS:
+			return Libraries.HBS;
+		case LIB_HBS_ACC:
+			return Libraries.HBS_ACC;
+		case LIB_HBS_POW:
+			return Libraries.HBS_POW;
+		default:
+			return Libraries.HBS_ACC_POW;
+		}
+	}
+
+	/**
+	 * Link a native function.
+	 *
+	 * @param library
+	 * @param name
+	 * @param descriptor
+	 * @param critical
+	 *            true for short calls that never block or call back into Java,
+	 *            e.g. not the <code>heartbeat*</code> functions, which may write
+	 *            to the log
+	 * @throws IllegalStateException
+	 *             if the library cannot be loaded or the function is missing
+	 */
+	static MethodHandle downcall(final String library, final String name, final FunctionDescriptor descriptor,
+			final boolean critical) {
+		final MemorySegment f = lookup(library).find(name)
+				.orElseThrow(() -> new IllegalStateException("Missing native function: " + name));
+		return critical ? LINKER.downcallHandle(f, descriptor, Linker.Option.critical(false))
+				: LINKER.downcallHandle(f, descriptor);
+	}
+
+	/**
+	 * Fail before linking any functions if the libraries are missing, rather
+	 * than with an error while initializing a class.
+	 */
+	private static void checkAvailable() {
+		if (Libraries.ERROR != null) {
+			throw new IllegalStateException("Failed to load heartbeats-simple libraries: " + Libraries.ERROR);
+		}
+	}
+
+	static Heartbeat createHeartbeat(final int windowSize, final FileOutputStream logStream) {
+		checkAvailable();
+		return new ForeignHeartbeat(windowSize, logStream);
+	}
+
+	static HeartbeatAccuracy createHeartbeatAccuracy(final int windowSize, final FileOutputStream logStream) {
+		checkAvailable();
+		return new ForeignHeartbeatAccuracy(windowSize, logStream);
+	}
+
+	static HeartbeatPower createHeartbeatPower(final int windowSize, final FileOutputStream logStream) {
+		checkAvailable();
+		return new ForeignHeartbeatPower(windowSize, logStream);
+	}
+
+	static HeartbeatAccuracyPower createHeartbeatAccuracyPower(final int windowSize,
+			final FileOutputStream logStream) {
+		checkAvailable();
+		return new ForeignHeartbeatAccuracyPower(windowSize, logStream);
+	}
+}
@@ -0,0 +1,114 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.StructLayout;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A {@link Heartbeat} that calls <code>libhbs</code> through the Foreign
+ * Function &amp; Memory API. Create it with {@link HeartbeatBackend#FFM}.
+ *
+ * @author Connor Imes
+ */
+final class ForeignHeartbeat extends AbstractForeignHeartbeat implements Heartbeat {
+	private static final StructLayout CONTEXT = ForeignBackend.context();
+	private static final long RECORD_SIZE = 64;
+
+	private static final MethodHandle INIT = link("heartbeat_init", ForeignBackend.INIT, false);
+	private static final MethodHandle HEARTBEAT = link("heartbeat", ForeignBackend.heartbeat(4), false);
+	private static final MethodHandle LOG_HEADER = link("hb_log_header", ForeignBackend.LOG_HEADER, false);
+	private static final MethodHandle LOG_WINDOW_BUFFER = link("hb_log_window_buffer",
+			ForeignBackend.LOG_WINDOW_BUFFER, false);
+	private static final MethodHandle GET_USER_TAG = link("hb_get_user_tag", ForeignBackend.GET_LONG, true);
+	private static final MethodHandle GET_GLOBAL_TIME = link("hb_get_global_time", ForeignBackend.GET_LONG, true);
+	private static final MethodHandle GET_WINDOW_TIME = link("hb_get_window_time", ForeignBackend.GET_LONG, true);
+	private static final MethodHandle GET_GLOBAL_WORK = link("hb_get_global_work", ForeignBackend.GET_LONG, true);
+	private static final MethodHandle GET_WINDOW_WORK = link("hb_get_window_work", ForeignBackend.GET_LONG, true);
+	private static final MethodHandle GET_GLOBAL_PERF = link("hb_get_global_perf", ForeignBackend.GET_DOUBLE, true);
+	private static final MethodHandle GET_WINDOW_PERF = link("hb_get_window_perf", ForeignBackend.GET_DOUBLE, true);
+	private static final MethodHandle GET_INSTANT_PERF = link("hb_get_instant_perf", ForeignBackend.GET_DOUBLE, true);
+
+	private static MethodHandle link(final String name, final FunctionDescriptor descriptor, final boolean critical) {
+		return ForeignBackend.downcall(ForeignBackend.LIB_HBS, name, descriptor, critical);
+	}
+
+	ForeignHeartbeat(final int windowSize, final FileOutputStream logStream) {
+		super(INIT, CONTEXT, RECORD_SIZE, windowSize, logStream);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		final int token = guard.enter();
+		try {
+			HEARTBEAT.invokeExact(ctx, userTag, work, startTime, endTime);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		} finally {
+			guard.exit(token);
+		}
+	}
+
+	public void logHeader() throws IOException {
+		logHeader(LOG_HEADER);
+	}
+
+	public void logWindowBuffer() throws IOException {
+		logWindowBuffer(LOG_WINDOW_BUFFER);
+	}
+
+	public long getUserTag() {
+		return getLong(GET_USER_TAG);
+	}
+
+	public long getGlobalTime() {
+		return getLong(GET_GLOBAL_TIME);
+	}
+
+	public long getWindowTime() {
+		return getLong(GET_WINDOW_TIME);
+	}
+
+	public long getGlobalWork() {
+		return getLong(GET_GLOBAL_WORK);
+	}
+
+	public long getWindowWork() {
+		return getLong(GET_WINDOW_WORK);
+	}
+
+	public double getGlobalPerf() {
+		return getDouble(GET_GLOBAL_PERF);
+	}
+
+	public double getWindowPerf() {
+		return getDouble(GET_WINDOW_PERF);
+	}
+
+	public double getInstantPerf() {
+		return getDouble(GET_INSTANT_PERF);
+	}
+
+	public HeartbeatSnapshot snapshot(final HeartbeatSnapshot snapshot) {
+		snapshot.longs[HeartbeatSnapshot.WINDOW_SIZE] = getWindowSize();
+		snapshot.longs[HeartbeatSnapshot.USER_TAG] = getUserTag();
+		snapshot.longs[HeartbeatSnapshot.GLOBAL_TIME] = getGlobalTime();
+		snapshot.longs[HeartbeatSnapshot.WINDOW_TIME] = getWindowTime();
+		snapshot.longs[HeartbeatSnapshot.GLOBAL_WORK] = getGlobalWork();
+		snapshot.longs[HeartbeatSnapshot.WINDOW_WORK] = getWindowWork();
+		snapshot.longs[HeartbeatSnapshot.GLOBAL_ACCURACY] = 0;
+		snapshot.longs[HeartbeatSnapshot.WINDOW_ACCURACY] = 0;
+		snapshot.longs[HeartbeatSnapshot.GLOBAL_ENERGY] = 0;
+		snapshot.longs[HeartbeatSnapshot.WINDOW_ENERGY] = 0;
+		snapshot.doubles[HeartbeatSnapshot.GLOBAL_PERF] = getGlobalPerf();
+		snapshot.doubles[HeartbeatSnapshot.WINDOW_PERF] = getWindowPerf();
+		snapshot.doubles[HeartbeatSnapshot.INSTANT_PERF] = getInstantPerf();
+		snapshot.doubles[HeartbeatSnapshot.GLOBAL_ACCURACY_RATE] = 0;
+		snapshot.doubles[HeartbeatSnapshot.WINDOW_ACCURACY_RATE] = 0;
+		snapshot.doubles[HeartbeatSnapshot.INSTANT_ACCURACY_RATE] = 0;
+		snapshot.doubles[HeartbeatSnapshot.GLOBAL_POWER] = 0;
+		snapshot.doubles[HeartbeatSnapshot.WINDOW_POWER] = 0;
+		snapshot.doubles[HeartbeatSnapshot.INSTANT_POWER] = 0;
+		return snapshot;
+	}
+}
@@ -0,0 +1,151 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.StructLayout;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * A {@link HeartbeatAccuracy} that calls <code>libhbs-acc</code> through the
+ * Foreign Function &amp; Memory API. Create it with
+ * {@link HeartbeatBackend#FFM}.
+ *
+ * @author Connor Imes
+ */
+final class ForeignHeartbeatAccuracy extends AbstractForeignHeartbeat implements HeartbeatAccuracy {
+	private static final StructLayout CONTEXT = ForeignBackend.context("ad");
+	private static final long RECORD_SIZE = 96;
+
+	private static final MethodHandle INIT = link("heartbeat_acc_init", ForeignBackend.INIT, false);
+	private static final MethodHandle HEARTBEAT = link("heartbeat_acc", ForeignBackend.heartbeat(5), false);
+	private static final MethodHandle LOG_HEADER = link("hb_acc_log_header", ForeignBackend.LOG_HEADER, false);
+	private static final MethodHandle LOG_WINDOW_BUFFER = link("hb_acc_log_window_buffer",
+			ForeignBackend.LOG_WINDOW_BUFFER, false);
+	private static final MethodHandle GET_USER_TAG = link("hb_acc_get_user_tag", ForeignBackend.GET_LONG, true);
+	private static final MethodHandle GET_GLOBAL_TIME = link("hb_acc_get_global_time", ForeignBackend.GET_LONG, true);
+	private static final MethodHandle GET_WINDOW_TIME = link("hb_acc_get_window_time", ForeignBackend.GET_LONG, true);
+	private static final MethodHandle GET_GLOBAL_WORK = link("hb_acc_get_global_work", ForeignBackend.GET_LONG, true);
+	private static final MethodHandle GET_WINDOW_WORK = link("hb_acc_get_window_work", ForeignBackend.GET_LONG, true);
+	private static final MethodHandle GET_GLOBAL_PERF = link("hb_acc_get_global_perf", ForeignBackend.GET_DOUBLE, true);
+	private static final MethodHandle GET_WINDOW_PERF = link("hb_acc_get_window_perf", ForeignBackend.GET_DOUBLE, true);
+	private static final MethodHandle GET_INSTANT_PERF = link("hb_acc_get_instant_perf",
+			ForeignBackend.GET_DOUBLE, true);
+	private static final MethodHandle GET_GLOBAL_ACCURACY = link("hb_acc_get_global_accuracy",
+			ForeignBackend.GET_LONG, true);
+	private static final MethodHandle GET_WINDOW_ACCURACY = link("hb_acc_get_window_accuracy",
+			ForeignBackend.GET_LONG, true);
+	private static final MethodHandle GET_GLOBAL_ACCURACY_RATE = link("hb_acc_get_global_accuracy_rate",
+			ForeignBackend.GET_DOUBLE, true);
+	private static final MethodHandle GET_WINDOW_ACCURACY_RATE = link("hb_acc_get_window_accuracy_rate",
+			ForeignBackend.GET_DOUBLE, true);
+	private static final MethodHandle GET_INSTANT_ACCURACY_RATE = link("hb_acc_get_instant_accuracy_rate",
+			ForeignBackend.GET_DOUBLE, true);
+
+	private static MethodHandle link(final String name, final FunctionDescriptor descriptor, final boolean critical) {
+		return ForeignBackend.downcall(ForeignBackend.LIB_HBS_ACC, name, descriptor, critical);
+	}
+
+	ForeignHeartbeatAccuracy(final int windowSize, final FileOutputStream logStream) {
+		super(INIT, CONTEXT, RECORD_SIZE, windowSize, logStream);
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime,
+			final long accuracy) {
+		final int token = guard.enter();
+		try {
+			HEARTBEAT.invokeExact(ctx, userTag, work, startTime, endTime, accuracy);
+		} catch (Throwable t) {
+			throw rethrow(t);
+		} finally {
+			guard.exit(token);
+		}
+	}
+
+	public void heartbeat(final long userTag, final long work, final long startTime, final long endTime) {
+		heartbeat(userTag, work, startTime, endTime, 0);
+	}
+
+	public void logHeader() throws IOException {
+		logHeader(LOG_HEADER);
+	}
+
+	public void logWindowBuffer() throws IOException {
+		logWindowBuffer(LOG_WINDOW_BUFFER);
+	}
+
+	public long getUserTag() {
+		return getLong(GET_USER_TAG);
+	}
+
+	public long getGlobalTime() {
+		return getLong(GET_GLOBAL_TIME);
+	}
+
+	public long getWindowTime() {
+		return getLong(GET_WINDOW_TIME);
+	}
+
+	public long getGlobalWork() {
+		return getLong(GET_GLOBAL_WORK);
+	}
+
+	public long getWindowWork() {
+		return getLong(GET_WINDOW_WORK);
+	}
+
+	public double getGlobalPerf() {
+		return getDouble(GET_GLOBAL_PERF);
+	}
+
+	public double getWindowPerf() {
+		return getDouble(GET_WINDOW_PERF);
+	}
+
+	public double getInstantPerf() {
+		return getDouble(GET_INSTANT_PERF);
+	}
+
+	public long getGlobalAccuracy() {
+		return getLong(GET_GLOBAL_ACCURACY);
+	}
+
+	public long getWindowAccuracy() {
+		return getLong(GET_WINDOW_ACCURACY);
+	}
+
+	public double getGlobalAccuracyRate() {
+		return getDouble(GET_GLOBAL_ACCURACY_RATE);
+	}
+
+	public double getWindowAccuracyRate() {
+		return getDouble(GET_WINDOW_ACCURACY_RATE);
+	}
+
+	public double getInstantAccuracyRate() {
+		return getDouble(GET_INSTANT_ACCURACY_RATE);
+	}
+
+	public HeartbeatSnapshot snapshot(final HeartbeatSnapshot snapshot) {
+		snapshot.longs[HeartbeatSnapshot.WINDOW_SIZE] = getWindowSize();
+		snapshot.longs[HeartbeatSnapshot.USER_TAG] = getUserTag();
+		snapshot.longs[HeartbeatSnapshot.GLOBAL_TIME] = getGlobalTime();
+		snapshot.longs[HeartbeatSnapshot.WINDOW_TIME] = getWindowTime();
+		snapshot.longs[HeartbeatSnapshot.GLOBAL_WORK] = getGlobalWork();
+		snapshot.longs[HeartbeatSnapshot.WINDOW_WORK] = getWindowWork();
+		snapshot.longs[HeartbeatSnapshot.GLOBAL_ACCURACY] = getGlobalAccuracy();
+		snapshot.longs[HeartbeatSnapshot.WINDOW_ACCURACY] = getWindowAccuracy();
+		snapshot.longs[HeartbeatSnapshot.GLOBAL_ENERGY] = 0;
+		snapshot.longs[HeartbeatSnapshot.WINDOW_ENERGY] = 0;
+		snapshot.doubles[HeartbeatSnapshot.GLOBAL_PERF] = getGlobalPerf();
+		snapshot.doubles[HeartbeatSnapshot.WINDOW_PERF] = getWindowPerf();
+		snapshot.doubles[HeartbeatSnapshot.INSTANT_PERF] = getInstantPerf();
+		snapshot.doubles[HeartbeatSnapshot.GLOBAL_ACCURACY_RATE] = getGlobalAccuracyRate();
+		snapshot.doubles[HeartbeatSnapshot.WINDOW_ACCURACY_RATE] = getWindowAccuracyRate();
+		snapshot.doubles[HeartbeatSnapshot.INSTANT_ACCURACY_RATE] = getInstantAccuracyRate();
+		snapshot.doubles[HeartbeatSnapshot.GLOBAL_POWER] = 0;
+		snapshot.doubles[HeartbeatSnapshot.WINDOW_POWER] = 0;
+		snapshot.doubles[HeartbeatSnapshot.INSTANT_POWER] = 0;
+		return snapshot;
+	}
+}
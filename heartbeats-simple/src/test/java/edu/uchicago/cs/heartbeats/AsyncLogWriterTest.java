@@ -0,0 +1,223 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link AsyncLogWriter}.
+ *
+ * @author Connor Imes
+ */
+public class AsyncLogWriterTest {
+	private static final int WINDOW_SIZE = 20;
+
+	/**
+	 * A window whose write blocks until released.
+	 */
+	private static class LatchWindow extends AsyncLog.Window {
+		private final CountDownLatch latch = new CountDownLatch(1);
+
+		@Override
+		protected void write() throws IOException {
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+		}
+	}
+
+	private static void issue(final HeartbeatAccuracyPower hb, final int n) {
+		for (int i = 0; i < n; i++) {
+			hb.heartbeat(i, 1, i * 1000, (i + 1) * 1000, 1, i, i + 2);
+		}
+	}
+
+	private static byte[] read(final File f) throws IOException {
+		final FileInputStream in = new FileInputStream(f);
+		try {
+			final byte[] b = new byte[(int) f.length()];
+			int off = 0;
+			while (off < b.length) {
+				off += in.read(b, off, b.length - off);
+			}
+			return b;
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void test_same_output_as_sync() throws IOException, InterruptedException {
+		final int beats = WINDOW_SIZE * 3 + WINDOW_SIZE / 2;
+		final File syncFile = File.createTempFile("hb-sync", ".log");
+		final File asyncFile = File.createTempFile("hb-async", ".log");
+		syncFile.deleteOnExit();
+		asyncFile.deleteOnExit();
+
+		FileOutputStream fos = new FileOutputStream(syncFile);
+		HeartbeatAccuracyPower hb = JavaHeartbeatAccuracyPower.create(WINDOW_SIZE, fos);
+		hb.logHeader();
+		issue(hb, beats);
+		hb.logWindowBuffer();
+		hb.dispose();
+		fos.close();
+
+		final AsyncLogWriter writer = AsyncLogWriter.create(2, AsyncLogWriter.Policy.BLOCK);
+		fos = new FileOutputStream(asyncFile);
+		hb = JavaHeartbeatAccuracyPower.create(WINDOW_SIZE, fos, writer);
+		hb.logHeader();
+		issue(hb, beats);
+		hb.logWindowBuffer();
+		hb.dispose();
+		fos.close();
+		writer.close();
+
+		final byte[] expected = read(syncFile);
+		assertTrue("no output", expected.length > 0);
+		assertTrue("output differs", Arrays.equals(expected, read(asyncFile)));
+	}
+
+	@Test
+	public void test_count_and_drop() throws InterruptedException {
+		final AsyncLogWriter writer = AsyncLogWriter.create(1, AsyncLogWriter.Policy.COUNT_AND_DROP);
+		final LatchWindow lw = new LatchWindow();
+		final AsyncLog log = new AsyncLog(writer, new AsyncLog.Window[] { lw });
+		log.submit(log.acquire(), null);
+		assertNull("acquired while writing", log.acquire());
+		assertEquals("getDroppedWindows", 1, writer.getDroppedWindows());
+		lw.latch.countDown();
+		log.flush();
+		assertSame("window not released", lw, log.acquire());
+		writer.close();
+	}
+
+	@Test
+	public void test_drop() throws InterruptedException {
+		final AsyncLogWriter writer = AsyncLogWriter.create(1, AsyncLogWriter.Policy.DROP);
+		final LatchWindow lw = new LatchWindow();
+		final AsyncLog log = new AsyncLog(writer, new AsyncLog.Window[] { lw });
+		log.submit(log.acquire(), null);
+		assertNull("acquired while writing", log.acquire());
+		assertEquals("getDroppedWindows", 0, writer.getDroppedWindows());
+		lw.latch.countDown();
+		log.flush();
+		writer.close();
+	}
+
+	@Test
+	public void test_block() throws InterruptedException {
+		final AsyncLogWriter writer = AsyncLogWriter.create(1, AsyncLogWriter.Policy.BLOCK);
+		final LatchWindow lw = new LatchWindow();
+		final AsyncLog log = new AsyncLog(writer, new AsyncLog.Window[] { lw });
+		log.submit(log.acquire(), null);
+		final CountDownLatch acquired = new CountDownLatch(1);
+		final Thread t = new Thread() {
+			@Override
+			public void run() {
+				log.acquire();
+				acquired.countDown();
+			}
+		};
+		t.start();
+		assertFalse("acquired while writing", acquired.await(100, TimeUnit.MILLISECONDS));
+		lw.latch.countDown();
+		assertTrue("not acquired after writing", acquired.await(10, TimeUnit.SECONDS));
+		t.join();
+		writer.close();
+	}
+
+	@Test
+	public void test_window_completed() {
+		final NativeCleaner.Freer freer = new NativeCleaner.Freer() {
+			public void free(final ByteBuffer ptr) {
+			}
+
+			public long size(final ByteBuffer ptr) {
+				return 0;
+			}
+		};
+		// window counting is done by the heartbeat, without native calls
+		final AbstractDefaultHeartbeat hb = new AbstractDefaultHeartbeat(ByteBuffer.allocateDirect(8), null, freer) {
+			@Override
+			public void dispose() {
+				cleanable.clean();
+			}
+
+			@Override
+			protected void issueScope(final long userTag, final long work, final long startTime,
+					final long endTime, final long accuracy, final long startEnergy, final long endEnergy) {
+			}
+		};
+		hb.trackWindows(WINDOW_SIZE);
+		assertEquals("remaining", WINDOW_SIZE, hb.remainingInWindow());
+		assertFalse(hb.windowCompleted(WINDOW_SIZE - 1));
+		assertEquals("remaining", 1, hb.remainingInWindow());
+		assertTrue(hb.windowCompleted(1));
+		assertEquals("remaining", WINDOW_SIZE, hb.remainingInWindow());
+		hb.dispose();
+	}
+
+	@Test
+	public void test_submit_after_close() throws InterruptedException {
+		final AsyncLogWriter writer = AsyncLogWriter.create(1, AsyncLogWriter.Policy.BLOCK);
+		final AsyncLog log = new AsyncLog(writer, new AsyncLog.Window[] { new LatchWindow() });
+		writer.close();
+		log.submit(log.acquire(), null);
+		// the window was released without being written, so this must not block
+		log.flush();
+		assertNotNull(log.acquire());
+	}
+
+	@Test
+	public void test_submit_while_closing() throws InterruptedException {
+		for (int i = 0; i < 200; i++) {
+			final AsyncLogWriter writer = AsyncLogWriter.create(1, AsyncLogWriter.Policy.BLOCK);
+			final LatchWindow lw = new LatchWindow();
+			lw.latch.countDown();
+			final AsyncLog log = new AsyncLog(writer, new AsyncLog.Window[] { lw });
+			final CountDownLatch start = new CountDownLatch(1);
+			final Thread submitter = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					log.submit(log.acquire(), null);
+				}
+			};
+			submitter.start();
+			start.countDown();
+			writer.close();
+			submitter.join();
+			// the window was either written or released, so this must not block
+			final Thread flusher = new Thread() {
+				@Override
+				public void run() {
+					log.flush();
+				}
+			};
+			flusher.start();
+			flusher.join(10000);
+			assertFalse("flush blocked", flusher.isAlive());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_bad_capacity() {
+		AsyncLogWriter.create(0, AsyncLogWriter.Policy.BLOCK);
+	}
+
+}
@@ -0,0 +1,126 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link CachedHeartbeatMXBean}, over pure-Java heartbeats.
+ *
+ * @author Connor Imes
+ */
+public class CachedHeartbeatMXBeanTest {
+	private static final int WINDOW_SIZE = 20;
+
+	private long time;
+
+	private final HeartbeatClock clock = new HeartbeatClock() {
+		public long getTime() {
+			return time;
+		}
+	};
+
+	/**
+	 * Counts snapshots taken.
+	 */
+	private static final class CountingHeartbeat extends JavaHeartbeatPower {
+		private int snapshots;
+
+		private CountingHeartbeat() {
+			super(WINDOW_SIZE, null);
+		}
+
+		@Override
+		public HeartbeatSnapshot snapshot(final HeartbeatSnapshot snapshot) {
+			snapshots++;
+			return super.snapshot(snapshot);
+		}
+	}
+
+	@Test
+	public void test_staleness() {
+		final CountingHeartbeat hb = new CountingHeartbeat();
+		final CachedHeartbeatMXBean bean = new CachedHeartbeatMXBean(hb, 1000, clock);
+		hb.heartbeat(1, 2, 0, 1000, 0, 500);
+		assertEquals("getGlobalWork", 2, bean.getGlobalWork());
+		assertEquals("getGlobalEnergy", 500, bean.getGlobalEnergy());
+		assertEquals("getUserTag", 1, bean.getUserTag());
+		assertEquals("one snapshot", 1, hb.snapshots);
+		// stale values until the max staleness passes
+		hb.heartbeat(2, 2, 1000, 2000, 500, 1000);
+		time = 999;
+		assertEquals("getGlobalWork", 2, bean.getGlobalWork());
+		assertEquals("getSnapshotAge", 999, bean.getSnapshotAge());
+		time = 1000;
+		assertEquals("getGlobalWork", 4, bean.getGlobalWork());
+		assertEquals("getGlobalPower", 500, bean.getGlobalPower(), 1e-6);
+		assertEquals("two snapshots", 2, hb.snapshots);
+		bean.refresh();
+		assertEquals("three snapshots", 3, hb.snapshots);
+		assertEquals("getSnapshotAge", 0, bean.getSnapshotAge());
+		hb.dispose();
+	}
+
+	@Test
+	public void test_register() throws JMException {
+		final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		final CountingHeartbeat hb = new CountingHeartbeat();
+		hb.heartbeat(0, 3, 0, 1000, 0, 100);
+		final ObjectName on = new CachedHeartbeatMXBean(hb, Long.MAX_VALUE).register(server, "test,power");
+		try {
+			assertEquals("domain", CachedHeartbeatMXBean.DOMAIN, on.getDomain());
+			assertEquals("type", "HeartbeatPower", on.getKeyProperty("type"));
+			assertEquals("GlobalWork", 3L, server.getAttribute(on, "GlobalWork"));
+			assertEquals("GlobalEnergy", 100L, server.getAttribute(on, "GlobalEnergy"));
+			server.getAttributes(on, new String[] { "GlobalPerf", "WindowPerf", "InstantPerf", "WindowPower" });
+			assertEquals("one snapshot", 1, hb.snapshots);
+			try {
+				server.getAttribute(on, "GlobalAccuracy");
+				fail("accuracy exposed for a power heartbeat");
+			} catch (AttributeNotFoundException e) {
+				// expected
+			}
+		} finally {
+			server.unregisterMBean(on);
+		}
+		hb.dispose();
+	}
+
+	@Test
+	public void test_schedule() throws InterruptedException {
+		final CountingHeartbeat hb = new CountingHeartbeat();
+		final CachedHeartbeatMXBean bean = new CachedHeartbeatMXBean(hb, Long.MAX_VALUE);
+		final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+		try {
+			final ScheduledFuture<?> f = bean.schedule(executor, 1, TimeUnit.MILLISECONDS);
+			hb.heartbeat(0, 7, 0, 1000, 0, 0);
+			long work = 0;
+			for (int i = 0; i < 100 && work != 7; i++) {
+				Thread.sleep(10);
+				work = bean.getGlobalWork();
+			}
+			assertEquals("getGlobalWork", 7, work);
+			f.cancel(false);
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		}
+		hb.dispose();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_bad_staleness() {
+		new CachedHeartbeatMXBean(JavaHeartbeat.create(WINDOW_SIZE), -1);
+	}
+}
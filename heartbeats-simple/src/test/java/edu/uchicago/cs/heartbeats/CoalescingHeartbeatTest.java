@@ -0,0 +1,116 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for the coalescing heartbeats, over pure-Java heartbeats.
+ *
+ * @author Connor Imes
+ */
+public class CoalescingHeartbeatTest {
+	private static final int WINDOW_SIZE = 20;
+
+	@Test
+	public void test_flush_by_work() {
+		final JavaHeartbeat inner = JavaHeartbeat.create(WINDOW_SIZE);
+		final CoalescingHeartbeat hb = CoalescingHeartbeat.create(inner, CoalescingPolicy.work(4));
+		for (int i = 0; i < 10; i++) {
+			hb.heartbeat(i, 1, i * 1000, (i + 1) * 1000);
+		}
+		assertEquals("flushed work", 8, inner.getGlobalWork());
+		assertEquals("flushed time", 8000, inner.getGlobalTime());
+		assertEquals("getPendingCount", 2, hb.getPendingCount());
+		// reading flushes the calling thread
+		assertEquals("getGlobalWork", 10, hb.getGlobalWork());
+		assertEquals("getPendingCount", 0, hb.getPendingCount());
+		assertEquals("getGlobalTime", 10000, hb.getGlobalTime());
+		assertEquals("getUserTag", 9, hb.getUserTag());
+		hb.dispose();
+	}
+
+	@Test
+	public void test_flush_by_time() {
+		final JavaHeartbeat inner = JavaHeartbeat.create(WINDOW_SIZE);
+		final CoalescingHeartbeat hb = CoalescingHeartbeat.create(inner, CoalescingPolicy.time(5000));
+		for (int i = 0; i < 7; i++) {
+			hb.heartbeat(0, 1, i * 1000, (i + 1) * 1000);
+		}
+		assertEquals("flushed work", 5, inner.getGlobalWork());
+		hb.flush();
+		assertEquals("flushed work", 7, inner.getGlobalWork());
+		hb.dispose();
+	}
+
+	@Test
+	public void test_aggregate() {
+		final JavaHeartbeatAccuracyPower inner = JavaHeartbeatAccuracyPower.create(WINDOW_SIZE);
+		final CoalescingHeartbeatAccuracyPower hb = CoalescingHeartbeatAccuracyPower.create(inner,
+				new CoalescingPolicy(3, Long.MAX_VALUE));
+		hb.heartbeat(1, 1, 0, 1000, 2, 100, 150);
+		hb.heartbeat(2, 1, 1000, 2000, 3, 150, 175);
+		assertEquals("not flushed", 0, inner.getGlobalWork());
+		hb.heartbeat(3, 1, 2000, 3000, 4, 175, 300);
+		assertEquals("getGlobalWork", 3, inner.getGlobalWork());
+		assertEquals("getGlobalTime", 3000, inner.getGlobalTime());
+		assertEquals("getGlobalAccuracy", 9, inner.getGlobalAccuracy());
+		assertEquals("getGlobalEnergy", 200, inner.getGlobalEnergy());
+		assertEquals("getUserTag", 3, inner.getUserTag());
+		// a single aggregated record
+		assertEquals("getWindowWork", 3, hb.getWindowWork());
+		assertEquals("getGlobalPower", inner.getGlobalPower(), hb.getGlobalPower(), 0.0);
+		hb.dispose();
+	}
+
+	@Test
+	public void test_threads() throws InterruptedException {
+		final CoalescingHeartbeatAccuracy hb = CoalescingHeartbeatAccuracy.create(
+				JavaHeartbeatAccuracy.create(WINDOW_SIZE), CoalescingPolicy.work(100));
+		final int numThreads = 4;
+		final int perThread = 1050;
+		final Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i < numThreads; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < perThread; j++) {
+						hb.heartbeat(0, 1, j, j + 1, 1);
+					}
+					hb.flush();
+				}
+			};
+			threads[i].start();
+		}
+		for (final Thread t : threads) {
+			t.join();
+		}
+		assertEquals("getGlobalWork", numThreads * perThread, hb.getGlobalWork());
+		assertEquals("getGlobalAccuracy", numThreads * perThread, hb.getGlobalAccuracy());
+		hb.dispose();
+	}
+
+	@Test
+	public void test_dispose_flushes() {
+		final JavaHeartbeatPower inner = JavaHeartbeatPower.create(WINDOW_SIZE);
+		final CoalescingHeartbeatPower hb = CoalescingHeartbeatPower.create(inner, CoalescingPolicy.work(100));
+		hb.heartbeat(0, 1, 0, 1000, 0, 10);
+		final HeartbeatSnapshot s = hb.snapshot(new HeartbeatSnapshot());
+		assertEquals("snapshot flushes", 10, s.getGlobalEnergy());
+		hb.close();
+		hb.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void test_heartbeat_after_dispose() {
+		final CoalescingHeartbeat hb = CoalescingHeartbeat.create(JavaHeartbeat.create(WINDOW_SIZE),
+				CoalescingPolicy.work(100));
+		hb.dispose();
+		hb.heartbeat(0, 1, 0, 1000);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_bad_policy() {
+		new CoalescingPolicy(0, 1000);
+	}
+}
@@ -2,6 +2,7 @@ package edu.uchicago.cs.heartbeats;
 
 import static org.junit.Assert.*;
 
+import java.io.File;
 import java.io.FileDescriptor;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -61,6 +62,183 @@ public class DefaultHeartbeatAccuracyPowerTest {
 		hb.dispose();
 	}
 
+	@Test
+	public void test_snapshot() {
+		HeartbeatAccuracyPower hb = DefaultHeartbeatAccuracyPower.create(WINDOW_SIZE);
+		hb.heartbeat(1, 2, 0, 1000000000, 3, 0, 4000000);
+		hb.heartbeat(5, 6, 1000000000, 2000000000, 7, 4000000, 5000000);
+		HeartbeatSnapshot s = hb.snapshot(new HeartbeatSnapshot());
+		assertEquals("getWindowSize", hb.getWindowSize(), s.getWindowSize());
+		assertEquals("getUserTag", hb.getUserTag(), s.getUserTag());
+		assertEquals("getGlobalTime", hb.getGlobalTime(), s.getGlobalTime());
+		assertEquals("getWindowTime", hb.getWindowTime(), s.getWindowTime());
+		assertEquals("getGlobalWork", hb.getGlobalWork(), s.getGlobalWork());
+		assertEquals("getWindowWork", hb.getWindowWork(), s.getWindowWork());
+		assertEquals("getGlobalAccuracy", hb.getGlobalAccuracy(), s.getGlobalAccuracy());
+		assertEquals("getWindowAccuracy", hb.getWindowAccuracy(), s.getWindowAccuracy());
+		assertEquals("getGlobalEnergy", hb.getGlobalEnergy(), s.getGlobalEnergy());
+		assertEquals("getWindowEnergy", hb.getWindowEnergy(), s.getWindowEnergy());
+		assertEquals("getGlobalPerf", hb.getGlobalPerf(), s.getGlobalPerf(), 0.0);
+		assertEquals("getWindowPerf", hb.getWindowPerf(), s.getWindowPerf(), 0.0);
+		assertEquals("getInstantPerf", hb.getInstantPerf(), s.getInstantPerf(), 0.0);
+		assertEquals("getGlobalAccuracyRate", hb.getGlobalAccuracyRate(), s.getGlobalAccuracyRate(), 0.0);
+		assertEquals("getWindowAccuracyRate", hb.getWindowAccuracyRate(), s.getWindowAccuracyRate(), 0.0);
+		assertEquals("getInstantAccuracyRate", hb.getInstantAccuracyRate(), s.getInstantAccuracyRate(), 0.0);
+		assertEquals("getGlobalPower", hb.getGlobalPower(), s.getGlobalPower(), 0.0);
+		assertEquals("getWindowPower", hb.getWindowPower(), s.getWindowPower(), 0.0);
+		assertEquals("getInstantPower", hb.getInstantPower(), s.getInstantPower(), 0.0);
+		hb.dispose();
+	}
+
+	@Test
+	public void test_batch() {
+		final int n = 50;
+		final long[] userTags = new long[n];
+		final long[] work = new long[n];
+		final long[] startTimes = new long[n];
+		final long[] endTimes = new long[n];
+		final long[] accuracies = new long[n];
+		final long[] startEnergies = new long[n];
+		final long[] endEnergies = new long[n];
+		DefaultHeartbeatAccuracyPower single = DefaultHeartbeatAccuracyPower.create(WINDOW_SIZE);
+		for (int i = 0; i < n; i++) {
+			userTags[i] = i;
+			work[i] = i % 3 + 1;
+			startTimes[i] = i * 1000000L;
+			endTimes[i] = (i + 1) * 1000000L;
+			accuracies[i] = i % 2;
+			startEnergies[i] = i * 1000L;
+			endEnergies[i] = (i + 1) * 1000L;
+			single.heartbeat(userTags[i], work[i], startTimes[i], endTimes[i], accuracies[i], startEnergies[i],
+					endEnergies[i]);
+		}
+		DefaultHeartbeatAccuracyPower batch = DefaultHeartbeatAccuracyPower.create(WINDOW_SIZE);
+		// split into two batches to exercise offset
+		batch.heartbeatBatch(userTags, work, startTimes, endTimes, accuracies, startEnergies, endEnergies, 0, 7);
+		batch.heartbeatBatch(userTags, work, startTimes, endTimes, accuracies, startEnergies, endEnergies, 7, n - 7);
+		HeartbeatSnapshot expected = single.snapshot(new HeartbeatSnapshot());
+		HeartbeatSnapshot actual = batch.snapshot(new HeartbeatSnapshot());
+		assertEquals("getUserTag", expected.getUserTag(), actual.getUserTag());
+		assertEquals("getGlobalTime", expected.getGlobalTime(), actual.getGlobalTime());
+		assertEquals("getWindowTime", expected.getWindowTime(), actual.getWindowTime());
+		assertEquals("getGlobalWork", expected.getGlobalWork(), actual.getGlobalWork());
+		assertEquals("getWindowWork", expected.getWindowWork(), actual.getWindowWork());
+		assertEquals("getWindowAccuracy", expected.getWindowAccuracy(), actual.getWindowAccuracy());
+		assertEquals("getWindowEnergy", expected.getWindowEnergy(), actual.getWindowEnergy());
+		assertEquals("getWindowPerf", expected.getWindowPerf(), actual.getWindowPerf(), 0.0);
+		assertEquals("getInstantPower", expected.getInstantPower(), actual.getInstantPower(), 0.0);
+		single.dispose();
+		batch.dispose();
+	}
+
+	@Test
+	public void test_async_log() throws IOException, InterruptedException {
+		final AsyncLogWriter writer = AsyncLogWriter.create(2, AsyncLogWriter.Policy.BLOCK);
+		FileOutputStream fos = new FileOutputStream(FileDescriptor.out);
+		DefaultHeartbeatAccuracyPower hb = DefaultHeartbeatAccuracyPower.create(WINDOW_SIZE, fos, writer);
+		hb.logHeader();
+		for (int i = 0; i < WINDOW_SIZE * 2 + 1; i++) {
+			hb.heartbeat(i, 1, i * 1000000L, (i + 1) * 1000000L, 1, i * 1000L, (i + 1) * 1000L);
+		}
+		final long[] tags = new long[WINDOW_SIZE + 5];
+		hb.heartbeatBatch(tags, tags, tags, tags, tags, tags, tags);
+		hb.logWindowBuffer();
+		assertEquals("getGlobalWork", WINDOW_SIZE * 2 + 1, hb.getGlobalWork());
+		hb.dispose();
+		writer.close();
+	}
+
+	@Test
+	public void test_log_sink() throws IOException {
+		final File f = File.createTempFile("hb-sink", ".log");
+		f.deleteOnExit();
+		final HeartbeatLogSink sink = HeartbeatLogSink.open(f.getPath(), HeartbeatLogSink.Format.BINARY);
+		DefaultHeartbeatAccuracyPower hb = DefaultHeartbeatAccuracyPower.createWithLogSink(WINDOW_SIZE, sink);
+		hb.logHeader();
+		for (int i = 0; i < WINDOW_SIZE + 1; i++) {
+			hb.heartbeat(i, 1, i * 1000000L, (i + 1) * 1000000L, 1, i * 1000L, (i + 1) * 1000L);
+		}
+		final long[] tags = new long[WINDOW_SIZE + 5];
+		hb.heartbeatBatch(tags, tags, tags, tags, tags, tags, tags);
+		hb.logWindowBuffer();
+		hb.dispose();
+		sink.close();
+		assertEquals("length", HeartbeatLogSink.HEADER_SIZE
+				+ (WINDOW_SIZE * 2 + 6) * HeartbeatLogSink.getBinaryRecordSize(true, true), f.length());
+	}
+
+	@Test
+	public void test_record_view() {
+		DefaultHeartbeatAccuracyPower hb = DefaultHeartbeatAccuracyPower.create(WINDOW_SIZE);
+		for (int i = 0; i < WINDOW_SIZE + 3; i++) {
+			hb.heartbeat(i, 1, i * 1000000000L, (i + 1) * 1000000000L, 1, i * 1000000L, (i + 1) * 1000000L);
+		}
+		final HeartbeatRecordView v = hb.getRecordView();
+		assertEquals("getWindowSize", WINDOW_SIZE, v.getWindowSize());
+		assertEquals("getReadIndex", 3, v.getReadIndex());
+		v.moveTo(2);
+		assertEquals("getId", WINDOW_SIZE + 2, v.getId());
+		assertEquals("getUserTag", WINDOW_SIZE + 2, v.getUserTag());
+		assertEquals("getWork", 1, v.getWork());
+		assertEquals("getEndTime", (WINDOW_SIZE + 3) * 1000000000L, v.getEndTime());
+		assertEquals("getAccuracy", 1, v.getAccuracy());
+		assertEquals("getEndEnergy", (WINDOW_SIZE + 3) * 1000000L, v.getEndEnergy());
+		assertEquals("getInstantPerf", 1.0, v.getInstantPerf(), 0.0);
+		assertEquals("getInstantAccuracyRate", 1.0, v.getInstantAccuracyRate(), 0.0);
+		assertEquals("getInstantPower", 1.0, v.getInstantPower(), 1e-9);
+		hb.dispose();
+	}
+
+	@Test
+	public void test_scope() {
+		final long[] now = { 1000 };
+		final DefaultHeartbeatAccuracyPower hb = DefaultHeartbeatAccuracyPower.create(WINDOW_SIZE);
+		hb.setClock(new HeartbeatClock() {
+			public long getTime() {
+				return now[0];
+			}
+		});
+		hb.setEnergySource(new EnergySource() {
+			public long getEnergy() {
+				return now[0] * 2;
+			}
+		});
+		final HeartbeatScope scope = hb.begin(7);
+		assertTrue("isActive", scope.isActive());
+		now[0] += 500;
+		scope.end(3, 4);
+		assertFalse("isActive", scope.isActive());
+		assertEquals("getUserTag", 7, hb.getUserTag());
+		assertEquals("getGlobalTime", 500, hb.getGlobalTime());
+		assertEquals("getGlobalWork", 3, hb.getGlobalWork());
+		assertEquals("getGlobalAccuracy", 4, hb.getGlobalAccuracy());
+		assertEquals("getGlobalEnergy", 1000, hb.getGlobalEnergy());
+		// the scope is reused
+		assertSame("begin", scope, hb.begin());
+		now[0] += 100;
+		scope.end(1);
+		assertEquals("getGlobalTime", 600, hb.getGlobalTime());
+		assertEquals("getGlobalEnergy", 1200, hb.getGlobalEnergy());
+		try {
+			scope.end(1);
+			fail("Ended a scope that was not begun");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		hb.dispose();
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void test_batch_bounds() {
+		DefaultHeartbeatAccuracyPower hb = DefaultHeartbeatAccuracyPower.create(WINDOW_SIZE);
+		try {
+			final long[] a = new long[2];
+			hb.heartbeatBatch(a, a, a, a, a, a, new long[1]);
+		} finally {
+			hb.dispose();
+		}
+	}
+
 	@Test(expected = IllegalStateException.class)
 	public void test_access_after_dispose() {
 		HeartbeatAccuracyPower hb = DefaultHeartbeatAccuracyPower.create(WINDOW_SIZE, null);
@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import java.io.FileDescriptor;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.junit.Test;
 
@@ -49,6 +50,50 @@ public class DefaultHeartbeatTest {
 		hb.dispose();
 	}
 
+	@Test
+	public void test_close() {
+		Heartbeat closed;
+		try (Heartbeat hb = DefaultHeartbeat.create(WINDOW_SIZE)) {
+			hb.heartbeat(0, 1, 0, 1000000000);
+			closed = hb;
+		}
+		// closing again is a no-op
+		closed.close();
+	}
+
+	@Test
+	public void test_address_bindings() {
+		final HeartbeatJNI jni = HeartbeatJNI.get();
+		final ByteBuffer ptr = jni.init(WINDOW_SIZE, -1);
+		final long addr = jni.getAddress(ptr);
+		assertTrue("getAddress", addr != 0);
+		jni.heartbeat(ptr, 1, 1, 0, 1000000000);
+		HeartbeatJNI.Raw.heartbeat(addr, 2, 2, 1000000000, 2000000000);
+		assertEquals("getUserTag", 2, jni.getUserTag(ptr));
+		assertEquals("getGlobalWork", jni.getGlobalWork(ptr), HeartbeatJNI.Raw.getGlobalWork(addr));
+		assertEquals("getWindowPerf", jni.getWindowPerf(ptr), HeartbeatJNI.Raw.getWindowPerf(addr), 0.0);
+		jni.free(ptr);
+	}
+
+	@Test
+	public void test_scope() {
+		final DefaultHeartbeat hb = DefaultHeartbeat.create(WINDOW_SIZE);
+		final HeartbeatScope a = hb.newScope().begin(1);
+		final HeartbeatScope b = hb.newScope().begin(2);
+		b.end(2);
+		a.end(1);
+		assertEquals("getUserTag", 1, hb.getUserTag());
+		assertEquals("getGlobalWork", 3, hb.getGlobalWork());
+		assertTrue("getGlobalTime", hb.getGlobalTime() >= 0);
+		hb.dispose();
+		try {
+			hb.begin();
+			fail("Began a scope on a disposed heartbeat");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
 	@Test(expected = IllegalStateException.class)
 	public void test_access_after_dispose() {
 		Heartbeat hb = DefaultHeartbeat.create(WINDOW_SIZE, null);
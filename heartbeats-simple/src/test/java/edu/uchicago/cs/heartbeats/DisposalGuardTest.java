@@ -0,0 +1,105 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link DisposalGuard}.
+ *
+ * @author Connor Imes
+ */
+public class DisposalGuardTest {
+
+	@Test
+	public void test_normal() {
+		DisposalGuard guard = new DisposalGuard();
+		guard.exit(guard.enter());
+		assertFalse("isDisposed", guard.isDisposed());
+		guard.dispose();
+		assertTrue("isDisposed", guard.isDisposed());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void test_enter_after_dispose() {
+		DisposalGuard guard = new DisposalGuard();
+		guard.dispose();
+		guard.enter();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void test_dispose_twice() {
+		DisposalGuard guard = new DisposalGuard();
+		guard.dispose();
+		guard.dispose();
+	}
+
+	@Test
+	public void test_dispose_waits_for_users() throws InterruptedException {
+		final DisposalGuard guard = new DisposalGuard();
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicBoolean inUse = new AtomicBoolean();
+		final AtomicBoolean disposedWhileInUse = new AtomicBoolean();
+		final Thread user = new Thread() {
+			@Override
+			public void run() {
+				final int token = guard.enter();
+				try {
+					inUse.set(true);
+					entered.countDown();
+					release.await();
+				} catch (InterruptedException e) {
+					// exit anyway
+				} finally {
+					inUse.set(false);
+					guard.exit(token);
+				}
+			}
+		};
+		user.start();
+		assertTrue(entered.await(10, TimeUnit.SECONDS));
+		final Thread disposer = new Thread() {
+			@Override
+			public void run() {
+				guard.dispose();
+				disposedWhileInUse.set(inUse.get());
+			}
+		};
+		disposer.start();
+		disposer.join(100);
+		assertTrue("dispose returned while in use", disposer.isAlive());
+		release.countDown();
+		disposer.join(10000);
+		assertFalse("dispose did not return", disposer.isAlive());
+		assertFalse("disposed while in use", disposedWhileInUse.get());
+		user.join();
+	}
+
+	@Test
+	public void test_contended() throws InterruptedException {
+		final DisposalGuard guard = new DisposalGuard();
+		final Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 100000; j++) {
+						guard.exit(guard.enter());
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		// all users exited, so this must not block
+		guard.dispose();
+	}
+
+}
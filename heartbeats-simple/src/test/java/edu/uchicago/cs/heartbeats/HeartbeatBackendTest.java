@@ -0,0 +1,76 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link HeartbeatBackend}. The FFM backend is only exercised
+ * when it is available, i.e. on Java 22+ with the multi-release classes and
+ * the heartbeats-simple shared libraries.
+ *
+ * @author Connor Imes
+ */
+public class HeartbeatBackendTest {
+	private static final int WINDOW_SIZE = 20;
+
+	@After
+	public void tearDown() {
+		System.clearProperty(HeartbeatBackend.PROPERTY);
+	}
+
+	@Test
+	public void test_get() {
+		assertEquals("default", HeartbeatBackend.JNI, HeartbeatBackend.get());
+		System.setProperty(HeartbeatBackend.PROPERTY, "java");
+		assertEquals("java", HeartbeatBackend.JAVA, HeartbeatBackend.get());
+		System.setProperty(HeartbeatBackend.PROPERTY, "FFM");
+		assertEquals("FFM", HeartbeatBackend.FFM, HeartbeatBackend.get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_get_unknown() {
+		System.setProperty(HeartbeatBackend.PROPERTY, "cuda");
+		HeartbeatBackend.get();
+	}
+
+	@Test
+	public void test_java() {
+		final HeartbeatAccuracyPower hb = HeartbeatBackend.JAVA.createHeartbeatAccuracyPower(WINDOW_SIZE, null);
+		assertTrue("type", hb instanceof JavaHeartbeatAccuracyPower);
+		hb.heartbeat(1, 1, 0, 1000000000, 1, 0, 1000000);
+		assertEquals("getGlobalEnergy", 1000000, hb.getGlobalEnergy());
+		hb.dispose();
+	}
+
+	@Test
+	public void test_ffm() {
+		if (!HeartbeatBackend.FFM.isAvailable()) {
+			try {
+				HeartbeatBackend.FFM.createHeartbeat(WINDOW_SIZE, null);
+				fail("Created a heartbeat with an unavailable backend");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+			return;
+		}
+		final long endTime = 1000000000;
+		final HeartbeatAccuracyPower hb = HeartbeatBackend.FFM.createHeartbeatAccuracyPower(WINDOW_SIZE, null);
+		hb.heartbeat(1, 1, 0, endTime, 1, 0, 1000000);
+		assertEquals("getWindowSize", WINDOW_SIZE, hb.getWindowSize());
+		assertEquals("getUserTag", 1, hb.getUserTag());
+		assertEquals("getGlobalTime", endTime, hb.getGlobalTime());
+		assertEquals("getGlobalAccuracy", 1, hb.getGlobalAccuracy());
+		assertEquals("getGlobalEnergy", 1000000, hb.getGlobalEnergy());
+		final HeartbeatSnapshot s = hb.snapshot(new HeartbeatSnapshot());
+		assertEquals("snapshot", hb.getWindowPerf(), s.getWindowPerf(), 0.0);
+		hb.dispose();
+		try {
+			hb.getUserTag();
+			fail("Accessed a disposed heartbeat");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+}
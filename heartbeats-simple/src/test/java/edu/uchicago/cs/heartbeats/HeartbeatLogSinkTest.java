@@ -0,0 +1,169 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link HeartbeatLogSink}, using the pure-Java heartbeats.
+ *
+ * @author Connor Imes
+ */
+public class HeartbeatLogSinkTest {
+	private static final int WINDOW_SIZE = 20;
+	private static final int BEATS = WINDOW_SIZE * 3 + WINDOW_SIZE / 2;
+
+	private static void issue(final HeartbeatAccuracyPower hb, final int n) {
+		for (int i = 0; i < n; i++) {
+			hb.heartbeat(i, 1, i * 1000, (i + 1) * 1000, 1, i, i + 2);
+		}
+	}
+
+	private static byte[] read(final File f) throws IOException {
+		final FileInputStream in = new FileInputStream(f);
+		try {
+			final byte[] b = new byte[(int) f.length()];
+			int off = 0;
+			while (off < b.length) {
+				off += in.read(b, off, b.length - off);
+			}
+			return b;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static File tempFile() throws IOException {
+		final File f = File.createTempFile("hb-sink", ".log");
+		f.deleteOnExit();
+		return f;
+	}
+
+	@Test
+	public void test_text_same_as_stream() throws IOException {
+		final File streamFile = tempFile();
+		final File sinkFile = tempFile();
+
+		final FileOutputStream fos = new FileOutputStream(streamFile);
+		HeartbeatAccuracyPower hb = JavaHeartbeatAccuracyPower.create(WINDOW_SIZE, fos);
+		hb.logHeader();
+		issue(hb, BEATS);
+		hb.logWindowBuffer();
+		hb.dispose();
+		fos.close();
+
+		// small buffer, so that it is written several times
+		final HeartbeatLogSink sink = HeartbeatLogSink.open(sinkFile.getPath(), HeartbeatLogSink.Format.TEXT, false,
+				HeartbeatLogSink.SyncPolicy.ON_FLUSH, 1024);
+		hb = JavaHeartbeatAccuracyPower.createWithLogSink(WINDOW_SIZE, sink);
+		hb.logHeader();
+		issue(hb, BEATS);
+		hb.logWindowBuffer();
+		hb.dispose();
+		sink.close();
+
+		assertTrue("same output", Arrays.equals(read(streamFile), read(sinkFile)));
+	}
+
+	@Test
+	public void test_binary() throws IOException {
+		final File f = tempFile();
+		final HeartbeatLogSink sink = HeartbeatLogSink.open(f.getPath(), HeartbeatLogSink.Format.BINARY);
+		final HeartbeatAccuracyPower hb = JavaHeartbeatAccuracyPower.createWithLogSink(WINDOW_SIZE, sink);
+		hb.logHeader();
+		issue(hb, BEATS);
+		sink.flush();
+		final int recordSize = HeartbeatLogSink.getBinaryRecordSize(true, true);
+		assertEquals("full windows", HeartbeatLogSink.HEADER_SIZE + 3 * WINDOW_SIZE * recordSize, f.length());
+		hb.logWindowBuffer();
+		hb.dispose();
+		sink.close();
+
+		final ByteBuffer b = ByteBuffer.wrap(read(f)).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals("magic", HeartbeatLogSink.MAGIC, b.getInt());
+		assertEquals("version", HeartbeatLogSink.VERSION, b.getShort());
+		assertEquals("flags", HeartbeatLogSink.FLAG_ACCURACY | HeartbeatLogSink.FLAG_ENERGY, b.getShort());
+		assertEquals("record size", recordSize, b.getInt());
+		assertEquals("reserved", 0, b.getInt());
+		assertEquals("records", BEATS * recordSize, b.remaining());
+		for (int i = 0; i < BEATS; i++) {
+			assertEquals("id", i, b.getLong());
+			assertEquals("user tag", i, b.getLong());
+			assertEquals("work", 1, b.getLong());
+			assertEquals("start time", i * 1000, b.getLong());
+			assertEquals("end time", (i + 1) * 1000, b.getLong());
+			assertEquals("accuracy", 1, b.getLong());
+			assertEquals("start energy", i, b.getLong());
+			assertEquals("end energy", i + 2, b.getLong());
+		}
+	}
+
+	@Test
+	public void test_append() throws IOException {
+		final File f = tempFile();
+		for (int i = 0; i < 2; i++) {
+			final HeartbeatLogSink sink = HeartbeatLogSink.open(f.getPath(), HeartbeatLogSink.Format.BINARY, true,
+					HeartbeatLogSink.SyncPolicy.ON_CLOSE, HeartbeatLogSink.DEFAULT_BUFFER_SIZE);
+			final Heartbeat hb = JavaHeartbeat.createWithLogSink(WINDOW_SIZE, sink);
+			hb.heartbeat(0, 1, 0, 1000);
+			hb.logWindowBuffer();
+			hb.dispose();
+			sink.close();
+		}
+		// one header, then the records of both
+		assertEquals("length", HeartbeatLogSink.HEADER_SIZE + 2 * HeartbeatLogSink.getBinaryRecordSize(false, false),
+				f.length());
+		final ByteBuffer b = ByteBuffer.wrap(read(f)).order(ByteOrder.LITTLE_ENDIAN);
+		b.position(HeartbeatLogSink.HEADER_SIZE);
+		assertEquals("first id", 0, b.getLong());
+		b.position(HeartbeatLogSink.HEADER_SIZE + HeartbeatLogSink.getBinaryRecordSize(false, false));
+		assertEquals("second id", 0, b.getLong());
+		assertEquals("second user tag", 0, b.getLong());
+		assertEquals("second work", 1, b.getLong());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void test_append_other_type() throws IOException {
+		final File f = tempFile();
+		HeartbeatLogSink sink = HeartbeatLogSink.open(f.getPath(), HeartbeatLogSink.Format.BINARY);
+		JavaHeartbeat.createWithLogSink(WINDOW_SIZE, sink).dispose();
+		sink.close();
+		sink = HeartbeatLogSink.open(f.getPath(), HeartbeatLogSink.Format.BINARY, true,
+				HeartbeatLogSink.SyncPolicy.NONE, HeartbeatLogSink.DEFAULT_BUFFER_SIZE);
+		try {
+			JavaHeartbeatPower.createWithLogSink(WINDOW_SIZE, sink);
+		} finally {
+			sink.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void test_append_not_binary() throws IOException {
+		final File f = tempFile();
+		final FileOutputStream out = new FileOutputStream(f);
+		out.write("HB Tag\n".getBytes("US-ASCII"));
+		out.close();
+		HeartbeatLogSink.open(f.getPath(), HeartbeatLogSink.Format.BINARY, true, HeartbeatLogSink.SyncPolicy.NONE,
+				HeartbeatLogSink.DEFAULT_BUFFER_SIZE);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void test_one_heartbeat_per_sink() throws IOException {
+		final HeartbeatLogSink sink = HeartbeatLogSink.open(tempFile().getPath(), HeartbeatLogSink.Format.TEXT);
+		try {
+			JavaHeartbeat.createWithLogSink(WINDOW_SIZE, sink);
+			JavaHeartbeat.createWithLogSink(WINDOW_SIZE, sink);
+		} finally {
+			sink.close();
+		}
+	}
+
+}
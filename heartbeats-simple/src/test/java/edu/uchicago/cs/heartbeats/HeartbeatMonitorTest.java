@@ -0,0 +1,178 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link HeartbeatMonitor}, reading regions published in this
+ * process.
+ *
+ * @author Connor Imes
+ */
+public class HeartbeatMonitorTest {
+	private static final int WINDOW_SIZE = 20;
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("hb-shm").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (final File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void test_getters() throws IOException {
+		final HeartbeatPublisher publisher = HeartbeatPublisher.create(dir.getPath(), "test", 1);
+		final JavaHeartbeatAccuracyPower hb = JavaHeartbeatAccuracyPower.create(WINDOW_SIZE);
+		hb.setPublisher(publisher);
+		final HeartbeatMonitor m = HeartbeatMonitor.open(dir.getPath(), "test");
+		assertEquals("getName", "test", m.getName());
+		assertTrue("hasAccuracy", m.hasAccuracy());
+		assertTrue("hasEnergy", m.hasEnergy());
+		assertFalse("refresh before heartbeats", m.refresh());
+		for (int i = 0; i < WINDOW_SIZE + 3; i++) {
+			hb.heartbeat(i, 1, i * 1000000000L, (i + 1) * 1000000000L, 1, i * 1000000L, (i + 1) * 1000000L);
+		}
+		assertTrue("refresh", m.refresh());
+		assertFalse("refresh unchanged", m.refresh());
+		assertEquals("getUpdateCount", WINDOW_SIZE + 3, m.getUpdateCount());
+		assertTrue("getUpdateTime", m.getUpdateTime() > 0);
+		assertEquals("getWindowSize", hb.getWindowSize(), m.getWindowSize());
+		assertEquals("getUserTag", hb.getUserTag(), m.getUserTag());
+		assertEquals("getGlobalTime", hb.getGlobalTime(), m.getGlobalTime());
+		assertEquals("getWindowTime", hb.getWindowTime(), m.getWindowTime());
+		assertEquals("getGlobalWork", hb.getGlobalWork(), m.getGlobalWork());
+		assertEquals("getWindowWork", hb.getWindowWork(), m.getWindowWork());
+		assertEquals("getGlobalAccuracy", hb.getGlobalAccuracy(), m.getGlobalAccuracy());
+		assertEquals("getWindowAccuracy", hb.getWindowAccuracy(), m.getWindowAccuracy());
+		assertEquals("getGlobalEnergy", hb.getGlobalEnergy(), m.getGlobalEnergy());
+		assertEquals("getWindowEnergy", hb.getWindowEnergy(), m.getWindowEnergy());
+		assertEquals("getGlobalPerf", hb.getGlobalPerf(), m.getGlobalPerf(), 0.0);
+		assertEquals("getWindowPerf", hb.getWindowPerf(), m.getWindowPerf(), 0.0);
+		assertEquals("getInstantPerf", hb.getInstantPerf(), m.getInstantPerf(), 0.0);
+		assertEquals("getGlobalAccuracyRate", hb.getGlobalAccuracyRate(), m.getGlobalAccuracyRate(), 0.0);
+		assertEquals("getWindowAccuracyRate", hb.getWindowAccuracyRate(), m.getWindowAccuracyRate(), 0.0);
+		assertEquals("getInstantAccuracyRate", hb.getInstantAccuracyRate(), m.getInstantAccuracyRate(), 0.0);
+		assertEquals("getGlobalPower", hb.getGlobalPower(), m.getGlobalPower(), 0.0);
+		assertEquals("getWindowPower", hb.getWindowPower(), m.getWindowPower(), 0.0);
+		assertEquals("getInstantPower", hb.getInstantPower(), m.getInstantPower(), 0.0);
+		hb.dispose();
+		publisher.close();
+	}
+
+	@Test
+	public void test_scan() throws IOException {
+		final HeartbeatPublisher a = HeartbeatPublisher.create(dir.getPath(), "a", 1);
+		final HeartbeatPublisher b = HeartbeatPublisher.create(dir.getPath(), "b", 1);
+		// not a region
+		new FileOutputStream(new File(dir, "c")).close();
+		final List<HeartbeatMonitor> monitors = HeartbeatMonitor.scan(dir.getPath());
+		assertEquals("size", 2, monitors.size());
+		a.close();
+		b.close();
+		assertTrue("missing dir", HeartbeatMonitor.scan(new File(dir, "missing").getPath()).isEmpty());
+	}
+
+	@Test
+	public void test_no_torn_reads() throws Exception {
+		final HeartbeatPublisher publisher = HeartbeatPublisher.create(dir.getPath(), "test", 1);
+		final HeartbeatMonitor m = HeartbeatMonitor.open(dir.getPath(), "test");
+		final AtomicBoolean done = new AtomicBoolean();
+		final Thread t = new Thread() {
+			@Override
+			public void run() {
+				final HeartbeatSnapshot s = new HeartbeatSnapshot();
+				for (long k = 1; !done.get(); k++) {
+					// every value in an update is the same
+					for (int i = 0; i < HeartbeatSnapshot.NUM_LONGS; i++) {
+						s.longs[i] = k;
+					}
+					for (int i = 0; i < HeartbeatSnapshot.NUM_DOUBLES; i++) {
+						s.doubles[i] = k;
+					}
+					publisher.publish(s);
+				}
+			}
+		};
+		t.start();
+		final HeartbeatSnapshot s = new HeartbeatSnapshot();
+		try {
+			final long end = System.currentTimeMillis() + 500;
+			while (System.currentTimeMillis() < end) {
+				if (m.refresh()) {
+					m.snapshot(s);
+					final long k = s.longs[0];
+					for (int i = 0; i < HeartbeatSnapshot.NUM_LONGS; i++) {
+						assertEquals("long " + i, k, s.longs[i]);
+					}
+					for (int i = 0; i < HeartbeatSnapshot.NUM_DOUBLES; i++) {
+						assertEquals("double " + i, k, s.doubles[i], 0.0);
+					}
+				}
+			}
+		} finally {
+			done.set(true);
+			t.join();
+		}
+		publisher.close();
+	}
+
+	@Test
+	public void test_open_before_bind() throws IOException {
+		final HeartbeatPublisher publisher = HeartbeatPublisher.create(dir.getPath(), "test", 1);
+		final HeartbeatMonitor m = HeartbeatMonitor.open(dir.getPath(), "test");
+		assertFalse("hasAccuracy", m.hasAccuracy());
+		final JavaHeartbeatAccuracyPower hb = JavaHeartbeatAccuracyPower.create(WINDOW_SIZE);
+		hb.setPublisher(publisher);
+		assertTrue("hasAccuracy", m.hasAccuracy());
+		assertTrue("hasEnergy", m.hasEnergy());
+		hb.dispose();
+		publisher.close();
+	}
+
+	@Test
+	public void test_republish() throws IOException {
+		final HeartbeatPublisher first = HeartbeatPublisher.create(dir.getPath(), "test", 1);
+		final HeartbeatSnapshot s = new HeartbeatSnapshot();
+		s.longs[0] = 1;
+		first.publish(s);
+		final HeartbeatMonitor m = HeartbeatMonitor.open(dir.getPath(), "test");
+		// e.g. a restarted process, without closing the first publisher
+		final HeartbeatPublisher second = HeartbeatPublisher.create(dir.getPath(), "test", 1);
+		assertEquals("one region", 1, dir.list().length);
+		assertFalse("old region still readable", m.refresh());
+		assertEquals("old value", 1, m.snapshot(s).longs[0]);
+		s.longs[0] = 2;
+		second.publish(s);
+		final HeartbeatMonitor m2 = HeartbeatMonitor.open(dir.getPath(), "test");
+		assertEquals("new value", 2, m2.snapshot(s).longs[0]);
+		// must not remove the region that replaced its own
+		first.close();
+		assertEquals("new region kept", 2, HeartbeatMonitor.open(dir.getPath(), "test").snapshot(s).longs[0]);
+		second.close();
+		assertEquals("new region removed", 0, dir.list().length);
+	}
+
+	@Test(expected = IOException.class)
+	public void test_missing() throws IOException {
+		HeartbeatMonitor.open(dir.getPath(), "missing");
+	}
+
+}
@@ -0,0 +1,66 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link HeartbeatPool}.
+ *
+ * @author Connor Imes
+ */
+public class HeartbeatPoolTest {
+	private static final int WINDOW_SIZE = 20;
+	private static final int CAPACITY = 2;
+
+	@Test
+	public void test_reuse() {
+		final HeartbeatPool<DefaultHeartbeat> pool = HeartbeatPool.forHeartbeat(WINDOW_SIZE, CAPACITY);
+		assertEquals("getCapacity", CAPACITY, pool.getCapacity());
+		DefaultHeartbeat hb = pool.acquire();
+		assertEquals("getAvailable", CAPACITY - 1, pool.getAvailable());
+		hb.heartbeat(1, 1, 0, 1000000000);
+		assertEquals("getGlobalWork", 1, hb.getGlobalWork());
+		final long addr = hb.nativeAddr;
+		hb.dispose();
+		assertEquals("getAvailable", CAPACITY, pool.getAvailable());
+		// the context is reused and reset
+		hb = pool.acquire();
+		assertEquals("reused", addr, hb.nativeAddr);
+		assertEquals("getWindowSize", WINDOW_SIZE, hb.getWindowSize());
+		assertEquals("getGlobalWork", 0, hb.getGlobalWork());
+		hb.dispose();
+	}
+
+	@Test
+	public void test_exhausted() {
+		final HeartbeatPool<DefaultHeartbeatAccuracyPower> pool = HeartbeatPool.forHeartbeatAccuracyPower(WINDOW_SIZE,
+				CAPACITY);
+		final DefaultHeartbeatAccuracyPower[] hbs = new DefaultHeartbeatAccuracyPower[CAPACITY + 1];
+		for (int i = 0; i < hbs.length; i++) {
+			hbs[i] = pool.acquire();
+			hbs[i].heartbeat(i, 1, 0, 1000000000, 1, 0, 1000000);
+		}
+		assertEquals("getAvailable", 0, pool.getAvailable());
+		for (int i = 0; i < hbs.length; i++) {
+			assertEquals("getUserTag", i, hbs[i].getUserTag());
+			hbs[i].dispose();
+		}
+		// the heartbeat created outside the pool is not added to it
+		assertEquals("getAvailable", CAPACITY, pool.getAvailable());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void test_access_after_dispose() {
+		final HeartbeatPool<DefaultHeartbeatPower> pool = HeartbeatPool.forHeartbeatPower(WINDOW_SIZE, CAPACITY);
+		final DefaultHeartbeatPower hb = pool.acquire();
+		hb.dispose();
+		pool.acquire();
+		hb.getUserTag();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_bad_capacity() {
+		HeartbeatPool.forHeartbeatAccuracy(WINDOW_SIZE, 0);
+	}
+}
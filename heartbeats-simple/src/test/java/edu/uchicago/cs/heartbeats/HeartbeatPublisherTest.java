@@ -0,0 +1,99 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link HeartbeatPublisher}, using the pure-Java heartbeats.
+ *
+ * @author Connor Imes
+ */
+public class HeartbeatPublisherTest {
+	private static final int WINDOW_SIZE = 20;
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("hb-shm").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (final File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	private static MappedByteBuffer map(final String path) throws IOException {
+		final RandomAccessFile f = new RandomAccessFile(path, "r");
+		try {
+			final MappedByteBuffer b = f.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HeartbeatPublisher.SIZE);
+			b.order(ByteOrder.nativeOrder());
+			return b;
+		} finally {
+			f.close();
+		}
+	}
+
+	@Test
+	public void test_publish() throws IOException {
+		final HeartbeatPublisher publisher = HeartbeatPublisher.create(dir.getPath(), "test", 1);
+		final JavaHeartbeatAccuracyPower hb = JavaHeartbeatAccuracyPower.create(WINDOW_SIZE);
+		hb.setPublisher(publisher);
+		final MappedByteBuffer b = map(publisher.getPath());
+		assertEquals("magic", HeartbeatPublisher.MAGIC, b.getInt(HeartbeatPublisher.OFF_MAGIC));
+		assertEquals("version", HeartbeatPublisher.VERSION, b.getShort(HeartbeatPublisher.OFF_VERSION));
+		assertEquals("flags", AbstractHeartbeatLog.FLAG_ACCURACY | AbstractHeartbeatLog.FLAG_ENERGY,
+				b.getShort(HeartbeatPublisher.OFF_FLAGS));
+		assertTrue("pid", b.getLong(HeartbeatPublisher.OFF_PID) > 0);
+		for (int i = 0; i < WINDOW_SIZE + 3; i++) {
+			hb.heartbeat(i, 1, i * 1000000000L, (i + 1) * 1000000000L, 1, i * 1000000L, (i + 1) * 1000000L);
+		}
+		assertEquals("sequence", 2 * (WINDOW_SIZE + 3), b.getLong(HeartbeatPublisher.OFF_SEQUENCE));
+		final HeartbeatSnapshot s = hb.snapshot(new HeartbeatSnapshot());
+		for (int i = 0; i < HeartbeatSnapshot.NUM_LONGS; i++) {
+			assertEquals("long " + i, s.longs[i], b.getLong(HeartbeatPublisher.OFF_LONGS + 8 * i));
+		}
+		for (int i = 0; i < HeartbeatSnapshot.NUM_DOUBLES; i++) {
+			assertEquals("double " + i, s.doubles[i], b.getDouble(HeartbeatPublisher.OFF_DOUBLES + 8 * i), 0.0);
+		}
+		hb.dispose();
+		publisher.close();
+		assertFalse("removed", new File(publisher.getPath()).exists());
+	}
+
+	@Test
+	public void test_interval() throws IOException {
+		final HeartbeatPublisher publisher = HeartbeatPublisher.create(dir.getPath(), "test", 10);
+		final JavaHeartbeat hb = JavaHeartbeat.create(WINDOW_SIZE);
+		hb.setPublisher(publisher);
+		for (int i = 0; i < 25; i++) {
+			hb.heartbeat(i, 1, i, i + 1);
+		}
+		final MappedByteBuffer b = map(publisher.getPath());
+		assertEquals("flags", 0, b.getShort(HeartbeatPublisher.OFF_FLAGS));
+		assertEquals("sequence", 4, b.getLong(HeartbeatPublisher.OFF_SEQUENCE));
+		assertEquals("global work", 20, b.getLong(HeartbeatPublisher.OFF_LONGS + 8 * HeartbeatSnapshot.GLOBAL_WORK));
+		hb.dispose();
+		publisher.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_bad_name() throws IOException {
+		HeartbeatPublisher.create(dir.getPath(), "../test", 1);
+	}
+
+}
@@ -0,0 +1,134 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link HeartbeatRecordView}, over buffers laid out like the
+ * native structs.
+ *
+ * @author Connor Imes
+ */
+public class HeartbeatRecordViewTest {
+	private static final int WINDOW_SIZE = 4;
+
+	private static ByteBuffer context(final long bufferIndex, final long readIndex) {
+		final ByteBuffer ctx = ByteBuffer.allocateDirect(64).order(ByteOrder.nativeOrder());
+		ctx.putLong(0, bufferIndex);
+		ctx.putLong(8, readIndex);
+		ctx.putLong(16, WINDOW_SIZE);
+		return ctx;
+	}
+
+	/**
+	 * Fill records with ascending values, one field after another.
+	 */
+	private static ByteBuffer records(final int recordSize) {
+		final ByteBuffer b = ByteBuffer.allocateDirect(WINDOW_SIZE * recordSize).order(ByteOrder.nativeOrder());
+		for (int r = 0; r < WINDOW_SIZE; r++) {
+			for (int f = 0; f < recordSize / 8; f++) {
+				final int off = r * recordSize + f * 8;
+				final int v = r * 100 + f;
+				// rates are doubles, everything else is a uint64
+				if (isDouble(recordSize, f)) {
+					b.putDouble(off, v);
+				} else {
+					b.putLong(off, v);
+				}
+			}
+		}
+		return b;
+	}
+
+	private static boolean isDouble(final int recordSize, final int field) {
+		if (field >= 5 && field <= 7) {
+			return true;
+		}
+		switch (recordSize) {
+		case 96:
+			return field >= 9;
+		case 104:
+			return field >= 10;
+		case 136:
+			return (field >= 9 && field <= 11) || field >= 14;
+		default:
+			return false;
+		}
+	}
+
+	@Test
+	public void test_accuracy_power() {
+		final HeartbeatRecordView v = new HeartbeatRecordView(records(136), context(3, 2), true, true);
+		assertEquals("getWindowSize", WINDOW_SIZE, v.getWindowSize());
+		assertEquals("getBufferIndex", 3, v.getBufferIndex());
+		assertEquals("getReadIndex", 2, v.getReadIndex());
+		v.moveTo(2);
+		assertEquals("getIndex", 2, v.getIndex());
+		assertEquals("getId", 200, v.getId());
+		assertEquals("getUserTag", 201, v.getUserTag());
+		assertEquals("getWork", 202, v.getWork());
+		assertEquals("getStartTime", 203, v.getStartTime());
+		assertEquals("getEndTime", 204, v.getEndTime());
+		assertEquals("getGlobalPerf", 205, v.getGlobalPerf(), 0.0);
+		assertEquals("getWindowPerf", 206, v.getWindowPerf(), 0.0);
+		assertEquals("getInstantPerf", 207, v.getInstantPerf(), 0.0);
+		assertEquals("getAccuracy", 208, v.getAccuracy());
+		assertEquals("getGlobalAccuracyRate", 209, v.getGlobalAccuracyRate(), 0.0);
+		assertEquals("getWindowAccuracyRate", 210, v.getWindowAccuracyRate(), 0.0);
+		assertEquals("getInstantAccuracyRate", 211, v.getInstantAccuracyRate(), 0.0);
+		assertEquals("getStartEnergy", 212, v.getStartEnergy());
+		assertEquals("getEndEnergy", 213, v.getEndEnergy());
+		assertEquals("getGlobalPower", 214, v.getGlobalPower(), 0.0);
+		assertEquals("getWindowPower", 215, v.getWindowPower(), 0.0);
+		assertEquals("getInstantPower", 216, v.getInstantPower(), 0.0);
+	}
+
+	@Test
+	public void test_power() {
+		final HeartbeatRecordView v = new HeartbeatRecordView(records(104), context(0, 0), false, true);
+		v.moveTo(1);
+		assertEquals("getInstantPerf", 107, v.getInstantPerf(), 0.0);
+		assertEquals("getAccuracy", 0, v.getAccuracy());
+		assertEquals("getInstantAccuracyRate", 0.0, v.getInstantAccuracyRate(), 0.0);
+		assertEquals("getStartEnergy", 108, v.getStartEnergy());
+		assertEquals("getEndEnergy", 109, v.getEndEnergy());
+		assertEquals("getInstantPower", 112, v.getInstantPower(), 0.0);
+	}
+
+	@Test
+	public void test_accuracy() {
+		final HeartbeatRecordView v = new HeartbeatRecordView(records(96), context(0, 0), true, false);
+		v.moveTo(3);
+		assertEquals("getAccuracy", 308, v.getAccuracy());
+		assertEquals("getInstantAccuracyRate", 311, v.getInstantAccuracyRate(), 0.0);
+		assertEquals("getEndEnergy", 0, v.getEndEnergy());
+		assertEquals("getInstantPower", 0.0, v.getInstantPower(), 0.0);
+	}
+
+	@Test
+	public void test_reads_in_place() {
+		final ByteBuffer records = records(64);
+		final ByteBuffer ctx = context(0, 0);
+		final HeartbeatRecordView v = new HeartbeatRecordView(records, ctx, false, false);
+		v.moveTo(0);
+		records.putLong(8, 42);
+		ctx.putLong(8, 1);
+		assertEquals("getUserTag", 42, v.getUserTag());
+		assertEquals("getReadIndex", 1, v.getReadIndex());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void test_out_of_bounds() {
+		new HeartbeatRecordView(records(64), context(0, 0), false, false).moveTo(WINDOW_SIZE);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void test_layout_mismatch() {
+		new HeartbeatRecordView(records(64), context(0, 0), true, false);
+	}
+
+}
@@ -0,0 +1,182 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link HeartbeatRegistry}, with the pure-Java backend.
+ *
+ * @author Connor Imes
+ */
+public class HeartbeatRegistryTest {
+	private static final int WINDOW_SIZE = 20;
+
+	private static HeartbeatRegistry create() {
+		return new HeartbeatRegistry(HeartbeatBackend.JAVA, WINDOW_SIZE, 0);
+	}
+
+	@Test
+	public void test_get_or_create() {
+		final HeartbeatRegistry reg = create();
+		final HeartbeatAccuracyPower hb = reg.heartbeatAccuracyPower("decode");
+		assertSame("same name", hb, reg.heartbeatAccuracyPower("decode"));
+		// supertypes get the same heartbeat
+		assertSame("as Heartbeat", hb, reg.heartbeat("decode"));
+		assertSame("as HeartbeatPower", hb, reg.heartbeatPower("decode"));
+		assertSame("get", hb, reg.get("decode"));
+		assertNull("get", reg.get("missing"));
+		assertEquals("getWindowSize", WINDOW_SIZE, hb.getWindowSize());
+		final Heartbeat other = reg.heartbeat("encode");
+		assertFalse("other type", other instanceof HeartbeatAccuracy);
+		assertEquals("size", 2, reg.size());
+		assertTrue("names", reg.names().contains("encode"));
+		reg.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_wrong_type() {
+		final HeartbeatRegistry reg = create();
+		try {
+			reg.heartbeatAccuracy("decode");
+			reg.heartbeatPower("decode");
+		} finally {
+			reg.close();
+		}
+	}
+
+	@Test
+	public void test_snapshot() {
+		final HeartbeatRegistry reg = create();
+		reg.heartbeat("a").heartbeat(0, 1, 0, 1000);
+		reg.heartbeatPower("b").heartbeat(0, 2, 0, 1000, 0, 5000);
+		final Map<String, HeartbeatSnapshot> snapshots = reg.snapshot(new HashMap<String, HeartbeatSnapshot>());
+		assertEquals("size", 2, snapshots.size());
+		assertEquals("a work", 1, snapshots.get("a").getGlobalWork());
+		assertEquals("b energy", 5000, snapshots.get("b").getGlobalEnergy());
+		final HeartbeatSnapshot b = snapshots.get("b");
+		reg.heartbeatPower("b").heartbeat(1, 2, 1000, 2000, 5000, 6000);
+		assertTrue("remove", reg.remove("a"));
+		assertFalse("remove", reg.remove("a"));
+		reg.snapshot(snapshots);
+		assertEquals("size", 1, snapshots.size());
+		assertSame("reused", b, snapshots.get("b"));
+		assertEquals("b work", 4, b.getGlobalWork());
+		reg.close();
+	}
+
+	@Test
+	public void test_for_each_skips_disposed() {
+		final HeartbeatRegistry reg = create();
+		reg.heartbeat("a");
+		reg.heartbeat("b").dispose();
+		final List<String> names = new ArrayList<String>();
+		final int n = reg.forEach(new HeartbeatRegistry.Visitor() {
+			public void visit(final String name, final Heartbeat hb, final HeartbeatSnapshot snapshot) {
+				names.add(name);
+			}
+		}, new HeartbeatSnapshot());
+		assertEquals("forEach", 1, n);
+		assertEquals("names", "a", names.get(0));
+		assertNull("removed", reg.get("b"));
+		reg.close();
+	}
+
+	@Test
+	public void test_close() {
+		final HeartbeatRegistry reg = create();
+		final List<String> order = new ArrayList<String>();
+		for (final String name : new String[] { "first", "second", "third" }) {
+			reg.register(name, new JavaHeartbeat(WINDOW_SIZE, null) {
+				@Override
+				public void dispose() {
+					super.dispose();
+					order.add(name);
+				}
+			});
+		}
+		reg.close();
+		assertTrue("isClosed", reg.isClosed());
+		assertEquals("size", 0, reg.size());
+		assertEquals("newest first", "third", order.get(0));
+		assertEquals("oldest last", "first", order.get(2));
+		try {
+			reg.heartbeat("late");
+			fail("created after close");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		reg.close();
+	}
+
+	@Test
+	public void test_close_failure() {
+		final HeartbeatRegistry reg = create();
+		final List<String> order = new ArrayList<String>();
+		for (final String name : new String[] { "first", "second", "third", "fourth" }) {
+			reg.register(name, new JavaHeartbeat(WINDOW_SIZE, null) {
+				@Override
+				public void dispose() {
+					super.dispose();
+					order.add(name);
+					if (name.equals("third") || name.equals("second")) {
+						throw new IllegalStateException(name);
+					}
+				}
+			});
+		}
+		try {
+			reg.close();
+			fail("failure not rethrown");
+		} catch (IllegalStateException e) {
+			assertEquals("first failure", "third", e.getMessage());
+			assertEquals("suppressed", 1, e.getSuppressed().length);
+			assertEquals("second failure", "second", e.getSuppressed()[0].getMessage());
+		}
+		assertEquals("all disposed", 4, order.size());
+		assertEquals("size", 0, reg.size());
+		assertTrue("isClosed", reg.isClosed());
+	}
+
+	@Test
+	public void test_concurrent_create() throws InterruptedException {
+		final HeartbeatRegistry reg = create();
+		final int nthreads = 4;
+		final Heartbeat[] found = new Heartbeat[nthreads];
+		final CountDownLatch start = new CountDownLatch(1);
+		final Thread[] threads = new Thread[nthreads];
+		for (int i = 0; i < nthreads; i++) {
+			final int t = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int j = 0; j < 1000; j++) {
+						reg.heartbeat("hb-" + j);
+					}
+					found[t] = reg.heartbeat("hb-0");
+				}
+			};
+			threads[i].start();
+		}
+		start.countDown();
+		for (final Thread t : threads) {
+			t.join();
+		}
+		assertEquals("size", 1000, reg.size());
+		for (final Heartbeat hb : found) {
+			assertSame("same heartbeat", found[0], hb);
+		}
+		reg.close();
+	}
+}
@@ -0,0 +1,99 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link JavaHeartbeatAccuracyPower}.
+ * 
+ * @author Connor Imes
+ */
+public class JavaHeartbeatAccuracyPowerTest {
+	private static final int WINDOW_SIZE = 20;
+
+	@Test
+	public void test_normal() {
+		final long userTag = 0;
+		final long endTime = 1000000000;
+		final long work = 1;
+		final long accuracy = 1;
+		final long endEnergy = 1000000;
+		FileOutputStream fos = new FileOutputStream(FileDescriptor.out);
+		HeartbeatAccuracyPower hb = JavaHeartbeatAccuracyPower.create(WINDOW_SIZE, fos);
+		hb.heartbeat(userTag, work, 0, endTime, 1, 0, endEnergy);
+		assertEquals("getWindowSize", WINDOW_SIZE, hb.getWindowSize());
+		assertEquals("getUserTag", userTag, hb.getUserTag());
+		assertEquals("getGlobalTime", endTime, hb.getGlobalTime());
+		assertEquals("getWindowTime", endTime, hb.getWindowTime());
+		assertEquals("getGlobalWork", work, hb.getGlobalWork());
+		assertEquals("getWindowWork", work, hb.getWindowWork());
+		assertEquals("getGlobalAccuracy", accuracy, hb.getGlobalAccuracy());
+		assertEquals("getWindowAccuracy", accuracy, hb.getWindowAccuracy());
+		assertEquals("getGlobalEnergy", endEnergy, hb.getGlobalEnergy());
+		assertEquals("getWindowEnergy", endEnergy, hb.getWindowEnergy());
+		try {
+			hb.logHeader();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("IOException logging header");
+		}
+		try {
+			hb.logWindowBuffer();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("IOException logging window buffer");
+		}
+		assertEquals("getGlobalPerf", 1.0, hb.getGlobalPerf(), 0.0);
+		assertEquals("getWindowPerf", 1.0, hb.getWindowPerf(), 0.0);
+		assertEquals("getInstantPerf", 1.0, hb.getInstantPerf(), 0.0);
+		assertEquals("getGlobalAccuracyRate", 1.0, hb.getGlobalAccuracyRate(), 0.0);
+		assertEquals("getWindowAccuracyRate", 1.0, hb.getWindowAccuracyRate(), 0.0);
+		assertEquals("getInstantAccuracyRate", 1.0, hb.getInstantAccuracyRate(), 0.0);
+		assertEquals("getGlobalPower", 1.0, hb.getGlobalPower(), 1e-9);
+		assertEquals("getWindowPower", 1.0, hb.getWindowPower(), 1e-9);
+		assertEquals("getInstantPower", 1.0, hb.getInstantPower(), 1e-9);
+		hb.dispose();
+	}
+
+	@Test
+	public void test_snapshot() {
+		HeartbeatAccuracyPower hb = JavaHeartbeatAccuracyPower.create(WINDOW_SIZE);
+		hb.heartbeat(1, 2, 0, 1000000000, 3, 0, 4000000);
+		hb.heartbeat(5, 6, 1000000000, 2000000000, 7, 4000000, 5000000);
+		HeartbeatSnapshot s = hb.snapshot(new HeartbeatSnapshot());
+		assertEquals("getWindowSize", hb.getWindowSize(), s.getWindowSize());
+		assertEquals("getUserTag", hb.getUserTag(), s.getUserTag());
+		assertEquals("getGlobalTime", hb.getGlobalTime(), s.getGlobalTime());
+		assertEquals("getWindowTime", hb.getWindowTime(), s.getWindowTime());
+		assertEquals("getGlobalWork", hb.getGlobalWork(), s.getGlobalWork());
+		assertEquals("getWindowWork", hb.getWindowWork(), s.getWindowWork());
+		assertEquals("getGlobalAccuracy", hb.getGlobalAccuracy(), s.getGlobalAccuracy());
+		assertEquals("getWindowAccuracy", hb.getWindowAccuracy(), s.getWindowAccuracy());
+		assertEquals("getGlobalEnergy", hb.getGlobalEnergy(), s.getGlobalEnergy());
+		assertEquals("getWindowEnergy", hb.getWindowEnergy(), s.getWindowEnergy());
+		assertEquals("getGlobalPerf", hb.getGlobalPerf(), s.getGlobalPerf(), 0.0);
+		assertEquals("getWindowPerf", hb.getWindowPerf(), s.getWindowPerf(), 0.0);
+		assertEquals("getInstantPerf", hb.getInstantPerf(), s.getInstantPerf(), 0.0);
+		assertEquals("getGlobalAccuracyRate", hb.getGlobalAccuracyRate(), s.getGlobalAccuracyRate(), 0.0);
+		assertEquals("getWindowAccuracyRate", hb.getWindowAccuracyRate(), s.getWindowAccuracyRate(), 0.0);
+		assertEquals("getInstantAccuracyRate", hb.getInstantAccuracyRate(), s.getInstantAccuracyRate(), 0.0);
+		assertEquals("getGlobalPower", hb.getGlobalPower(), s.getGlobalPower(), 0.0);
+		assertEquals("getWindowPower", hb.getWindowPower(), s.getWindowPower(), 0.0);
+		assertEquals("getInstantPower", hb.getInstantPower(), s.getInstantPower(), 0.0);
+		hb.dispose();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void test_access_after_dispose() {
+		HeartbeatAccuracyPower hb = JavaHeartbeatAccuracyPower.create(WINDOW_SIZE, null);
+		hb.dispose();
+		// too cumbersome to try all methods, just do one
+		hb.getWindowSize();
+	}
+
+}
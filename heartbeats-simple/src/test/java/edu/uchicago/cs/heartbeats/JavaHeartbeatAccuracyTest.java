@@ -0,0 +1,77 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link JavaHeartbeatAccuracy}.
+ * 
+ * @author Connor Imes
+ */
+public class JavaHeartbeatAccuracyTest {
+	private static final int WINDOW_SIZE = 20;
+
+	@Test
+	public void test_normal() {
+		final long userTag = 0;
+		final long endTime = 1000000000;
+		final long work = 1;
+		final long accuracy = 1;
+		FileOutputStream fos = new FileOutputStream(FileDescriptor.out);
+		HeartbeatAccuracy hb = JavaHeartbeatAccuracy.create(WINDOW_SIZE, fos);
+		hb.heartbeat(userTag, work, 0, endTime, 1);
+		assertEquals("getWindowSize", WINDOW_SIZE, hb.getWindowSize());
+		assertEquals("getUserTag", userTag, hb.getUserTag());
+		assertEquals("getGlobalTime", endTime, hb.getGlobalTime());
+		assertEquals("getWindowTime", endTime, hb.getWindowTime());
+		assertEquals("getGlobalWork", work, hb.getGlobalWork());
+		assertEquals("getWindowWork", work, hb.getWindowWork());
+		assertEquals("getGlobalAccuracy", accuracy, hb.getGlobalAccuracy());
+		assertEquals("getWindowAccuracy", accuracy, hb.getWindowAccuracy());
+		try {
+			hb.logHeader();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("IOException logging header");
+		}
+		try {
+			hb.logWindowBuffer();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("IOException logging window buffer");
+		}
+		assertEquals("getGlobalPerf", 1.0, hb.getGlobalPerf(), 0.0);
+		assertEquals("getWindowPerf", 1.0, hb.getWindowPerf(), 0.0);
+		assertEquals("getInstantPerf", 1.0, hb.getInstantPerf(), 0.0);
+		assertEquals("getGlobalAccuracyRate", 1.0, hb.getGlobalAccuracyRate(), 0.0);
+		assertEquals("getWindowAccuracyRate", 1.0, hb.getWindowAccuracyRate(), 0.0);
+		assertEquals("getInstantAccuracyRate", 1.0, hb.getInstantAccuracyRate(), 0.0);
+		hb.dispose();
+	}
+
+	@Test
+	public void test_window_slides() {
+		HeartbeatAccuracy hb = JavaHeartbeatAccuracy.create(1);
+		hb.heartbeat(0, 1, 0, 1000000000, 3);
+		hb.heartbeat(0, 1, 1000000000, 2000000000, 5);
+		assertEquals("getGlobalAccuracy", 8, hb.getGlobalAccuracy());
+		assertEquals("getWindowAccuracy", 5, hb.getWindowAccuracy());
+		assertEquals("getGlobalAccuracyRate", 4.0, hb.getGlobalAccuracyRate(), 1e-9);
+		assertEquals("getWindowAccuracyRate", 5.0, hb.getWindowAccuracyRate(), 1e-9);
+		hb.dispose();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void test_access_after_dispose() {
+		HeartbeatAccuracy hb = JavaHeartbeatAccuracy.create(WINDOW_SIZE, null);
+		hb.dispose();
+		// too cumbersome to try all methods, just do one
+		hb.getWindowSize();
+	}
+
+}
@@ -0,0 +1,66 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link JavaHeartbeatPower}.
+ * 
+ * @author Connor Imes
+ */
+public class JavaHeartbeatPowerTest {
+	private static final int WINDOW_SIZE = 20;
+
+	@Test
+	public void test_normal() {
+		final long userTag = 0;
+		final long endTime = 1000000000;
+		final long work = 1;
+		final long endEnergy = 1000000;
+		FileOutputStream fos = new FileOutputStream(FileDescriptor.out);
+		HeartbeatPower hb = JavaHeartbeatPower.create(WINDOW_SIZE, fos);
+		hb.heartbeat(userTag, work, 0, endTime, 0, endEnergy);
+		assertEquals("getWindowSize", WINDOW_SIZE, hb.getWindowSize());
+		assertEquals("getUserTag", userTag, hb.getUserTag());
+		assertEquals("getGlobalTime", endTime, hb.getGlobalTime());
+		assertEquals("getWindowTime", endTime, hb.getWindowTime());
+		assertEquals("getGlobalWork", work, hb.getGlobalWork());
+		assertEquals("getWindowWork", work, hb.getWindowWork());
+		assertEquals("getGlobalEnergy", endEnergy, hb.getGlobalEnergy());
+		assertEquals("getWindowEnergy", endEnergy, hb.getWindowEnergy());
+		try {
+			hb.logHeader();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("IOException logging header");
+		}
+		try {
+			hb.logWindowBuffer();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("IOException logging window buffer");
+		}
+		assertEquals("getGlobalPerf", 1.0, hb.getGlobalPerf(), 0.0);
+		assertEquals("getWindowPerf", 1.0, hb.getWindowPerf(), 0.0);
+		assertEquals("getInstantPerf", 1.0, hb.getInstantPerf(), 0.0);
+		// 1 J over 1 s
+		assertEquals("getGlobalPower", 1.0, hb.getGlobalPower(), 1e-9);
+		assertEquals("getWindowPower", 1.0, hb.getWindowPower(), 1e-9);
+		assertEquals("getInstantPower", 1.0, hb.getInstantPower(), 1e-9);
+		hb.dispose();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void test_access_after_dispose() {
+		HeartbeatPower hb = JavaHeartbeatPower.create(WINDOW_SIZE, null);
+		hb.dispose();
+		// too cumbersome to try all methods, just do one
+		hb.getWindowSize();
+	}
+
+}
@@ -0,0 +1,87 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link JavaHeartbeat}.
+ * 
+ * @author Connor Imes
+ */
+public class JavaHeartbeatTest {
+	private static final int WINDOW_SIZE = 20;
+
+	@Test
+	public void test_normal() {
+		final long userTag = 0;
+		final long endTime = 1000000000;
+		final long work = 1;
+		FileOutputStream fos = new FileOutputStream(FileDescriptor.out);
+		Heartbeat hb = JavaHeartbeat.create(WINDOW_SIZE, fos);
+		hb.heartbeat(userTag, work, 0, endTime);
+		assertEquals("getWindowSize", WINDOW_SIZE, hb.getWindowSize());
+		assertEquals("getUserTag", userTag, hb.getUserTag());
+		assertEquals("getGlobalTime", endTime, hb.getGlobalTime());
+		assertEquals("getWindowTime", endTime, hb.getWindowTime());
+		assertEquals("getGlobalWork", work, hb.getGlobalWork());
+		assertEquals("getWindowWork", work, hb.getWindowWork());
+		try {
+			hb.logHeader();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("IOException logging header");
+		}
+		try {
+			hb.logWindowBuffer();
+		} catch (IOException e) {
+			e.printStackTrace();
+			fail("IOException logging window buffer");
+		}
+		assertEquals("getGlobalPerf", 1.0, hb.getGlobalPerf(), 0.0);
+		assertEquals("getWindowPerf", 1.0, hb.getWindowPerf(), 0.0);
+		assertEquals("getInstantPerf", 1.0, hb.getInstantPerf(), 0.0);
+		hb.dispose();
+	}
+
+	@Test
+	public void test_window_slides() {
+		Heartbeat hb = JavaHeartbeat.create(2);
+		hb.heartbeat(1, 1, 0, 1000000000);
+		hb.heartbeat(2, 2, 1000000000, 2000000000);
+		hb.heartbeat(3, 4, 2000000000, 2500000000L);
+		assertEquals("getUserTag", 3, hb.getUserTag());
+		assertEquals("getGlobalTime", 2500000000L, hb.getGlobalTime());
+		assertEquals("getWindowTime", 1500000000L, hb.getWindowTime());
+		assertEquals("getGlobalWork", 7, hb.getGlobalWork());
+		assertEquals("getWindowWork", 6, hb.getWindowWork());
+		assertEquals("getGlobalPerf", 2.8, hb.getGlobalPerf(), 1e-9);
+		assertEquals("getWindowPerf", 4.0, hb.getWindowPerf(), 1e-9);
+		assertEquals("getInstantPerf", 8.0, hb.getInstantPerf(), 1e-9);
+		hb.dispose();
+	}
+
+	@Test
+	public void test_close() {
+		Heartbeat closed;
+		try (Heartbeat hb = JavaHeartbeat.create(WINDOW_SIZE)) {
+			hb.heartbeat(0, 1, 0, 1000000000);
+			closed = hb;
+		}
+		// closing again is a no-op
+		closed.close();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void test_access_after_dispose() {
+		Heartbeat hb = JavaHeartbeat.create(WINDOW_SIZE, null);
+		hb.dispose();
+		// too cumbersome to try all methods, just do one
+		hb.getWindowSize();
+	}
+
+}
@@ -0,0 +1,139 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link MappedHeartbeatLog} and
+ * {@link MappedHeartbeatLogReader}, using the pure-Java heartbeats.
+ *
+ * @author Connor Imes
+ */
+public class MappedHeartbeatLogTest {
+	private static final int WINDOW_SIZE = 20;
+	private static final int SEGMENT_RECORDS = 50;
+	private static final int INDEX_INTERVAL = 8;
+	private static final int BEATS = WINDOW_SIZE * 11 + WINDOW_SIZE / 2;
+	private static final String NAME = "hb";
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("hb-mapped").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (final File f : dir.listFiles()) {
+			f.delete();
+		}
+		dir.delete();
+	}
+
+	/**
+	 * Heartbeat i ends at time 10 * (i + 1).
+	 */
+	private void write() throws IOException {
+		final MappedHeartbeatLog log = MappedHeartbeatLog.open(dir.getPath(), NAME, SEGMENT_RECORDS, INDEX_INTERVAL);
+		final HeartbeatAccuracyPower hb = JavaHeartbeatAccuracyPower.createWithLogSink(WINDOW_SIZE, log);
+		for (int i = 0; i < BEATS; i++) {
+			hb.heartbeat(i, 1, i * 10, (i + 1) * 10, 1, i, i + 2);
+		}
+		hb.logWindowBuffer();
+		hb.dispose();
+		assertEquals("getSegmentCount", (BEATS + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS, log.getSegmentCount());
+		log.close();
+	}
+
+	@Test
+	public void test_read_all() throws IOException {
+		write();
+		final MappedHeartbeatLogReader r = MappedHeartbeatLogReader.open(dir.getPath(), NAME);
+		assertEquals("getRecordCount", BEATS, r.getRecordCount());
+		assertTrue("hasAccuracy", r.hasAccuracy());
+		assertTrue("hasEnergy", r.hasEnergy());
+		for (int i = 0; i < BEATS; i++) {
+			assertTrue("next", r.next());
+			assertEquals("getId", i, r.getId());
+			assertEquals("getUserTag", i, r.getUserTag());
+			assertEquals("getWork", 1, r.getWork());
+			assertEquals("getStartTime", i * 10, r.getStartTime());
+			assertEquals("getEndTime", (i + 1) * 10, r.getEndTime());
+			assertEquals("getAccuracy", 1, r.getAccuracy());
+			assertEquals("getStartEnergy", i, r.getStartEnergy());
+			assertEquals("getEndEnergy", i + 2, r.getEndEnergy());
+		}
+		assertFalse("next", r.next());
+		r.close();
+	}
+
+	@Test
+	public void test_seek() throws IOException {
+		write();
+		final MappedHeartbeatLogReader r = MappedHeartbeatLogReader.open(dir.getPath(), NAME);
+		// exact matches, between records, and across segment and index boundaries
+		for (long t = 0; t <= (BEATS + 1) * 10; t += 3) {
+			r.seek(t);
+			final long expected = Math.max(0, (t + 9) / 10 - 1);
+			if (expected >= BEATS) {
+				assertFalse("next at " + t, r.next());
+			} else {
+				assertTrue("next at " + t, r.next());
+				assertEquals("getId at " + t, expected, r.getId());
+			}
+		}
+		r.close();
+	}
+
+	@Test
+	public void test_range() throws IOException {
+		write();
+		final MappedHeartbeatLogReader r = MappedHeartbeatLogReader.open(dir.getPath(), NAME);
+		r.seek(1000);
+		int n = 0;
+		while (r.next() && r.getEndTime() < 2000) {
+			n++;
+		}
+		assertEquals("records in range", 100, n);
+		r.close();
+	}
+
+	@Test
+	public void test_basic_records() throws IOException {
+		final MappedHeartbeatLog log = MappedHeartbeatLog.open(dir.getPath(), NAME);
+		final Heartbeat hb = JavaHeartbeat.createWithLogSink(WINDOW_SIZE, log);
+		hb.heartbeat(7, 1, 0, 10);
+		hb.logWindowBuffer();
+		hb.dispose();
+		log.close();
+		final MappedHeartbeatLogReader r = MappedHeartbeatLogReader.open(dir.getPath(), NAME);
+		assertFalse("hasAccuracy", r.hasAccuracy());
+		assertTrue("next", r.next());
+		assertEquals("getUserTag", 7, r.getUserTag());
+		assertEquals("getAccuracy", 0, r.getAccuracy());
+		assertEquals("getEndEnergy", 0, r.getEndEnergy());
+		r.close();
+	}
+
+	@Test(expected = FileAlreadyExistsException.class)
+	public void test_exists() throws IOException {
+		write();
+		MappedHeartbeatLog.open(dir.getPath(), NAME);
+	}
+
+	@Test(expected = NoSuchFileException.class)
+	public void test_missing() throws IOException {
+		MappedHeartbeatLogReader.open(dir.getPath(), NAME);
+	}
+
+}
@@ -0,0 +1,22 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link MemoryFences}.
+ *
+ * @author Connor Imes
+ */
+public class MemoryFencesTest {
+
+	@Test
+	public void test_fences() {
+		// Unsafe's fences exist from Java 8
+		final String version = System.getProperty("java.specification.version");
+		assertEquals("isAvailable", !"1.7".equals(version), MemoryFences.isAvailable());
+		MemoryFences.loadFence();
+		MemoryFences.storeFence();
+	}
+}
@@ -0,0 +1,129 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link ModelEnergySource}, using a fake /proc/stat.
+ *
+ * @author Connor Imes
+ */
+public class ModelEnergySourceTest {
+	private static final ModelEnergySource.PowerModel MODEL = new ModelEnergySource.PowerModel(2, 10);
+
+	private Path stat;
+	private long time;
+
+	private final HeartbeatClock clock = new HeartbeatClock() {
+		public long getTime() {
+			return time;
+		}
+	};
+
+	@Before
+	public void setUp() throws IOException {
+		stat = Files.createTempFile("hb-stat", null);
+		set(0, 0);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.delete(stat);
+	}
+
+	/**
+	 * Write a 4-core /proc/stat with the given busy and idle ticks.
+	 */
+	private void set(final long busy, final long idle) throws IOException {
+		// busy ticks split over user and system, idle ticks over idle and iowait
+		final String cpu = "cpu  " + (busy - busy / 2) + " 0 " + busy / 2 + " " + (idle - idle / 2) + " " + idle / 2
+				+ " 0 0 0 0 0\n";
+		final StringBuilder sb = new StringBuilder(cpu);
+		for (int i = 0; i < 4; i++) {
+			sb.append("cpu").append(i).append(" 0 0 0 0 0 0 0 0 0 0\n");
+		}
+		sb.append("intr 0\nctxt 0\n");
+		Files.write(stat, sb.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void test_sample() throws IOException {
+		final ModelEnergySource source = ModelEnergySource.open(stat.toString(), MODEL, 0, clock);
+		try {
+			assertEquals("getCoreCount", 4, source.getCoreCount());
+			assertEquals("getEnergy", 0, source.getEnergy());
+			// idle for 1 second: 4 cores at 2 W
+			set(0, 400);
+			time = 1000000000L;
+			assertEquals("not sampled", 0, source.getEnergy());
+			source.sample();
+			assertEquals("getEnergy", 8000000, source.getEnergy());
+			// 1 of 4 cores busy for 1 second: 8 W + 1 * 8 W
+			set(100, 700);
+			time = 2000000000L;
+			source.sample();
+			assertEquals("getEnergy", 24000000, source.getEnergy());
+			// no ticks: treated as idle
+			time = 2500000000L;
+			source.sample();
+			assertEquals("getEnergy", 28000000, source.getEnergy());
+		} finally {
+			source.close();
+		}
+	}
+
+	@Test
+	public void test_background() throws IOException, InterruptedException {
+		final ModelEnergySource source = ModelEnergySource.open(stat.toString(), MODEL, 1000000);
+		try {
+			for (int i = 0; i < 100 && source.getEnergy() == 0; i++) {
+				Thread.sleep(10);
+			}
+			assertTrue("getEnergy", source.getEnergy() > 0);
+			assertEquals("getSampleErrors", 0, source.getSampleErrors());
+		} finally {
+			source.close();
+		}
+		source.close();
+	}
+
+	@Test
+	public void test_thread_source() throws IOException {
+		final ModelEnergySource source = ModelEnergySource.open(stat.toString(), MODEL, 0);
+		try {
+			final EnergySource thread = source.getThreadSource();
+			final JavaHeartbeatPower hb = JavaHeartbeatPower.create(20);
+			final long start = thread.getEnergy();
+			long x = 0;
+			for (int i = 0; i < 10000000; i++) {
+				x += i ^ x;
+			}
+			final long end = thread.getEnergy();
+			assertTrue("thread energy " + x, end >= start);
+			hb.heartbeat(0, 1, 0, 1000, start, end);
+			assertEquals("getGlobalEnergy", end - start, hb.getGlobalEnergy());
+			hb.dispose();
+		} finally {
+			source.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void test_invalid() throws IOException {
+		Files.write(stat, "intr 0\n".getBytes(StandardCharsets.US_ASCII));
+		ModelEnergySource.open(stat.toString(), MODEL, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_bad_model() {
+		new ModelEnergySource.PowerModel(10, 2);
+	}
+}
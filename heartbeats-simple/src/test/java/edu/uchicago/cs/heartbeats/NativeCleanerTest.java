@@ -0,0 +1,59 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link NativeCleaner}, using a fake freer.
+ *
+ * @author Connor Imes
+ */
+public class NativeCleanerTest {
+	private static final int SIZE = 128;
+
+	private static class CountingFreer implements NativeCleaner.Freer {
+		final AtomicInteger freed = new AtomicInteger();
+
+		public void free(final ByteBuffer ptr) {
+			freed.incrementAndGet();
+		}
+
+		public long size(final ByteBuffer ptr) {
+			return ptr.capacity();
+		}
+	}
+
+	@Test
+	public void test_explicit() {
+		final CountingFreer freer = new CountingFreer();
+		final long live = NativeCleaner.getLiveContexts();
+		final long bytes = NativeCleaner.getNativeBytes();
+		final Object owner = new Object();
+		final NativeCleaner.Cleanable c = NativeCleaner.register(owner, ByteBuffer.allocateDirect(SIZE), freer);
+		assertEquals("getLiveContexts", live + 1, NativeCleaner.getLiveContexts());
+		assertEquals("getNativeBytes", bytes + SIZE, NativeCleaner.getNativeBytes());
+		assertTrue("clean", c.clean());
+		assertFalse("clean twice", c.clean());
+		assertEquals("freed", 1, freer.freed.get());
+		assertEquals("getLiveContexts", live, NativeCleaner.getLiveContexts());
+		assertEquals("getNativeBytes", bytes, NativeCleaner.getNativeBytes());
+	}
+
+	@Test
+	public void test_reclaimed() throws InterruptedException {
+		final CountingFreer freer = new CountingFreer();
+		final long reclaimed = NativeCleaner.getReclaimedContexts();
+		NativeCleaner.register(new Object(), ByteBuffer.allocateDirect(SIZE), freer);
+		for (int i = 0; i < 100 && freer.freed.get() == 0; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		assertEquals("freed", 1, freer.freed.get());
+		assertTrue("getReclaimedContexts", NativeCleaner.getReclaimedContexts() > reclaimed);
+	}
+
+}
@@ -0,0 +1,128 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link NativeLibraryLoader} extraction. Loading itself is
+ * covered by the Default* tests.
+ *
+ * @author Connor Imes
+ */
+public class NativeLibraryLoaderTest {
+	private static final String NAME = "libtest.so";
+
+	private File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("hb-lib").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		delete(dir);
+	}
+
+	private static void delete(final File f) {
+		final File[] children = f.listFiles();
+		if (children != null) {
+			for (final File c : children) {
+				delete(c);
+			}
+		}
+		f.delete();
+	}
+
+	@Test
+	public void test_resource_name() {
+		final String name = NativeLibraryLoader.getResourceName();
+		assertTrue("prefix", name.startsWith("/native/"));
+		assertTrue("suffix", name.endsWith("/" + System.mapLibraryName(NativeLibraryLoader.LIBRARY)));
+	}
+
+	@Test
+	public void test_extract() throws IOException {
+		final byte[] a = { 1, 2, 3 };
+		final byte[] b = { 4, 5, 6 };
+		final Path pa = NativeLibraryLoader.extract(new ByteArrayInputStream(a), dir.toPath(), NAME);
+		assertEquals("name", NAME, pa.getFileName().toString());
+		assertArrayEquals("contents", a, Files.readAllBytes(pa));
+		final long modified = Files.getLastModifiedTime(pa).toMillis();
+		assertEquals("same contents", pa,
+				NativeLibraryLoader.extract(new ByteArrayInputStream(a), dir.toPath(), NAME));
+		assertEquals("not rewritten", modified, Files.getLastModifiedTime(pa).toMillis());
+		final Path pb = NativeLibraryLoader.extract(new ByteArrayInputStream(b), dir.toPath(), NAME);
+		assertFalse("different contents", pa.equals(pb));
+		assertArrayEquals("contents", b, Files.readAllBytes(pb));
+	}
+
+	@Test
+	public void test_extract_tampered() throws IOException {
+		final byte[] a = { 1, 2, 3 };
+		final Path p = NativeLibraryLoader.extract(new ByteArrayInputStream(a), dir.toPath(), NAME);
+		// same size, different contents
+		Files.write(p, new byte[] { 6, 6, 6 });
+		assertEquals("path", p, NativeLibraryLoader.extract(new ByteArrayInputStream(a), dir.toPath(), NAME));
+		assertArrayEquals("replaced", a, Files.readAllBytes(p));
+	}
+
+	@Test
+	public void test_extract_private() throws IOException {
+		Assume.assumeTrue(dir.toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+		final Path cache = dir.toPath().resolve("cache");
+		final Path p = NativeLibraryLoader.extract(new ByteArrayInputStream(new byte[] { 1 }), cache, NAME);
+		assertEquals("cache", "rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(cache)));
+		assertEquals("sha", "rwx------",
+				PosixFilePermissions.toString(Files.getPosixFilePermissions(p.getParent())));
+		Files.setPosixFilePermissions(cache, PosixFilePermissions.fromString("rwxrwxrwx"));
+		try {
+			NativeLibraryLoader.extract(new ByteArrayInputStream(new byte[] { 1 }), cache, NAME);
+			fail("accepted a directory writable by others");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void test_extract_concurrent() throws Exception {
+		final byte[] lib = new byte[1024 * 1024];
+		Arrays.fill(lib, (byte) 7);
+		final ExecutorService ex = Executors.newFixedThreadPool(4);
+		try {
+			final Callable<Path> task = new Callable<Path>() {
+				public Path call() throws IOException {
+					return NativeLibraryLoader.extract(new ByteArrayInputStream(lib), dir.toPath(), NAME);
+				}
+			};
+			final Future<?>[] futures = new Future<?>[8];
+			for (int i = 0; i < futures.length; i++) {
+				futures[i] = ex.submit(task);
+			}
+			final Path p = (Path) futures[0].get();
+			for (final Future<?> f : futures) {
+				assertEquals("path", p, f.get());
+			}
+			assertArrayEquals("contents", lib, Files.readAllBytes(p));
+			assertEquals("no temporary files", 1, p.getParent().toFile().list().length);
+		} finally {
+			ex.shutdown();
+		}
+	}
+}
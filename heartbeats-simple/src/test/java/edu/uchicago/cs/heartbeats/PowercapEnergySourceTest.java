@@ -0,0 +1,154 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link PowercapEnergySource}, using a fake powercap tree.
+ *
+ * @author Connor Imes
+ */
+public class PowercapEnergySourceTest {
+	private static final long MAX_RANGE = 1000000;
+
+	private Path root;
+
+	@Before
+	public void setUp() throws IOException {
+		root = Files.createTempDirectory("hb-powercap");
+		zone("intel-rapl:0", "package-0", 100);
+		zone("intel-rapl:1", "package-1", 200);
+		// subzones are included in their package and must not be counted
+		zone("intel-rapl:0:0", "core", 50);
+		// nor is the platform zone, which includes the packages
+		zone("intel-rapl:2", "psys", 400);
+	}
+
+	@After
+	public void tearDown() {
+		delete(root.toFile());
+	}
+
+	private static void delete(final File f) {
+		final File[] children = f.listFiles();
+		if (children != null) {
+			for (final File c : children) {
+				delete(c);
+			}
+		}
+		f.delete();
+	}
+
+	private void zone(final String zone, final String name, final long energy) throws IOException {
+		final Path d = Files.createDirectories(root.resolve(zone));
+		Files.write(d.resolve("name"), (name + "\n").getBytes(StandardCharsets.US_ASCII));
+		write(d.resolve("max_energy_range_uj"), MAX_RANGE);
+		write(d.resolve("energy_uj"), energy);
+	}
+
+	private void set(final String name, final long energy) throws IOException {
+		write(root.resolve(name).resolve("energy_uj"), energy);
+	}
+
+	private static void write(final Path p, final long value) throws IOException {
+		Files.write(p, (value + "\n").getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void test_sample() throws IOException {
+		final PowercapEnergySource source = PowercapEnergySource.open(root.toString(), 0);
+		try {
+			assertEquals("getZoneCount", 2, source.getZoneCount());
+			assertEquals("getEnergy", 0, source.getEnergy());
+			set("intel-rapl:0", 150);
+			set("intel-rapl:1", 1200);
+			set("intel-rapl:0:0", 10000);
+			set("intel-rapl:2", 20000);
+			assertEquals("not sampled", 0, source.getEnergy());
+			source.sample();
+			assertEquals("getEnergy", 1050, source.getEnergy());
+			// a larger value than before
+			set("intel-rapl:1", 120000);
+			source.sample();
+			assertEquals("getEnergy", 119850, source.getEnergy());
+		} finally {
+			source.close();
+		}
+	}
+
+	@Test
+	public void test_wraparound() throws IOException {
+		set("intel-rapl:0", MAX_RANGE - 100);
+		final PowercapEnergySource source = PowercapEnergySource.open(root.toString(), 0);
+		try {
+			set("intel-rapl:0", 50);
+			source.sample();
+			assertEquals("getEnergy", 150, source.getEnergy());
+		} finally {
+			source.close();
+		}
+	}
+
+	@Test
+	public void test_reset_without_range() throws IOException {
+		Files.delete(root.resolve("intel-rapl:0").resolve("max_energy_range_uj"));
+		set("intel-rapl:0", MAX_RANGE - 100);
+		final PowercapEnergySource source = PowercapEnergySource.open(root.toString(), 0);
+		try {
+			set("intel-rapl:0", 50);
+			source.sample();
+			assertEquals("getEnergy", 50, source.getEnergy());
+			set("intel-rapl:0", 80);
+			source.sample();
+			assertEquals("getEnergy", 80, source.getEnergy());
+		} finally {
+			source.close();
+		}
+	}
+
+	@Test
+	public void test_background() throws IOException, InterruptedException {
+		final PowercapEnergySource source = PowercapEnergySource.open(root.toString(), 1000000);
+		try {
+			set("intel-rapl:0", 600);
+			for (int i = 0; i < 100 && source.getEnergy() == 0; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals("getEnergy", 500, source.getEnergy());
+			assertEquals("getSampleErrors", 0, source.getSampleErrors());
+		} finally {
+			source.close();
+		}
+		source.close();
+	}
+
+	@Test
+	public void test_heartbeat() throws IOException {
+		final PowercapEnergySource source = PowercapEnergySource.open(root.toString(), 0);
+		try {
+			final JavaHeartbeatPower hb = JavaHeartbeatPower.create(20);
+			final long start = source.getEnergy();
+			set("intel-rapl:1", 1200);
+			source.sample();
+			hb.heartbeat(0, 1, 0, 1000, start, source.getEnergy());
+			assertEquals("getGlobalEnergy", 1000, hb.getGlobalEnergy());
+			hb.dispose();
+		} finally {
+			source.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void test_no_zones() throws IOException {
+		PowercapEnergySource.open(root.resolve("missing").toString(), 0);
+	}
+}
@@ -0,0 +1,87 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for the sampling heartbeats, over pure-Java heartbeats.
+ *
+ * @author Connor Imes
+ */
+public class SamplingHeartbeatTest {
+	private static final int WINDOW_SIZE = 20;
+
+	@Test
+	public void test_fixed() {
+		final JavaHeartbeatAccuracyPower inner = JavaHeartbeatAccuracyPower.create(WINDOW_SIZE);
+		final SamplingHeartbeatAccuracyPower hb = SamplingHeartbeatAccuracyPower.create(inner,
+				SamplingPolicy.fixed(4));
+		for (int i = 0; i < 100; i++) {
+			hb.heartbeat(i, 2, i * 1000, (i + 1) * 1000, 1, i * 10, (i + 1) * 10);
+		}
+		assertEquals("getCount", 100, hb.getCount());
+		assertEquals("getSampledCount", 25, hb.getSampledCount());
+		assertEquals("getSamplingRate", 0.25, hb.getSamplingRate(), 0.0);
+		// every 4th heartbeat, scaled by 4, so totals are exact for uniform heartbeats
+		assertEquals("getGlobalWork", 200, hb.getGlobalWork());
+		assertEquals("getGlobalTime", 100000, hb.getGlobalTime());
+		assertEquals("getGlobalAccuracy", 100, hb.getGlobalAccuracy());
+		assertEquals("getGlobalEnergy", 1000, hb.getGlobalEnergy());
+		assertEquals("getGlobalPerf", 2e6, hb.getGlobalPerf(), 1e-6);
+		assertEquals("getInstantPerf", 2e6, hb.getInstantPerf(), 1e-6);
+		assertEquals("getWindowWork", 2 * 4 * WINDOW_SIZE, hb.getWindowWork());
+		assertEquals("getUserTag", 99, hb.getUserTag());
+		hb.dispose();
+	}
+
+	@Test
+	public void test_probabilistic() {
+		final SamplingHeartbeat hb = SamplingHeartbeat.create(JavaHeartbeat.create(WINDOW_SIZE),
+				SamplingPolicy.probabilistic(0.1));
+		final int n = 100000;
+		for (int i = 0; i < n; i++) {
+			hb.heartbeat(0, 1, i * 100L, (i + 1) * 100L);
+		}
+		assertEquals("getSamplingRate", 0.1, hb.getSamplingRate(), 0.01);
+		// the estimate is unbiased; allow several standard deviations
+		assertEquals("getGlobalWork", n, hb.getGlobalWork(), n * 0.05);
+		// rates are exact when every heartbeat has the same rate
+		assertEquals("getGlobalPerf", 1e7, hb.getGlobalPerf(), 1e-3);
+		hb.dispose();
+	}
+
+	@Test
+	public void test_adaptive() {
+		final JavaHeartbeatPower inner = JavaHeartbeatPower.create(WINDOW_SIZE);
+		final SamplingHeartbeatPower hb = SamplingHeartbeatPower.create(inner, SamplingPolicy.adaptive(0.01, 1000));
+		for (int i = 0; i < 100000; i++) {
+			hb.heartbeat(0, 1, i, i + 1, i, i + 1);
+		}
+		assertEquals("getCount", 100000, hb.getCount());
+		assertTrue("getSamplingRate", hb.getSamplingRate() > 0 && hb.getSamplingRate() <= 1);
+		// every heartbeat is counted by exactly one sample, except those since the last one
+		final long missing = 100000 - hb.getGlobalWork();
+		assertTrue("getGlobalWork", missing >= 0 && missing < 1000);
+		assertEquals("getGlobalEnergy", hb.getGlobalWork(), hb.getGlobalEnergy());
+		hb.dispose();
+	}
+
+	@Test
+	public void test_unsampled() {
+		final SamplingHeartbeatAccuracy hb = SamplingHeartbeatAccuracy.create(
+				JavaHeartbeatAccuracy.create(WINDOW_SIZE), SamplingPolicy.fixed(1));
+		hb.heartbeat(1, 3, 0, 1000, 2);
+		assertEquals("getSamplingRate", 1.0, hb.getSamplingRate(), 0.0);
+		assertEquals("getGlobalWork", 3, hb.getGlobalWork());
+		assertEquals("getGlobalAccuracy", 2, hb.getGlobalAccuracy());
+		assertEquals("getGlobalTime", 1000, hb.getGlobalTime());
+		hb.close();
+		hb.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_bad_probability() {
+		SamplingPolicy.probabilistic(0);
+	}
+}
@@ -0,0 +1,146 @@
+package edu.uchicago.cs.heartbeats;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * JUnit tests for {@link StripedHeartbeatAccuracyPower}, using pure-Java
+ * stripes.
+ *
+ * @author Connor Imes
+ */
+public class StripedHeartbeatAccuracyPowerTest {
+	private static final int WINDOW_SIZE = 20;
+	private static final int NUM_STRIPES = 4;
+
+	private static StripedHeartbeatAccuracyPower create() {
+		final HeartbeatAccuracyPower[] stripes = new HeartbeatAccuracyPower[NUM_STRIPES];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = JavaHeartbeatAccuracyPower.create(WINDOW_SIZE);
+		}
+		return StripedHeartbeatAccuracyPower.create(stripes);
+	}
+
+	@Test
+	public void test_normal() {
+		final long userTag = 0;
+		final long endTime = 1000000000;
+		final long work = 1;
+		final long accuracy = 1;
+		final long endEnergy = 1000000;
+		HeartbeatAccuracyPower hb = create();
+		hb.heartbeat(userTag, work, 0, endTime, accuracy, 0, endEnergy);
+		assertEquals("getWindowSize", WINDOW_SIZE * NUM_STRIPES, hb.getWindowSize());
+		assertEquals("getUserTag", userTag, hb.getUserTag());
+		assertEquals("getGlobalTime", endTime, hb.getGlobalTime());
+		assertEquals("getWindowTime", endTime, hb.getWindowTime());
+		assertEquals("getGlobalWork", work, hb.getGlobalWork());
+		assertEquals("getWindowWork", work, hb.getWindowWork());
+		assertEquals("getGlobalAccuracy", accuracy, hb.getGlobalAccuracy());
+		assertEquals("getWindowAccuracy", accuracy, hb.getWindowAccuracy());
+		assertEquals("getGlobalEnergy", endEnergy, hb.getGlobalEnergy());
+		assertEquals("getWindowEnergy", endEnergy, hb.getWindowEnergy());
+		assertEquals("getGlobalPerf", 1.0, hb.getGlobalPerf(), 0.0);
+		assertEquals("getWindowPerf", 1.0, hb.getWindowPerf(), 0.0);
+		assertEquals("getInstantPerf", 1.0, hb.getInstantPerf(), 0.0);
+		assertEquals("getGlobalAccuracyRate", 1.0, hb.getGlobalAccuracyRate(), 0.0);
+		assertEquals("getWindowAccuracyRate", 1.0, hb.getWindowAccuracyRate(), 0.0);
+		assertEquals("getInstantAccuracyRate", 1.0, hb.getInstantAccuracyRate(), 0.0);
+		assertEquals("getGlobalPower", 1.0, hb.getGlobalPower(), 1e-9);
+		assertEquals("getWindowPower", 1.0, hb.getWindowPower(), 1e-9);
+		assertEquals("getInstantPower", 1.0, hb.getInstantPower(), 1e-9);
+		hb.dispose();
+	}
+
+	@Test
+	public void test_concurrent() throws InterruptedException {
+		final int numThreads = 8;
+		final int beats = 10000;
+		final StripedHeartbeatAccuracyPower hb = create();
+		final Thread[] threads = new Thread[numThreads];
+		for (int i = 0; i < numThreads; i++) {
+			final long tag = i;
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < beats; j++) {
+						hb.heartbeat(tag, 1, j, j + 1, 2, 0, 3);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		final long total = (long) numThreads * beats;
+		final HeartbeatSnapshot s = hb.snapshot(new HeartbeatSnapshot());
+		assertEquals("getGlobalTime", total, s.getGlobalTime());
+		assertEquals("getGlobalWork", total, s.getGlobalWork());
+		assertEquals("getGlobalAccuracy", 2 * total, s.getGlobalAccuracy());
+		assertEquals("getGlobalEnergy", 3 * total, s.getGlobalEnergy());
+		assertEquals("getGlobalPerf", 1e9, s.getGlobalPerf(), 0.0);
+		assertEquals("getWindowPerf", 1e9, s.getWindowPerf(), 0.0);
+		assertEquals("getInstantPerf", 1e9, s.getInstantPerf(), 0.0);
+		assertEquals("getGlobalAccuracyRate", 2e9, s.getGlobalAccuracyRate(), 0.0);
+		assertEquals("getGlobalPower", 3e3, s.getGlobalPower(), 1e-9);
+		hb.dispose();
+	}
+
+	@Test
+	public void test_latest_stripe() throws InterruptedException {
+		final StripedHeartbeatAccuracyPower hb = create();
+		hb.heartbeat(1, 1, 0, 1000);
+		final Thread other = new Thread() {
+			@Override
+			public void run() {
+				hb.heartbeat(2, 4, 1000, 2000);
+			}
+		};
+		other.start();
+		other.join();
+		assertEquals("getUserTag", 2, hb.getUserTag());
+		assertEquals("getInstantPerf", 4e6, hb.getInstantPerf(), 0.0);
+		assertEquals("getGlobalPerf", 2.5e6, hb.getGlobalPerf(), 0.0);
+		hb.dispose();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void test_no_stripes() {
+		StripedHeartbeatAccuracyPower.create(new HeartbeatAccuracyPower[0]);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void test_dispose_twice() {
+		final HeartbeatAccuracyPower hb = create();
+		hb.dispose();
+		hb.dispose();
+	}
+
+	@Test
+	public void test_dispose_failure() {
+		final HeartbeatAccuracyPower[] stripes = new HeartbeatAccuracyPower[NUM_STRIPES];
+		for (int i = 0; i < stripes.length; i++) {
+			stripes[i] = JavaHeartbeatAccuracyPower.create(WINDOW_SIZE);
+		}
+		final HeartbeatAccuracyPower hb = StripedHeartbeatAccuracyPower.create(stripes);
+		// the first stripe fails to dispose
+		stripes[0].dispose();
+		try {
+			hb.dispose();
+			fail("failure not rethrown");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		for (int i = 1; i < stripes.length; i++) {
+			try {
+				stripes[i].getGlobalWork();
+				fail("stripe " + i + " not disposed");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+		}
+	}
+
+}
@@ -8,29 +8,67 @@ import java.nio.ByteBuffer;
  * @author Connor Imes
  */
 public final class HeartbeatJNI {
-	private static HeartbeatJNI instance = null;
+	private static final HeartbeatJNI INSTANCE = new HeartbeatJNI();
 
 	/**
 	 * Get an instance of {@link HeartbeatJNI}. On the first access, this method
-	 * loads the native library. Failure to load will result in runtime
-	 * exceptions.
+	 * loads the native library with {@link NativeLibraryLoader}; later calls do
+	 * not synchronize.
 	 * 
 	 * @return {@link HeartbeatJNI}
+	 * @throws UnsatisfiedLinkError
+	 *             if the native library cannot be loaded
 	 */
 	public static HeartbeatJNI get() {
-		if (instance == null) {
-			System.loadLibrary("heartbeats-simple-wrapper");
-			instance = new HeartbeatJNI();
-		}
-		return instance;
+		NativeLibraryLoader.load();
+		return INSTANCE;
 	}
 
 	public native ByteBuffer init(int windowSize, int logFd);
 
+	/**
+	 * Get the size of a context, for allocating one outside of {@link #init(int, int)}.
+	 */
+	public native int contextSize();
+
+	/**
+	 * Get the size of a window buffer record.
+	 */
+	public native int recordSize();
+
+	/**
+	 * Initialize, or reset, a heartbeat in direct buffers provided by the caller
+	 * without allocating native memory. The buffers must not be passed to
+	 * {@link #free(ByteBuffer)}.
+	 * 
+	 * @return 0 on success
+	 */
+	public native int initInPlace(ByteBuffer ptr, ByteBuffer windowBuffer, int windowSize, int logFd);
+
 	public native void heartbeat(ByteBuffer ptr, long userTag, long work, long startTime, long endTime);
 
+	public native void heartbeatBatch(ByteBuffer ptr, long[] userTags, long[] work, long[] startTimes,
+			long[] endTimes, int offset, int length);
+
 	public native void free(ByteBuffer ptr);
 
+	/**
+	 * Copy the window buffer records into another context with the same window
+	 * size, and mark the copy's full window as ready to be logged.
+	 */
+	public native void copyWindowBuffer(ByteBuffer ptr, ByteBuffer dest);
+
+	/**
+	 * Get the window buffer records as a direct buffer over native memory. The
+	 * buffer is only valid until the heartbeat is freed.
+	 */
+	public native ByteBuffer getWindowBuffer(ByteBuffer ptr);
+
+	/**
+	 * Get the address of the heartbeat, for use with {@link Raw}.
+	 */
+	public native long getAddress(ByteBuffer ptr);
+
 	public native int logHeader(int fd);
 
 	public native int logWindowBuffer(ByteBuffer ptr, int fd);
@@ -52,4 +90,43 @@ public final class HeartbeatJNI {
 	public native double getWindowPerf(ByteBuffer ptr);
 
 	public native double getInstantPerf(ByteBuffer ptr);
+
+	/**
+	 * Fill the provided arrays with all metrics in a single call. Values are
+	 * written in the order defined by the Java API's snapshot holder; metrics
+	 * not supported by this heartbeat type are set to 0.
+	 */
+	public native void snapshot(ByteBuffer ptr, long[] longs, double[] doubles);
+
+	/**
+	 * Address-based bindings for hot paths. The methods are static, take only
+	 * primitives, and are registered when the library is loaded instead of being
+	 * looked up by name, which keeps JNI transitions as cheap as possible. The
+	 * address from {@link HeartbeatJNI#getAddress(ByteBuffer)} is only valid until
+	 * the heartbeat is freed.
+	 */
+	public static final class Raw {
+		private Raw() {
+		}
+
+		public static native void heartbeat(long hb, long userTag, long work, long startTime, long endTime);
+
+		public static native long getWindowSize(long hb);
+
+		public static native long getUserTag(long hb);
+
+		public static native long getGlobalTime(long hb);
+
+		public static native long getWindowTime(long hb);
+
+		public static native long getGlobalWork(long hb);
+
+		public static native long getWindowWork(long hb);
+
+		public static native double getGlobalPerf(long hb);
+
+		public static native double getWindowPerf(long hb);
+
+		public static native double getInstantPerf(long hb);
+	}
 }
@@ -0,0 +1,252 @@
+package edu.uchicago.cs.heartbeats;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Loads the JNI wrapper library once for all of the bindings.
+ *
+ * The library is found, in order:
+ * <ol>
+ * <li>at the file named by the {@value #PATH_PROPERTY} system property, if
+ * set;</li>
+ * <li>embedded in the jar at {@link #getResourceName()}, extracted to a cache
+ * directory named by the SHA-256 of its contents, so each version is only
+ * extracted once per machine and concurrent processes do not conflict;</li>
+ * <li>on <code>java.library.path</code>.</li>
+ * </ol>
+ * The cache is under <code>java.io.tmpdir</code> unless the
+ * {@value #CACHE_PROPERTY} system property names another directory. On POSIX
+ * file systems the cache directories are created readable and writable only by
+ * their owner, and an existing directory owned by another user or accessible
+ * to others is refused, so other local users cannot plant a library there. A
+ * cached library is only loaded if its SHA-256 still matches its directory's
+ * name; otherwise it is replaced.
+ *
+ * After the first call to {@link #load()}, later calls return after a single
+ * volatile read. If loading fails, the failure is remembered and every later
+ * call throws an {@link UnsatisfiedLinkError} describing what was tried.
+ *
+ * @author Connor Imes
+ */
+final class NativeLibraryLoader {
+	static final String LIBRARY = "heartbeats-simple-wrapper";
+	static final String PATH_PROPERTY = "heartbeats.library.path";
+	static final String CACHE_PROPERTY = "heartbeats.library.cache";
+
+	private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+	private static volatile boolean loaded;
+	private static String failure;
+
+	private NativeLibraryLoader() {
+	}
+
+	/**
+	 * Load the library if it is not already loaded.
+	 *
+	 * @throws UnsatisfiedLinkError
+	 *             if the library cannot be loaded
+	 */
+	static void load() {
+		if (!loaded) {
+			loadOnce();
+		}
+	}
+
+	private static synchronized void loadOnce() {
+		if (loaded) {
+			return;
+		}
+		if (failure == null) {
+			failure = tryLoad();
+			loaded = failure == null;
+		}
+		if (failure != null) {
+			throw new UnsatisfiedLinkError(failure);
+		}
+	}
+
+	/**
+	 * @return the name of the embedded library for this platform
+	 */
+	static String getResourceName() {
+		final String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).replace(' ', '_');
+		final String arch = System.getProperty("os.arch", "").toLowerCase(Locale.ROOT);
+		return "/native/" + os + "-" + arch + "/" + System.mapLibraryName(LIBRARY);
+	}
+
+	/**
+	 * @return null on success, otherwise a description of each attempt
+	 */
+	private static String tryLoad() {
+		final List<String> attempts = new ArrayList<String>();
+		final String path = System.getProperty(PATH_PROPERTY);
+		if (path != null && !path.isEmpty()) {
+			try {
+				System.load(new File(path).getAbsolutePath());
+				return null;
+			} catch (UnsatisfiedLinkError e) {
+				attempts.add(PATH_PROPERTY + "=" + path + ": " + e.getMessage());
+			}
+		}
+		final String resource = getResourceName();
+		final InputStream in = NativeLibraryLoader.class.getResourceAsStream(resource);
+		if (in == null) {
+			attempts.add("embedded " + resource + ": not in the jar (unsupported platform?)");
+		} else {
+			try {
+				final Path lib = extract(in, getCacheDir(), System.mapLibraryName(LIBRARY));
+				System.load(lib.toString());
+				return null;
+			} catch (IOException e) {
+				attempts.add("embedded " + resource + ": failed to extract: " + e);
+			} catch (UnsatisfiedLinkError e) {
+				attempts.add("embedded " + resource + ": " + e.getMessage());
+			}
+		}
+		try {
+			System.loadLibrary(LIBRARY);
+			return null;
+		} catch (UnsatisfiedLinkError e) {
+			attempts.add("java.library.path: " + e.getMessage());
+		}
+		final StringBuilder sb = new StringBuilder("Failed to load native library " + LIBRARY + " for "
+				+ System.getProperty("os.name") + "/" + System.getProperty("os.arch") + ". Tried:");
+		for (final String a : attempts) {
+			sb.append("\n  ").append(a);
+		}
+		return sb.toString();
+	}
+
+	private static Path getCacheDir() {
+		final String dir = System.getProperty(CACHE_PROPERTY);
+		if (dir != null && !dir.isEmpty()) {
+			return Paths.get(dir);
+		}
+		// per user, since another user's directory may not be writable
+		return Paths.get(System.getProperty("java.io.tmpdir"), "heartbeats-simple-" + System.getProperty("user.name"));
+	}
+
+	/**
+	 * Write a library to <code>cacheDir/&lt;sha-256&gt;/name</code> unless it is
+	 * already there with the same contents. The file is written under a
+	 * temporary name and then renamed, so a partially written file is never
+	 * loaded.
+	 *
+	 * @param in
+	 *            the library contents; closed by this method
+	 * @param cacheDir
+	 * @param name
+	 * @return the library file
+	 * @throws IOException
+	 *             if writing fails, or a cache directory is not private to the
+	 *             current user
+	 */
+	static Path extract(final InputStream in, final Path cacheDir, final String name) throws IOException {
+		final byte[] bytes;
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] buf = new byte[64 * 1024];
+			int n;
+			while ((n = in.read(buf)) >= 0) {
+				out.write(buf, 0, n);
+			}
+			bytes = out.toByteArray();
+		} finally {
+			in.close();
+		}
+		final String sha = sha256(bytes);
+		final Path dir = cacheDir.resolve(sha);
+		final Path lib = dir.resolve(name);
+		createPrivateDirectory(cacheDir);
+		createPrivateDirectory(dir);
+		// check the contents, not just the size, of a library that is already there
+		if (Files.isRegularFile(lib, LinkOption.NOFOLLOW_LINKS) && Files.size(lib) == bytes.length
+				&& sha.equals(sha256(Files.readAllBytes(lib)))) {
+			return lib;
+		}
+		final Path tmp = Files.createTempFile(dir, name, ".tmp");
+		try {
+			Files.write(tmp, bytes);
+			Files.move(tmp, lib, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		return lib;
+	}
+
+	/**
+	 * Create a directory, and its parents, if it does not exist. On POSIX file
+	 * systems it is created with owner-only permissions, and an existing
+	 * directory must be owned by the current user and not accessible to anyone
+	 * else.
+	 */
+	private static void createPrivateDirectory(final Path dir) throws IOException {
+		final boolean posix = dir.getFileSystem().supportedFileAttributeViews().contains("posix");
+		if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+			final Path parent = dir.toAbsolutePath().getParent();
+			if (parent != null) {
+				Files.createDirectories(parent);
+			}
+			try {
+				if (posix) {
+					Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+				} else {
+					Files.createDirectory(dir);
+				}
+			} catch (FileAlreadyExistsException e) {
+				// created concurrently, checked below like any existing directory
+			}
+		}
+		if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+			throw new IOException(dir + " is not a directory");
+		}
+		if (posix) {
+			final PosixFileAttributes attrs = Files.readAttributes(dir, PosixFileAttributes.class,
+					LinkOption.NOFOLLOW_LINKS);
+			final UserPrincipal user = dir.getFileSystem().getUserPrincipalLookupService()
+					.lookupPrincipalByName(System.getProperty("user.name"));
+			if (!attrs.owner().equals(user)) {
+				throw new IOException(dir + " is owned by " + attrs.owner().getName() + ", not " + user.getName());
+			}
+			if (!OWNER_ONLY.containsAll(attrs.permissions())) {
+				throw new IOException(dir + " is accessible to other users: "
+						+ PosixFilePermissions.toString(attrs.permissions()));
+			}
+		}
+	}
+
+	private static String sha256(final byte[] bytes) {
+		final byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+		final StringBuilder sb = new StringBuilder(2 * digest.length);
+		for (final byte b : digest) {
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		return sb.toString();
+	}
+}
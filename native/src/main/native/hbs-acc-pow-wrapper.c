@@ -5,10 +5,16 @@
  * @date 2015-11-17
  */
 
+#include <stdint.h>
 #include <stdlib.h>
+#include <string.h>
 #include <jni.h>
 #include <heartbeat-acc-pow.h>
 #include <hbs-acc-pow-wrapper.h>
+#include "hbs-natives.h"
+
+// number of records copied from Java per chunk when batching
+#define HB_BATCH_CHUNK 64
 
 #define MACRO_GET_HB() \
   heartbeat_acc_pow_context* hb = NULL; \
@@ -44,6 +50,43 @@ JNIEXPORT jobject JNICALL Java_edu_uchicago_cs_heartbeats_HeartbeatAccPowJNI_ini
   return (*env)->NewDirectByteBuffer(env, (void*) hb, sizeof(heartbeat_acc_pow_context));
 }
 
+/**
+ * Get the size of a context, for callers that provide the memory.
+ */
+JNIEXPORT jint JNICALL Java_edu_uchicago_cs_heartbeats_HeartbeatAccPowJNI_contextSize(JNIEnv* env,
+                                                                                      jobject obj) {
+  return sizeof(heartbeat_acc_pow_context);
+}
+
+/**
+ * Get the size of a window buffer record, for callers that provide the memory.
+ */
+JNIEXPORT jint JNICALL Java_edu_uchicago_cs_heartbeats_HeartbeatAccPowJNI_recordSize(JNIEnv* env,
+                                                                                     jobject obj) {
+  return sizeof(heartbeat_acc_pow_record);
+}
+
+/**
+ * Initialize, or reset, a heartbeat in memory provided by the caller, e.g., a slot in a pool.
+ * Nothing is allocated, and the memory must not be passed to free.
+ * Returns 0 on success or failure code otherwise.
+ */
+JNIEXPORT jint JNICALL Java_edu_uchicago_cs_heartbeats_HeartbeatAccPowJNI_initInPlace(JNIEnv* env,
+                                                                                      jobject obj,
+                                                                                      jobject ptr,
+                                                                                      jobject window_buffer,
+                                                                                      jint window_size,
+                                                                                      jint log_fd) {
+  MACRO_GET_HB();
+  heartbeat_acc_pow_record* hbr = (*env)->GetDirectBufferAddress(env, window_buffer);
+  if (hb == NULL || hbr == NULL || window_size <= 0
+      || (*env)->GetDirectBufferCapacity(env, ptr) < (jlong) sizeof(heartbeat_acc_pow_context)
+      || (*env)->GetDirectBufferCapacity(env, window_buffer) < window_size * (jlong) sizeof(heartbeat_acc_pow_record)) {
+    return -1;
+  }
+  return heartbeat_acc_pow_init(hb, window_size, hbr, log_fd, NULL);
+}
+
 /**
  * Issue a heartbeat.
  */
@@ -61,6 +104,52 @@ JNIEXPORT void JNICALL Java_edu_uchicago_cs_heartbeats_HeartbeatAccPowJNI_heartb
   heartbeat_acc_pow(hb, user_tag, work, start_time, end_time, accuracy, start_energy, end_energy);
 }
 
+/**
+ * Issue a batch of heartbeats, equivalent to issuing each one individually.
+ * Records are copied from the Java arrays in chunks to avoid pinning them.
+ */
+JNIEXPORT void JNICALL Java_edu_uchicago_cs_heartbeats_HeartbeatAccPowJNI_heartbeatBatch(JNIEnv* env,
+                                                                                         jobject obj,
+                                                                                         jobject ptr,
+                                                                                         jlongArray user_tags,
+                                                                                         jlongArray work,
+                                                                                         jlongArray start_times,
+                                                                                         jlongArray end_times,
+                                                                                         jlongArray accuracies,
+                                                                                         jlongArray start_energies,
+                                                                                         jlongArray end_energies,
+                                                                                         jint offset,
+                                                                                         jint length) {
+  MACRO_GET_HB();
+  jlong b_user_tags[HB_BATCH_CHUNK];
+  jlong b_work[HB_BATCH_CHUNK];
+  jlong b_start_times[HB_BATCH_CHUNK];
+  jlong b_end_times[HB_BATCH_CHUNK];
+  jlong b_accuracies[HB_BATCH_CHUNK];
+  jlong b_start_energies[HB_BATCH_CHUNK];
+  jlong b_end_energies[HB_BATCH_CHUNK];
+  jint i;
+  jint j;
+  jint n;
+  for (i = 0; i < length; i += n) {
+    n = length - i < HB_BATCH_CHUNK ? length - i : HB_BATCH_CHUNK;
+    (*env)->GetLongArrayRegion(env, user_tags, offset + i, n, b_user_tags);
+    (*env)->GetLongArrayRegion(env, work, offset + i, n, b_work);
+    (*env)->GetLongArrayRegion(env, start_times, offset + i, n, b_start_times);
+    (*env)->GetLongArrayRegion(env, end_times, offset + i, n, b_end_times);
+    (*env)->GetLongArrayRegion(env, accuracies, offset + i, n, b_accuracies);
+    (*env)->GetLongArrayRegion(env, start_energies, offset + i, n, b_start_energies);
+    (*env)->GetLongArrayRegion(env, end_energies, offset + i, n, b_end_energies);
+    if ((*env)->ExceptionCheck(env)) {
+      return;
+    }
+    for (j = 0; j < n; j++) {
+      heartbeat_acc_pow(hb, b_user_tags[j], b_work[j], b_start_times[j], b_end_times[j],
+                        b_accuracies[j], b_start_energies[j], b_end_energies[j]);
+    }
+  }
+}
+
 /**
  * Cleanup the heartbeat specified by the provided pointer.
  * Returns 0 on success or failure code otherwise.
@@ -75,6 +164,41 @@ JNIEXPORT void JNICALL Java_edu_uchicago_cs_heartbeats_HeartbeatAccPowJNI_free(J
   }
 }
 
+/**
+ * Copy the window buffer records into another context with the same window size,
+ * e.g., to log them asynchronously. The copy's read index marks a full window.
+ */
+JNIEXPORT void JNICALL Java_edu_uchicago_cs_heartbeats_HeartbeatAccPowJNI_copyWindowBuffer(JNIEnv* env,
+                                                                                           jobject obj,
+                                                                                           jobject ptr,
+                                                                                           jobject dest) {
+  MACRO_GET_HB();
+  heartbeat_acc_pow_context* dst = (heartbeat_acc_pow_context*) (*env)->GetDirectBufferAddress(env, dest);
+  memcpy(dst->window_buffer, hb->window_buffer, hb->ws.window_size * sizeof(heartbeat_acc_pow_record));
+  dst->ws.read_index = hb->ws.window_size;
+}
+
+/**
+ * Get the window buffer records as a direct buffer, to read them in place.
+ */
+JNIEXPORT jobject JNICALL Java_edu_uchicago_cs_heartbeats_HeartbeatAccPowJNI_getWindowBuffer(JNIEnv* env,
+                                                                                             jobject obj,
+                                                                                             jobject ptr) {
+  MACRO_GET_HB();
+  return (*env)->NewDirectByteBuffer(env, (void*) hb->window_buffer,
+                                     hb->ws.window_size * sizeof(heartbeat_acc_pow_record));
+}
+
+/**
+ * Get the address of the heartbeat, for the address-based methods.
+ */
+JNIEXPORT jlong JNICALL Java_edu_uchicago_cs_heartbeats_HeartbeatAccPowJNI_getAddress(JNIEnv* env,
+                                                                                      jobject obj,
+                                                                                      jobject ptr) {
+  MACRO_GET_HB();
+  return (jlong) (intptr_t) hb;
+}
+
 JNIEXPORT jint JNICALL Java_edu_uchicago_cs_heartbeats_HeartbeatAccPowJNI_logHeader(JNIEnv* env,
                                                                                     jobject obj,
                                                                                     jint fd) {
@@ -221,3 +345,167 @@ JNIEXPORT jdouble JNICALL Java_edu_uchicago_cs_heartbeats_HeartbeatAccPowJNI_get
   MACRO_GET_HB();
   return hb_acc_pow_get_instant_power(hb);
 }
+
+/**
+ * Get all metrics in a single call.
+ * Array order must match edu.uchicago.cs.heartbeats.HeartbeatSnapshot.
+ */
+JNIEXPORT void JNICALL Java_edu_uchicago_cs_heartbeats_HeartbeatAccPowJNI_snapshot(JNIEnv* env,
+                                                                                   jobject obj,
+                                                                                   jobject ptr,
+                                                                                   jlongArray longs,
+                                                                                   jdoubleArray doubles) {
+  MACRO_GET_HB();
+  const jlong l[] = {
+    hb_acc_pow_get_window_size(hb),
+    hb_acc_pow_get_user_tag(hb),
+    hb_acc_pow_get_global_time(hb),
+    hb_acc_pow_get_window_time(hb),
+    hb_acc_pow_get_global_work(hb),
+    hb_acc_pow_get_window_work(hb),
+    hb_acc_pow_get_global_accuracy(hb),
+    hb_acc_pow_get_window_accuracy(hb),
+    hb_acc_pow_get_global_energy(hb),
+    hb_acc_pow_get_window_energy(hb)
+  };
+  const jdouble d[] = {
+    hb_acc_pow_get_global_perf(hb),
+    hb_acc_pow_get_window_perf(hb),
+    hb_acc_pow_get_instant_perf(hb),
+    hb_acc_pow_get_global_accuracy_rate(hb),
+    hb_acc_pow_get_window_accuracy_rate(hb),
+    hb_acc_pow_get_instant_accuracy_rate(hb),
+    hb_acc_pow_get_global_power(hb),
+    hb_acc_pow_get_window_power(hb),
+    hb_acc_pow_get_instant_power(hb)
+  };
+  (*env)->SetLongArrayRegion(env, longs, 0, sizeof(l) / sizeof(l[0]), l);
+  (*env)->SetDoubleArrayRegion(env, doubles, 0, sizeof(d) / sizeof(d[0]), d);
+}
+
+/*
+ * Address-based methods of HeartbeatAccPowJNI.Raw, registered by JNI_OnLoad.
+ * The context is passed as a plain address, so no buffer address lookup is needed.
+ */
+
+#define HB_ADDR(addr) ((heartbeat_acc_pow_context*) (intptr_t) (addr))
+
+static void JNICALL raw_heartbeat(JNIEnv* env,
+                                  jclass cls,
+                                  jlong addr,
+                                  jlong user_tag,
+                                  jlong work,
+                                  jlong start_time,
+                                  jlong end_time,
+                                  jlong accuracy,
+                                  jlong start_energy,
+                                  jlong end_energy) {
+  heartbeat_acc_pow(HB_ADDR(addr), user_tag, work, start_time, end_time, accuracy, start_energy, end_energy);
+}
+
+static jlong JNICALL raw_get_window_size(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_window_size(HB_ADDR(addr));
+}
+
+static jlong JNICALL raw_get_user_tag(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_user_tag(HB_ADDR(addr));
+}
+
+static jlong JNICALL raw_get_global_time(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_global_time(HB_ADDR(addr));
+}
+
+static jlong JNICALL raw_get_window_time(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_window_time(HB_ADDR(addr));
+}
+
+static jlong JNICALL raw_get_global_work(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_global_work(HB_ADDR(addr));
+}
+
+static jlong JNICALL raw_get_window_work(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_window_work(HB_ADDR(addr));
+}
+
+static jdouble JNICALL raw_get_global_perf(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_global_perf(HB_ADDR(addr));
+}
+
+static jdouble JNICALL raw_get_window_perf(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_window_perf(HB_ADDR(addr));
+}
+
+static jdouble JNICALL raw_get_instant_perf(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_instant_perf(HB_ADDR(addr));
+}
+
+static jlong JNICALL raw_get_global_accuracy(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_global_accuracy(HB_ADDR(addr));
+}
+
+static jlong JNICALL raw_get_window_accuracy(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_window_accuracy(HB_ADDR(addr));
+}
+
+static jdouble JNICALL raw_get_global_accuracy_rate(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_global_accuracy_rate(HB_ADDR(addr));
+}
+
+static jdouble JNICALL raw_get_window_accuracy_rate(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_window_accuracy_rate(HB_ADDR(addr));
+}
+
+static jdouble JNICALL raw_get_instant_accuracy_rate(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_instant_accuracy_rate(HB_ADDR(addr));
+}
+
+static jlong JNICALL raw_get_global_energy(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_global_energy(HB_ADDR(addr));
+}
+
+static jlong JNICALL raw_get_window_energy(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_window_energy(HB_ADDR(addr));
+}
+
+static jdouble JNICALL raw_get_global_power(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_global_power(HB_ADDR(addr));
+}
+
+static jdouble JNICALL raw_get_window_power(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_window_power(HB_ADDR(addr));
+}
+
+static jdouble JNICALL raw_get_instant_power(JNIEnv* env, jclass cls, jlong addr) {
+  return hb_acc_pow_get_instant_power(HB_ADDR(addr));
+}
+
+static const JNINativeMethod raw_methods[] = {
+  {"heartbeat", "(JJJJJJJJ)V", (void*) raw_heartbeat},
+  {"getWindowSize", "(J)J", (void*) raw_get_window_size},
+  {"getUserTag", "(J)J", (void*) raw_get_user_tag},
+  {"getGlobalTime", "(J)J", (void*) raw_get_global_time},
+  {"getWindowTime", "(J)J", (void*) raw_get_window_time},
+  {"getGlobalWork", "(J)J", (void*) raw_get_global_work},
+  {"getWindowWork", "(J)J", (void*) raw_get_window_work},
+  {"getGlobalPerf", "(J)D", (void*) raw_get_global_perf},
+  {"getWindowPerf", "(J)D", (void*) raw_get_window_perf},
+  {"getInstantPerf", "(J)D", (void*) raw_get_instant_perf},
+  {"getGlobalAccuracy", "(J)J", (void*) raw_get_global_accuracy},
+  {"getWindowAccuracy", "(J)J", (void*) raw_get_window_accuracy},
+  {"getGlobalAccuracyRate", "(J)D", (void*) raw_get_global_accuracy_rate},
+  {"getWindowAccuracyRate", "(J)D", (void*) raw_get_window_accuracy_rate},
+  {"getInstantAccuracyRate", "(J)D", (void*) raw_get_instant_accuracy_rate},
+  {"getGlobalEnergy", "(J)J", (void*) raw_get_global_energy},
+  {"getWindowEnergy", "(J)J", (void*) raw_get_window_energy},
+  {"getGlobalPower", "(J)D", (void*) raw_get_global_power},
+  {"getWindowPower", "(J)D", (void*) raw_get_window_power},
+  {"getInstantPower", "(J)D", (void*) raw_get_instant_power},
+};
+
+jint hbs_acc_pow_register_natives(JNIEnv* env) {
+  jclass cls = (*env)->FindClass(env, "edu/uchicago/cs/heartbeats/HeartbeatAccPowJNI$Raw");
+  if (cls == NULL) {
+    return JNI_ERR;
+  }
+  return (*env)->RegisterNatives(env, cls, raw_methods, sizeof(raw_methods) / sizeof(raw_methods[0]));
+}
@@ -0,0 +1,20 @@
+/**
+ * Registration of the address-based JNI methods, called from JNI_OnLoad.
+ *
+ * @author Connor Imes
+ * @date 2026-10-17
+ */
+#ifndef _HBS_NATIVES_H_
+#define _HBS_NATIVES_H_
+
+#include <jni.h>
+
+jint hbs_register_natives(JNIEnv* env);
+
+jint hbs_acc_register_natives(JNIEnv* env);
+
+jint hbs_pow_register_natives(JNIEnv* env);
+
+jint hbs_acc_pow_register_natives(JNIEnv* env);
+
+#endif
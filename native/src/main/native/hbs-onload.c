@@ -0,0 +1,27 @@
+/**
+ * Library load hook for the heartbeats-simple JNI bindings.
+ *
+ * @author Connor Imes
+ * @date 2026-10-17
+ */
+
+#include <jni.h>
+#include "hbs-natives.h"
+
+/**
+ * Register the address-based methods of each binding's Raw class.
+ * Failing here makes System.loadLibrary throw, rather than failing on first use.
+ */
+JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM* vm, void* reserved) {
+  JNIEnv* env;
+  if ((*vm)->GetEnv(vm, (void**) &env, JNI_VERSION_1_6) != JNI_OK) {
+    return JNI_ERR;
+  }
+  if (hbs_register_natives(env) != JNI_OK ||
+      hbs_acc_register_natives(env) != JNI_OK ||
+      hbs_pow_register_natives(env) != JNI_OK ||
+      hbs_acc_pow_register_natives(env) != JNI_OK) {
+    return JNI_ERR;
+  }
+  return JNI_VERSION_1_6;
+}